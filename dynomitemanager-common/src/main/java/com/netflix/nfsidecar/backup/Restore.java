@@ -2,4 +2,12 @@ package com.netflix.nfsidecar.backup;
 
 public interface Restore {
 	boolean restoreData(String dateString);
-}
+
+	/**
+	 * Restore the most recent snapshot of the token, if not older than
+	 * maxAgeMs.
+	 *
+	 * @return the time the snapshot was uploaded, -1 if none was restored
+	 */
+	long restoreLatest(long maxAgeMs);
+}
\ No newline at end of file
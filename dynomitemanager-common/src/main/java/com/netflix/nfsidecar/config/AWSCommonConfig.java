@@ -57,4 +57,35 @@ public interface AWSCommonConfig {
                                                     // FP
     public String getBackupLocation();
 
+    /*
+     * @return the size in MB of the parts a backup is uploaded in. S3 needs at
+     * least 5MB, and at most 10000 parts, so it is raised for larger files.
+     */
+    @DefaultValue("64")
+    @PropertyName(name = "dyno.backup.s3.part.size.mb")
+    public int getBackupPartSizeMB();
+
+    /*
+     * @return the number of parts uploaded at the same time.
+     */
+    @DefaultValue("4")
+    @PropertyName(name = "dyno.backup.s3.upload.concurrency")
+    public int getBackupUploadConcurrency();
+
+    /*
+     * @return how often a failed part is uploaded again before the backup is
+     * aborted.
+     */
+    @DefaultValue("3")
+    @PropertyName(name = "dyno.backup.s3.part.retries")
+    public int getBackupPartRetries();
+
+    /*
+     * @return the S3 endpoint of backups and restores, e.g. of a local S3 compatible
+     * store, empty for the endpoint of the region.
+     */
+    @DefaultValue("")
+    @PropertyName(name = "dyno.backup.s3.endpoint")
+    public String getBackupEndpoint();
+
 }
@@ -0,0 +1,81 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the json-simple path of {@link ServoMetricsTask} with the streaming
+ * {@link DynomiteInfoParser} path on a Dynomite /info payload with a
+ * configurable number of peers. Run with the gc profiler to see the
+ * allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServoMetricsTaskBenchmark {
+
+    @Param({ "10", "100", "500" })
+    public int peers;
+
+    private ServoMetricsTask task;
+    private String payload;
+    private byte[] payloadBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        task = new ServoMetricsTask(null, null, null, null);
+        payload = payload(peers);
+        payloadBytes = payload.getBytes(StandardCharsets.UTF_8);
+
+        // register all monitors up front, so that the steady state is measured
+        task.processJsonResponse(payload);
+        task.processJsonResponse(new ByteArrayInputStream(payloadBytes));
+    }
+
+    @Benchmark
+    public void jsonSimple() throws Exception {
+        // the http client decodes the body into a String first
+        task.processJsonResponse(new String(payloadBytes, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public void streaming() throws Exception {
+        task.processJsonResponse(new ByteArrayInputStream(payloadBytes));
+    }
+
+    static String payload(int peers) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"service\":\"dynomite\", \"source\":\"florida-i-16ca1846\", \"version\":\"0.6.2\", ")
+                .append("\"uptime\":40439, \"timestamp\":1399064677, \"datacenter\":\"us-east-1\", ")
+                .append("\"latency_max\":1200, \"latency_999th\":900, \"latency_99th\":450, \"latency_95th\":120, ")
+                .append("\"latency_mean\":80, \"alloc_msgs\":1200, \"free_msgs\":800, ")
+                .append("\"dyn_o_mite\": {\"client_eof\":10, \"client_err\":0, \"client_connections\":300, ")
+                .append("\"server_ejects\":0, \"forward_error\":0, \"fragments\":0, \"stats_count\":22");
+        for (int i = 0; i < peers; i++) {
+            sb.append(", \"10.0.").append(i / 250).append('.').append(i % 250).append("\": {")
+                    .append("\"server_eof\":0, \"server_err\":1, \"server_timedout\":11, ")
+                    .append("\"server_connections\":3, \"server_ejected_at\":0, \"requests\":").append(20000 + i)
+                    .append(", \"request_bytes\":").append(1234567 + i).append(", \"responses\":").append(19999 + i)
+                    .append(", \"response_bytes\":").append(7654321 + i)
+                    .append(", \"in_queue\":0, \"in_queue_bytes\":0, \"out_queue\":0, \"out_queue_bytes\":0}");
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+}
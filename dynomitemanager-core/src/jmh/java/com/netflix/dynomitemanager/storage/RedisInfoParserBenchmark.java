@@ -0,0 +1,66 @@
+package com.netflix.dynomitemanager.storage;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares parsing a Redis/ARDB INFO reply into a map, the way the metrics
+ * task used to, with parsing it into a reused {@link RedisInfoParser.Snapshot}.
+ * Run with the gc profiler to see the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RedisInfoParserBenchmark {
+
+    @Param({ "redis_info.txt", "ardb_info.txt" })
+    public String fixture;
+
+    private String info;
+    private RedisInfoParser parser;
+    private RedisInfoParser.Snapshot snapshot;
+
+    @Setup
+    public void setup() throws Exception {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(fixture);
+        try {
+            info = IOUtils.toString(in, StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+        parser = new RedisInfoParser();
+        snapshot = parser.newSnapshot();
+        parser.parse(info, snapshot);
+    }
+
+    @Benchmark
+    public Map<String, Long> map() throws Exception {
+        // jedis hands over a String, which used to be copied into a Reader
+        return new RedisInfoParser().parse(new StringReader(info));
+    }
+
+    @Benchmark
+    public long snapshot() {
+        parser.parse(info, snapshot);
+        return snapshot.get(0);
+    }
+}
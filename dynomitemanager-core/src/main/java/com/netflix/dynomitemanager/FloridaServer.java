@@ -17,6 +17,8 @@ package com.netflix.dynomitemanager;
 
 import java.io.IOException;
 
+import javax.annotation.PreDestroy;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,12 +32,17 @@ import com.netflix.dynomitemanager.config.FloridaConfig;
 import com.netflix.dynomitemanager.config.InstanceState;
 import com.netflix.dynomitemanager.dynomite.DynomiteProcessManager;
 import com.netflix.dynomitemanager.dynomite.DynomiteRest;
+import com.netflix.dynomitemanager.dynomite.DynomiteSupervisor;
 import com.netflix.dynomitemanager.dynomite.DynomiteYamlTask;
 import com.netflix.dynomitemanager.dynomite.IDynomiteProcess;
 import com.netflix.dynomitemanager.dynomite.ProxyAndStorageResetTask;
+import com.netflix.dynomitemanager.monitoring.DynomiteCanary;
+import com.netflix.dynomitemanager.monitoring.HealthProber;
+import com.netflix.dynomitemanager.monitoring.HighResolutionMetricsTask;
 import com.netflix.dynomitemanager.monitoring.ProcessMonitorTask;
-import com.netflix.dynomitemanager.monitoring.RedisInfoMetricsTask;
-import com.netflix.dynomitemanager.monitoring.ServoMetricsTask;
+import com.netflix.dynomitemanager.monitoring.SamplingTask;
+import com.netflix.dynomitemanager.monitoring.StartupTimings;
+import com.netflix.dynomitemanager.monitoring.StartupTimings.Phase;
 import com.netflix.dynomitemanager.storage.*;
 import com.netflix.nfsidecar.aws.UpdateSecuritySettings;
 import com.netflix.nfsidecar.config.CommonConfig;
@@ -61,6 +68,9 @@ public class FloridaServer {
     private final InstanceState state;
     private final StorageProcessManager storageProcess;
     private final StorageProxy storageProxy;
+    private final DynomiteRest dynomiteRest;
+    private final DynomiteSupervisor supervisor;
+    private final StartupTimings startupTimings;
     private static final Logger logger = LoggerFactory.getLogger(FloridaServer.class);
 
     private final DynamicStringProperty readConsistencyFP;
@@ -69,7 +79,8 @@ public class FloridaServer {
     @Inject
     public FloridaServer(FloridaConfig floridaConfig, CommonConfig commonConfig, TaskScheduler scheduler,
             InstanceIdentity id, Sleeper sleeper, DynomiteYamlTask tuneTask, InstanceState state,
-            IDynomiteProcess dynProcess, StorageProcessManager storageProcess, StorageProxy storageProxy) {
+            IDynomiteProcess dynProcess, StorageProcessManager storageProcess, StorageProxy storageProxy,
+            DynomiteRest dynomiteRest, DynomiteSupervisor supervisor, StartupTimings startupTimings) {
         this.floridaConfig = floridaConfig;
         this.commonConfig = commonConfig;
         this.scheduler = scheduler;
@@ -80,6 +91,9 @@ public class FloridaServer {
         this.dynProcess = dynProcess;
         this.storageProcess = storageProcess;
         this.storageProxy = storageProxy;
+        this.dynomiteRest = dynomiteRest;
+        this.supervisor = supervisor;
+        this.startupTimings = startupTimings;
         try {
             initialize();
         } catch (Exception e) {
@@ -94,7 +108,7 @@ public class FloridaServer {
                         "florida.dyno.read.consistency", floridaConfig.getDynomiteReadConsistency());
         Runnable updateReadConsitencyFP = ()-> {
             logger.info("Updating FP: " + this.readConsistencyFP.getName());
-            if (!DynomiteRest.sendCommand("/set_consistency/read/" + floridaConfig.getDynomiteReadConsistency())) {
+            if (!dynomiteRest.sendCommand("/set_consistency/read/" + floridaConfig.getDynomiteReadConsistency())) {
                 logger.error("REST call to Dynomite for read consistency failed --> using the default");
             }
         };
@@ -105,7 +119,7 @@ public class FloridaServer {
                         "florida.dyno.write.consistency", floridaConfig.getDynomiteWriteConsistency());
         Runnable updateWriteConsitencyFP = ()-> {
             logger.info("Updating FP: " + this.writeConsistencyFP.getName());
-            if (!DynomiteRest.sendCommand("/set_consistency/write/" + floridaConfig.getDynomiteWriteConsistency())) {
+            if (!dynomiteRest.sendCommand("/set_consistency/write/" + floridaConfig.getDynomiteWriteConsistency())) {
                 logger.error("REST call to Dynomite for write consistency failed --> using the default");
             }
         };
@@ -188,11 +202,12 @@ public class FloridaServer {
                 scheduler.runTaskNow(WarmBootstrapTask.class);
             } else {
                 logger.info("Cold bootstraping, launching storage process.");
+                long start = System.currentTimeMillis();
+                // each start returns once the process answers
                 storageProcess.start();
-                sleeper.sleepQuietly(2000); // 2s
                 logger.info("Launching dynomite process.");
                 dynProcess.start();
-                sleeper.sleepQuietly(1000); // 1s
+                startupTimings.record(Phase.COLD_START, start);
                 scheduler.runTaskNow(ProxyAndStorageResetTask.class);
             }
         }
@@ -203,14 +218,30 @@ public class FloridaServer {
         }
 
         // Metrics
-        scheduler.addTask(ServoMetricsTask.TaskName, ServoMetricsTask.class, ServoMetricsTask.getTimer());
-        scheduler.addTask(RedisInfoMetricsTask.TaskName, RedisInfoMetricsTask.class, RedisInfoMetricsTask.getTimer());
+        // Dynomite's /info and the storage INFO are fetched together and fed
+        // to the ServoMetricsTask and the RedisInfoMetricsTask
+        scheduler.addTask(SamplingTask.TaskName, SamplingTask.class, SamplingTask.getTimer());
+        if (floridaConfig.isMetricsHighResolutionEnabled()) {
+            scheduler.addTask(HighResolutionMetricsTask.TaskName, HighResolutionMetricsTask.class,
+                    HighResolutionMetricsTask.getTimer(floridaConfig));
+        }
+
+        // PINGs Dynomite and the storage for the health checks below
+        scheduler.addTask(HealthProber.TaskName, HealthProber.class, HealthProber.getTimer(floridaConfig));
+        // Detects a hung Dynomite for the process monitor
+        if (floridaConfig.isDynomiteCanaryEnabled()) {
+            scheduler.addTask(DynomiteCanary.TaskName, DynomiteCanary.class, DynomiteCanary.getTimer(floridaConfig));
+        }
 
         // Routine monitoring and restarting dynomite or storage processes as
         // needed.
         scheduler.addTask(ProcessMonitorTask.JOBNAME, ProcessMonitorTask.class, ProcessMonitorTask.getTimer());
         scheduler.addTask(DynomiteProcessManager.JOB_TASK_NAME, DynomiteProcessManager.class,
                 DynomiteProcessManager.getTimer());
+        // Restart Dynomite within moments of it exiting
+        if (floridaConfig.isDynomiteSupervisionEnabled()) {
+            supervisor.start();
+        }
 
         scheduler.addTask(RedisStorageProxy.JOB_TASK_NAME, RedisStorageProxy.class, RedisStorageProxy.getTimer());
 
@@ -222,6 +253,17 @@ public class FloridaServer {
         scheduler.start();
     }
 
+    /**
+     * Stop supervising Dynomite and running tasks when Florida shuts down.
+     * Dynomite and the storage keep running.
+     */
+    @PreDestroy
+    public void shutdown() {
+        logger.info("Shutting down");
+        supervisor.shutdown();
+        scheduler.shutdown();
+    }
+
     public InstanceIdentity getId() {
         return id;
     }
@@ -0,0 +1,171 @@
+package com.netflix.dynomitemanager.aws;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.netflix.nfsidecar.scheduler.NamedThreadPoolExecutor;
+
+/**
+ * Uploads a file to S3 in parts, several at a time.
+ *
+ * Each part is read by the SDK from its offset of the file, so the memory of
+ * an upload does not grow with the part size or the file size. The number of
+ * parts waiting for an uploader is bounded by the concurrency, the file is
+ * not read ahead of the uploads.
+ *
+ * A failed part is uploaded again, up to the number of retries, without
+ * touching the parts that succeeded. Once a part runs out of retries the
+ * upload is aborted, so S3 drops the parts it stored.
+ */
+public class MultipartUploader {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultipartUploader.class);
+
+    public static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PARTS = 10000;
+    private static final long RETRY_DELAY_MS = 1000;
+
+    /**
+     * Told about each uploaded part, from the uploader threads.
+     */
+    public interface PartListener {
+        void onPart(int partNumber, long bytes, long elapsedMs, int attempts);
+    }
+
+    private final AmazonS3 s3Client;
+    private final long partSize;
+    private final int concurrency;
+    private final int retries;
+
+    private volatile boolean failed;
+
+    /**
+     * @param partSize
+     *            size of the parts, at least {@link #MIN_PART_SIZE}
+     * @param concurrency
+     *            number of parts uploaded at the same time
+     * @param retries
+     *            number of times a failed part is uploaded again
+     */
+    public MultipartUploader(AmazonS3 s3Client, long partSize, int concurrency, int retries) {
+        this.s3Client = s3Client;
+        this.partSize = Math.max(MIN_PART_SIZE, partSize);
+        this.concurrency = Math.max(1, concurrency);
+        this.retries = Math.max(0, retries);
+    }
+
+    /**
+     * @return the part size for a file, raised so it fits into the max number
+     *         of parts
+     */
+    public long getPartSize(long length) {
+        return Math.max(partSize, (length + MAX_PARTS - 1) / MAX_PARTS);
+    }
+
+    /**
+     * Upload the file to the key, replacing the object there.
+     *
+     * @param listener
+     *            told about parts, may be null
+     * @return true if the object is complete, false if the upload was aborted
+     */
+    public boolean upload(final File file, final String bucket, final String key, final PartListener listener) {
+        final long length = file.length();
+        final long size = getPartSize(length);
+        final String uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucket, key))
+                .getUploadId();
+        logger.info("Uploading " + length + " bytes to " + key + " in parts of " + size + " bytes, " + concurrency
+                + " at a time");
+
+        failed = false;
+        boolean completed = false;
+        ExecutorService uploaders = new NamedThreadPoolExecutor(concurrency, "s3-upload",
+                new ArrayBlockingQueue<Runnable>(concurrency));
+        try {
+            List<Future<PartETag>> parts = new ArrayList<Future<PartETag>>();
+            int partNumber = 1;
+            for (long offset = 0; offset < length && !failed; offset += size, partNumber++) {
+                final int number = partNumber;
+                final long position = offset;
+                final long partLength = Math.min(size, length - offset);
+                // blocks while the queue is full
+                parts.add(uploaders.submit(new Callable<PartETag>() {
+                    @Override
+                    public PartETag call() throws Exception {
+                        return uploadPart(file, bucket, key, uploadId, number, position, partLength, listener);
+                    }
+                }));
+            }
+
+            List<PartETag> partETags = new ArrayList<PartETag>(parts.size());
+            for (Future<PartETag> part : parts) {
+                partETags.add(part.get());
+            }
+            s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+            completed = true;
+            return true;
+        } catch (ExecutionException e) {
+            logger.error("Aborting multipart upload of " + key + ", a part failed: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            logger.error("Aborting multipart upload of " + key + ", interrupted");
+            Thread.currentThread().interrupt();
+        } catch (AmazonClientException e) {
+            logger.error("Aborting multipart upload of " + key + ": " + e.getMessage());
+        } finally {
+            uploaders.shutdownNow();
+            if (!completed) {
+                abort(bucket, key, uploadId);
+            }
+        }
+        return false;
+    }
+
+    private PartETag uploadPart(File file, String bucket, String key, String uploadId, int number, long offset,
+            long length, PartListener listener) throws InterruptedException {
+        for (int attempt = 1;; attempt++) {
+            long start = System.nanoTime();
+            try {
+                UploadPartRequest request = new UploadPartRequest().withBucketName(bucket).withKey(key)
+                        .withUploadId(uploadId).withPartNumber(number).withFileOffset(offset).withFile(file)
+                        .withPartSize(length);
+                PartETag partETag = s3Client.uploadPart(request).getPartETag();
+                if (listener != null) {
+                    listener.onPart(number, length, (System.nanoTime() - start) / 1000000, attempt);
+                }
+                return partETag;
+            } catch (AmazonClientException e) {
+                if (attempt > retries || failed) {
+                    failed = true;
+                    throw e;
+                }
+                logger.warn("Part " + number + " of " + key + " failed on attempt " + attempt + ", retrying: "
+                        + e.getMessage());
+                Thread.sleep(RETRY_DELAY_MS * attempt);
+            }
+        }
+    }
+
+    private void abort(String bucket, String key, String uploadId) {
+        try {
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (AmazonClientException e) {
+            logger.error("Cannot abort multipart upload of " + key + ": " + e.getMessage());
+        }
+    }
+}
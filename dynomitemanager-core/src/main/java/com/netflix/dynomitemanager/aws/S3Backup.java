@@ -16,24 +16,16 @@
 package com.netflix.dynomitemanager.aws;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.joda.time.DateTime;
 
-import com.netflix.nfsidecar.aws.ICredential;
+import com.netflix.dynomitemanager.monitoring.BackupUploadProgress;
 import com.netflix.nfsidecar.backup.Backup;
 import com.netflix.nfsidecar.config.AWSCommonConfig;
 import com.netflix.nfsidecar.identity.InstanceIdentity;
 import com.amazonaws.services.s3.AmazonS3Client;
-import com.amazonaws.services.s3.model.PartETag;
-import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
-import com.amazonaws.services.s3.model.UploadPartRequest;
-import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
-import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
-import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.google.inject.Inject;
@@ -43,24 +35,23 @@ import com.google.inject.Singleton;
 public class S3Backup implements Backup {
 
     private static final Logger logger = LoggerFactory.getLogger(S3Backup.class);
-    private final long initPartSize = 500 * 1024 * 1024; // we set the part size
-                                                         // equal to 500MB. We
-                                                         // do not want this too
-                                                         // large
-    // and run out of heap space
 
     @Inject
     private AWSCommonConfig awsCommonConfig;
 
     @Inject
-    private ICredential cred;
+    private S3ClientFactory s3ClientFactory;
 
     @Inject
     private InstanceIdentity iid;
 
+    @Inject
+    private BackupUploadProgress uploadProgress;
+
     /**
      * Uses the Amazon S3 API to upload the AOF/RDB to S3 Filename: Backup
-     * location + DC + Rack + App + Token
+     * location + DC + Rack + App + Token, in parts that are uploaded in
+     * parallel by a {@link MultipartUploader}
      */
     @Override
     public boolean upload(File file, DateTime todayStart) {
@@ -76,7 +67,7 @@ public class S3Backup implements Backup {
         logger.info("Key in Bucket: " + keyName);
         logger.info("S3 Bucket Name:" + awsCommonConfig.getBucketName());
 
-        AmazonS3Client s3Client = new AmazonS3Client(cred.getAwsCredentialProvider());
+        AmazonS3Client s3Client = s3ClientFactory.create();
 
         try {
             // Checking if the S3 bucket exists, and if does not, then we create
@@ -87,48 +78,19 @@ public class S3Backup implements Backup {
                 return false;
             } else {
                 logger.info("Uploading data to S3\n");
-                // Create a list of UploadPartResponse objects. You get one of
-                // these for
-                // each part upload.
-                List<PartETag> partETags = new ArrayList<PartETag>();
-
-                InitiateMultipartUploadRequest initRequest = new InitiateMultipartUploadRequest(awsCommonConfig.getBucketName(),
-                        keyName);
-
-                InitiateMultipartUploadResult initResponse = s3Client.initiateMultipartUpload(initRequest);
-
-                long contentLength = file.length();
-                long filePosition = 0;
-                long partSize = this.initPartSize;
-
-                try {
-                    for (int i = 1; filePosition < contentLength; i++) {
-                        // Last part can be less than initPartSize (500MB).
-                        // Adjust part size.
-                        partSize = Math.min(partSize, (contentLength - filePosition));
-
-                        // Create request to upload a part.
-                        UploadPartRequest uploadRequest = new UploadPartRequest().withBucketName(awsCommonConfig.getBucketName())
-                                .withKey(keyName).withUploadId(initResponse.getUploadId()).withPartNumber(i)
-                                .withFileOffset(filePosition).withFile(file).withPartSize(partSize);
-
-                        // Upload part and add response to our list.
-                        partETags.add(s3Client.uploadPart(uploadRequest).getPartETag());
-
-                        filePosition += partSize;
-                    }
-
-                    CompleteMultipartUploadRequest compRequest = new CompleteMultipartUploadRequest(
-                            awsCommonConfig.getBucketName(), keyName, initResponse.getUploadId(), partETags);
-
-                    s3Client.completeMultipartUpload(compRequest);
-
-                } catch (Exception e) {
-                    logger.error("Abosting multipart upload due to error");
-                    s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(awsCommonConfig.getBucketName(), keyName,
-                            initResponse.getUploadId()));
+                MultipartUploader uploader = new MultipartUploader(s3Client,
+                        awsCommonConfig.getBackupPartSizeMB() * 1024L * 1024L,
+                        awsCommonConfig.getBackupUploadConcurrency(), awsCommonConfig.getBackupPartRetries());
+
+                long start = System.currentTimeMillis();
+                uploadProgress.start();
+                if (!uploader.upload(file, awsCommonConfig.getBucketName(), keyName, uploadProgress)) {
+                    return false;
                 }
-
+                long elapsed = System.currentTimeMillis() - start;
+                uploadProgress.finish(file.length(), elapsed);
+                logger.info("Uploaded " + file.length() + " bytes in " + uploadProgress.getPartsUploaded()
+                        + " parts and " + elapsed + " ms");
                 return true;
             }
         } catch (AmazonServiceException ase) {
@@ -0,0 +1,32 @@
+package com.netflix.dynomitemanager.aws;
+
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.nfsidecar.aws.ICredential;
+import com.netflix.nfsidecar.config.AWSCommonConfig;
+
+/**
+ * Creates the S3 clients of backups and restores, so that both talk to the
+ * same store: AWS S3, or the S3 compatible store of the backup endpoint.
+ */
+@Singleton
+public class S3ClientFactory {
+
+    @Inject
+    private AWSCommonConfig awsCommonConfig;
+
+    @Inject
+    private ICredential cred;
+
+    public AmazonS3Client create() {
+        AmazonS3Client s3Client = new AmazonS3Client(cred.getAwsCredentialProvider());
+        if (!awsCommonConfig.getBackupEndpoint().isEmpty()) {
+            s3Client.setEndpoint(awsCommonConfig.getBackupEndpoint());
+            // S3 compatible stores rarely serve buckets as sub domains
+            s3Client.setS3ClientOptions(S3ClientOptions.builder().setPathStyleAccess(true).build());
+        }
+        return s3Client;
+    }
+}
@@ -15,9 +15,12 @@
  */
 package com.netflix.dynomitemanager.aws;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,7 +32,6 @@ import org.joda.time.format.DateTimeFormatter;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.netflix.dynomitemanager.config.FloridaConfig;
-import com.netflix.nfsidecar.aws.ICredential;
 import com.netflix.nfsidecar.backup.Restore;
 import com.netflix.nfsidecar.config.AWSCommonConfig;
 import com.netflix.nfsidecar.identity.InstanceIdentity;
@@ -37,7 +39,9 @@ import com.amazonaws.AmazonClientException;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
 
 @Singleton
 public class S3Restore implements Restore {
@@ -51,7 +55,7 @@ public class S3Restore implements Restore {
     private FloridaConfig floridaConfig;
     
     @Inject
-    private ICredential cred;
+    private S3ClientFactory s3ClientFactory;
 
     @Inject
     private InstanceIdentity iid;
@@ -64,7 +68,7 @@ public class S3Restore implements Restore {
         long time = restoreTime(dateString);
         if (time > -1) {
             logger.info("Restoring data from S3.");
-            AmazonS3Client s3Client = new AmazonS3Client(cred.getAwsCredentialProvider());
+            AmazonS3Client s3Client = s3ClientFactory.create();
 
             try {
                 /* construct the key for the backup data */
@@ -79,19 +83,7 @@ public class S3Restore implements Restore {
                 if (!(s3Client.doesBucketExist(commonConfig.getBucketName()))) {
                     logger.error("Bucket with name: " + commonConfig.getBucketName() + " does not exist");
                 } else {
-                    S3Object s3object = s3Client.getObject(new GetObjectRequest(commonConfig.getBucketName(), keyName));
-
-                    logger.info("Content-Type: " + s3object.getObjectMetadata().getContentType());
-
-                    String filepath = null;
-
-                    if (floridaConfig.persistenceType().equals("aof")) {
-                        filepath = floridaConfig.getPersistenceLocation() + "/appendonly.aof";
-                    } else {
-                        filepath = floridaConfig.getPersistenceLocation() + "/nfredis.rdb";
-                    }
-
-                    IOUtils.copy(s3object.getObjectContent(), new FileOutputStream(new File(filepath)));
+                    download(s3Client, keyName);
                 }
                 return true;
             } catch (AmazonServiceException ase) {
@@ -117,6 +109,98 @@ public class S3Restore implements Restore {
         return false;
     }
 
+    /**
+     * Uses the Amazon S3 API to restore the most recent snapshot under the
+     * token, whose keys end with the start of their day
+     */
+    @Override
+    public long restoreLatest(long maxAgeMs) {
+        AmazonS3Client s3Client = s3ClientFactory.create();
+        String prefix = commonConfig.getBackupLocation() + "/" + iid.getInstance().getDatacenter() + "/"
+                + iid.getInstance().getRack() + "/" + iid.getInstance().getToken() + "/";
+        try {
+            S3ObjectSummary latest = null;
+            long latestDay = -1;
+            ObjectListing listing = s3Client.listObjects(commonConfig.getBucketName(), prefix);
+            while (true) {
+                for (S3ObjectSummary summary : listing.getObjectSummaries()) {
+                    long day;
+                    try {
+                        day = Long.parseLong(summary.getKey().substring(prefix.length()));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    if (day > latestDay) {
+                        latestDay = day;
+                        latest = summary;
+                    }
+                }
+                if (!listing.isTruncated()) {
+                    break;
+                }
+                listing = s3Client.listNextBatchOfObjects(listing);
+            }
+
+            if (latest == null) {
+                logger.info("No snapshot in S3 under " + prefix);
+                return -1;
+            }
+            // the last modified time of a multipart upload is when it started
+            long time = latest.getLastModified().getTime();
+            if (System.currentTimeMillis() - time > maxAgeMs) {
+                logger.info("Snapshot " + latest.getKey() + " of " + latest.getLastModified() + " is too old");
+                return -1;
+            }
+            logger.info("Restoring snapshot " + latest.getKey() + " of " + latest.getLastModified() + ", "
+                    + latest.getSize() + " bytes");
+            download(s3Client, latest.getKey());
+            return time;
+        } catch (AmazonServiceException ase) {
+            logger.error("AmazonServiceException: cannot restore the latest snapshot under " + prefix + ": "
+                    + ase.getMessage() + ", HTTP Status Code: " + ase.getStatusCode());
+        } catch (AmazonClientException ace) {
+            logger.error("AmazonClientException: cannot restore the latest snapshot under " + prefix + ": "
+                    + ace.getMessage());
+        } catch (IOException io) {
+            logger.error("File storing error: " + io.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Replaces the AOF or RDB with the object. It is downloaded next to it
+     * first and moved over it once complete, so a failed download leaves the
+     * old file in place and no partial one.
+     */
+    private void download(AmazonS3Client s3Client, String keyName) throws IOException {
+        S3Object s3object = s3Client.getObject(new GetObjectRequest(commonConfig.getBucketName(), keyName));
+
+        logger.info("Content-Type: " + s3object.getObjectMetadata().getContentType());
+
+        String filepath = null;
+
+        if (floridaConfig.persistenceType().equals("aof")) {
+            filepath = floridaConfig.getPersistenceLocation() + "/appendonly.aof";
+        } else {
+            filepath = floridaConfig.getPersistenceLocation() + "/nfredis.rdb";
+        }
+
+        Path target = Paths.get(filepath);
+        Path tmp = Paths.get(filepath + ".download");
+        InputStream in = s3object.getObjectContent();
+        boolean moved = false;
+        try {
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            IOUtils.closeQuietly(in);
+            if (!moved) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
     private long restoreTime(String dateString) {
         logger.info("Date to restore to: " + dateString);
 
@@ -45,6 +45,38 @@ public interface FloridaConfig {
     @PropertyName(name = "dyno.stopscript")
     public String getDynomiteStopScript();
 
+    /**
+     * Get how long a start of Dynomite or the storage may take, until its
+     * start script exited and it answers PING.
+     *
+     * @return the start deadline in ms
+     */
+    @DefaultValue("60000")
+    @PropertyName(name = "dyno.start.timeout.ms")
+    public int getProcessStartTimeout();
+
+    /**
+     * Get how long a stop of Dynomite or the storage may take, until its stop
+     * script exited and the process is gone.
+     *
+     * @return the stop deadline in ms
+     */
+    @DefaultValue("30000")
+    @PropertyName(name = "dyno.stop.timeout.ms")
+    public int getProcessStopTimeout();
+
+    /**
+     * Get the part of the storage process command line it is looked up by in
+     * /proc, e.g. /apps/nfredis/bin/redis-server. If it is empty, the binary
+     * of the configured engine is used. Until a process is found with it, the
+     * storage is only checked with PING.
+     *
+     * @return the command line of the storage process, or an empty string
+     */
+    @DefaultValue("")
+    @PropertyName(name = "dyno.storage.process.command")
+    public String getStorageProcessCommand();
+
     /**
      * @return Cluster name if the environment variable for cluster name does
      *         not exist
@@ -104,6 +136,34 @@ public interface FloridaConfig {
     @DefaultValue("127.0.0.1")
     public String getDynomiteLocalAddress();
 
+    /**
+     * Connect timeout of the pooled HTTP client used for Dynomite's admin and
+     * stats port.
+     *
+     * @return connect timeout in ms
+     */
+    @DefaultValue("2000")
+    @PropertyName(name = "dyno.admin.connect.timeout.ms")
+    public int getDynomiteAdminConnectTimeout();
+
+    /**
+     * Read timeout of the pooled HTTP client used for Dynomite's admin and
+     * stats port.
+     *
+     * @return socket timeout in ms
+     */
+    @DefaultValue("10000")
+    @PropertyName(name = "dyno.admin.socket.timeout.ms")
+    public int getDynomiteAdminSocketTimeout();
+
+    /**
+     * @return the maximum number of pooled connections to Dynomite's admin
+     *         port
+     */
+    @DefaultValue("4")
+    @PropertyName(name = "dyno.admin.max.connections")
+    public int getDynomiteAdminMaxConnections();
+
     /**
      * Dynomite now supports multiple connections to datastore and peer. These
      * are the set of properties for each of them
@@ -231,6 +291,220 @@ public interface FloridaConfig {
     @PropertyName(name = "dyno.warm.msec.bootstraptime")
     public int getMaxTimeToBootstrap();
 
+    /**
+     * How long each peer may take to answer the connect, PING and INFO that
+     * rank it as a warm up donor. Peers are probed in parallel, so this is
+     * also the time the whole selection may take.
+     *
+     * @return the per peer deadline in milliseconds
+     */
+    @DefaultValue("5000")
+    @PropertyName(name = "dyno.warm.peer.probe.timeout.ms")
+    public int getPeerProbeTimeout();
+
+    /**
+     * The shortest interval between two replication offset checks, used once
+     * the warm up is about to catch up.
+     *
+     * @return the interval in milliseconds
+     */
+    @DefaultValue("500")
+    @PropertyName(name = "dyno.warm.sync.poll.min.ms")
+    public int getPeerSyncMinPollInterval();
+
+    /**
+     * The longest interval between two replication offset checks, used while
+     * the peer still dumps its data or no catch up is predicted.
+     *
+     * @return the interval in milliseconds
+     */
+    @DefaultValue("10000")
+    @PropertyName(name = "dyno.warm.sync.poll.max.ms")
+    public int getPeerSyncMaxPollInterval();
+
+    /**
+     * How long the warm up may go on without a predicted catch up before the
+     * bootstrap time runs out, before it gives up.
+     *
+     * @return the time in milliseconds
+     */
+    @DefaultValue("120000")
+    @PropertyName(name = "dyno.warm.sync.stall.ms")
+    public int getPeerSyncStallTime();
+
+    /**
+     * Pace the warm up by the latency of the peer it syncs from. Once the
+     * replica is online, it detaches from the peer for part of each throttle
+     * period, and continues with a partial resync from the backlog. The
+     * partial resync needs Redis 4.0 on both sides, otherwise the warm up is
+     * not throttled. The throttle stops if the peer serves a full sync after
+     * an attach.
+     *
+     * @return true if the warm up is throttled
+     */
+    @DefaultValue("false")
+    @PropertyName(name = "dyno.warm.throttle.enabled")
+    public boolean isWarmUpThrottleEnabled();
+
+    /**
+     * @return the latency of the peer in microseconds, PING round trip or
+     *         Dynomite's latency_99th, above which the warm up slows down
+     */
+    @DefaultValue("10000")
+    @PropertyName(name = "dyno.warm.throttle.latency.us")
+    public int getWarmUpThrottleLatency();
+
+    /**
+     * @return the throttle period in ms, the replica is attached for the
+     *         current share of each period
+     */
+    @DefaultValue("10000")
+    @PropertyName(name = "dyno.warm.throttle.period.ms")
+    public int getWarmUpThrottlePeriod();
+
+    /**
+     * @return the smallest share of a throttle period the replica is
+     *         attached for, in percent
+     */
+    @DefaultValue("10")
+    @PropertyName(name = "dyno.warm.throttle.min.duty.pct")
+    public int getWarmUpThrottleMinDuty();
+
+    /**
+     * @return the repl-backlog-size set on the peer during a throttled warm
+     *         up, large enough to hold the writes of a detached period
+     */
+    @DefaultValue("268435456")
+    @PropertyName(name = "dyno.warm.throttle.repl.backlog.bytes")
+    public long getWarmUpThrottleReplBacklog();
+
+    /**
+     * @return the client-output-buffer-limit set on the peer during a
+     *         throttled warm up, so that the peer does not drop a replica
+     *         that catches up slowly
+     */
+    @DefaultValue("slave 1073741824 536870912 120")
+    @PropertyName(name = "dyno.warm.throttle.output.buffer.limit")
+    public String getWarmUpThrottleOutputBufferLimit();
+
+    /**
+     * How the warm up copies the data of a peer: "replication" makes the
+     * storage a replica of the peer with SLAVEOF, "migration" streams the keys
+     * of the peer with SCAN, DUMP and RESTORE, for peers that cannot
+     * replicate, e.g. ARDB.
+     *
+     * @return the warm up engine
+     */
+    @DefaultValue("replication")
+    @PropertyName(name = "dyno.warm.engine")
+    public String getWarmUpEngine();
+
+    /**
+     * @return the COUNT of each SCAN of a migration, i.e. about the number of
+     *         keys per batch
+     */
+    @DefaultValue("1000")
+    @PropertyName(name = "dyno.warm.migration.scan.count")
+    public int getMigrationScanCount();
+
+    /**
+     * @return the number of batches a migration dumps and restores in
+     *         parallel, each over its own connections
+     */
+    @DefaultValue("4")
+    @PropertyName(name = "dyno.warm.migration.parallelism")
+    public int getMigrationParallelism();
+
+    /**
+     * @return the number of scanned batches that may wait for a worker, which
+     *         bounds the memory of a migration
+     */
+    @DefaultValue("8")
+    @PropertyName(name = "dyno.warm.migration.inflight.batches")
+    public int getMigrationInFlightBatches();
+
+    /**
+     * Where the progress of a warm up is recorded, so that the next attempt
+     * after a restart continues from the same peer. A migration continues
+     * from its SCAN cursor if Redis still has the keys restored so far. A
+     * replication only syncs from the same peer again; whether that is a
+     * partial resync is up to Redis, the recorded replication ID is only
+     * compared and logged.
+     *
+     * @return the path of the checkpoint file
+     */
+    @DefaultValue("/mnt/data/florida_warmup.checkpoint")
+    @PropertyName(name = "dyno.warm.checkpoint.file")
+    public String getWarmUpCheckpointFile();
+
+    /**
+     * @return the age in ms after which a checkpoint is not resumed from, as
+     *         the data copied so far is too old
+     */
+    @DefaultValue("3600000")
+    @PropertyName(name = "dyno.warm.checkpoint.max.age.ms")
+    public int getWarmUpCheckpointMaxAge();
+
+    /**
+     * Load the latest snapshot of the token from S3 before a warm up, and
+     * copy only the keys the peer accessed since, instead of all of them.
+     *
+     * @return true to warm up from a snapshot
+     */
+    @DefaultValue("false")
+    @PropertyName(name = "dyno.warm.snapshot.enabled")
+    public boolean isWarmUpFromSnapshot();
+
+    /**
+     * @return the age in ms after which a snapshot is not warmed up from, as
+     *         most keys would have to be copied anyway
+     */
+    @DefaultValue("172800000")
+    @PropertyName(name = "dyno.warm.snapshot.max.age.ms")
+    public int getWarmUpSnapshotMaxAge();
+
+    /**
+     * The snapshot is older than its upload by the time the BGSAVE took. Keys
+     * accessed within the age of the snapshot plus this margin are copied.
+     *
+     * @return the margin in ms
+     */
+    @DefaultValue("900000")
+    @PropertyName(name = "dyno.warm.snapshot.margin.ms")
+    public int getWarmUpSnapshotMargin();
+
+    /**
+     * @return the interval in ms at which the delayed write backlog of
+     *         Dynomite is checked while it is resuming after a warm up
+     */
+    @DefaultValue("500")
+    @PropertyName(name = "dyno.resume.poll.ms")
+    public int getResumePollInterval();
+
+    /**
+     * @return the time in ms after which Dynomite is set to normal even if its
+     *         delayed write backlog did not drain
+     */
+    @DefaultValue("60000")
+    @PropertyName(name = "dyno.resume.timeout.ms")
+    public int getResumeTimeout();
+
+    /**
+     * @return the number of queued requests at or below which the delayed
+     *         write backlog counts as drained
+     */
+    @DefaultValue("0")
+    @PropertyName(name = "dyno.resume.backlog.max")
+    public int getResumeBacklogThreshold();
+
+    /**
+     * @return the number of checks in a row the backlog has to be drained for,
+     *         so that a pause between writes is not mistaken for the end
+     */
+    @DefaultValue("3")
+    @PropertyName(name = "dyno.resume.quiet.checks")
+    public int getResumeQuietChecks();
+
     /**
      * The max percentage of system memory to be allocated to the Dynomite
      * fronted data store.
@@ -341,4 +615,208 @@ public interface FloridaConfig {
     @PropertyName(name = "redis.unixpath")
     public String getRedisUnixPath();
 
+    // Metrics
+    // =======
+
+    /**
+     * Sample Dynomite's latency and queue gauges at a high resolution in
+     * addition to the regular metrics poll, so that short spikes are not
+     * averaged away.
+     *
+     * @return true if high resolution sampling is enabled
+     */
+    @DefaultValue("false")
+    @PropertyName(name = "dyno.metrics.highres.enabled")
+    public boolean isMetricsHighResolutionEnabled();
+
+    /**
+     * @return the interval between two high resolution samples in ms
+     */
+    @DefaultValue("1000")
+    @PropertyName(name = "dyno.metrics.highres.interval.ms")
+    public int getMetricsHighResolutionInterval();
+
+    /**
+     * Get the reporting window of the high resolution samples. Min, max and
+     * percentiles are published once per window.
+     *
+     * @return the reporting window in ms
+     */
+    @DefaultValue("15000")
+    @PropertyName(name = "dyno.metrics.highres.window.ms")
+    public int getMetricsHighResolutionWindow();
+
+    // Supervision
+    // ===========
+
+    /**
+     * Watch the Dynomite process on a dedicated thread and restart it as soon
+     * as it exits, instead of on the next run of the process monitor.
+     *
+     * @return true if Dynomite is supervised
+     */
+    @DefaultValue("false")
+    @PropertyName(name = "dyno.supervision.enabled")
+    public boolean isDynomiteSupervisionEnabled();
+
+    /**
+     * @return how often the supervisor checks that Dynomite is running, in ms
+     */
+    @DefaultValue("100")
+    @PropertyName(name = "dyno.supervision.poll.ms")
+    public int getDynomiteSupervisionPollInterval();
+
+    /**
+     * Get the delay before the second restart in a row. The first restart
+     * after a stable run is immediate, later ones back off exponentially.
+     *
+     * @return the minimum restart backoff in ms
+     */
+    @DefaultValue("1000")
+    @PropertyName(name = "dyno.supervision.backoff.min.ms")
+    public int getDynomiteRestartMinBackoff();
+
+    /**
+     * @return the maximum restart backoff in ms
+     */
+    @DefaultValue("60000")
+    @PropertyName(name = "dyno.supervision.backoff.max.ms")
+    public int getDynomiteRestartMaxBackoff();
+
+    /**
+     * Get the number of restarts within the crash loop window that mark
+     * Dynomite as crash looping. A crash looping Dynomite is only restarted
+     * at the maximum backoff.
+     *
+     * @return the number of restarts
+     */
+    @DefaultValue("5")
+    @PropertyName(name = "dyno.supervision.crashloop.restarts")
+    public int getDynomiteCrashLoopRestarts();
+
+    /**
+     * Get the crash loop window. A Dynomite that stays up for a whole window
+     * is stable again, and the backoff is reset.
+     *
+     * @return the crash loop window in ms
+     */
+    @DefaultValue("300000")
+    @PropertyName(name = "dyno.supervision.crashloop.window.ms")
+    public int getDynomiteCrashLoopWindow();
+
+    // Health
+    // ======
+
+    /**
+     * @return the interval between two PINGs of Dynomite and the storage by
+     *         the health prober, in ms
+     */
+    @DefaultValue("1000")
+    @PropertyName(name = "dyno.health.probe.interval.ms")
+    public int getHealthProbeInterval();
+
+    /**
+     * @return the connect and read timeout of a health probe in ms
+     */
+    @DefaultValue("1000")
+    @PropertyName(name = "dyno.health.probe.timeout.ms")
+    public int getHealthProbeTimeout();
+
+    /**
+     * Get how long the result of a health probe is reused. Health checks
+     * within that time share the result instead of sending their own PING.
+     *
+     * @return the maximum age of a probe result in ms
+     */
+    @DefaultValue("5000")
+    @PropertyName(name = "dyno.health.probe.max.age.ms")
+    public int getHealthProbeMaxAge();
+
+    /**
+     * Get the p99 PING round trip time at which a node loses all 40 latency
+     * points of its health score.
+     *
+     * @return the round trip time limit in microseconds
+     */
+    @DefaultValue("100000")
+    @PropertyName(name = "dyno.health.score.rtt.us")
+    public int getHealthScoreRttLimit();
+
+    /**
+     * @return the Dynomite queue depth at which a node loses all 30 queue
+     *         points of its health score
+     */
+    @DefaultValue("1000")
+    @PropertyName(name = "dyno.health.score.queue")
+    public int getHealthScoreQueueLimit();
+
+    /**
+     * @return the number of blocked Redis clients at which a node loses all 20
+     *         blocked client points of its health score
+     */
+    @DefaultValue("500")
+    @PropertyName(name = "dyno.health.score.blocked.clients")
+    public int getHealthScoreBlockedClientsLimit();
+
+    /**
+     * @return the Redis ops/sec at which a node loses all 10 load points of its
+     *         health score
+     */
+    @DefaultValue("200000")
+    @PropertyName(name = "dyno.health.score.ops")
+    public int getHealthScoreOpsLimit();
+
+    /**
+     * @return the health score below which a node is reported degraded
+     */
+    @DefaultValue("70")
+    @PropertyName(name = "dyno.health.score.degraded")
+    public int getHealthScoreDegraded();
+
+    // Canary
+    // ======
+
+    /**
+     * Write and read a canary key through Dynomite's client port, and restart
+     * a Dynomite that stays too slow or fails, i.e. that hung.
+     *
+     * @return true if the canary is enabled
+     */
+    @DefaultValue("false")
+    @PropertyName(name = "dyno.canary.enabled")
+    public boolean isDynomiteCanaryEnabled();
+
+    /**
+     * @return the interval between two canary SETEX and GET pairs in ms
+     */
+    @DefaultValue("1000")
+    @PropertyName(name = "dyno.canary.interval.ms")
+    public int getDynomiteCanaryInterval();
+
+    /**
+     * @return the connect and read timeout of the canary in ms
+     */
+    @DefaultValue("1000")
+    @PropertyName(name = "dyno.canary.timeout.ms")
+    public int getDynomiteCanaryTimeout();
+
+    /**
+     * @return the latency of a SETEX and GET pair above which the canary
+     *         breaches the SLO, in ms
+     */
+    @DefaultValue("500")
+    @PropertyName(name = "dyno.canary.slo.ms")
+    public int getDynomiteCanarySlo();
+
+    /**
+     * Get the number of consecutive canaries that failed or breached the SLO,
+     * with the local Dynomite slow to answer PING as well, after which
+     * Dynomite is considered hung and restarted.
+     *
+     * @return the number of consecutive breaches
+     */
+    @DefaultValue("5")
+    @PropertyName(name = "dyno.canary.breaches")
+    public int getDynomiteCanaryBreaches();
+
 }
@@ -3,6 +3,7 @@ package com.netflix.dynomitemanager.config;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.monitoring.HealthScore;
 import com.netflix.dynomitemanager.storage.Bootstrap;
 import com.netflix.nfsidecar.identity.IInstanceState;
 
@@ -28,6 +29,7 @@ public class InstanceState implements IInstanceState {
     private final AtomicBoolean isStorageProxyAlive = new AtomicBoolean(false);
     private final AtomicBoolean isStorageProxyProcessAlive = new AtomicBoolean(false);
     private final AtomicBoolean isStorageAlive = new AtomicBoolean(false);
+    private final AtomicBoolean isStorageProcessAlive = new AtomicBoolean(false);
     
     private Bootstrap bootstrapStatus;
     
@@ -42,6 +44,8 @@ public class InstanceState implements IInstanceState {
     // State of whether the rest endpoints /admin/stop or /admin/start are invoked
     // If its true then ProcessMonitorTask will suspend its process monitoring tasks.
     private final AtomicBoolean isProcessMonitoringSuspended = new AtomicBoolean(false);
+    // How well the node serves, computed by the HealthScorer
+    private volatile HealthScore healthScore = HealthScore.UNKNOWN;
 
     @Override
     public String toString() {
@@ -53,7 +57,9 @@ public class InstanceState implements IInstanceState {
                 ", isStorageProxyAlive=" + isStorageProxyAlive +
                 ", isStorageProxyProcessAlive=" + isStorageProxyProcessAlive +
                 ", isStorageAlive=" + isStorageAlive +
+                ", isStorageProcessAlive=" + isStorageProcessAlive +
                 ", isHealthy=" + isHealthy +
+                ", healthScore=" + healthScore.getScore() +
                 ", isProcessMonitoringSuspended=" + isProcessMonitoringSuspended +
                 '}';
     }
@@ -216,6 +222,19 @@ public class InstanceState implements IInstanceState {
         return isStorageAlive() ? 1 : 0;
     }
 
+    public boolean isStorageProcessAlive() {
+        return isStorageProcessAlive.get();
+    }
+
+    public void setStorageProcessAlive(boolean isStorageProcessAlive) {
+        this.isStorageProcessAlive.set(isStorageProcessAlive);
+    }
+
+    //@Monitor(name="storageProcessAlive", type=DataSourceType.GAUGE)
+    public int metricIsStorageProcessAlive() {
+        return isStorageProcessAlive() ? 1 : 0;
+    }
+
     public boolean isHealthy() {
         return isHealthy.get();
     }
@@ -229,6 +248,14 @@ public class InstanceState implements IInstanceState {
         return isHealthy() ? 1 : 0;
     }
 
+    public HealthScore getHealthScore() {
+        return healthScore;
+    }
+
+    public void setHealthScore(HealthScore healthScore) {
+        this.healthScore = healthScore;
+    }
+
     public boolean getIsProcessMonitoringSuspended() {
         return isProcessMonitoringSuspended.get();
     }
@@ -0,0 +1,85 @@
+package com.netflix.dynomitemanager.dynomite;
+
+/**
+ * Decides when Dynomite has flushed the writes it delayed while the storage
+ * was warming up, from samples of its queue backlog.
+ *
+ * The backlog is drained once it stayed at or below the threshold for a
+ * number of samples in a row. A sample that could not be read counts as not
+ * drained.
+ */
+public class BacklogDrain {
+
+    private final long start;
+    private final long deadline;
+    private final long threshold;
+    private final int quietSamples;
+
+    private long backlog = -1;
+    private long peak;
+    private int quiet;
+    private int samples;
+
+    /**
+     * @param start
+     *            when Dynomite started to resume
+     * @param timeoutMs
+     *            time after which to stop waiting for the backlog
+     * @param threshold
+     *            number of queued requests that counts as drained
+     * @param quietSamples
+     *            number of drained samples in a row
+     */
+    public BacklogDrain(long start, long timeoutMs, long threshold, int quietSamples) {
+        this.start = start;
+        this.deadline = start + timeoutMs;
+        this.threshold = threshold;
+        this.quietSamples = Math.max(1, quietSamples);
+    }
+
+    /**
+     * Record a sample of the backlog.
+     *
+     * @param backlog
+     *            the queued requests, -1 if it could not be read
+     * @return true if the backlog is drained
+     */
+    public boolean update(long backlog) {
+        this.backlog = backlog;
+        samples++;
+        peak = Math.max(peak, backlog);
+        if (backlog >= 0 && backlog <= threshold) {
+            quiet++;
+        } else {
+            quiet = 0;
+        }
+        return isDrained();
+    }
+
+    public boolean isDrained() {
+        return quiet >= quietSamples;
+    }
+
+    public boolean isExpired(long now) {
+        return now >= deadline;
+    }
+
+    public long getElapsedMs(long now) {
+        return now - start;
+    }
+
+    /**
+     * @return the latest sample, -1 if there was none or it could not be read
+     */
+    public long getBacklog() {
+        return backlog;
+    }
+
+    public long getPeak() {
+        return peak;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+}
@@ -0,0 +1,174 @@
+package com.netflix.dynomitemanager.dynomite;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.config.FloridaConfig;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.BasicGauge;
+import com.netflix.servo.monitor.BasicTimer;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Shared HTTP client for Dynomite's admin/stats port.
+ *
+ * All calls go through one pooled, keep-alive connection manager, so the
+ * periodic stats poll and the admin commands (state changes, consistency
+ * updates) do not pay a TCP handshake per call or leave sockets in TIME_WAIT.
+ *
+ * The client publishes the following metrics:
+ *
+ * dynomite__admin__in_flight - requests currently executing
+ *
+ * dynomite__admin__latency - request latency, including reading the body
+ *
+ * dynomite__admin__requests / dynomite__admin__errors
+ *
+ * dynomite__admin__connections_reused / dynomite__admin__connections_opened -
+ * whether a request was served on a pooled connection or had to connect
+ */
+@Singleton
+public class DynomiteAdminClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynomiteAdminClient.class);
+
+    /**
+     * Consumes the response of a request. The body stream is only valid for
+     * the duration of the call, the connection goes back to the pool
+     * afterwards.
+     */
+    public interface ResponseHandler<T> {
+        T handle(int statusCode, InputStream body) throws Exception;
+    }
+
+    private final HttpClient client;
+    private final MultiThreadedHttpConnectionManager connectionManager;
+
+    private final AtomicLong inFlight = new AtomicLong();
+    private final BasicTimer latency = new BasicTimer(MonitorConfig.builder("dynomite__admin__latency").build(),
+            TimeUnit.MILLISECONDS);
+    private final Counter requests = new BasicCounter(MonitorConfig.builder("dynomite__admin__requests").build());
+    private final Counter errors = new BasicCounter(MonitorConfig.builder("dynomite__admin__errors").build());
+    private final Counter connectionsReused = new BasicCounter(
+            MonitorConfig.builder("dynomite__admin__connections_reused").build());
+    private final Counter connectionsOpened = new BasicCounter(
+            MonitorConfig.builder("dynomite__admin__connections_opened").build());
+
+    @Inject
+    public DynomiteAdminClient(FloridaConfig config) {
+        connectionManager = new ReuseTrackingConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setConnectionTimeout(config.getDynomiteAdminConnectTimeout());
+        params.setSoTimeout(config.getDynomiteAdminSocketTimeout());
+        params.setDefaultMaxConnectionsPerHost(config.getDynomiteAdminMaxConnections());
+        params.setMaxTotalConnections(config.getDynomiteAdminMaxConnections());
+        // Dynomite may close an idle keep-alive connection at any time
+        params.setStaleCheckingEnabled(true);
+
+        client = new HttpClient(connectionManager);
+
+        DefaultMonitorRegistry.getInstance().register(new BasicGauge<Long>(
+                MonitorConfig.builder("dynomite__admin__in_flight").build(), new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        return inFlight.get();
+                    }
+                }));
+        DefaultMonitorRegistry.getInstance().register(latency);
+        DefaultMonitorRegistry.getInstance().register(requests);
+        DefaultMonitorRegistry.getInstance().register(errors);
+        DefaultMonitorRegistry.getInstance().register(connectionsReused);
+        DefaultMonitorRegistry.getInstance().register(connectionsOpened);
+    }
+
+    /**
+     * Issue a GET and hand the response to the handler. The connection is
+     * returned to the pool once the handler is done.
+     *
+     * @param url
+     * @param handler
+     * @return whatever the handler returns
+     * @throws Exception
+     *             if the request fails or the handler throws
+     */
+    public <T> T get(String url, ResponseHandler<T> handler) throws Exception {
+        GetMethod get = new GetMethod(url);
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        requests.increment();
+        try {
+            int statusCode = client.executeMethod(get);
+            return handler.handle(statusCode, get.getResponseBodyAsStream());
+        } catch (Exception e) {
+            errors.increment();
+            // do not hand a connection in an unknown state back to the pool
+            get.abort();
+            throw e;
+        } finally {
+            get.releaseConnection();
+            inFlight.decrementAndGet();
+            latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Issue a GET and return the response body if the status is 200.
+     *
+     * @param url
+     * @return the response body, or null if Dynomite answered with a non 200
+     *         status
+     * @throws Exception
+     */
+    public String get(String url) throws Exception {
+        return get(url, new ResponseHandler<String>() {
+            @Override
+            public String handle(int statusCode, InputStream body) throws IOException {
+                if (statusCode != 200) {
+                    logger.error("Got non 200 status code " + statusCode + " from " + url);
+                    return null;
+                }
+                if (body == null) {
+                    return "";
+                }
+                return IOUtils.toString(body, "UTF-8");
+            }
+        });
+    }
+
+    /**
+     * Counts whether the pool hands out an open (reused) connection or one
+     * that still has to connect.
+     */
+    private class ReuseTrackingConnectionManager extends MultiThreadedHttpConnectionManager {
+
+        @Override
+        public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+                throws ConnectionPoolTimeoutException {
+            HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+            if (connection.isOpen()) {
+                connectionsReused.increment();
+            } else {
+                connectionsOpened.increment();
+            }
+            return connection;
+        }
+    }
+}
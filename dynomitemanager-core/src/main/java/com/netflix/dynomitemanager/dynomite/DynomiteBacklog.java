@@ -0,0 +1,90 @@
+package com.netflix.dynomitemanager.dynomite;
+
+import java.io.InputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.config.DynamicStringProperty;
+import com.netflix.dynomitemanager.monitoring.DynomiteInfoParser;
+
+/**
+ * Reads how many requests Dynomite has queued towards the storage and its
+ * peers, the sum of the in_queue and out_queue gauges of every server in its
+ * stats. While Dynomite is resuming these hold the writes it delayed during
+ * the warm up.
+ *
+ * Unlike the _99 percentiles at the top level of the stats, which cover a
+ * histogram window, these are the queue lengths at the time of the request.
+ */
+@Singleton
+public class DynomiteBacklog {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynomiteBacklog.class);
+
+    private static final String IN_QUEUE = "in_queue";
+    private static final String OUT_QUEUE = "out_queue";
+
+    private final DynamicStringProperty serverMetricsUrl = DynamicPropertyFactory.getInstance()
+            .getStringProperty("florida.metrics.url", "http://localhost:22222/info");
+
+    private final DynomiteAdminClient adminClient;
+    private final DynomiteInfoParser infoParser = new DynomiteInfoParser();
+    private long backlog;
+
+    private final DynomiteInfoParser.Handler queueHandler = new DynomiteInfoParser.Handler() {
+        @Override
+        public void onServiceMetric(DynomiteInfoParser.MetricName name, long value) {
+        }
+
+        @Override
+        public void onStatsMetric(DynomiteInfoParser.MetricName name, long value) {
+            String key = name.getKey();
+            if (IN_QUEUE.equals(key) || OUT_QUEUE.equals(key)) {
+                backlog += value;
+            }
+        }
+    };
+
+    private final DynomiteAdminClient.ResponseHandler<Long> responseHandler = new DynomiteAdminClient.ResponseHandler<Long>() {
+        @Override
+        public Long handle(int statusCode, InputStream body) throws Exception {
+            if (statusCode != 200 || body == null) {
+                logger.warn("Got status code " + statusCode + " from " + serverMetricsUrl.get());
+                return -1L;
+            }
+            return count(body);
+        }
+    };
+
+    @Inject
+    public DynomiteBacklog(DynomiteAdminClient adminClient) {
+        this.adminClient = adminClient;
+    }
+
+    /**
+     * @return the number of queued requests, -1 if the stats cannot be read
+     */
+    public synchronized long read() {
+        try {
+            Long result = adminClient.get(serverMetricsUrl.get(), responseHandler);
+            return result == null ? -1 : result;
+        } catch (Exception e) {
+            logger.warn("Cannot read the backlog of Dynomite from " + serverMetricsUrl.get() + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * @return the number of queued requests in a stats payload, -1 if it has
+     *         no dyn_o_mite stats
+     */
+    public synchronized long count(InputStream body) throws Exception {
+        backlog = 0;
+        infoParser.parse(body, queueHandler);
+        return infoParser.statsFound() ? backlog : -1;
+    }
+}
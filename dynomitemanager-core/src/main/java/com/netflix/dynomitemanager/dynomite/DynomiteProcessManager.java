@@ -4,8 +4,13 @@ import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.netflix.dynomitemanager.config.FloridaConfig;
-import com.netflix.dynomitemanager.storage.JedisUtils;
-import com.netflix.nfsidecar.identity.IInstanceState;
+import com.netflix.dynomitemanager.config.InstanceState;
+import com.netflix.dynomitemanager.monitoring.HealthScore;
+import com.netflix.dynomitemanager.monitoring.HealthProber;
+import com.netflix.dynomitemanager.monitoring.ProcessLocator;
+import com.netflix.dynomitemanager.monitoring.StartupTimings;
+import com.netflix.dynomitemanager.monitoring.StartupTimings.Phase;
+import com.netflix.dynomitemanager.storage.ReadinessProbe;
 import com.netflix.nfsidecar.scheduler.SimpleTimer;
 import com.netflix.nfsidecar.scheduler.Task;
 import com.netflix.nfsidecar.scheduler.TaskTimer;
@@ -19,10 +24,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.LinkedList;
 import java.util.List;
@@ -34,20 +37,28 @@ public class DynomiteProcessManager extends Task implements IDynomiteProcess, He
     private static final Logger logger = LoggerFactory.getLogger(DynomiteProcessManager.class);
     private static final String SUDO_STRING = "/usr/bin/sudo";
     public static final String JOB_TASK_NAME = "DYNOMITE HEALTH TRACKER";
-    private static final int SCRIPT_EXECUTE_WAIT_TIME_MS = 5000;
     private final FloridaConfig config;
     private final Sleeper sleeper;
-    private final IInstanceState instanceState;
+    private final InstanceState instanceState;
     private final IDynomiteProcess dynProcess;
+    private final StartupTimings startupTimings;
+    private final HealthProber healthProber;
+    private final ProcessLocator locator;
     private boolean dynomiteHealth = false;
+    private volatile long stopCount;
 
     @Inject
-    public DynomiteProcessManager(FloridaConfig config, Sleeper sleeper, IInstanceState instanceState,
-            IDynomiteProcess dynProcess) {
+    public DynomiteProcessManager(FloridaConfig config, Sleeper sleeper, InstanceState instanceState,
+            IDynomiteProcess dynProcess, StartupTimings startupTimings,
+            HealthProber healthProber) {
         this.config = config;
         this.sleeper = sleeper;
         this.instanceState = instanceState;
         this.dynProcess = dynProcess;
+        this.startupTimings = startupTimings;
+        this.healthProber = healthProber;
+        this.locator = ProcessLocator.isSupported()
+                ? new ProcessLocator(String.format("/apps/%1$s/bin/%1$s", config.getDynomiteProcessName())) : null;
     }
 
     public static TaskTimer getTimer() {
@@ -61,8 +72,7 @@ public class DynomiteProcessManager extends Task implements IDynomiteProcess, He
 
     @Override
     public void execute() throws Exception {
-        dynomiteHealth = dynomiteProcessCheck()
-                && JedisUtils.isAliveWithRetry(config.getDynomiteLocalAddress(), config.getDynomiteClientPort());
+        dynomiteHealth = dynomiteProcessCheck() && healthProber.getDynomite().isAliveWithRetry();
     }
 
     public void start() throws IOException {
@@ -80,19 +90,33 @@ public class DynomiteProcessManager extends Task implements IDynomiteProcess, He
 
         startDynomite.directory(new File("/"));
         startDynomite.redirectErrorStream(true);
+        long start = System.currentTimeMillis();
+        long deadline = start + config.getProcessStartTimeout();
         Process starter = startDynomite.start();
 
         try {
-            sleeper.sleepQuietly(SCRIPT_EXECUTE_WAIT_TIME_MS);
+            if (!ReadinessProbe.waitForExit(starter, deadline, "Dynomite start script")) {
+                logger.error("Dynomite start script did not exit within {} ms", config.getProcessStartTimeout());
+                return;
+            }
+            startupTimings.record(Phase.DYNOMITE_SCRIPT, start);
             int code = starter.exitValue();
             if (code == 0) {
                 logger.info("Dynomite server has been started");
-                instanceState.setStorageProxyAlive(true);
+                // the script returns once Dynomite is daemonized, it answers
+                // when it is listening
+                if (ReadinessProbe.waitForPing(config.getDynomiteLocalAddress(), config.getDynomiteClientPort(),
+                        deadline)) {
+                    startupTimings.record(Phase.DYNOMITE_READY, start);
+                    instanceState.setStorageProxyAlive(true);
+                } else {
+                    // left to the process monitor and the health prober
+                    logger.warn("Dynomite does not answer PING {} ms after its start",
+                            config.getProcessStartTimeout());
+                }
             } else {
                 logger.error("Unable to start Dynomite server. Error code: {}", code);
             }
-
-            logProcessOutput(starter);
         } catch (Exception e) {
             logger.warn("Starting Dynomite has an error", e);
         }
@@ -107,28 +131,10 @@ public class DynomiteProcessManager extends Task implements IDynomiteProcess, He
         return startCmd;
     }
 
-    void logProcessOutput(Process p) {
-        try {
-            final String stdOut = readProcessStream(p.getInputStream());
-            final String stdErr = readProcessStream(p.getErrorStream());
-            logger.info("std_out: {}", stdOut);
-            logger.info("std_err: {}", stdErr);
-        } catch (IOException ioe) {
-            logger.warn("Failed to read the std out/err streams", ioe);
-        }
-    }
-
-    String readProcessStream(InputStream inputStream) throws IOException {
-        final byte[] buffer = new byte[512];
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream(buffer.length);
-        int cnt;
-        while ((cnt = inputStream.read(buffer)) != -1)
-            baos.write(buffer, 0, cnt);
-        return baos.toString();
-    }
-
     public void stop() throws IOException {
         logger.info("Stopping Dynomite server ....");
+        // tells the DynomiteSupervisor not to restart it
+        stopCount++;
         List<String> command = Lists.newArrayList();
         if (!"root".equals(System.getProperty("user.name"))) {
             command.add(SUDO_STRING);
@@ -142,18 +148,27 @@ public class DynomiteProcessManager extends Task implements IDynomiteProcess, He
         ProcessBuilder stopDyno = new ProcessBuilder(command);
         stopDyno.directory(new File("/"));
         stopDyno.redirectErrorStream(true);
+        long start = System.currentTimeMillis();
+        long deadline = start + config.getProcessStopTimeout();
         Process stopper = stopDyno.start();
 
-        sleeper.sleepQuietly(SCRIPT_EXECUTE_WAIT_TIME_MS);
+        if (!ReadinessProbe.waitForExit(stopper, deadline, "Dynomite stop script")) {
+            logger.error("Dynomite stop script did not exit within {} ms", config.getProcessStopTimeout());
+            return;
+        }
         try {
             int code = stopper.exitValue();
             if (code == 0) {
+                if (locator != null && !ReadinessProbe.waitForGone(locator, deadline)) {
+                    logger.warn("Dynomite is still running {} ms after its stop", config.getProcessStopTimeout());
+                } else {
+                    startupTimings.record(Phase.DYNOMITE_STOP, start);
+                }
                 logger.info("Dynomite server has been stopped");
                 instanceState.setStorageProxyAlive(false);
             } else {
                 logger.error("Unable to stop Dynomite server with script " + config.getDynomiteStopScript()
                         + " Error code: {}", code);
-                logProcessOutput(stopper);
             }
         } catch (Exception e) {
             logger.warn("couldn't shut down Dynomite correctly", e);
@@ -224,7 +239,32 @@ public class DynomiteProcessManager extends Task implements IDynomiteProcess, He
         return true;
     }
 
+    /**
+     * @return the number of times Dynomite was stopped on purpose
+     */
+    public long getStopCount() {
+        return stopCount;
+    }
+
+    /**
+     * @return the locator of the Dynomite process, null if there is no /proc
+     */
+    public ProcessLocator getProcessLocator() {
+        return locator;
+    }
+
+    /**
+     * @return true if the Dynomite process is running. The process is looked
+     *         up in /proc, ps is only used where there is no /proc.
+     */
     public boolean dynomiteProcessCheck() {
+        if (locator != null) {
+            return locator.isAlive();
+        }
+        return psProcessCheck();
+    }
+
+    private boolean psProcessCheck() {
         Process process = null;
         try {
             String cmd = String.format("ps -ef | grep  '[/]apps/%1$s/bin/%1$s'", config.getDynomiteProcessName());
@@ -253,7 +293,14 @@ public class DynomiteProcessManager extends Task implements IDynomiteProcess, He
 
     public void check(HealthIndicatorCallback healthCallback) {
         if (dynomiteHealth) {
-            healthCallback.inform(Health.healthy().withDetail("Dynomite", "All good!").build());
+            // a degraded Dynomite still serves, the score lets clients
+            // prefer other nodes
+            HealthScore score = instanceState.getHealthScore();
+            healthCallback.inform(Health.healthy()
+                    .withDetail("Dynomite", score.isDegraded() ? "Degraded" : "All good!")
+                    .withDetail("score", score.getScore())
+                    .withDetail("pingRttP99Micros", score.getRttP99Micros())
+                    .withDetail("queueDepth", score.getQueueDepth()).build());
         } else {
             logger.info("Reporting Dynomite is down to Health check callback");
             healthCallback.inform(Health.unhealthy().withDetail("Dynomite", "Down!").build());
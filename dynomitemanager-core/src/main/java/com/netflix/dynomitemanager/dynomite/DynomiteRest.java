@@ -1,40 +1,41 @@
 package com.netflix.dynomitemanager.dynomite;
 
-import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.methods.GetMethod;
-import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import com.netflix.config.DynamicPropertyFactory;
 import com.netflix.config.DynamicStringProperty;
 
+/**
+ * Sends admin commands to Dynomite's REST port, e.g. state changes or
+ * consistency updates. Requests go through the pooled
+ * {@link DynomiteAdminClient}.
+ */
+@Singleton
 public class DynomiteRest {
     
     private static final Logger logger = LoggerFactory.getLogger(DynomiteRest.class);
 
+    private final DynamicStringProperty adminUrl = 
+            DynamicPropertyFactory.getInstance().getStringProperty("florida.metrics.url", "http://localhost:22222");
+
+    private final DynomiteAdminClient adminClient;
+
+    @Inject
+    public DynomiteRest(DynomiteAdminClient adminClient) {
+        this.adminClient = adminClient;
+    }
     
-    public static boolean sendCommand(String cmd) {
-    	DynamicStringProperty adminUrl = 
-                DynamicPropertyFactory.getInstance().getStringProperty("florida.metrics.url", "http://localhost:22222");
-    	
+    public boolean sendCommand(String cmd) {
         String url = adminUrl.get() + cmd;
-        HttpClient client = new HttpClient();
-        client.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, 
-                                        new DefaultHttpMethodRetryHandler());
-        
-        GetMethod get = new GetMethod(url);
         try {
-            int statusCode = client.executeMethod(get);
-            if (!(statusCode == 200)) {
-                logger.error("Got non 200 status code from " + url);
+            String response = adminClient.get(url);
+            if (response == null) {
                 return false;
             }
             
-            String response = get.getResponseBodyAsString();
-            //logger.info("Received response from " + url + "\n" + response);
-            
             if (!response.isEmpty()) {
                 logger.info("Received response from " + url + "\n" + response);
             } else {
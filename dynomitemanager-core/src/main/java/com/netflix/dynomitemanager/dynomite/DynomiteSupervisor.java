@@ -0,0 +1,195 @@
+package com.netflix.dynomitemanager.dynomite;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.config.FloridaConfig;
+import com.netflix.dynomitemanager.config.InstanceState;
+import com.netflix.dynomitemanager.monitoring.ProcessLocator;
+import com.netflix.dynomitemanager.monitoring.ProcessMonitorTask;
+import com.netflix.nfsidecar.scheduler.TaskScheduler;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.LongGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Has Dynomite restarted as soon as it exits, by running the
+ * {@link ProcessMonitorTask} right away instead of waiting for its next run.
+ * The task stays the only one that starts and stops processes; its runs do
+ * not overlap, so a restart here cannot race one of a hung Dynomite.
+ *
+ * The launch script daemonizes Dynomite, so Florida does not hold its process
+ * handle and cannot wait for it. Instead a dedicated thread checks the process
+ * through its open /proc/[pid]/stat every 100 ms by default, which costs a few
+ * microseconds per check and does not fork.
+ *
+ * The supervisor is armed once it sees Dynomite running, and is disarmed by
+ * every {@link DynomiteProcessManager#stop()}, so a Dynomite stopped on
+ * purpose, e.g. for a warm bootstrap, is left alone. No restarts happen while
+ * process monitoring is suspended, or while the node bootstraps or restores.
+ * Restarts are spaced by a {@link RestartPolicy}.
+ *
+ * The supervisor does nothing where there is no /proc.
+ */
+@Singleton
+public class DynomiteSupervisor implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynomiteSupervisor.class);
+
+    // how often a disarmed supervisor looks for a started Dynomite
+    private static final long DISARMED_POLL_MS = 1000;
+
+    private final FloridaConfig config;
+    private final InstanceState instanceState;
+    private final DynomiteProcessManager dynProcess;
+    private final TaskScheduler scheduler;
+    private final RestartPolicy policy;
+
+    private final BasicCounter restarts;
+    private final LongGauge crashLoop;
+    private final LongGauge lastDowntime;
+
+    private volatile Thread thread;
+    private volatile boolean armed;
+    private volatile boolean restartRequested;
+    private long stopCount;
+    private long downSince;
+
+    @Inject
+    public DynomiteSupervisor(FloridaConfig config, InstanceState instanceState, DynomiteProcessManager dynProcess,
+            TaskScheduler scheduler) {
+        this.config = config;
+        this.instanceState = instanceState;
+        this.dynProcess = dynProcess;
+        this.scheduler = scheduler;
+        this.policy = new RestartPolicy(config.getDynomiteRestartMinBackoff(), config.getDynomiteRestartMaxBackoff(),
+                config.getDynomiteCrashLoopRestarts(), config.getDynomiteCrashLoopWindow());
+
+        restarts = new BasicCounter(MonitorConfig.builder("dynomite__supervisor__restarts").build());
+        crashLoop = new LongGauge(MonitorConfig.builder("dynomite__supervisor__crash_loop").build());
+        lastDowntime = new LongGauge(MonitorConfig.builder("dynomite__supervisor__last_downtime_ms").build());
+        DefaultMonitorRegistry.getInstance().register(restarts);
+        DefaultMonitorRegistry.getInstance().register(crashLoop);
+        DefaultMonitorRegistry.getInstance().register(lastDowntime);
+    }
+
+    /**
+     * Start watching Dynomite on a daemon thread.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        if (dynProcess.getProcessLocator() == null) {
+            logger.warn("No /proc, Dynomite is not supervised");
+            return;
+        }
+        stopCount = dynProcess.getStopCount();
+        thread = new Thread(this, "dynomite-supervisor");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Supervising Dynomite");
+    }
+
+    public synchronized void shutdown() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * @return true if Dynomite is restarted by the supervisor when it exits
+     */
+    public boolean isArmed() {
+        return thread != null && armed;
+    }
+
+    /**
+     * Called by the {@link ProcessMonitorTask} on each run.
+     *
+     * @return true if the supervisor asked for a restart of Dynomite since
+     *         the last call
+     */
+    public boolean takeRestart() {
+        boolean requested = restartRequested;
+        restartRequested = false;
+        return requested;
+    }
+
+    @Override
+    public void run() {
+        ProcessLocator locator = dynProcess.getProcessLocator();
+        while (thread == Thread.currentThread()) {
+            try {
+                check(locator.isAlive(), System.currentTimeMillis());
+                Thread.sleep(armed ? config.getDynomiteSupervisionPollInterval() : DISARMED_POLL_MS);
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                logger.error("Supervising Dynomite failed", e);
+            }
+        }
+    }
+
+    private void check(boolean alive, long now) {
+        long stops = dynProcess.getStopCount();
+        if (stops != stopCount) {
+            stopCount = stops;
+            if (armed) {
+                logger.info("Dynomite was stopped, no longer restarting it");
+            }
+            armed = false;
+            downSince = 0;
+        }
+
+        if (alive) {
+            if (!armed) {
+                logger.info("Dynomite is running, restarting it when it exits");
+            } else if (downSince > 0) {
+                lastDowntime.getNumber().set(now - downSince);
+                logger.info("Dynomite is back after " + (now - downSince) + " ms");
+            }
+            armed = true;
+            downSince = 0;
+            policy.onRunning(now);
+            crashLoop.getNumber().set(policy.isCrashLoop() ? 1 : 0);
+            return;
+        }
+
+        if (!armed) {
+            return;
+        }
+        if (downSince == 0) {
+            downSince = now;
+            logger.error("Dynomite exited");
+        }
+        if (instanceState.getIsProcessMonitoringSuspended() || instanceState.isBootstrapping()
+                || instanceState.isRestoring()) {
+            return;
+        }
+        if (!policy.mayRestart(now)) {
+            return;
+        }
+
+        policy.onRestart(now);
+        restarts.increment();
+        if (policy.isCrashLoop()) {
+            crashLoop.getNumber().set(1);
+            logger.error("Dynomite is crash looping, " + policy.getConsecutiveRestarts()
+                    + " restarts, next restart in " + policy.delay() + " ms at the earliest");
+        } else {
+            logger.warn("Restarting Dynomite, restart " + policy.getConsecutiveRestarts() + ", down for "
+                    + (now - downSince) + " ms");
+        }
+        restartRequested = true;
+        try {
+            scheduler.runTaskNow(ProcessMonitorTask.class);
+        } catch (Exception e) {
+            logger.error("Restarting Dynomite failed", e);
+        }
+    }
+}
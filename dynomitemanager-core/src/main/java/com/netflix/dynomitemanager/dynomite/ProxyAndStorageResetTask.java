@@ -24,11 +24,13 @@ public class ProxyAndStorageResetTask extends Task {
     private final StorageProxy storageProxy;
     private final Sleeper sleeper;
     private final FloridaConfig config;
+    private final DynomiteRest dynomiteRest;
 
     @Inject
     public ProxyAndStorageResetTask(FloridaConfig config, IDynomiteProcess dynProcess, StorageProxy storageProxy,
-            Sleeper sleeper) {
+            Sleeper sleeper, DynomiteRest dynomiteRest) {
         this.config = config;
+        this.dynomiteRest = dynomiteRest;
         this.storageProxy = storageProxy;
         this.dynProcess = dynProcess;
         this.sleeper = sleeper;
@@ -47,10 +49,10 @@ public class ProxyAndStorageResetTask extends Task {
 
     private void setConsistency() {
         logger.info("Setting the consistency level for the cluster");
-        if (!DynomiteRest.sendCommand("/set_consistency/read/" + config.getDynomiteReadConsistency()))
+        if (!dynomiteRest.sendCommand("/set_consistency/read/" + config.getDynomiteReadConsistency()))
             logger.error("REST call to Dynomite for read consistency failed --> using the default");
 
-        if (!DynomiteRest.sendCommand("/set_consistency/write/" + config.getDynomiteWriteConsistency()))
+        if (!dynomiteRest.sendCommand("/set_consistency/write/" + config.getDynomiteWriteConsistency()))
             logger.error("REST call to Dynomite for write consistency failed --> using the default");
     }
 
@@ -0,0 +1,109 @@
+package com.netflix.dynomitemanager.dynomite;
+
+/**
+ * Decides when a process that exited may be restarted.
+ *
+ * The first restart after a stable run is immediate. Every further restart
+ * doubles the delay, starting at the minimum backoff and capped at the
+ * maximum. A process that was restarted more than the crash loop limit within
+ * the crash loop window is crash looping, and is only restarted at the maximum
+ * backoff until it stays up for a whole window again.
+ *
+ * Not thread safe.
+ */
+public class RestartPolicy {
+
+    private final long minBackoffMs;
+    private final long maxBackoffMs;
+    private final int crashLoopRestarts;
+    private final long crashLoopWindowMs;
+
+    // start times of the recent restarts, a ring of crashLoopRestarts entries
+    private final long[] restarts;
+    private int count;
+    private int next;
+    private long lastRestart;
+    private int consecutive;
+
+    public RestartPolicy(long minBackoffMs, long maxBackoffMs, int crashLoopRestarts, long crashLoopWindowMs) {
+        this.minBackoffMs = minBackoffMs;
+        this.maxBackoffMs = Math.max(minBackoffMs, maxBackoffMs);
+        this.crashLoopRestarts = Math.max(1, crashLoopRestarts);
+        this.crashLoopWindowMs = crashLoopWindowMs;
+        this.restarts = new long[this.crashLoopRestarts];
+    }
+
+    /**
+     * @return how long to wait after the last restart before restarting again,
+     *         in ms
+     */
+    public long delay() {
+        if (consecutive == 0) {
+            return 0;
+        }
+        if (isCrashLoop()) {
+            return maxBackoffMs;
+        }
+        long delay = minBackoffMs;
+        for (int i = 1; i < consecutive && delay < maxBackoffMs; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, maxBackoffMs);
+    }
+
+    /**
+     * @return true if the process may be restarted now
+     */
+    public boolean mayRestart(long now) {
+        return now - lastRestart >= delay();
+    }
+
+    /**
+     * @return the time at which the process may be restarted
+     */
+    public long nextRestart() {
+        return lastRestart + delay();
+    }
+
+    /**
+     * Record a restart.
+     */
+    public void onRestart(long now) {
+        restarts[next] = now;
+        next = (next + 1) % restarts.length;
+        count = Math.min(count + 1, restarts.length);
+        lastRestart = now;
+        consecutive++;
+    }
+
+    /**
+     * Record that the process is running. A process that has been running for
+     * a whole crash loop window since its last restart is stable, and its next
+     * restart is immediate again.
+     */
+    public void onRunning(long now) {
+        if (consecutive > 0 && now - lastRestart >= crashLoopWindowMs) {
+            consecutive = 0;
+            count = 0;
+        }
+    }
+
+    /**
+     * @return true if the process was restarted crash loop limit times within
+     *         the crash loop window
+     */
+    public boolean isCrashLoop() {
+        if (count < restarts.length) {
+            return false;
+        }
+        // the oldest restart in the ring is the next to be overwritten
+        return lastRestart - restarts[next] < crashLoopWindowMs;
+    }
+
+    /**
+     * @return the number of restarts since the process was last stable
+     */
+    public int getConsecutiveRestarts() {
+        return consecutive;
+    }
+}
@@ -0,0 +1,68 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.aws.MultipartUploader;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.LongGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Throughput of the backup uploads by {@link MultipartUploader}, as gauges
+ * named florida__backup__[name]:
+ *
+ * part_bytes_per_sec, part_ms - the throughput and time of the last part
+ *
+ * parts_uploaded, part_attempts - the parts of the current upload, and the
+ * attempts they took
+ *
+ * upload_bytes_per_sec, upload_ms - the throughput and time of the last
+ * complete upload
+ */
+@Singleton
+public class BackupUploadProgress implements MultipartUploader.PartListener {
+
+    private final LongGauge partRate = register("part_bytes_per_sec");
+    private final LongGauge partTime = register("part_ms");
+    private final LongGauge parts = register("parts_uploaded");
+    private final LongGauge attempts = register("part_attempts");
+    private final LongGauge uploadRate = register("upload_bytes_per_sec");
+    private final LongGauge uploadTime = register("upload_ms");
+
+    /**
+     * Reset the part counts for a new upload.
+     */
+    public synchronized void start() {
+        parts.getNumber().set(0);
+        attempts.getNumber().set(0);
+    }
+
+    @Override
+    public synchronized void onPart(int partNumber, long bytes, long elapsedMs, int attempts) {
+        partRate.getNumber().set(bytes * 1000 / Math.max(1, elapsedMs));
+        partTime.getNumber().set(elapsedMs);
+        parts.getNumber().incrementAndGet();
+        this.attempts.getNumber().addAndGet(attempts);
+    }
+
+    /**
+     * Record a complete upload.
+     */
+    public synchronized void finish(long bytes, long elapsedMs) {
+        uploadRate.getNumber().set(bytes * 1000 / Math.max(1, elapsedMs));
+        uploadTime.getNumber().set(elapsedMs);
+    }
+
+    public long getPartsUploaded() {
+        return parts.getNumber().get();
+    }
+
+    public long getPartAttempts() {
+        return attempts.getNumber().get();
+    }
+
+    private static LongGauge register(String name) {
+        LongGauge gauge = new LongGauge(MonitorConfig.builder("florida__backup__" + name).build());
+        DefaultMonitorRegistry.getInstance().register(gauge);
+        return gauge;
+    }
+}
@@ -0,0 +1,69 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Detects restarts of a monitored process from its uptime, so that the
+ * counters it reports can be kept monotonic.
+ *
+ * A process that restarts reports its counters from 0 again. Comparing a new
+ * value with the previous one only catches that if the counter has not grown
+ * back beyond its old value yet, the uptime going backwards always does. When
+ * a reset is seen, the whole new value of a counter is its increment since the
+ * previous sample.
+ *
+ * The number of resets seen is published as a counter.
+ */
+public class CounterResetDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(CounterResetDetector.class);
+
+    private final String name;
+    private final Counter resets;
+    private long lastUptime = -1;
+
+    /**
+     * @param name
+     *            name of the counter of resets, e.g. dynomite__counter_resets
+     */
+    public CounterResetDetector(String name) {
+        this.name = name;
+        this.resets = new BasicCounter(MonitorConfig.builder(name).build());
+        DefaultMonitorRegistry.getInstance().register(resets);
+    }
+
+    /**
+     * Record the uptime of a new sample.
+     *
+     * @return true if the uptime went backwards, i.e. the counters of this
+     *         sample were reset
+     */
+    public boolean update(long uptime) {
+        boolean reset = lastUptime >= 0 && uptime < lastUptime;
+        if (reset) {
+            resets.increment();
+            logger.info(name + ": uptime went from " + lastUptime + " to " + uptime + ", counters were reset");
+        }
+        lastUptime = uptime;
+        return reset;
+    }
+
+    /**
+     * @return the increment of a counter from its last value to a new one.
+     *         After a reset this is the whole new value, which is never
+     *         negative. Otherwise it is the difference, so a value that went
+     *         down without a reset is followed.
+     */
+    public static long increment(long last, long val, boolean reset) {
+        if (reset) {
+            return Math.max(val, 0);
+        }
+        return val - last;
+    }
+}
@@ -0,0 +1,275 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.config.FloridaConfig;
+import com.netflix.dynomitemanager.config.InstanceState;
+import com.netflix.dynomitemanager.dynomite.RestartPolicy;
+import com.netflix.nfsidecar.identity.InstanceIdentity;
+import com.netflix.nfsidecar.scheduler.SimpleTimer;
+import com.netflix.nfsidecar.scheduler.Task;
+import com.netflix.nfsidecar.scheduler.TaskTimer;
+import com.netflix.nfsidecar.scheduler.TaskScheduler;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Detects a hung Dynomite: a process that is running, and may even answer
+ * PING, but does not serve requests.
+ *
+ * Once a second by default the canary writes a key of its own instance with
+ * SETEX through Dynomite's client port, reads it back with GET and times the
+ * pair. Dynomite may forward the key to another node of the rack, so a pair
+ * that fails or takes longer than the SLO is followed by a PING, which the
+ * local Dynomite answers itself. Only if the PING fails or is slow as well is
+ * it a breach of the local Dynomite; otherwise it is counted as a remote
+ * breach and does not lead to a restart. A value that reads back different
+ * from the one written is counted as a mismatch, not as a breach.
+ *
+ * After dyno.canary.breaches consecutive breaches Dynomite is hung,
+ * and the {@link ProcessMonitorTask}, which does all stops and starts, is run
+ * right away to restart it. Hang restarts are spaced by the same
+ * {@link RestartPolicy} settings as the supervisor's, so a Dynomite that
+ * stays hung is not restarted in a tight loop.
+ *
+ * No canaries are sent while the Dynomite process is down, while process
+ * monitoring is suspended, or while the node bootstraps, since Dynomite does
+ * not serve reads then.
+ *
+ * Latencies are published as dynomite__canary_latency_us__min, max, p50, p90
+ * and p99 on every tick of the {@link SamplingTask}, with the counters
+ * dynomite__canary_failures, _breaches, _remote_breaches, _mismatches and
+ * _hangs.
+ */
+@Singleton
+public class DynomiteCanary extends Task implements Sample.Listener {
+
+    private static final Logger logger = LoggerFactory.getLogger(DynomiteCanary.class);
+    public static final String TaskName = "Dynomite-Canary";
+
+    private static final String KEY_PREFIX = "florida_canary_";
+    private static final int TTL_SECONDS = 60;
+    private static final int WINDOW_CAPACITY = 256;
+
+    private final FloridaConfig config;
+    private final InstanceState state;
+    private final TaskScheduler scheduler;
+    private final MetricSnapshotRegistry snapshots;
+    private final InstanceIdentity identity;
+    private final MetricSnapshot.Builder snapshotBuilder = new MetricSnapshot.Builder();
+
+    private final SampleWindow latency = new SampleWindow(WINDOW_CAPACITY);
+    private final SampleWindow.Gauges latencyGauges = new SampleWindow.Gauges("dynomite__canary_latency_us");
+    private final long[] sorted = new long[WINDOW_CAPACITY];
+    private final BasicCounter failures = counter("dynomite__canary_failures");
+    private final BasicCounter breaches = counter("dynomite__canary_breaches");
+    private final BasicCounter remoteBreaches = counter("dynomite__canary_remote_breaches");
+    private final BasicCounter mismatches = counter("dynomite__canary_mismatches");
+    private final BasicCounter hangs = counter("dynomite__canary_hangs");
+
+    private final AtomicInteger consecutiveBreaches = new AtomicInteger();
+    private final RestartPolicy restartPolicy;
+    private volatile boolean hung;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private Jedis jedis;
+    private String key;
+    // values of an earlier run of Florida do not match the sequence
+    private final String run = Long.toString(System.currentTimeMillis(), 36);
+    private long sequence;
+
+    @Inject
+    public DynomiteCanary(FloridaConfig config, InstanceState state, TaskScheduler scheduler,
+            MetricSnapshotRegistry snapshots, InstanceIdentity identity) {
+        this.config = config;
+        this.state = state;
+        this.scheduler = scheduler;
+        this.snapshots = snapshots;
+        this.identity = identity;
+        this.restartPolicy = new RestartPolicy(config.getDynomiteRestartMinBackoff(),
+                config.getDynomiteRestartMaxBackoff(), config.getDynomiteCrashLoopRestarts(),
+                config.getDynomiteCrashLoopWindow());
+    }
+
+    public static TaskTimer getTimer(FloridaConfig config) {
+        return new SimpleTimer(TaskName, config.getDynomiteCanaryInterval());
+    }
+
+    @Override
+    public String getName() {
+        return TaskName;
+    }
+
+    @Override
+    public void execute() throws Exception {
+        if (!running.compareAndSet(false, true)) {
+            // the previous canary is still waiting, which its timeout counts
+            return;
+        }
+        try {
+            if (!state.isStorageProxyProcessAlive() || state.getIsProcessMonitoringSuspended()
+                    || state.isBootstrapping()) {
+                close();
+                consecutiveBreaches.set(0);
+                return;
+            }
+            long sloMicros = config.getDynomiteCanarySlo() * 1000L;
+            long micros = probe();
+            long now = System.currentTimeMillis();
+            if (micros >= 0) {
+                latency.record(micros);
+            }
+            if (micros >= 0 && micros <= sloMicros) {
+                consecutiveBreaches.set(0);
+                restartPolicy.onRunning(now);
+                return;
+            }
+            long pingMicros = ping();
+            if (pingMicros >= 0 && pingMicros <= sloMicros) {
+                // the local Dynomite answers, the key owner or the storage is
+                // slow
+                remoteBreaches.increment();
+                consecutiveBreaches.set(0);
+                logger.warn("Dynomite canary breached the SLO of " + config.getDynomiteCanarySlo()
+                        + " ms beyond the local Dynomite, which answered PING in " + pingMicros + " us");
+                return;
+            }
+            breaches.increment();
+            int breached = consecutiveBreaches.incrementAndGet();
+            logger.warn("Dynomite canary breached the SLO of " + config.getDynomiteCanarySlo() + " ms "
+                    + breached + " times in a row" + (micros >= 0 ? ", took " + micros + " us" : ""));
+            if (!hung && breached >= config.getDynomiteCanaryBreaches() && restartPolicy.mayRestart(now)) {
+                restartPolicy.onRestart(now);
+                hung = true;
+                hangs.increment();
+                logger.error("Dynomite is hung, running the process monitor to restart it");
+                scheduler.runTaskNow(ProcessMonitorTask.class);
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * SETEX and GET the canary key.
+     *
+     * @return the latency of the pair in microseconds, -1 if it failed
+     */
+    private long probe() {
+        String value = run + ":" + (++sequence);
+        try {
+            connect();
+            long start = System.nanoTime();
+            String status = jedis.setex(key, TTL_SECONDS, value);
+            String read = jedis.get(key);
+            long micros = (System.nanoTime() - start) / 1000;
+            if ("OK".equalsIgnoreCase(status)) {
+                if (!value.equals(read)) {
+                    // a lost or replaced write, not a hang of the local hop
+                    mismatches.increment();
+                    logger.warn("Dynomite canary wrote " + value + " but read " + read);
+                }
+                return micros;
+            }
+            logger.warn("Dynomite canary SETEX answered " + status);
+        } catch (Exception e) {
+            logger.warn("Dynomite canary failed: " + e.getMessage());
+            close();
+        }
+        failures.increment();
+        return -1;
+    }
+
+    /**
+     * PING the local Dynomite, which answers without forwarding.
+     *
+     * @return the latency in microseconds, -1 if it failed
+     */
+    private long ping() {
+        try {
+            connect();
+            long start = System.nanoTime();
+            jedis.ping();
+            return (System.nanoTime() - start) / 1000;
+        } catch (Exception e) {
+            logger.warn("Dynomite canary PING failed: " + e.getMessage());
+            close();
+            return -1;
+        }
+    }
+
+    private void connect() {
+        if (key == null) {
+            key = KEY_PREFIX + identity.getInstance().getInstanceId();
+        }
+        if (jedis == null) {
+            jedis = new Jedis(config.getDynomiteLocalAddress(), config.getDynomiteClientPort(),
+                    config.getDynomiteCanaryTimeout());
+            jedis.connect();
+        }
+    }
+
+    /**
+     * @return true if the canary breached the SLO often enough in a row for
+     *         Dynomite to be considered hung, and it is due for a restart
+     */
+    public boolean isHung() {
+        return hung;
+    }
+
+    /**
+     * Start counting breaches from scratch, after Dynomite was restarted.
+     */
+    public void reset() {
+        hung = false;
+        consecutiveBreaches.set(0);
+    }
+
+    /**
+     * @return the 99th percentile canary latency of the last published window
+     *         in microseconds
+     */
+    public long getLatencyP99Micros() {
+        return latencyGauges.getP99();
+    }
+
+    @Override
+    public void onSample(Sample sample) {
+        synchronized (snapshotBuilder) {
+            int n = latency.drain(sorted);
+            latencyGauges.update(sorted, n);
+            latencyGauges.addTo(snapshotBuilder);
+            snapshotBuilder.counter("dynomite__canary_failures", failures.getValue().longValue())
+                    .counter("dynomite__canary_breaches", breaches.getValue().longValue())
+                    .counter("dynomite__canary_remote_breaches", remoteBreaches.getValue().longValue())
+                    .counter("dynomite__canary_mismatches", mismatches.getValue().longValue())
+                    .counter("dynomite__canary_hangs", hangs.getValue().longValue());
+            snapshots.publish(MetricSnapshotRegistry.Source.CANARY, snapshotBuilder.build(sample.getTime()));
+        }
+    }
+
+    private void close() {
+        if (jedis != null) {
+            try {
+                jedis.disconnect();
+            } catch (Exception e) {
+                // ignore
+            }
+            jedis = null;
+        }
+    }
+
+    private static BasicCounter counter(String name) {
+        BasicCounter counter = new BasicCounter(MonitorConfig.builder(name).build());
+        DefaultMonitorRegistry.getInstance().register(counter);
+        return counter;
+    }
+}
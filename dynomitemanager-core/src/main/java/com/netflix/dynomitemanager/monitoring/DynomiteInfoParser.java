@@ -0,0 +1,573 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streaming parser for the json payload served on Dynomite's stats port.
+ *
+ * Instead of materializing the whole body as a String and a json-simple tree,
+ * this class walks the response stream token by token through a reusable
+ * buffer and reports every integer leaf to a {@link Handler}. Metric names are
+ * resolved against a tree of {@link MetricName}s that is built on the first
+ * tick and reused afterwards, so a steady state parse does not allocate any
+ * Strings. Keys are matched by their raw bytes.
+ *
+ * Only the parts of the payload that {@link ServoMetricsTask} publishes are
+ * reported:
+ *
+ * 1. Integer fields at the top level of the document, keyed under the value of
+ * the 'service' field. Dynomite always emits 'service' first; a payload that
+ * does not is rejected.
+ *
+ * 2. Integer fields anywhere below the 'dyn_o_mite' object, flattened in the
+ * same way as {@link ServoMetricsTask#processJsonResponse(String)} does, e.g.
+ * {"dyn_o_mite": {"127.0.0.1": {"requests": 1}}} is reported as
+ * dynomite__127.0.0.1__requests.
+ *
+ * Strings, booleans, arrays and non integer numbers are skipped.
+ *
+ * This class is not thread safe. It is meant to be owned by a single task.
+ */
+public class DynomiteInfoParser {
+
+    private static final String SERVICE = "service";
+    private static final String STATS = "dyn_o_mite";
+    private static final byte[] SERVICE_BYTES = SERVICE.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] STATS_BYTES = STATS.getBytes(StandardCharsets.UTF_8);
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * Receives the values found while parsing a payload.
+     */
+    public interface Handler {
+
+        /**
+         * An integer field at the top level of the payload, e.g. uptime or
+         * latency_99th.
+         */
+        void onServiceMetric(MetricName name, long value);
+
+        /**
+         * An integer field anywhere within the dyn_o_mite stats object.
+         */
+        void onStatsMetric(MetricName name, long value);
+    }
+
+    // root of the name tree, children are keyed by service name
+    private final MetricName roots = new MetricName(null, null, new byte[0], 0, 0);
+
+    private final byte[] buf;
+    private int pos;
+    private int limit;
+    private InputStream in;
+
+    // scratch space for the key or string value being read
+    private byte[] scratch = new byte[128];
+    private int scratchLen;
+    private int scratchHash;
+
+    private boolean statsFound;
+
+    public DynomiteInfoParser() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public DynomiteInfoParser(int bufferSize) {
+        this.buf = new byte[bufferSize];
+    }
+
+    /**
+     * Parse a payload and report its metrics to the handler.
+     *
+     * @param stream
+     *            the json payload. The stream is read to the end of the
+     *            document but not closed.
+     * @param handler
+     * @return the service node of the payload, or null if the payload did not
+     *         start with a 'service' field
+     * @throws IOException
+     *             if the stream cannot be read or is not valid json
+     */
+    public MetricName parse(InputStream stream, Handler handler) throws IOException {
+        this.in = stream;
+        this.pos = 0;
+        this.limit = 0;
+        this.statsFound = false;
+        try {
+            return parseDocument(handler);
+        } finally {
+            this.in = null;
+        }
+    }
+
+    /**
+     * @return true if the last parsed payload contained a dyn_o_mite object
+     */
+    public boolean statsFound() {
+        return statsFound;
+    }
+
+    /**
+     * Get (or create) the node for a top level field of a service. Used by
+     * callers that need to resolve names ahead of time.
+     */
+    public MetricName serviceMetric(String service, String field) {
+        return serviceNode(service).child(field);
+    }
+
+    private MetricName serviceNode(String service) {
+        byte[] bytes = service.getBytes(StandardCharsets.UTF_8);
+        return roots.child(bytes, bytes.length, hash(bytes, bytes.length));
+    }
+
+    private MetricName parseDocument(Handler handler) throws IOException {
+        expect('{');
+        MetricName service = null;
+
+        if (peekToken() == '}') {
+            pos++;
+            return null;
+        }
+
+        while (true) {
+            readString();
+            expect(':');
+            int c = peekToken();
+
+            if (service == null) {
+                // Dynomite writes 'service' first, everything else is keyed
+                // under it
+                if (c != '"' || !scratchEquals(SERVICE_BYTES)) {
+                    return null;
+                }
+                readString();
+                if (scratchLen == 0) {
+                    return null;
+                }
+                service = roots.child(scratch, scratchLen, scratchHash);
+            } else if (c == '{' && scratchEquals(STATS_BYTES)) {
+                statsFound = true;
+                parseStats(service.stats(), handler);
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                MetricName name = service.child(scratch, scratchLen, scratchHash);
+                readNumber(name, handler, false);
+            } else {
+                skipValue();
+            }
+
+            c = nextToken();
+            if (c == '}') {
+                return service;
+            }
+            if (c != ',') {
+                throw unexpected(c);
+            }
+        }
+    }
+
+    private void parseStats(MetricName parent, Handler handler) throws IOException {
+        expect('{');
+        if (peekToken() == '}') {
+            pos++;
+            return;
+        }
+
+        while (true) {
+            readString();
+            expect(':');
+            int c = peekToken();
+
+            if (c == '{') {
+                parseStats(parent.child(scratch, scratchLen, scratchHash), handler);
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                MetricName name = parent.child(scratch, scratchLen, scratchHash);
+                readNumber(name, handler, true);
+            } else {
+                skipValue();
+            }
+
+            c = nextToken();
+            if (c == '}') {
+                return;
+            }
+            if (c != ',') {
+                throw unexpected(c);
+            }
+        }
+    }
+
+    private void readNumber(MetricName name, Handler handler, boolean stats) throws IOException {
+        boolean negative = false;
+        int c = read();
+        if (c == '-') {
+            negative = true;
+            c = read();
+        }
+        long value = 0;
+        while (c >= '0' && c <= '9') {
+            value = value * 10 + (c - '0');
+            c = read();
+        }
+        if (c == '.' || c == 'e' || c == 'E') {
+            // not an integer, skip the remainder of the number
+            while (c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-' || (c >= '0' && c <= '9')) {
+                c = read();
+            }
+            unread(c);
+            return;
+        }
+        unread(c);
+
+        if (negative) {
+            value = -value;
+        }
+        if (stats) {
+            handler.onStatsMetric(name, value);
+        } else {
+            handler.onServiceMetric(name, value);
+        }
+    }
+
+    /**
+     * Read a json string into the scratch buffer, computing its hash on the
+     * way. Escaped characters are kept as the character that follows the
+     * backslash, which is enough to match keys.
+     */
+    private void readString() throws IOException {
+        expect('"');
+        scratchLen = 0;
+        int h = 0;
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                break;
+            }
+            if (c == '\\') {
+                c = read();
+            }
+            if (c < 0) {
+                throw new IOException("Unterminated string in Dynomite stats payload");
+            }
+            if (scratchLen == scratch.length) {
+                scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            }
+            scratch[scratchLen++] = (byte) c;
+            h = 31 * h + (byte) c;
+        }
+        scratchHash = h;
+    }
+
+    private void skipValue() throws IOException {
+        int c = peekToken();
+        if (c == '"') {
+            readString();
+        } else if (c == '{' || c == '[') {
+            int depth = 0;
+            boolean inString = false;
+            do {
+                c = read();
+                if (c < 0) {
+                    throw new IOException("Unexpected end of Dynomite stats payload");
+                }
+                if (inString) {
+                    if (c == '\\') {
+                        read();
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+        } else {
+            // number, true, false or null
+            while (c >= 0 && c != ',' && c != '}' && c != ']' && !isWhitespace(c)) {
+                c = read();
+            }
+            unread(c);
+        }
+    }
+
+    private boolean scratchEquals(byte[] expected) {
+        if (expected.length != scratchLen) {
+            return false;
+        }
+        for (int i = 0; i < scratchLen; i++) {
+            if (scratch[i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void expect(int expected) throws IOException {
+        int c = nextToken();
+        if (c != expected) {
+            throw unexpected(c);
+        }
+    }
+
+    private IOException unexpected(int c) {
+        if (c < 0) {
+            return new IOException("Unexpected end of Dynomite stats payload");
+        }
+        return new IOException("Unexpected character '" + (char) c + "' in Dynomite stats payload");
+    }
+
+    private int nextToken() throws IOException {
+        int c = read();
+        while (isWhitespace(c)) {
+            c = read();
+        }
+        return c;
+    }
+
+    private int peekToken() throws IOException {
+        int c = nextToken();
+        unread(c);
+        return c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            int n = in.read(buf, 0, buf.length);
+            if (n <= 0) {
+                return -1;
+            }
+            pos = 0;
+            limit = n;
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    private void unread(int c) {
+        if (c >= 0) {
+            pos--;
+        }
+    }
+
+    private static int hash(byte[] bytes, int len) {
+        int h = 0;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + bytes[i];
+        }
+        return h;
+    }
+
+    /**
+     * A node in the tree of flattened metric names. The full name is computed
+     * once, when the node is created. Consumers can cache their monitor on the
+     * node with {@link #setAttachment(Object)} so that subsequent updates do
+     * not need a map lookup.
+     */
+    public static final class MetricName {
+
+        private static final AtomicInteger ids = new AtomicInteger();
+
+        private final int id = ids.incrementAndGet();
+        private final MetricName parent;
+        private final String name;
+        private final byte[] key;
+        private final int keyLen;
+        private final int hash;
+
+        private MetricName[] children = new MetricName[8];
+        private int size;
+        private MetricName stats;
+
+        private Object attachment;
+        private long lastValue;
+        private long lastSeen = -1;
+
+        private MetricName(MetricName parent, String name, byte[] key, int keyLen, int hash) {
+            this.parent = parent;
+            this.name = name;
+            this.key = key;
+            this.keyLen = keyLen;
+            this.hash = hash;
+        }
+
+        /**
+         * @return a number that identifies this node, unique within the JVM
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return the flattened metric name, e.g. dynomite__127.0.0.1__requests
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the last element of the name, e.g. requests
+         */
+        public String getKey() {
+            return new String(key, 0, keyLen, StandardCharsets.UTF_8);
+        }
+
+        public MetricName getParent() {
+            return parent;
+        }
+
+        public Object getAttachment() {
+            return attachment;
+        }
+
+        public void setAttachment(Object attachment) {
+            this.attachment = attachment;
+        }
+
+        public long getLastValue() {
+            return lastValue;
+        }
+
+        public void setLastValue(long lastValue) {
+            this.lastValue = lastValue;
+        }
+
+        public long getLastSeen() {
+            return lastSeen;
+        }
+
+        public void setLastSeen(long lastSeen) {
+            this.lastSeen = lastSeen;
+        }
+
+        /**
+         * Get (or create) a child node by key.
+         */
+        public MetricName child(String childKey) {
+            byte[] bytes = childKey.getBytes(StandardCharsets.UTF_8);
+            return child(bytes, bytes.length, hash(bytes, bytes.length));
+        }
+
+        /**
+         * The root of the dyn_o_mite stats of a service node. It carries the
+         * same name as the service since stats are flattened directly under
+         * it.
+         */
+        MetricName stats() {
+            if (stats == null) {
+                stats = new MetricName(this, name, key, keyLen, hash);
+            }
+            return stats;
+        }
+
+        /**
+         * @return true if this is the root of the dyn_o_mite stats of a
+         *         service, i.e. its children are pool level fields and peers
+         */
+        public boolean isStats() {
+            return parent != null && parent.stats == this;
+        }
+
+        /**
+         * @return the child nodes created so far
+         */
+        public MetricName[] getChildren() {
+            MetricName[] result = new MetricName[size];
+            int n = 0;
+            for (MetricName c : children) {
+                if (c != null) {
+                    result[n++] = c;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Drop a child node and everything below it. The next payload that
+         * has the key again creates a new node, without attachments.
+         */
+        public void removeChild(MetricName child) {
+            MetricName[] old = children;
+            children = new MetricName[old.length];
+            size = 0;
+            int mask = children.length - 1;
+            for (MetricName c : old) {
+                if (c != null && c != child) {
+                    int i = mix(c.hash) & mask;
+                    while (children[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    children[i] = c;
+                    size++;
+                }
+            }
+        }
+
+        private MetricName child(byte[] bytes, int len, int h) {
+            int mask = children.length - 1;
+            int i = mix(h) & mask;
+            MetricName c;
+            while ((c = children[i]) != null) {
+                if (c.hash == h && c.matches(bytes, len)) {
+                    return c;
+                }
+                i = (i + 1) & mask;
+            }
+
+            byte[] childKey = Arrays.copyOf(bytes, len);
+            String keyString = new String(childKey, StandardCharsets.UTF_8);
+            String childName = (name == null) ? keyString : name + "__" + keyString;
+            c = new MetricName(this, childName, childKey, len, h);
+            children[i] = c;
+            if (++size * 2 > children.length) {
+                rehash();
+            }
+            return c;
+        }
+
+        private boolean matches(byte[] bytes, int len) {
+            if (keyLen != len) {
+                return false;
+            }
+            for (int i = 0; i < len; i++) {
+                if (key[i] != bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            MetricName[] old = children;
+            children = new MetricName[old.length * 2];
+            int mask = children.length - 1;
+            for (MetricName c : old) {
+                if (c != null) {
+                    int i = mix(c.hash) & mask;
+                    while (children[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    children[i] = c;
+                }
+            }
+        }
+
+        private static int mix(int h) {
+            return h ^ (h >>> 16);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.config.FloridaConfig;
+import com.netflix.dynomitemanager.storage.JedisUtils;
+import com.netflix.nfsidecar.scheduler.SimpleTimer;
+import com.netflix.nfsidecar.scheduler.Task;
+import com.netflix.nfsidecar.scheduler.TaskTimer;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.LongGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * PINGs Dynomite and the storage engine over one persistent connection each,
+ * by default once a second, and keeps the result for the health checks.
+ *
+ * The {@link ProcessMonitorTask}, the {@link com.netflix.dynomitemanager.dynomite.DynomiteProcessManager}
+ * and the {@link com.netflix.dynomitemanager.storage.RedisStorageProxy} used
+ * to open a new connection for every PING of the same ports. They now ask
+ * their {@link Target}, which answers from the last probe while it is fresh,
+ * and probes at most once for callers that ask at the same time.
+ *
+ * The round trip time of every PING is kept in a {@link SampleWindow}, whose
+ * min, max and percentiles are published on every tick of the
+ * {@link SamplingTask}, e.g. dynomite__ping_rtt_us__p99.
+ */
+@Singleton
+public class HealthProber extends Task implements Sample.Listener {
+
+    private static final Logger logger = LoggerFactory.getLogger(HealthProber.class);
+    public static final String TaskName = "Health-Prober";
+
+    private static final int WINDOW_CAPACITY = 256;
+
+    private final int timeoutMs;
+    private final long maxAgeMs;
+    private final MetricSnapshotRegistry snapshots;
+    private final MetricSnapshot.Builder snapshotBuilder = new MetricSnapshot.Builder();
+    private final long[] sorted = new long[WINDOW_CAPACITY];
+
+    // targets by host:port, in the order they were added
+    private final Map<String, Target> targets = new LinkedHashMap<String, Target>();
+    private final Target dynomite;
+
+    // a hung target must not stack up probes behind it
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Inject
+    public HealthProber(FloridaConfig config, MetricSnapshotRegistry snapshots) {
+        this.timeoutMs = config.getHealthProbeTimeout();
+        this.maxAgeMs = config.getHealthProbeMaxAge();
+        this.snapshots = snapshots;
+        this.dynomite = target("dynomite", config.getDynomiteLocalAddress(), config.getDynomiteClientPort());
+    }
+
+    public static TaskTimer getTimer(FloridaConfig config) {
+        return new SimpleTimer(TaskName, config.getHealthProbeInterval());
+    }
+
+    @Override
+    public String getName() {
+        return TaskName;
+    }
+
+    /**
+     * @return the target for Dynomite's client port
+     */
+    public Target getDynomite() {
+        return dynomite;
+    }
+
+    /**
+     * Get the target for a host and port, which is probed from now on.
+     *
+     * @param name
+     *            prefix of the metrics of the target, e.g. redis
+     */
+    public synchronized Target target(String name, String host, int port) {
+        String key = host + ":" + port;
+        Target target = targets.get(key);
+        if (target == null) {
+            target = new Target(name, host, port, timeoutMs, maxAgeMs);
+            targets.put(key, target);
+        }
+        return target;
+    }
+
+    /**
+     * @return the targets probed so far
+     */
+    public synchronized Target[] getTargets() {
+        return targets.values().toArray(new Target[targets.size()]);
+    }
+
+    @Override
+    public void execute() throws Exception {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (Target target : getTargets()) {
+                target.probe();
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    @Override
+    public void onSample(Sample sample) {
+        Target[] all = getTargets();
+        synchronized (snapshotBuilder) {
+            for (Target target : all) {
+                target.publish(sorted, snapshotBuilder);
+            }
+            snapshots.publish(MetricSnapshotRegistry.Source.HEALTH, snapshotBuilder.build(sample.getTime()));
+        }
+    }
+
+    /**
+     * A port answering PING, with its last probe result.
+     */
+    public static class Target {
+
+        private final String name;
+        private final String host;
+        private final int port;
+        private final int timeoutMs;
+        private final long maxAgeMs;
+
+        private final SampleWindow rtt = new SampleWindow(WINDOW_CAPACITY);
+        private final SampleWindow.Gauges rttGauges;
+        private final LongGauge healthy;
+        private final BasicCounter failures;
+        private final BasicCounter connects;
+
+        private Jedis jedis;
+        private volatile boolean alive;
+        private volatile long checkedAt;
+        private volatile long lastRttMicros;
+
+        Target(String name, String host, int port, int timeoutMs, long maxAgeMs) {
+            this.name = name;
+            this.host = host;
+            this.port = port;
+            this.timeoutMs = timeoutMs;
+            this.maxAgeMs = maxAgeMs;
+            rttGauges = new SampleWindow.Gauges(name + "__ping_rtt_us");
+            healthy = new LongGauge(MonitorConfig.builder(name + "__ping_healthy").build());
+            failures = new BasicCounter(MonitorConfig.builder(name + "__ping_failures").build());
+            connects = new BasicCounter(MonitorConfig.builder(name + "__ping_connects").build());
+            DefaultMonitorRegistry.getInstance().register(healthy);
+            DefaultMonitorRegistry.getInstance().register(failures);
+            DefaultMonitorRegistry.getInstance().register(connects);
+        }
+
+        /**
+         * @return the result of a probe at most max age old, probing if there
+         *         is none
+         */
+        public synchronized boolean isAlive() {
+            if (System.currentTimeMillis() - checkedAt <= maxAgeMs) {
+                return alive;
+            }
+            return probe();
+        }
+
+        /**
+         * Like {@link JedisUtils#isAliveWithRetry(String, int)}, but a fresh
+         * probe result or a successful probe answer right away. Only a failed
+         * probe is retried with backoff. The retries run outside the lock, so
+         * callers of {@link #isAlive()} meanwhile get the failed probe instead
+         * of waiting for them.
+         */
+        public boolean isAliveWithRetry() {
+            long before;
+            synchronized (this) {
+                if (isAlive()) {
+                    return true;
+                }
+                before = checkedAt;
+            }
+            boolean result = JedisUtils.isAliveWithRetry(host, port);
+            synchronized (this) {
+                // a probe that finished during the retries is newer
+                if (checkedAt == before) {
+                    record(result, -1);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * PING the target over the persistent connection, which is opened
+         * again after a failure.
+         *
+         * @return true if the target answered PONG
+         */
+        public synchronized boolean probe() {
+            try {
+                if (jedis == null) {
+                    jedis = new Jedis(host, port, timeoutMs);
+                    jedis.connect();
+                    connects.increment();
+                }
+                long start = System.nanoTime();
+                boolean pong = "PONG".equals(jedis.ping());
+                record(pong, (System.nanoTime() - start) / 1000);
+                return pong;
+            } catch (Exception e) {
+                logger.debug("PING of " + host + ":" + port + " failed: " + e.getMessage());
+                close();
+                record(false, -1);
+                return false;
+            }
+        }
+
+        private void record(boolean result, long rttMicros) {
+            if (!result) {
+                failures.increment();
+            }
+            if (result != alive) {
+                logger.info(String.format("%s at %s:%d is %s", name, host, port, result ? "up" : "down"));
+            }
+            alive = result;
+            checkedAt = System.currentTimeMillis();
+            healthy.getNumber().set(result ? 1 : 0);
+            if (rttMicros >= 0) {
+                lastRttMicros = rttMicros;
+                rtt.record(rttMicros);
+            }
+        }
+
+        private void close() {
+            if (jedis != null) {
+                try {
+                    jedis.disconnect();
+                } catch (Exception e) {
+                    // ignore
+                }
+                jedis = null;
+            }
+        }
+
+        void publish(long[] sorted, MetricSnapshot.Builder builder) {
+            int n = rtt.drain(sorted);
+            rttGauges.update(sorted, n);
+            rttGauges.addTo(builder);
+            builder.gauge(name + "__ping_healthy", healthy.getNumber().get());
+            builder.counter(name + "__ping_failures", failures.getValue().longValue());
+            builder.counter(name + "__ping_connects", connects.getValue().longValue());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the round trip time of the last successful PING in
+         *         microseconds
+         */
+        public long getLastRttMicros() {
+            return lastRttMicros;
+        }
+
+        /**
+         * @return the 99th percentile PING round trip time of the last
+         *         published window in microseconds
+         */
+        public long getRttP99Micros() {
+            return rttGauges.getP99();
+        }
+
+        /**
+         * @return the median PING round trip time of the last published
+         *         window in microseconds
+         */
+        public long getRttP50Micros() {
+            return rttGauges.getP50();
+        }
+
+        /**
+         * @return the time of the last probe, 0 if there was none
+         */
+        public long getCheckedAt() {
+            return checkedAt;
+        }
+    }
+}
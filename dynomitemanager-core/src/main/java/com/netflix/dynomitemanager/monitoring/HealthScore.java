@@ -0,0 +1,147 @@
+package com.netflix.dynomitemanager.monitoring;
+
+/**
+ * How well a node serves, from 0 (down) to 100, beyond the up or down of
+ * {@link com.netflix.dynomitemanager.config.InstanceState#isHealthy()}.
+ *
+ * A node that is up starts at 100 and loses points for each signal that
+ * exceeds its limit:
+ *
+ * PING round trip time, p99 of Dynomite and the storage - up to 40 points
+ *
+ * Dynomite queue depth, the deepest of the 99th percentile client and server
+ * queues - up to 30 points
+ *
+ * Redis blocked_clients - up to 20 points
+ *
+ * Redis instantaneous_ops_per_sec - up to 10 points
+ *
+ * A signal costs nothing up to a quarter of its limit and the full points at
+ * its limit, linearly in between. A node scoring below the degraded limit is
+ * degraded: it still serves, but clients should prefer other nodes.
+ */
+public final class HealthScore {
+
+    public static final String HEALTHY = "healthy";
+    public static final String DEGRADED = "degraded";
+    public static final String DOWN = "down";
+
+    public static final HealthScore UNKNOWN = new HealthScore(0, DOWN, 0, 0, 0, 0, 0);
+
+    private static final int RTT_POINTS = 40;
+    private static final int QUEUE_POINTS = 30;
+    private static final int BLOCKED_POINTS = 20;
+    private static final int OPS_POINTS = 10;
+
+    private final int score;
+    private final String status;
+    private final long rttP99Micros;
+    private final long queueDepth;
+    private final long blockedClients;
+    private final long opsPerSec;
+    private final long time;
+
+    private HealthScore(int score, String status, long rttP99Micros, long queueDepth, long blockedClients,
+            long opsPerSec, long time) {
+        this.score = score;
+        this.status = status;
+        this.rttP99Micros = rttP99Micros;
+        this.queueDepth = queueDepth;
+        this.blockedClients = blockedClients;
+        this.opsPerSec = opsPerSec;
+        this.time = time;
+    }
+
+    /**
+     * Limits of the signals, at which a signal costs all of its points.
+     */
+    public static class Limits {
+        private final long rttP99Micros;
+        private final long queueDepth;
+        private final long blockedClients;
+        private final long opsPerSec;
+        private final int degradedBelow;
+
+        public Limits(long rttP99Micros, long queueDepth, long blockedClients, long opsPerSec, int degradedBelow) {
+            this.rttP99Micros = rttP99Micros;
+            this.queueDepth = queueDepth;
+            this.blockedClients = blockedClients;
+            this.opsPerSec = opsPerSec;
+            this.degradedBelow = degradedBelow;
+        }
+    }
+
+    public static HealthScore compute(Limits limits, boolean alive, long rttP99Micros, long queueDepth,
+            long blockedClients, long opsPerSec, long time) {
+        if (!alive) {
+            return new HealthScore(0, DOWN, rttP99Micros, queueDepth, blockedClients, opsPerSec, time);
+        }
+        double penalty = penalty(rttP99Micros, limits.rttP99Micros, RTT_POINTS)
+                + penalty(queueDepth, limits.queueDepth, QUEUE_POINTS)
+                + penalty(blockedClients, limits.blockedClients, BLOCKED_POINTS)
+                + penalty(opsPerSec, limits.opsPerSec, OPS_POINTS);
+        // an up node never scores 0, that means down
+        int score = (int) Math.max(1, Math.round(100 - penalty));
+        return new HealthScore(score, score < limits.degradedBelow ? DEGRADED : HEALTHY, rttP99Micros, queueDepth,
+                blockedClients, opsPerSec, time);
+    }
+
+    private static double penalty(long value, long limit, int points) {
+        if (limit <= 0) {
+            return 0;
+        }
+        double free = limit / 4.0;
+        if (value <= free) {
+            return 0;
+        }
+        return points * Math.min(1, (value - free) / (limit - free));
+    }
+
+    /**
+     * @return the score, 0 if the node is down
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return {@link #HEALTHY}, {@link #DEGRADED} or {@link #DOWN}
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean isDegraded() {
+        return DEGRADED.equals(status);
+    }
+
+    public long getRttP99Micros() {
+        return rttP99Micros;
+    }
+
+    public long getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getBlockedClients() {
+        return blockedClients;
+    }
+
+    public long getOpsPerSec() {
+        return opsPerSec;
+    }
+
+    /**
+     * @return the time the score was computed, 0 if it never was
+     */
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "HealthScore{score=" + score + ", status=" + status + ", rttP99Micros=" + rttP99Micros
+                + ", queueDepth=" + queueDepth + ", blockedClients=" + blockedClients + ", opsPerSec=" + opsPerSec
+                + '}';
+    }
+}
@@ -0,0 +1,82 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.config.FloridaConfig;
+import com.netflix.dynomitemanager.config.InstanceState;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.LongGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Computes the {@link HealthScore} on every tick of the {@link SamplingTask},
+ * after the metrics tasks and the {@link HealthProber} processed the sample,
+ * and keeps it in the {@link InstanceState} for the health callbacks and
+ * /v1/admin/status.
+ *
+ * The score is published as florida__health_score, and
+ * florida__health_degraded is 1 while the node is degraded.
+ */
+@Singleton
+public class HealthScorer implements Sample.Listener {
+
+    // the deepest of these queues counts
+    private static final String[] QUEUES = { "dynomite__client_out_queue_99", "dynomite__server_in_queue_99",
+            "dynomite__server_out_queue_99" };
+    private static final String BLOCKED_CLIENTS = "Redis_Clients_blocked_clients";
+    private static final String OPS_PER_SEC = "Redis_Stats_instantaneous_ops_per_sec";
+
+    private final FloridaConfig config;
+    private final InstanceState state;
+    private final ServoMetricsTask servoMetrics;
+    private final RedisInfoMetricsTask redisMetrics;
+    private final HealthProber healthProber;
+    private final MetricSnapshotRegistry snapshots;
+    private final MetricSnapshot.Builder snapshotBuilder = new MetricSnapshot.Builder();
+
+    private final LongGauge score;
+    private final LongGauge degraded;
+
+    @Inject
+    public HealthScorer(FloridaConfig config, InstanceState state, ServoMetricsTask servoMetrics,
+            RedisInfoMetricsTask redisMetrics, HealthProber healthProber, MetricSnapshotRegistry snapshots) {
+        this.config = config;
+        this.state = state;
+        this.servoMetrics = servoMetrics;
+        this.redisMetrics = redisMetrics;
+        this.healthProber = healthProber;
+        this.snapshots = snapshots;
+        score = new LongGauge(MonitorConfig.builder("florida__health_score").build());
+        degraded = new LongGauge(MonitorConfig.builder("florida__health_degraded").build());
+        DefaultMonitorRegistry.getInstance().register(score);
+        DefaultMonitorRegistry.getInstance().register(degraded);
+    }
+
+    @Override
+    public synchronized void onSample(Sample sample) {
+        long rtt = 0;
+        for (HealthProber.Target target : healthProber.getTargets()) {
+            rtt = Math.max(rtt, target.getRttP99Micros());
+        }
+        long queue = 0;
+        for (String name : QUEUES) {
+            queue = Math.max(queue, servoMetrics.getGaugeValue(name));
+        }
+        HealthScore health = HealthScore.compute(limits(), state.isHealthy(), rtt, queue,
+                redisMetrics.getValue(BLOCKED_CLIENTS), redisMetrics.getValue(OPS_PER_SEC), sample.getTime());
+        state.setHealthScore(health);
+
+        score.getNumber().set(health.getScore());
+        degraded.getNumber().set(health.isDegraded() ? 1 : 0);
+        snapshotBuilder.gauge(score.getConfig().getName(), health.getScore())
+                .gauge(degraded.getConfig().getName(), health.isDegraded() ? 1 : 0);
+        snapshots.publish(MetricSnapshotRegistry.Source.HEALTH_SCORE, snapshotBuilder.build(sample.getTime()));
+    }
+
+    private HealthScore.Limits limits() {
+        // read on every tick, the limits are dynamic properties
+        return new HealthScore.Limits(config.getHealthScoreRttLimit(), config.getHealthScoreQueueLimit(),
+                config.getHealthScoreBlockedClientsLimit(), config.getHealthScoreOpsLimit(),
+                config.getHealthScoreDegraded());
+    }
+}
@@ -0,0 +1,166 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.config.DynamicStringProperty;
+import com.netflix.dynomitemanager.config.FloridaConfig;
+import com.netflix.dynomitemanager.dynomite.DynomiteAdminClient;
+import com.netflix.nfsidecar.scheduler.SimpleTimer;
+import com.netflix.nfsidecar.scheduler.Task;
+import com.netflix.nfsidecar.scheduler.TaskTimer;
+
+/**
+ * Samples Dynomite's latency and queue gauges (e.g. latency_99th,
+ * server_in_queue_99) at a high resolution, by default once a second.
+ *
+ * {@link ServoMetricsTask} only sees one value of these gauges every 15
+ * seconds, so short spikes get lost. This task keeps every sample of a
+ * reporting window in a {@link SampleWindow} and publishes min, max and
+ * percentiles at the end of the window, e.g. dynomite__latency_99th__max.
+ *
+ * The stats payload is parsed with a {@link DynomiteInfoParser} whose names
+ * carry the sample window they feed, so recording a sample neither allocates
+ * nor looks anything up by String.
+ *
+ * The task is only scheduled if dyno.metrics.highres.enabled is set.
+ */
+@Singleton
+public class HighResolutionMetricsTask extends Task {
+
+    private static final Logger logger = LoggerFactory.getLogger(HighResolutionMetricsTask.class);
+    public static final String TaskName = "High-Resolution-Metrics-Task";
+
+    private final DynamicStringProperty serverMetricsUrl = DynamicPropertyFactory.getInstance()
+            .getStringProperty("florida.metrics.url", "http://localhost:22222/info");
+
+    // marks fields that are not sampled
+    private static final Object IGNORED = new Object();
+
+    private final DynomiteAdminClient adminClient;
+    private final long windowMs;
+    private final int windowCapacity;
+
+    private final DynomiteInfoParser infoParser = new DynomiteInfoParser();
+    private final SampleHandler sampleHandler = new SampleHandler();
+    private final DynomiteAdminClient.ResponseHandler<Void> responseHandler = new DynomiteAdminClient.ResponseHandler<Void>() {
+        @Override
+        public Void handle(int statusCode, InputStream body) throws Exception {
+            if (statusCode != 200 || body == null) {
+                logger.warn("Got status code " + statusCode + " from " + serverMetricsUrl.get());
+                return null;
+            }
+            infoParser.parse(body, sampleHandler);
+            return null;
+        }
+    };
+
+    // windows in the order they were first seen, published together
+    private SampledMetric[] metrics = new SampledMetric[0];
+    private final long[] sorted;
+    private long windowStart;
+
+    // a slow response must not stack up samples behind it
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Inject
+    public HighResolutionMetricsTask(FloridaConfig config, DynomiteAdminClient adminClient) {
+        this.adminClient = adminClient;
+        this.windowMs = config.getMetricsHighResolutionWindow();
+        int interval = Math.max(1, config.getMetricsHighResolutionInterval());
+        // one extra slot for a window that runs a little long
+        this.windowCapacity = (int) Math.max(1, (windowMs + interval - 1) / interval) + 1;
+        this.sorted = new long[windowCapacity];
+    }
+
+    public static TaskTimer getTimer(FloridaConfig config) {
+        return new SimpleTimer(TaskName, config.getMetricsHighResolutionInterval());
+    }
+
+    @Override
+    public String getName() {
+        return TaskName;
+    }
+
+    @Override
+    public void execute() throws Exception {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            if (windowStart == 0) {
+                windowStart = now;
+            }
+
+            try {
+                adminClient.get(serverMetricsUrl.get(), responseHandler);
+            } catch (Exception e) {
+                logger.debug("Failed to sample " + serverMetricsUrl.get(), e);
+            }
+
+            if (now - windowStart >= windowMs) {
+                publish();
+                windowStart = now;
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void publish() {
+        for (SampledMetric metric : metrics) {
+            int n = metric.window.drain(sorted);
+            metric.gauges.update(sorted, n);
+        }
+    }
+
+    private static boolean isSampled(String key) {
+        return Arrays.asList(ServoMetricsTask.SERVICE_GAUGES).contains(key);
+    }
+
+    private static class SampledMetric {
+        private final SampleWindow window;
+        private final SampleWindow.Gauges gauges;
+
+        private SampledMetric(String name, int capacity) {
+            window = new SampleWindow(capacity);
+            gauges = new SampleWindow.Gauges(name);
+        }
+    }
+
+    private class SampleHandler implements DynomiteInfoParser.Handler {
+
+        @Override
+        public void onServiceMetric(DynomiteInfoParser.MetricName name, long value) {
+            Object attachment = name.getAttachment();
+            if (attachment == null) {
+                if (isSampled(name.getKey())) {
+                    SampledMetric metric = new SampledMetric(name.getName(), windowCapacity);
+                    metrics = Arrays.copyOf(metrics, metrics.length + 1);
+                    metrics[metrics.length - 1] = metric;
+                    attachment = metric;
+                } else {
+                    attachment = IGNORED;
+                }
+                name.setAttachment(attachment);
+            }
+            if (attachment != IGNORED) {
+                ((SampledMetric) attachment).window.record(value);
+            }
+        }
+
+        @Override
+        public void onStatsMetric(DynomiteInfoParser.MetricName name, long value) {
+            // per pool and per peer stats are counters, the regular poll is
+            // good enough for them
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import com.google.inject.Singleton;
+
+/**
+ * The last {@link Sample} taken by the {@link SamplingTask}.
+ *
+ * Health checks that run on their own schedule look here first, so that they
+ * do not fetch what the sampler fetched moments ago. A sample only stands in
+ * for a PING; whether a process is running is always looked up live. Kept apart from the
+ * sampler, which depends on the storage proxy, so the storage proxy can use it
+ * too.
+ */
+@Singleton
+public class LatestSample {
+
+    // one sampling interval, plus half of one for a slow tick
+    static final long MAX_AGE_MS = SamplingTask.INTERVAL_MS * 3 / 2;
+
+    private volatile Sample sample;
+
+    public void set(Sample sample) {
+        this.sample = sample;
+    }
+
+    /**
+     * @return the last sample if it is from the current sampling interval,
+     *         else null
+     */
+    public Sample get() {
+        Sample s = sample;
+        if (s == null || System.currentTimeMillis() - s.getTime() > MAX_AGE_MS) {
+            return null;
+        }
+        return s;
+    }
+}
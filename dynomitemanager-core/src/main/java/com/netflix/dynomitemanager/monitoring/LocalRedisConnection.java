@@ -0,0 +1,147 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.storage.StorageProxy;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.BasicCounter;
+import com.netflix.servo.monitor.Counter;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Long-lived connection to the local storage engine, for the periodic
+ * monitoring calls that used to connect and disconnect on every run.
+ *
+ * The connection is created through the {@link JedisFactory} and kept open
+ * between calls. If it breaks, e.g. because Redis restarted, it is dropped and
+ * a new one is opened. A stale connection is retried once right away; failures
+ * to connect back off exponentially, up to {@link #MAX_BACKOFF_MS}, so a down
+ * Redis is not hammered by every poll.
+ *
+ * The connection publishes the following metrics:
+ *
+ * redis__local__connections_reused - calls served on the open connection
+ *
+ * redis__local__connections_opened - connections opened
+ *
+ * redis__local__connection_errors - calls failed on a broken connection
+ */
+@Singleton
+public class LocalRedisConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalRedisConnection.class);
+
+    static final long MIN_BACKOFF_MS = 1000;
+    static final long MAX_BACKOFF_MS = 60 * 1000;
+
+    /**
+     * A call on the local connection.
+     */
+    public interface Command<T> {
+        T execute(Jedis jedis);
+    }
+
+    private final JedisFactory jedisFactory;
+    private final StorageProxy storageProxy;
+
+    private Jedis jedis;
+    private long backoffMs;
+    private long nextAttempt;
+
+    private final Counter connectionsReused = new BasicCounter(
+            MonitorConfig.builder("redis__local__connections_reused").build());
+    private final Counter connectionsOpened = new BasicCounter(
+            MonitorConfig.builder("redis__local__connections_opened").build());
+    private final Counter connectionErrors = new BasicCounter(
+            MonitorConfig.builder("redis__local__connection_errors").build());
+
+    @Inject
+    public LocalRedisConnection(StorageProxy storageProxy, JedisFactory jedisFactory) {
+        this.storageProxy = storageProxy;
+        this.jedisFactory = jedisFactory;
+
+        String unixPath = storageProxy.getUnixPath();
+        if (unixPath != null && !unixPath.isEmpty()) {
+            // Jedis 2.x only connects over TCP
+            logger.info("Redis listens on " + unixPath + ", monitoring connects over TCP to "
+                    + storageProxy.getIpAddress() + ":" + storageProxy.getPort());
+        }
+
+        DefaultMonitorRegistry.getInstance().register(connectionsReused);
+        DefaultMonitorRegistry.getInstance().register(connectionsOpened);
+        DefaultMonitorRegistry.getInstance().register(connectionErrors);
+    }
+
+    /**
+     * Run a command on the local connection, connecting first if needed.
+     *
+     * @param command
+     * @return whatever the command returns
+     * @throws JedisConnectionException
+     *             if the storage engine cannot be reached, or the last
+     *             connection attempt failed recently
+     */
+    public synchronized <T> T execute(Command<T> command) {
+        boolean reused = jedis != null;
+        try {
+            return command.execute(connection());
+        } catch (JedisConnectionException e) {
+            connectionErrors.increment();
+            close();
+            if (!reused) {
+                throw e;
+            }
+            // the open connection went stale, try once more on a new one
+            logger.info("Local Redis connection broken, reconnecting: " + e.getMessage());
+            return command.execute(connection());
+        }
+    }
+
+    /**
+     * Drop the current connection, the next call opens a new one.
+     */
+    public synchronized void close() {
+        if (jedis != null) {
+            try {
+                jedis.disconnect();
+            } catch (Exception e) {
+                // the connection is already unusable
+            }
+            jedis = null;
+        }
+    }
+
+    private Jedis connection() {
+        if (jedis != null) {
+            connectionsReused.increment();
+            return jedis;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now < nextAttempt) {
+            throw new JedisConnectionException("Not reconnecting to local Redis for another "
+                    + (nextAttempt - now) + "ms");
+        }
+
+        Jedis newJedis = jedisFactory.newInstance(storageProxy.getIpAddress(), storageProxy.getPort());
+        try {
+            newJedis.connect();
+        } catch (JedisConnectionException e) {
+            backoffMs = backoffMs == 0 ? MIN_BACKOFF_MS : Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            nextAttempt = now + backoffMs;
+            logger.warn("Could not connect to local Redis, next attempt in " + backoffMs + "ms");
+            throw e;
+        }
+        connectionsOpened.increment();
+        backoffMs = 0;
+        nextAttempt = 0;
+        jedis = newJedis;
+        return jedis;
+    }
+}
@@ -0,0 +1,220 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable set of metric values, already rendered in the OpenMetrics text
+ * format.
+ *
+ * Snapshots are built by the polling tasks once per poll and swapped into a
+ * {@link MetricSnapshotRegistry}. Serving a scrape only copies the rendered
+ * bytes of the latest snapshots to the response, so it never waits for a poll
+ * and never touches the parsers or the monitors.
+ *
+ * Metric names are sanitized to [a-zA-Z0-9_:], e.g. dynomite__10.0.0.1:8101
+ * becomes dynomite__10_0_0_1:8101. Counters are rendered with the _total
+ * suffix OpenMetrics requires.
+ */
+public final class MetricSnapshot {
+
+    public static final MetricSnapshot EMPTY = new MetricSnapshot(new byte[0], 0, 0);
+
+    private final byte[] text;
+    private final int series;
+    private final long time;
+
+    private MetricSnapshot(byte[] text, int series, long time) {
+        this.text = text;
+        this.series = series;
+        this.time = time;
+    }
+
+    /**
+     * @return the number of series in this snapshot
+     */
+    public int size() {
+        return series;
+    }
+
+    /**
+     * @return the time the snapshot was built, in ms
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(text);
+    }
+
+    @Override
+    public String toString() {
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Renders the series of a snapshot. A builder is meant to be kept by its
+     * task and reused for every poll: the rendered names are cached, so that
+     * a steady state build only copies bytes. Names that are not added in a
+     * build are dropped from the cache, e.g. once a peer expired.
+     *
+     * Not thread safe.
+     */
+    public static class Builder {
+
+        private static final byte[] TYPE = "# TYPE ".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] COUNTER = " counter\n".getBytes(StandardCharsets.US_ASCII);
+        private static final byte[] GAUGE = " gauge\n".getBytes(StandardCharsets.US_ASCII);
+        private static final String TOTAL = "_total";
+        private static final byte[] MIN_VALUE = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+        private byte[] buf = new byte[4096];
+        private int len;
+        private int series;
+
+        // names rendered in this build and in the previous one
+        private Map<String, Series> current = new HashMap<String, Series>();
+        private Map<String, Series> previous = new HashMap<String, Series>();
+        // families of this build, two names may sanitize to the same one
+        private final Set<String> families = new HashSet<String>();
+
+        public Builder counter(String name, long value) {
+            return add(name, true, value);
+        }
+
+        public Builder gauge(String name, long value) {
+            return add(name, false, value);
+        }
+
+        /**
+         * @return the snapshot of the series added since the last build, the
+         *         builder is reset for the next one
+         */
+        public MetricSnapshot build(long time) {
+            MetricSnapshot snapshot = new MetricSnapshot(Arrays.copyOf(buf, len), series, time);
+            Map<String, Series> rendered = previous;
+            rendered.clear();
+            previous = current;
+            current = rendered;
+            families.clear();
+            len = 0;
+            series = 0;
+            return snapshot;
+        }
+
+        private Builder add(String name, boolean counter, long value) {
+            Series s = current.get(name);
+            if (s == null || s.counter != counter) {
+                s = previous.get(name);
+                if (s == null || s.counter != counter) {
+                    s = new Series(name, counter);
+                }
+                current.put(name, s);
+            }
+            if (!families.add(s.family)) {
+                // OpenMetrics does not allow a family to show up twice
+                return this;
+            }
+            append(s.header);
+            appendLong(value);
+            append((byte) '\n');
+            series++;
+            return this;
+        }
+
+        private void append(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, len, bytes.length);
+            len += bytes.length;
+        }
+
+        private void append(byte b) {
+            ensure(1);
+            buf[len++] = b;
+        }
+
+        private void appendLong(long value) {
+            if (value == Long.MIN_VALUE) {
+                append(MIN_VALUE);
+                return;
+            }
+            ensure(20);
+            if (value < 0) {
+                buf[len++] = '-';
+                value = -value;
+            }
+            int start = len;
+            do {
+                buf[len++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            // digits were written backwards
+            for (int i = start, j = len - 1; i < j; i++, j--) {
+                byte t = buf[i];
+                buf[i] = buf[j];
+                buf[j] = t;
+            }
+        }
+
+        private void ensure(int n) {
+            if (len + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+            }
+        }
+
+        static String sanitize(String name) {
+            StringBuilder sb = new StringBuilder(name.length() + 1);
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == ':'
+                        || (c >= '0' && c <= '9' && i > 0);
+                if (c >= '0' && c <= '9' && i == 0) {
+                    sb.append('_').append(c);
+                } else {
+                    sb.append(valid ? c : '_');
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Rendered type line and sample name of a series.
+         */
+        private static class Series {
+            private final boolean counter;
+            private final String family;
+            private final byte[] header;
+
+            private Series(String name, boolean counter) {
+                this.counter = counter;
+                String family = sanitize(name);
+                if (counter && family.endsWith(TOTAL)) {
+                    family = family.substring(0, family.length() - TOTAL.length());
+                }
+                this.family = family;
+                String sample = counter ? family + TOTAL : family;
+                byte[] f = family.getBytes(StandardCharsets.US_ASCII);
+                byte[] kind = counter ? COUNTER : GAUGE;
+                byte[] s = sample.getBytes(StandardCharsets.US_ASCII);
+                header = new byte[TYPE.length + f.length + kind.length + s.length + 1];
+                int pos = 0;
+                System.arraycopy(TYPE, 0, header, pos, TYPE.length);
+                pos += TYPE.length;
+                System.arraycopy(f, 0, header, pos, f.length);
+                pos += f.length;
+                System.arraycopy(kind, 0, header, pos, kind.length);
+                pos += kind.length;
+                System.arraycopy(s, 0, header, pos, s.length);
+                pos += s.length;
+                header[pos] = ' ';
+            }
+        }
+    }
+}
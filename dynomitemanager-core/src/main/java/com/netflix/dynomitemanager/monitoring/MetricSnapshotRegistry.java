@@ -0,0 +1,71 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.inject.Singleton;
+
+/**
+ * Holds the latest {@link MetricSnapshot} of every metric source.
+ *
+ * The polling tasks publish a new snapshot at the end of each poll, which
+ * replaces the previous one atomically. Readers get a consistent view of each
+ * source without any locking, so a scrape never waits for a poll.
+ */
+@Singleton
+public class MetricSnapshotRegistry {
+
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final byte[] EOF = "# EOF\n".getBytes(StandardCharsets.US_ASCII);
+
+    public enum Source {
+        /** Dynomite's /info stats, published by {@link ServoMetricsTask} */
+        DYNOMITE,
+        /** the storage engine's INFO, published by {@link RedisInfoMetricsTask} */
+        REDIS,
+        /** the state of the processes managed by Florida */
+        INSTANCE,
+        /** resource use of the Dynomite and storage processes */
+        PROCESS,
+        /** how long Dynomite and the storage took to start and stop */
+        STARTUP,
+        /** PING health and round trip times, published by {@link HealthProber} */
+        HEALTH,
+        /** the health score, published by {@link HealthScorer} */
+        HEALTH_SCORE,
+        /** latencies of the {@link DynomiteCanary} */
+        CANARY,
+        /** replication progress of the warm up, published by {@link WarmUpProgress} */
+        WARMUP
+    }
+
+    private final AtomicReferenceArray<MetricSnapshot> snapshots = new AtomicReferenceArray<MetricSnapshot>(
+            Source.values().length);
+
+    public MetricSnapshotRegistry() {
+        for (Source source : Source.values()) {
+            snapshots.set(source.ordinal(), MetricSnapshot.EMPTY);
+        }
+    }
+
+    public void publish(Source source, MetricSnapshot snapshot) {
+        snapshots.set(source.ordinal(), snapshot);
+    }
+
+    public MetricSnapshot get(Source source) {
+        return snapshots.get(source.ordinal());
+    }
+
+    /**
+     * Write the latest snapshot of every source as one OpenMetrics exposition.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        for (int i = 0; i < snapshots.length(); i++) {
+            snapshots.get(i).writeTo(out);
+        }
+        out.write(EOF);
+    }
+}
@@ -0,0 +1,121 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.nfsidecar.identity.AppsInstance;
+
+/**
+ * Maps the peers Dynomite reports stats for to the rack or datacenter they
+ * belong to, so that per peer stats can be aggregated.
+ *
+ * Dynomite names a peer after its address, e.g. 10.0.0.1:8101:rack1:dc1:1234.
+ * The host part is looked up in the cluster topology, by host name and IP.
+ * Peers that are not part of the topology, e.g. the local data store, have no
+ * group.
+ *
+ * Not thread safe.
+ */
+public class PeerTopology {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerTopology.class);
+
+    public enum Aggregation {
+        /** every peer is published on its own */
+        NONE,
+        /** peers are published per datacenter and rack */
+        RACK,
+        /** peers are published per datacenter */
+        DC;
+
+        public static Aggregation from(String value) {
+            for (Aggregation a : values()) {
+                if (a.name().equalsIgnoreCase(value)) {
+                    return a;
+                }
+            }
+            logger.warn("Unknown peer metrics aggregation " + value + ", using " + NONE);
+            return NONE;
+        }
+    }
+
+    private Aggregation aggregation = Aggregation.NONE;
+    private Map<String, AppsInstance> hosts = new HashMap<String, AppsInstance>();
+    private int version;
+
+    /**
+     * Replace the topology.
+     *
+     * @param aggregation
+     * @param instances
+     *            all instances of the cluster
+     */
+    public void update(Aggregation aggregation, List<AppsInstance> instances) {
+        Map<String, AppsInstance> newHosts = new HashMap<String, AppsInstance>();
+        for (AppsInstance instance : instances) {
+            if (instance.getHostName() != null) {
+                newHosts.put(instance.getHostName(), instance);
+            }
+            if (instance.getHostIP() != null) {
+                newHosts.put(instance.getHostIP(), instance);
+            }
+        }
+        if (aggregation != this.aggregation || !sameGroups(newHosts)) {
+            version++;
+        }
+        this.aggregation = aggregation;
+        this.hosts = newHosts;
+    }
+
+    public Aggregation getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * @return a number that changes whenever a peer may map to another group
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @param peer
+     *            the key Dynomite reports the peer under
+     * @return the group of the peer, e.g. rack__us-east-1__us-east-1c, or null
+     *         if the peer is published on its own
+     */
+    public String groupOf(String peer) {
+        if (aggregation == Aggregation.NONE) {
+            return null;
+        }
+        int colon = peer.indexOf(':');
+        AppsInstance instance = hosts.get(colon < 0 ? peer : peer.substring(0, colon));
+        if (instance == null) {
+            return null;
+        }
+        return groupOf(instance);
+    }
+
+    private String groupOf(AppsInstance instance) {
+        if (aggregation == Aggregation.DC) {
+            return "dc__" + instance.getDatacenter();
+        }
+        return "rack__" + instance.getDatacenter() + "__" + instance.getRack();
+    }
+
+    private boolean sameGroups(Map<String, AppsInstance> newHosts) {
+        if (!newHosts.keySet().equals(hosts.keySet())) {
+            return false;
+        }
+        for (Map.Entry<String, AppsInstance> e : newHosts.entrySet()) {
+            if (!groupOf(e.getValue()).equals(groupOf(hosts.get(e.getKey())))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
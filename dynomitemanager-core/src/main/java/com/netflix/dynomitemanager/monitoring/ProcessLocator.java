@@ -0,0 +1,260 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds a process by its command line in /proc, without forking ps.
+ *
+ * The first lookup scans /proc/[pid]/cmdline for a command line containing
+ * the given string, e.g. /apps/dynomite/bin/dynomite, and caches the pid. Later
+ * lookups only re-read /proc/[pid]/stat of the cached pid, through a file that
+ * is kept open. A new scan happens once the process is gone or became a
+ * zombie. The open file belongs to the process it was opened for, so a pid
+ * that was reused by another process is not mistaken for it.
+ *
+ * Files are read into a buffer owned by the locator, so a lookup of a running
+ * process does not allocate. Instances are thread safe.
+ */
+public class ProcessLocator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessLocator.class);
+
+    private static final File PROC = new File("/proc");
+
+    private final File procRoot;
+    private final byte[] command;
+    private final String description;
+
+    private final byte[] buf = new byte[4096];
+    private int pid = -1;
+    private RandomAccessFile stat;
+    private long scans;
+    private boolean found;
+
+    /**
+     * @param command
+     *            part of the command line of the process, e.g.
+     *            /apps/dynomite/bin/dynomite
+     */
+    public ProcessLocator(String command) {
+        this(PROC, command);
+    }
+
+    /**
+     * @param procRoot
+     *            where proc is mounted
+     * @param command
+     *            part of the command line of the process
+     */
+    public ProcessLocator(File procRoot, String command) {
+        this.procRoot = procRoot;
+        this.command = command.getBytes(StandardCharsets.UTF_8);
+        this.description = command;
+    }
+
+    /**
+     * @return true if /proc can be used to look up processes, i.e. on Linux
+     */
+    public static boolean isSupported() {
+        return new File(PROC, "self/stat").exists();
+    }
+
+    /**
+     * @return true if a process with the command line is running
+     */
+    public boolean isAlive() {
+        return getPid() > 0;
+    }
+
+    /**
+     * @return the pid of the process, or -1 if it is not running
+     */
+    public synchronized int getPid() {
+        if (pid > 0 && isRunning(readStat())) {
+            return pid;
+        }
+        if (pid > 0) {
+            logger.info("Process " + pid + " (" + description + ") is gone");
+            close();
+        }
+        scan();
+        return pid;
+    }
+
+    /**
+     * Read the stat of the located process into the buffer, see proc(5).
+     *
+     * @return the number of bytes read, 0 if the process is gone
+     */
+    private int readStat() {
+        if (stat == null) {
+            return 0;
+        }
+        try {
+            stat.seek(0);
+            return readFully(stat);
+        } catch (IOException e) {
+            // ESRCH once the process exited
+            return 0;
+        }
+    }
+
+    private void close() {
+        pid = -1;
+        if (stat != null) {
+            try {
+                stat.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            stat = null;
+        }
+    }
+
+    /**
+     * @return true if a process with the command line was found at least once
+     */
+    public synchronized boolean hasFound() {
+        return found;
+    }
+
+    /**
+     * @return the number of /proc scans done so far
+     */
+    public synchronized long getScans() {
+        return scans;
+    }
+
+    private void scan() {
+        scans++;
+        String[] entries = procRoot.list();
+        if (entries == null) {
+            return;
+        }
+        for (String entry : entries) {
+            int candidate = parsePid(entry);
+            if (candidate <= 0 || !commandMatches(candidate)) {
+                continue;
+            }
+            try {
+                stat = new RandomAccessFile(new File(procRoot, candidate + "/stat"), "r");
+            } catch (IOException e) {
+                continue;
+            }
+            pid = candidate;
+            if (isRunning(readStat())) {
+                found = true;
+                logger.info("Found process " + pid + " (" + description + ")");
+                return;
+            }
+            close();
+        }
+    }
+
+    private boolean commandMatches(int candidate) {
+        int n = read(candidate, "cmdline");
+        if (n < command.length) {
+            return false;
+        }
+        // arguments are separated by NULs, a command never spans them
+        outer: for (int i = 0; i <= n - command.length; i++) {
+            for (int j = 0; j < command.length; j++) {
+                if (buf[i + j] != command[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param n
+     *            number of bytes of stat in the buffer
+     * @return false if the process is gone or a zombie
+     */
+    private boolean isRunning(int n) {
+        int i = statFieldsStart(n);
+        if (i < 0) {
+            return false;
+        }
+        byte state = buf[i];
+        return state != 'Z' && state != 'X' && state != 'x';
+    }
+
+    /**
+     * @param n
+     *            number of bytes of stat in the buffer
+     * @return the offset of the state, the third field of stat, or -1
+     */
+    private int statFieldsStart(int n) {
+        // the command in (parentheses) may contain anything, fields start
+        // after the last ')'
+        int i = n - 1;
+        while (i >= 0 && buf[i] != ')') {
+            i--;
+        }
+        if (i < 0 || i + 2 >= n) {
+            return -1;
+        }
+        return i + 2;
+    }
+
+    /**
+     * Read the start of /proc/[pid]/[file] into the buffer.
+     *
+     * @return the number of bytes read, 0 if the file cannot be read
+     */
+    private int read(int candidate, String file) {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(new File(procRoot, candidate + "/" + file));
+            int n = 0;
+            int r;
+            while (n < buf.length && (r = in.read(buf, n, buf.length - n)) > 0) {
+                n += r;
+            }
+            return n;
+        } catch (IOException e) {
+            // the process exited, or is not ours to look at
+            return 0;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private int readFully(RandomAccessFile file) throws IOException {
+        int n = 0;
+        int r;
+        while (n < buf.length && (r = file.read(buf, n, buf.length - n)) > 0) {
+            n += r;
+        }
+        return n;
+    }
+
+    private static int parsePid(String entry) {
+        int value = 0;
+        for (int i = 0; i < entry.length(); i++) {
+            char c = entry.charAt(i);
+            if (c < '0' || c > '9' || value > Integer.MAX_VALUE / 10) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return entry.isEmpty() ? -1 : value;
+    }
+}
@@ -20,13 +20,16 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.netflix.dynomitemanager.config.FloridaConfig;
 import com.netflix.dynomitemanager.config.InstanceState;
+import com.netflix.dynomitemanager.dynomite.DynomiteSupervisor;
 import com.netflix.dynomitemanager.dynomite.IDynomiteProcess;
-import com.netflix.dynomitemanager.storage.JedisUtils;
+import com.netflix.dynomitemanager.storage.StorageProcessManager;
 import com.netflix.dynomitemanager.storage.StorageProxy;
 import com.netflix.nfsidecar.scheduler.SimpleTimer;
 import com.netflix.nfsidecar.scheduler.Task;
 import com.netflix.nfsidecar.scheduler.TaskTimer;
 
+import java.io.IOException;
+
 import org.quartz.StatefulJob;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -74,28 +77,57 @@ public class ProcessMonitorTask extends Task implements StatefulJob {
     private InstanceState instanceState;
     private final StorageProxy storageProxy;
     private final IDynomiteProcess dynomiteProcess;
+    private final LatestSample latestSample;
+    private final StorageProcessManager storageProcessManager;
+    private final DynomiteSupervisor supervisor;
+    private final HealthProber healthProber;
+    private final DynomiteCanary canary;
 
     @Inject
     protected ProcessMonitorTask(FloridaConfig config, InstanceState instanceState,
-                                 StorageProxy storageProxy, IDynomiteProcess dynomiteProcess) {
+                                 StorageProxy storageProxy, IDynomiteProcess dynomiteProcess,
+                                 LatestSample latestSample, StorageProcessManager storageProcessManager,
+                                 DynomiteSupervisor supervisor, HealthProber healthProber,
+                                 DynomiteCanary canary) {
         this.config = config;
         this.instanceState = instanceState;
         this.storageProxy = storageProxy;
         this.dynomiteProcess = dynomiteProcess;
+        this.latestSample = latestSample;
+        this.storageProcessManager = storageProcessManager;
+        this.supervisor = supervisor;
+        this.healthProber = healthProber;
+        this.canary = canary;
     }
 
+    /**
+     * Runs on the scheduler, and right away for the {@link DynomiteCanary}
+     * and the {@link DynomiteSupervisor}. Runs do not overlap, so that only
+     * one of them starts or stops a process at a time.
+     */
     @Override
-    public void execute() throws Exception {
+    public synchronized void execute() throws Exception {
         Stopwatch stopwatch = Stopwatch.createStarted();
+        boolean restartRequested = supervisor.takeRestart();
         if (instanceState.getIsProcessMonitoringSuspended()) {
         	return;
         }
         
         logger.info("Healthy " + instanceState.isHealthy());
         
+        // The processes are looked up live, a sample can be older than a
+        // crash. A storage that answered the last sample is not pinged.
+        Sample sample = latestSample.get();
         instanceState.setStorageProxyProcessAlive(this.dynomiteProcess.dynomiteProcessCheck());
-        instanceState.setStorageProxyAlive(JedisUtils.isAliveWithRetry(config.getDynomiteLocalAddress(), config.getDynomiteClientPort()));            
-        instanceState.setStorageAlive(storageProxy.isAlive());
+        // A hung Dynomite is restarted before it gets checked with retries
+        if (canary.isHung()) {
+            restartHungDynomite();
+        }
+        instanceState.setStorageProxyAlive(healthProber.getDynomite().isAliveWithRetry());
+        // A storage process that is gone is not pinged with retries
+        instanceState.setStorageProcessAlive(storageProcessManager.storageProcessCheck());
+        instanceState.setStorageAlive(instanceState.isStorageProcessAlive()
+                && ((sample != null && sample.hasStorageInfo()) || storageProxy.isAlive()));
         logger.info(String.format("ProcessMonitor state: %s, time elapsted to check (micros): %s",
                         instanceState, stopwatch.elapsed(MICROSECONDS)));
 
@@ -107,20 +139,11 @@ public class ProcessMonitorTask extends Task implements StatefulJob {
             else {
                 logger.info("Detected Dynomite process is not running. Restarting dynomite.");
             }
-            dynomiteProcess.start();
-        }
-        /*
-        if((!instanceState.isStorageProxyAlive() && instanceState.isStorageProxyProcessAlive())) {
-            if (!instanceState.isStorageAlive()) {
-                logger.info("Stopping dynomite process isStorageAlive=false. Restarting dynomite will restart storage");
-            }
-            else {
-                logger.info("Stopping hung dynomite process.");
+            // a supervised Dynomite is restarted when the supervisor asks, with backoff
+            if (!supervisor.isArmed() || restartRequested) {
+                dynomiteProcess.start();
             }
-            dynProcess.stop();
         }
-        */
-
         /*
         if (instanceState.isBootstrapping()) {
             logger.info("Instance is bootstrapping. Skipping further process checks.");
@@ -164,6 +187,25 @@ public class ProcessMonitorTask extends Task implements StatefulJob {
     }
 
 
+    /**
+     * Restart a Dynomite that the {@link DynomiteCanary} found hung: running,
+     * but not serving requests within the SLO.
+     */
+    private void restartHungDynomite() throws IOException {
+        if (instanceState.isStorageProxyProcessAlive()) {
+            if (!instanceState.isStorageAlive()) {
+                logger.info("Stopping dynomite process isStorageAlive=false. Restarting dynomite will restart storage");
+            }
+            else {
+                logger.info("Stopping hung dynomite process.");
+            }
+            dynomiteProcess.stop();
+        }
+        canary.reset();
+        dynomiteProcess.start();
+        instanceState.setStorageProxyProcessAlive(dynomiteProcess.dynomiteProcessCheck());
+    }
+
     // Start every 15 seconds.
     public static TaskTimer getTimer()
     {
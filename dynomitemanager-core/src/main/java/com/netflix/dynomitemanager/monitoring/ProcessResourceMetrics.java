@@ -0,0 +1,50 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.dynomite.DynomiteProcessManager;
+import com.netflix.dynomitemanager.storage.StorageProcessManager;
+
+/**
+ * Samples the resource use of the Dynomite and storage processes on every
+ * tick of the {@link SamplingTask}, so it can be lined up with Dynomite's
+ * latencies, e.g. a latency spike with CPU starvation or fd exhaustion.
+ *
+ * The gauges are named dynomite__process__* and redis__process__*, see
+ * {@link ProcessStats}. The processes are found through the
+ * {@link ProcessLocator}s of their managers, so nothing is looked up twice.
+ * Without /proc nothing is sampled.
+ */
+@Singleton
+public class ProcessResourceMetrics implements Sample.Listener {
+
+    private final ProcessStats dynomite;
+    private final ProcessStats storage;
+    private final MetricSnapshotRegistry snapshots;
+    private final MetricSnapshot.Builder snapshotBuilder = new MetricSnapshot.Builder();
+
+    @Inject
+    public ProcessResourceMetrics(DynomiteProcessManager dynomiteProcess, StorageProcessManager storageProcess,
+            MetricSnapshotRegistry snapshots) {
+        this.snapshots = snapshots;
+        this.dynomite = stats("dynomite__process", dynomiteProcess.getProcessLocator());
+        this.storage = stats("redis__process", storageProcess.getProcessLocator());
+    }
+
+    @Override
+    public synchronized void onSample(Sample sample) {
+        if (dynomite != null) {
+            dynomite.sample();
+            dynomite.addTo(snapshotBuilder);
+        }
+        if (storage != null) {
+            storage.sample();
+            storage.addTo(snapshotBuilder);
+        }
+        snapshots.publish(MetricSnapshotRegistry.Source.PROCESS, snapshotBuilder.build(sample.getTime()));
+    }
+
+    private static ProcessStats stats(String name, ProcessLocator locator) {
+        return locator == null ? null : new ProcessStats(name, locator);
+    }
+}
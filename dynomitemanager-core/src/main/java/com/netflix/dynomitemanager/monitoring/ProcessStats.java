@@ -0,0 +1,344 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.LongGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * OS level resource use of a process, read from /proc/[pid]/stat, status, io
+ * and fd, see proc(5).
+ *
+ * The values are published as gauges named after the process, e.g.
+ * dynomite__process__rss_bytes:
+ *
+ * up - 1 if the process was found, all other gauges are 0 while it is not
+ *
+ * cpu_user_ms, cpu_system_ms - CPU time spent in user and kernel mode
+ *
+ * threads - number of threads
+ *
+ * rss_bytes - resident set size
+ *
+ * open_fds - number of open file descriptors
+ *
+ * voluntary_ctx_switches, involuntary_ctx_switches - context switches, a fast
+ * growing involuntary count points at CPU starvation
+ *
+ * read_bytes, write_bytes - bytes read from and written to storage. Only
+ * readable for processes of the same user, or as root.
+ *
+ * The files of the current pid are kept open and re-read into one buffer, so
+ * a sample allocates nothing but the listing of the fd directory.
+ *
+ * Not thread safe.
+ */
+public class ProcessStats {
+
+    // USER_HZ, the unit of the CPU times in stat, is 100 on Linux
+    private static final long MS_PER_TICK = 10;
+
+    // fields of stat, counted from the state which is field 3
+    private static final int UTIME_FIELD = 14 - 3;
+    private static final int STIME_FIELD = 15 - 3;
+    private static final int THREADS_FIELD = 20 - 3;
+
+    private static final byte[] VM_RSS = bytes("VmRSS:");
+    private static final byte[] VOLUNTARY = bytes("voluntary_ctxt_switches:");
+    private static final byte[] NONVOLUNTARY = bytes("nonvoluntary_ctxt_switches:");
+    private static final byte[] READ_BYTES = bytes("read_bytes:");
+    private static final byte[] WRITE_BYTES = bytes("write_bytes:");
+
+    private final File procRoot;
+    private final ProcessLocator locator;
+
+    private final byte[] buf = new byte[4096];
+    private int pid = -1;
+    private RandomAccessFile stat;
+    private RandomAccessFile status;
+    private RandomAccessFile io;
+    private File fdDir;
+
+    private final LongGauge up;
+    private final LongGauge cpuUser;
+    private final LongGauge cpuSystem;
+    private final LongGauge threads;
+    private final LongGauge rss;
+    private final LongGauge openFds;
+    private final LongGauge voluntaryCtxSwitches;
+    private final LongGauge involuntaryCtxSwitches;
+    private final LongGauge readBytes;
+    private final LongGauge writeBytes;
+    private final LongGauge[] all;
+
+    /**
+     * @param name
+     *            prefix of the gauges, e.g. dynomite__process
+     * @param locator
+     *            finds the process
+     */
+    public ProcessStats(String name, ProcessLocator locator) {
+        this(new File("/proc"), name, locator);
+    }
+
+    public ProcessStats(File procRoot, String name, ProcessLocator locator) {
+        this.procRoot = procRoot;
+        this.locator = locator;
+        up = register(name + "__up");
+        cpuUser = register(name + "__cpu_user_ms");
+        cpuSystem = register(name + "__cpu_system_ms");
+        threads = register(name + "__threads");
+        rss = register(name + "__rss_bytes");
+        openFds = register(name + "__open_fds");
+        voluntaryCtxSwitches = register(name + "__voluntary_ctx_switches");
+        involuntaryCtxSwitches = register(name + "__involuntary_ctx_switches");
+        readBytes = register(name + "__read_bytes");
+        writeBytes = register(name + "__write_bytes");
+        all = new LongGauge[] { up, cpuUser, cpuSystem, threads, rss, openFds, voluntaryCtxSwitches,
+                involuntaryCtxSwitches, readBytes, writeBytes };
+    }
+
+    /**
+     * Read the current resource use of the process into the gauges.
+     *
+     * @return false if the process is not running
+     */
+    public boolean sample() {
+        int current = locator.getPid();
+        if (current != pid) {
+            open(current);
+        }
+        if (pid <= 0 || !readStat()) {
+            clear();
+            return false;
+        }
+        readStatus();
+        readIo();
+        String[] fds = fdDir.list();
+        openFds.getNumber().set(fds == null ? 0 : fds.length);
+        up.getNumber().set(1);
+        return true;
+    }
+
+    /**
+     * Add the gauges to a snapshot.
+     */
+    public void addTo(MetricSnapshot.Builder builder) {
+        for (LongGauge gauge : all) {
+            builder.gauge(gauge.getConfig().getName(), gauge.getNumber().get());
+        }
+    }
+
+    public long getCpuUserMs() {
+        return cpuUser.getNumber().get();
+    }
+
+    public long getCpuSystemMs() {
+        return cpuSystem.getNumber().get();
+    }
+
+    public long getThreads() {
+        return threads.getNumber().get();
+    }
+
+    public long getRssBytes() {
+        return rss.getNumber().get();
+    }
+
+    public long getOpenFds() {
+        return openFds.getNumber().get();
+    }
+
+    public long getVoluntaryCtxSwitches() {
+        return voluntaryCtxSwitches.getNumber().get();
+    }
+
+    public long getInvoluntaryCtxSwitches() {
+        return involuntaryCtxSwitches.getNumber().get();
+    }
+
+    public long getReadBytes() {
+        return readBytes.getNumber().get();
+    }
+
+    public long getWriteBytes() {
+        return writeBytes.getNumber().get();
+    }
+
+    private boolean readStat() {
+        int n = read(stat);
+        // the command in (parentheses) may contain anything, fields start
+        // after the last ')'
+        int i = n - 1;
+        while (i >= 0 && buf[i] != ')') {
+            i--;
+        }
+        if (i < 0) {
+            return false;
+        }
+        int field = 0;
+        i += 2;
+        while (i < n && field <= THREADS_FIELD) {
+            if (field == UTIME_FIELD) {
+                cpuUser.getNumber().set(parseLong(i, n) * MS_PER_TICK);
+            } else if (field == STIME_FIELD) {
+                cpuSystem.getNumber().set(parseLong(i, n) * MS_PER_TICK);
+            } else if (field == THREADS_FIELD) {
+                threads.getNumber().set(parseLong(i, n));
+            }
+            while (i < n && buf[i] != ' ') {
+                i++;
+            }
+            i++;
+            field++;
+        }
+        return field > THREADS_FIELD;
+    }
+
+    private void readStatus() {
+        int n = read(status);
+        for (int i = 0; i < n; i = nextLine(i, n)) {
+            if (startsWith(i, n, VM_RSS)) {
+                rss.getNumber().set(parseLong(i + VM_RSS.length, n) * 1024);
+            } else if (startsWith(i, n, VOLUNTARY)) {
+                voluntaryCtxSwitches.getNumber().set(parseLong(i + VOLUNTARY.length, n));
+            } else if (startsWith(i, n, NONVOLUNTARY)) {
+                involuntaryCtxSwitches.getNumber().set(parseLong(i + NONVOLUNTARY.length, n));
+            }
+        }
+    }
+
+    private void readIo() {
+        if (io == null) {
+            return;
+        }
+        int n = read(io);
+        for (int i = 0; i < n; i = nextLine(i, n)) {
+            if (startsWith(i, n, READ_BYTES)) {
+                readBytes.getNumber().set(parseLong(i + READ_BYTES.length, n));
+            } else if (startsWith(i, n, WRITE_BYTES)) {
+                writeBytes.getNumber().set(parseLong(i + WRITE_BYTES.length, n));
+            }
+        }
+    }
+
+    private void open(int newPid) {
+        close();
+        pid = newPid;
+        if (pid <= 0) {
+            return;
+        }
+        File dir = new File(procRoot, Integer.toString(pid));
+        stat = open(new File(dir, "stat"));
+        status = open(new File(dir, "status"));
+        // io is only readable by the owner of the process
+        io = open(new File(dir, "io"));
+        fdDir = new File(dir, "fd");
+        if (stat == null) {
+            close();
+        }
+    }
+
+    private void close() {
+        stat = close(stat);
+        status = close(status);
+        io = close(io);
+        fdDir = null;
+        pid = -1;
+    }
+
+    private void clear() {
+        for (LongGauge gauge : all) {
+            gauge.getNumber().set(0);
+        }
+    }
+
+    /**
+     * Re-read an open file from the start into the buffer.
+     *
+     * @return the number of bytes read, 0 if the file is gone or not open
+     */
+    private int read(RandomAccessFile file) {
+        if (file == null) {
+            return 0;
+        }
+        try {
+            file.seek(0);
+            int n = 0;
+            int r;
+            while (n < buf.length && (r = file.read(buf, n, buf.length - n)) > 0) {
+                n += r;
+            }
+            return n;
+        } catch (IOException e) {
+            // ESRCH once the process exited
+            return 0;
+        }
+    }
+
+    private boolean startsWith(int i, int n, byte[] prefix) {
+        if (i + prefix.length > n) {
+            return false;
+        }
+        for (int j = 0; j < prefix.length; j++) {
+            if (buf[i + j] != prefix[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int nextLine(int i, int n) {
+        while (i < n && buf[i] != '\n') {
+            i++;
+        }
+        return i + 1;
+    }
+
+    /**
+     * Parse the number at i, after any blanks.
+     */
+    private long parseLong(int i, int n) {
+        while (i < n && (buf[i] == ' ' || buf[i] == '\t')) {
+            i++;
+        }
+        long value = 0;
+        for (; i < n && buf[i] >= '0' && buf[i] <= '9'; i++) {
+            value = value * 10 + (buf[i] - '0');
+        }
+        return value;
+    }
+
+    private static RandomAccessFile open(File file) {
+        try {
+            return new RandomAccessFile(file, "r");
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static RandomAccessFile close(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        return null;
+    }
+
+    private static LongGauge register(String name) {
+        LongGauge gauge = new LongGauge(MonitorConfig.builder(name).build());
+        DefaultMonitorRegistry.getInstance().register(gauge);
+        return gauge;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,171 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.util.Arrays;
+
+/**
+ * Turns samples of monotonic counters into per-second rates.
+ *
+ * Counters are identified by an int key, e.g.
+ * {@link DynomiteInfoParser.MetricName#getId()}, and mapped to a slot by an
+ * open addressing map. The previous value and sample time of each slot are
+ * kept in primitive arrays, so computing a rate does not allocate.
+ *
+ * A counter that goes backwards was reset, e.g. because Dynomite restarted.
+ * Its new value is then taken as the increment since the reset, instead of
+ * producing a negative rate.
+ *
+ * Instances are not thread safe.
+ */
+public class RateCalculator {
+
+    private static final int FREE = 0;
+
+    // key -> slot + 1, 0 marks a free entry
+    private int[] keys = new int[64];
+    private int[] slotsByKey = new int[64];
+    private int size;
+
+    private long[] lastValues = new long[16];
+    private long[] lastTimes = new long[16];
+    private int slotCount;
+    // slots of removed keys, reused before new ones are added
+    private int[] freeSlots = new int[0];
+    private int freeCount;
+
+    /**
+     * @return the slot of a key, or -1 if the key is not tracked
+     */
+    public int find(int key) {
+        int mask = keys.length - 1;
+        for (int i = mix(key) & mask; slotsByKey[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return slotsByKey[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Start tracking a key.
+     *
+     * @return the slot of the key
+     */
+    public int add(int key) {
+        int slot = find(key);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = slotCount++;
+            if (slot == lastValues.length) {
+                lastValues = Arrays.copyOf(lastValues, slot * 2);
+                lastTimes = Arrays.copyOf(lastTimes, slot * 2);
+            }
+        }
+        lastTimes[slot] = -1;
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        put(key, slot);
+        size++;
+        return slot;
+    }
+
+    /**
+     * Stop tracking a key. Its slot may be handed out again by
+     * {@link #add(int)}.
+     *
+     * @return the slot the key had, or -1 if the key was not tracked
+     */
+    public int remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return -1;
+        }
+        // rebuild instead of shifting entries around, removals are rare
+        int[] oldKeys = keys;
+        int[] oldSlots = slotsByKey;
+        keys = new int[oldKeys.length];
+        slotsByKey = new int[oldSlots.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldSlots[i] != FREE && oldKeys[i] != key) {
+                put(oldKeys[i], oldSlots[i] - 1);
+            }
+        }
+        size--;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(8, freeCount * 2));
+        }
+        freeSlots[freeCount++] = slot;
+        return slot;
+    }
+
+    /**
+     * Record a new sample of a slot.
+     *
+     * @param slot
+     * @param value
+     *            the counter value
+     * @param timeMs
+     *            the time of the sample in ms
+     * @return the rate per second since the previous sample, or NaN for the
+     *         first sample of a slot or a sample that is not newer than the
+     *         previous one
+     */
+    public double update(int slot, long value, long timeMs) {
+        long lastTime = lastTimes[slot];
+        long lastValue = lastValues[slot];
+        lastValues[slot] = value;
+        lastTimes[slot] = timeMs;
+        if (lastTime < 0 || timeMs <= lastTime) {
+            return Double.NaN;
+        }
+        // a counter that went backwards restarted from 0
+        long delta = value >= lastValue ? value - lastValue : value;
+        return delta * 1000.0 / (timeMs - lastTime);
+    }
+
+    /**
+     * Forget the previous samples, e.g. when the counters are known to have
+     * been reset. The next sample of every slot yields no rate.
+     */
+    public void reset() {
+        Arrays.fill(lastTimes, 0, slotCount, -1);
+    }
+
+    /**
+     * @return one more than the highest slot handed out so far
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    private void put(int key, int slot) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (slotsByKey[i] != FREE) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        slotsByKey[i] = slot + 1;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldSlots = slotsByKey;
+        keys = new int[capacity];
+        slotsByKey = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldSlots[i] != FREE) {
+                put(oldKeys[i], oldSlots[i] - 1);
+            }
+        }
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
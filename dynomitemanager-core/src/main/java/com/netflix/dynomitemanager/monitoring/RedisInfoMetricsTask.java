@@ -1,11 +1,8 @@
 package com.netflix.dynomitemanager.monitoring;
 
-import java.io.ByteArrayInputStream;
-import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,7 +12,6 @@ import redis.clients.jedis.Jedis;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.netflix.dynomitemanager.storage.RedisInfoParser;
-import com.netflix.dynomitemanager.storage.StorageProxy;
 import com.netflix.nfsidecar.scheduler.SimpleTimer;
 import com.netflix.nfsidecar.scheduler.Task;
 import com.netflix.nfsidecar.scheduler.TaskTimer;
@@ -24,124 +20,165 @@ import com.netflix.servo.monitor.Counter;
 import com.netflix.servo.monitor.LongGauge;
 import com.netflix.servo.monitor.MonitorConfig;
 import com.netflix.servo.monitor.Monitors;
-import com.netflix.servo.monitor.NumericMonitor;
 
 @Singleton
-public class RedisInfoMetricsTask extends Task {
+public class RedisInfoMetricsTask extends Task implements Sample.Listener {
 
     private static final Logger Logger = LoggerFactory.getLogger(RedisInfoMetricsTask.class);
     public static final String TaskName = "Redis-Info-Task";
 
+    // instantaneous_ops_per_sec is a gauge, it is not listed here
     private static final Set<String> COUNTER_LIST = new HashSet<String>();
 
-    static {
-        COUNTER_LIST.add("Redis_Stats_instantaneous_ops_per_sec");
-    }
+    private static final String UPTIME = "Redis_Server_uptime_in_seconds";
+
+    private static final LocalRedisConnection.Command<String> INFO = new LocalRedisConnection.Command<String>() {
+        @Override
+        public String execute(Jedis jedis) {
+            return jedis.info();
+        }
+    };
+
+    private final RedisInfoParser infoParser = new RedisInfoParser();
+    private final RedisInfoParser.Snapshot snapshot = infoParser.newSnapshot();
+
+    // monitors by parser slot, created the first time a slot has a value
+    private LongGauge[] gauges = new LongGauge[0];
+    private Counter[] counters = new Counter[0];
+    private long[] counterValues = new long[0];
 
-    private final ConcurrentHashMap<String, LongGauge> redisInfoGaugeMetrics = new ConcurrentHashMap<String, LongGauge>();
-    private final ConcurrentHashMap<String, NumericMonitor<Number>> redisInfoCounterMap = new ConcurrentHashMap<String, NumericMonitor<Number>>();
+    // a restart of the storage engine resets its counters
+    private final CounterResetDetector resetDetector = new CounterResetDetector("Redis_counter_resets");
+    private final int uptimeSlot = infoParser.findSlot(UPTIME);
 
-    private JedisFactory jedisFactory;
-    private StorageProxy storageProxy;
+    private final LocalRedisConnection connection;
+    private final MetricSnapshotRegistry snapshots;
+    private final MetricSnapshot.Builder snapshotBuilder = new MetricSnapshot.Builder();
 
     /**
      * Default constructor
      * 
-     * @param storageProxy
-     * @param jedisFactory
+     * @param connection
+     * @param snapshots
      */
     @Inject
-    public RedisInfoMetricsTask(StorageProxy storageProxy, JedisFactory jedisFactory) {
-        this.jedisFactory = jedisFactory;
-        this.storageProxy = storageProxy;
+    public RedisInfoMetricsTask(LocalRedisConnection connection, MetricSnapshotRegistry snapshots) {
+        this.connection = connection;
+        this.snapshots = snapshots;
     }
 
     @Override
     public void execute() throws Exception {
 
-        Jedis jedis = jedisFactory.newInstance(storageProxy.getIpAddress(),storageProxy.getPort());
         try {
-            jedis.connect();
-            String s = jedis.info();
+            String s = connection.execute(INFO);
+            process(s, System.currentTimeMillis());
+        } catch (Exception e) {
+            Logger.error("Could not get jedis info metrics", e);
+        }
+    }
 
-            InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(s.getBytes()));
-            RedisInfoParser infoParser = new RedisInfoParser();
-            Map<String, Long> metrics = infoParser.parse(reader);
+    /**
+     * Same as {@link #execute()}, for an INFO fetched by the
+     * {@link SamplingTask}.
+     */
+    @Override
+    public void onSample(Sample sample) {
+        if (sample.hasStorageInfo()) {
+            process(sample.getStorageInfo(), sample.getTime());
+        }
+    }
 
-            processMetrics(metrics);
+    /**
+     * @return the value of a field of the last INFO, e.g.
+     *         Redis_Clients_blocked_clients, 0 if it had none
+     */
+    public long getValue(String name) {
+        synchronized (snapshot) {
+            Long value = snapshot.get(name);
+            return value == null ? 0 : value;
+        }
+    }
 
-        } catch (Exception e) {
-            Logger.error("Could not get jedis info metrics", e);
-        } finally {
-            jedis.disconnect();
+    private void process(String info, long time) {
+        // the parser and the monitor arrays are reused between runs
+        synchronized (snapshot) {
+            infoParser.parse(info, snapshot);
+            processMetrics();
+            publishSnapshot(time);
         }
     }
 
-    private void processMetrics(Map<String, Long> metrics) {
+    private void processMetrics() {
+        int size = snapshot.size();
+        if (size > gauges.length) {
+            gauges = Arrays.copyOf(gauges, size);
+            counters = Arrays.copyOf(counters, size);
+            counterValues = Arrays.copyOf(counterValues, size);
+        }
 
-        for (String key : metrics.keySet()) {
+        boolean reset = snapshot.isPresent(uptimeSlot) && resetDetector.update(snapshot.get(uptimeSlot));
 
-            Long value = metrics.get(key);
+        for (int slot = 0; slot < size; slot++) {
+            if (!snapshot.isPresent(slot)) {
+                continue;
+            }
 
-            if (COUNTER_LIST.contains(key)) {
-                processCounterMetric(key, value);
+            long value = snapshot.get(slot);
+
+            if (COUNTER_LIST.contains(snapshot.getName(slot))) {
+                processCounterMetric(slot, value, reset);
             } else {
-                processGaugeMetric(key, value);
+                processGaugeMetric(slot, value);
             }
         }
     }
 
-    private void processGaugeMetric(String key, Long value) {
-        if (Logger.isDebugEnabled()) {
-            Logger.debug("Process gauge: " + key + " " + value);
+    /**
+     * Publish the values of this INFO for the OpenMetrics endpoint. Counters
+     * are published with their monotonic value, same as the servo counters.
+     */
+    private void publishSnapshot(long time) {
+        int size = snapshot.size();
+        for (int slot = 0; slot < size; slot++) {
+            if (counters[slot] != null) {
+                snapshotBuilder.counter(snapshot.getName(slot), counters[slot].getValue().longValue());
+            } else if (snapshot.isPresent(slot)) {
+                snapshotBuilder.gauge(snapshot.getName(slot), snapshot.get(slot));
+            }
         }
+        snapshots.publish(MetricSnapshotRegistry.Source.REDIS, snapshotBuilder.build(time));
+    }
 
-        LongGauge oldGauge = redisInfoGaugeMetrics.get(key);
-        if (oldGauge != null) {
-            oldGauge.set(value);
-            return;
+    private void processGaugeMetric(int slot, long value) {
+        if (Logger.isDebugEnabled()) {
+            Logger.debug("Process gauge: " + snapshot.getName(slot) + " " + value);
         }
 
-        // create a new long gauge
-        LongGauge newGauge = new LongGauge(MonitorConfig.builder(key).build());
-
-        oldGauge = redisInfoGaugeMetrics.putIfAbsent(key, newGauge);
-        if (oldGauge == null) {
-            newGauge.set(value);
-            DefaultMonitorRegistry.getInstance().register(newGauge);
-        } else {
-            // someone else beat us to it. just use the oldGauge
-            oldGauge.set(value);
+        LongGauge gauge = gauges[slot];
+        if (gauge == null) {
+            gauge = new LongGauge(MonitorConfig.builder(snapshot.getName(slot)).build());
+            gauges[slot] = gauge;
+            DefaultMonitorRegistry.getInstance().register(gauge);
         }
+        gauge.getNumber().set(value);
     }
 
-    private void processCounterMetric(String counterName, Long val) {
+    private void processCounterMetric(int slot, long val, boolean reset) {
 
         if (Logger.isDebugEnabled()) {
-            Logger.debug("Process counter: " + counterName + " " + val);
+            Logger.debug("Process counter: " + snapshot.getName(slot) + " " + val);
         }
 
-        NumericMonitor<Number> counter = redisInfoCounterMap.get(counterName);
-        if (counter != null) {
-            long increment = val - counter.getValue().longValue();
-            ((Counter) counter).increment(increment);
-            return;
-        }
-
-        counter = Monitors.newCounter(counterName);
-        NumericMonitor<Number> oldCounter = redisInfoCounterMap.putIfAbsent(counterName, counter);
-
-        if (oldCounter == null) {
-            // this is the 1st time
+        Counter counter = counters[slot];
+        if (counter == null) {
+            counter = Monitors.newCounter(snapshot.getName(slot));
+            counters[slot] = counter;
             DefaultMonitorRegistry.getInstance().register(counter);
-        } else {
-            // someone beat us to it, take their obj instead
-            counter = oldCounter;
         }
 
-        long increment = val - counter.getValue().longValue();
-        ((Counter) counter).increment(increment);
-
+        counter.increment(CounterResetDetector.increment(counterValues[slot], val, reset));
+        counterValues[slot] = val;
     }
 
     @Override
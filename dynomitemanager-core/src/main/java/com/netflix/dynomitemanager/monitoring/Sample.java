@@ -0,0 +1,68 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/**
+ * What one tick of the {@link SamplingTask} fetched: Dynomite's /info payload
+ * and the storage engine's INFO, taken at the same time.
+ *
+ * A source that could not be fetched is null. Samples are immutable and
+ * shared by all listeners, each listener parses what it needs.
+ */
+public final class Sample {
+
+    /**
+     * Consumer of the samples of the {@link SamplingTask}. Listeners are
+     * called one after the other on the sampling thread, and should not block.
+     */
+    public interface Listener {
+        void onSample(Sample sample);
+    }
+
+    private final long time;
+    private final byte[] dynomiteInfo;
+    private final String storageInfo;
+
+    public Sample(long time, byte[] dynomiteInfo, String storageInfo) {
+        this.time = time;
+        this.dynomiteInfo = dynomiteInfo;
+        this.storageInfo = storageInfo;
+    }
+
+    /**
+     * @return the time the sample was taken in ms, shared by all sources
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return true if Dynomite answered /info, i.e. the process is up
+     */
+    public boolean hasDynomiteInfo() {
+        return dynomiteInfo != null;
+    }
+
+    /**
+     * @return a new stream over the /info payload, or null if Dynomite did not
+     *         answer
+     */
+    public InputStream openDynomiteInfo() {
+        return dynomiteInfo == null ? null : new ByteArrayInputStream(dynomiteInfo);
+    }
+
+    /**
+     * @return true if the storage engine answered INFO
+     */
+    public boolean hasStorageInfo() {
+        return storageInfo != null;
+    }
+
+    /**
+     * @return the output of INFO, or null if the storage engine did not answer
+     */
+    public String getStorageInfo() {
+        return storageInfo;
+    }
+}
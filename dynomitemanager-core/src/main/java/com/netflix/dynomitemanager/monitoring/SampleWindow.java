@@ -0,0 +1,144 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.util.Arrays;
+
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.LongGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Fixed size ring buffer of samples for one reporting window.
+ *
+ * Samples are recorded into a preallocated array. When the window is full the
+ * oldest samples are overwritten. At the end of a window the samples are
+ * drained into a caller provided array, sorted in place, and summarized. Nothing
+ * is allocated per sample or per window.
+ */
+public class SampleWindow {
+
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    public SampleWindow(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        samples = new long[capacity];
+    }
+
+    public int capacity() {
+        return samples.length;
+    }
+
+    public synchronized void record(long value) {
+        samples[next] = value;
+        next = next + 1 == samples.length ? 0 : next + 1;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    /**
+     * Move the samples of the current window into the given array, sorted in
+     * ascending order, and start a new window.
+     *
+     * @param sorted
+     *            an array of at least {@link #capacity()} elements
+     * @return the number of samples copied
+     */
+    public synchronized int drain(long[] sorted) {
+        int n = count;
+        // the order of the samples does not matter once they get sorted
+        System.arraycopy(samples, 0, sorted, 0, n);
+        next = 0;
+        count = 0;
+        Arrays.sort(sorted, 0, n);
+        return n;
+    }
+
+    /**
+     * Nearest rank percentile of sorted samples.
+     *
+     * @param sorted
+     * @param n
+     *            number of samples, must be positive
+     * @param percentile
+     *            between 0 and 100
+     */
+    public static long percentile(long[] sorted, int n, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * n);
+        return sorted[Math.min(Math.max(rank, 1), n) - 1];
+    }
+
+    /**
+     * Servo gauges publishing the summary of a window as name__min,
+     * name__max, name__p50, name__p90, name__p99 and name__samples.
+     */
+    public static class Gauges {
+
+        private final LongGauge min;
+        private final LongGauge max;
+        private final LongGauge p50;
+        private final LongGauge p90;
+        private final LongGauge p99;
+        private final LongGauge samples;
+
+        public Gauges(String name) {
+            min = register(name + "__min");
+            max = register(name + "__max");
+            p50 = register(name + "__p50");
+            p90 = register(name + "__p90");
+            p99 = register(name + "__p99");
+            samples = register(name + "__samples");
+        }
+
+        /**
+         * Publish the summary of sorted samples. An empty window is published
+         * as 0.
+         */
+        public void update(long[] sorted, int n) {
+            samples.getNumber().set(n);
+            if (n == 0) {
+                min.getNumber().set(0);
+                max.getNumber().set(0);
+                p50.getNumber().set(0);
+                p90.getNumber().set(0);
+                p99.getNumber().set(0);
+                return;
+            }
+            min.getNumber().set(sorted[0]);
+            max.getNumber().set(sorted[n - 1]);
+            p50.getNumber().set(percentile(sorted, n, 50));
+            p90.getNumber().set(percentile(sorted, n, 90));
+            p99.getNumber().set(percentile(sorted, n, 99));
+        }
+
+        /**
+         * Add the summary to a snapshot.
+         */
+        public void addTo(MetricSnapshot.Builder builder) {
+            for (LongGauge gauge : new LongGauge[] { min, max, p50, p90, p99, samples }) {
+                builder.gauge(gauge.getConfig().getName(), gauge.getNumber().get());
+            }
+        }
+
+        public long getMax() {
+            return max.getNumber().get();
+        }
+
+        public long getP50() {
+            return p50.getNumber().get();
+        }
+
+        public long getP99() {
+            return p99.getNumber().get();
+        }
+
+        private static LongGauge register(String name) {
+            LongGauge gauge = new LongGauge(MonitorConfig.builder(name).build());
+            DefaultMonitorRegistry.getInstance().register(gauge);
+            return gauge;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.config.DynamicStringProperty;
+import com.netflix.dynomitemanager.dynomite.DynomiteAdminClient;
+import com.netflix.nfsidecar.scheduler.NamedThreadPoolExecutor;
+import com.netflix.nfsidecar.scheduler.SimpleTimer;
+import com.netflix.nfsidecar.scheduler.Task;
+import com.netflix.nfsidecar.scheduler.TaskTimer;
+
+/**
+ * Fetches Dynomite's /info and the storage engine's INFO once per tick and
+ * hands the result to every {@link Sample.Listener}.
+ *
+ * Both sources are fetched in parallel and stamped with the same time, so
+ * metrics computed across sources line up. The metrics tasks
+ * ({@link ServoMetricsTask}, {@link RedisInfoMetricsTask}) are fed from here
+ * instead of polling on their own triggers, and the last sample is kept in
+ * {@link LatestSample} for the health checks. The resource use of the
+ * processes is sampled on the same tick by {@link ProcessResourceMetrics}, and
+ * the PING round trip times of the {@link HealthProber} are published. The
+ * {@link HealthScorer} then scores the node from all of them.
+ */
+@Singleton
+public class SamplingTask extends Task {
+
+    private static final Logger logger = LoggerFactory.getLogger(SamplingTask.class);
+    public static final String TaskName = "Sampling-Task";
+    // the rate the metrics tasks used to poll Dynomite at
+    public static final long INTERVAL_MS = 15 * 1000;
+
+    // the storage fetch may not hold up a tick longer than this
+    private static final long STORAGE_TIMEOUT_MS = 10 * 1000;
+
+    private final DynamicStringProperty serverMetricsUrl = DynamicPropertyFactory.getInstance()
+            .getStringProperty("florida.metrics.url", "http://localhost:22222/info");
+
+    private static final LocalRedisConnection.Command<String> INFO = new LocalRedisConnection.Command<String>() {
+        @Override
+        public String execute(Jedis jedis) {
+            return jedis.info();
+        }
+    };
+
+    private final DynomiteAdminClient adminClient;
+    private final LocalRedisConnection connection;
+    private final LatestSample latestSample;
+    private final Sample.Listener[] listeners;
+
+    private final ExecutorService executor = new NamedThreadPoolExecutor(1, "sampler");
+    private final Callable<String> storageFetch = new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+            return connection.execute(INFO);
+        }
+    };
+    private final DynomiteAdminClient.ResponseHandler<byte[]> dynomiteHandler = new DynomiteAdminClient.ResponseHandler<byte[]>() {
+        @Override
+        public byte[] handle(int statusCode, InputStream body) throws Exception {
+            if (statusCode != 200 || body == null) {
+                logger.error("Got status code " + statusCode + " from " + serverMetricsUrl.get());
+                return null;
+            }
+            return IOUtils.toByteArray(body);
+        }
+    };
+
+    // a slow source must not stack up ticks behind it
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    @Inject
+    public SamplingTask(DynomiteAdminClient adminClient, LocalRedisConnection connection, LatestSample latestSample,
+            ServoMetricsTask servoMetrics, RedisInfoMetricsTask redisMetrics, ProcessResourceMetrics processMetrics,
+            HealthProber healthProber, DynomiteCanary canary, HealthScorer healthScorer) {
+        this.adminClient = adminClient;
+        this.connection = connection;
+        this.latestSample = latestSample;
+        this.listeners = new Sample.Listener[] { servoMetrics, redisMetrics, processMetrics, healthProber, canary,
+                // last, it scores what the others processed
+                healthScorer };
+    }
+
+    public static TaskTimer getTimer() {
+        return new SimpleTimer(TaskName, INTERVAL_MS);
+    }
+
+    @Override
+    public String getName() {
+        return TaskName;
+    }
+
+    @Override
+    public void execute() throws Exception {
+        if (!running.compareAndSet(false, true)) {
+            logger.warn("Previous sample is still being taken, skipping this tick");
+            return;
+        }
+        try {
+            Sample sample = take();
+            latestSample.set(sample);
+            for (Sample.Listener listener : listeners) {
+                try {
+                    listener.onSample(sample);
+                } catch (Exception e) {
+                    logger.error("Failed to process sample in " + listener.getClass().getSimpleName(), e);
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Sample take() {
+        long time = System.currentTimeMillis();
+        Future<String> storage = executor.submit(storageFetch);
+
+        byte[] dynomiteInfo = null;
+        try {
+            dynomiteInfo = adminClient.get(serverMetricsUrl.get(), dynomiteHandler);
+        } catch (Exception e) {
+            logger.error("Failed to get metrics from Dynomite's REST endpoint: " + serverMetricsUrl.get(), e);
+        }
+
+        String storageInfo = null;
+        try {
+            storageInfo = storage.get(STORAGE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            storage.cancel(true);
+            logger.error("Could not get storage info", e);
+        }
+
+        return new Sample(time, dynomiteInfo, storageInfo);
+    }
+}
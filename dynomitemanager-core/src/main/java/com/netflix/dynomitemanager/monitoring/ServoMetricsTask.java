@@ -2,25 +2,41 @@ package com.netflix.dynomitemanager.monitoring;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicLongProperty;
 import com.netflix.config.DynamicPropertyFactory;
 import com.netflix.config.DynamicStringProperty;
 import com.netflix.dynomitemanager.config.InstanceState;
+import com.netflix.dynomitemanager.dynomite.DynomiteAdminClient;
+import com.netflix.nfsidecar.identity.AppsInstance;
+import com.netflix.nfsidecar.identity.InstanceIdentity;
 import com.netflix.nfsidecar.scheduler.SimpleTimer;
 import com.netflix.nfsidecar.scheduler.Task;
 import com.netflix.nfsidecar.scheduler.TaskTimer;
 import com.netflix.servo.DefaultMonitorRegistry;
 import com.netflix.servo.monitor.*;
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.io.IOUtils;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -47,11 +63,39 @@ import java.util.concurrent.atomic.AtomicReference;
  * they don't have to be recreated all the time. Hence this class maintains
  * state and needs to be a singleton.
  * 
+ * 5. The response body is parsed straight off the http stream with a
+ * {@link DynomiteInfoParser}. The parser caches the flattened metric names and
+ * the monitors they map to, so a steady state tick does not build any Strings
+ * or json objects.
+ * 
+ * 6. The per peer request and response counters are also published as per
+ * second rates, e.g. dynomite__10.0.0.1:8101:rack1:dc1:1234__requests__rate. Rates are
+ * computed by a {@link RateCalculator} from the previous sample of each
+ * counter.
+ * 
+ * 7. A Dynomite restart is detected by the uptime going backwards. All counters
+ * of that response are then counted from 0, so the published counters stay
+ * monotonic. Restarts are counted in dynomite__counter_resets.
+ * 
+ * 8. Per peer monitors are controlled through fast properties. With
+ * 'florida.metrics.peer.aggregation' set to 'rack' or 'dc' the stats of the
+ * peers found in the cluster topology are summed up per rack or datacenter,
+ * e.g. dynomite__rack__us-east-1__us-east-1c__requests. Monitors of peers that
+ * have not been reported for 'florida.metrics.peer.expiry.ms' are unregistered.
+ * No new monitors are created once 'florida.metrics.max.monitors' exist, the
+ * skipped values are counted in dynomite__metrics__dropped.
+ * 
+ * 9. At the end of every poll the monitors and the {@link InstanceState} are
+ * published as {@link MetricSnapshot}s, which back the OpenMetrics endpoint.
+ * 
+ * 10. The payload is normally fetched by the {@link SamplingTask}, together
+ * with the storage INFO, and handed to {@link #onSample(Sample)}.
+ * 
  * 
  *
  */
 @Singleton
-public class ServoMetricsTask extends Task {
+public class ServoMetricsTask extends Task implements Sample.Listener {
 
     private static final Logger Logger = LoggerFactory.getLogger(ServoMetricsTask.class);
     public static final String TaskName = "Servo-Metrics-Task";
@@ -64,6 +108,16 @@ public class ServoMetricsTask extends Task {
     private final DynamicStringProperty GaugeWhitelist = DynamicPropertyFactory.getInstance()
             .getStringProperty("florida.metrics.gauge.whitelist", "");
 
+    // Fast Properties for controlling the per peer monitors
+    private final DynamicStringProperty PeerAggregation = DynamicPropertyFactory.getInstance()
+            .getStringProperty("florida.metrics.peer.aggregation", "none");
+    private final DynamicIntProperty MaxMonitors = DynamicPropertyFactory.getInstance()
+            .getIntProperty("florida.metrics.max.monitors", 10000);
+    private final DynamicLongProperty PeerExpiry = DynamicPropertyFactory.getInstance()
+            .getLongProperty("florida.metrics.peer.expiry.ms", 10 * 60 * 1000);
+
+    private static final long TOPOLOGY_REFRESH_MS = 5 * 60 * 1000;
+
     // The gauge whitelist that is being maintained. Note that we keep a
     // reference to it that can be update dynamically
     // if the fast property is changed externally
@@ -73,14 +127,79 @@ public class ServoMetricsTask extends Task {
     private final ConcurrentHashMap<String, NumericMonitor<Number>> metricMap = new ConcurrentHashMap<String, NumericMonitor<Number>>();
 
     private final InstanceState state;
+    private final DynomiteAdminClient adminClient;
+    private final InstanceIdentity identity;
+    private final MetricSnapshotRegistry snapshots;
+    private final MetricSnapshot.Builder dynomiteSnapshot = new MetricSnapshot.Builder();
+    private final MetricSnapshot.Builder instanceSnapshot = new MetricSnapshot.Builder();
+
+    private final PeerTopology topology = new PeerTopology();
+    private long topologyRefreshed;
+    private final Counter droppedMonitors = new BasicCounter(
+            MonitorConfig.builder("dynomite__metrics__dropped").build());
+
+    // Gauges that are always reported at the top level of the payload. A field
+    // that is missing from a response is reported as 0.
+    static final String[] SERVICE_GAUGES = { "latency_max", "latency_999th", "latency_99th", "latency_95th",
+            "latency_mean", "payload_size_max", "payload_size_999th", "payload_size_99th", "payload_size_95th",
+            "payload_size_mean", "alloc_msgs", "free_msgs", "average_cross_region_rtt", "99_cross_region_rtt",
+            "average_cross_zone_latency", "99_cross_zone_latency", "average_server_latency", "99_server_latency",
+            "average_cross_region_queue_wait", "99_cross_region_queue_wait", "average_cross_zone_queue_wait",
+            "99_cross_zone_queue_wait", "average_server_queue_wait", "99_server_queue_wait", "client_out_queue_99",
+            "server_in_queue_99", "server_out_queue_99", "dnode_client_out_queue_99", "peer_in_queue_99",
+            "peer_out_queue_99", "remote_peer_in_queue_99", "remote_peer_out_queue_99", "alloc_mbufs",
+            "free_mbufs" };
+
+    private static final String UPTIME = "uptime";
+
+    // Counters that are also published as per second rates
+    private static final Set<String> RATE_FIELDS = new HashSet<String>(
+            Arrays.asList("requests", "request_bytes", "responses", "response_bytes"));
+    private static final String RATE_SUFFIX = "__rate";
+
+    // marks top level fields that are not published, e.g. timestamp
+    private static final Object IGNORED = new Object();
+
+    // Streaming parser and the name cache it maintains. Replaced when the
+    // gauge whitelist changes so that metric kinds are re-evaluated.
+    private volatile DynomiteInfoParser infoParser = new DynomiteInfoParser();
+    private final MetricsHandler metricsHandler = new MetricsHandler();
+    private long tick;
+    private long sampleTime;
+
+    // Uptime regressions, and the tick in which the last one was seen
+    private final CounterResetDetector resetDetector = new CounterResetDetector("dynomite__counter_resets");
+    private long resetTick = -1;
+
+    // Rates of the counters in RATE_FIELDS, keyed by the parser's names.
+    // Replaced together with the parser.
+    private volatile Rates rates = new Rates();
+
+    // Peers seen by the parser and the aggregates they feed. Replaced
+    // together with the parser.
+    private volatile Peers peers = new Peers();
+    private static final AtomicInteger aggregateIds = new AtomicInteger();
 
     @Inject
-    public ServoMetricsTask(InstanceState state) {
+    public ServoMetricsTask(InstanceState state, DynomiteAdminClient adminClient, InstanceIdentity identity,
+            MetricSnapshotRegistry snapshots) {
 
         this.state = state;
+        this.adminClient = adminClient;
+        this.identity = identity;
+        this.snapshots = snapshots;
 
         initGaugeWhitelist();
 
+        DefaultMonitorRegistry.getInstance().register(droppedMonitors);
+        DefaultMonitorRegistry.getInstance().register(new BasicGauge<Integer>(
+                MonitorConfig.builder("dynomite__metrics__monitors").build(), new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return metricMap.size();
+                    }
+                }));
+
         GaugeWhitelist.addCallback(new Runnable() {
 
             @Override
@@ -117,6 +236,14 @@ public class ServoMetricsTask extends Task {
         return metricMap;
     }
 
+    /**
+     * @return the current value of a monitor, 0 if there is none
+     */
+    public long getGaugeValue(String name) {
+        NumericMonitor<Number> monitor = metricMap.get(name);
+        return monitor == null ? 0 : monitor.getValue().longValue();
+    }
+
     /**
      * Main execute() impl for this task. It makes a call to the remote service,
      * and if the response is a 200 with a json body, then this parses the json
@@ -130,51 +257,188 @@ public class ServoMetricsTask extends Task {
     @Override
     public void execute() throws Exception {
 
-        HttpClient client = null;
-        GetMethod get = null;
+        beforePoll();
+
+        try {
+            adminClient.get(ServerMetricsUrl.get(), new DynomiteAdminClient.ResponseHandler<Void>() {
+                @Override
+                public Void handle(int statusCode, InputStream body) throws Exception {
+                    processResponse(statusCode, body);
+                    return null;
+                }
+            });
+        } catch (Exception e) {
+            Logger.error("Failed to get metrics from Dynomite's REST endpoint: " + ServerMetricsUrl.get(), e);
+            e.printStackTrace();
+        } catch (Throwable t) {
+            Logger.error("FAILED to get metrics from Dynomite's REST endpoint: " + ServerMetricsUrl.get(), t);
+            t.printStackTrace();
+        }
+
+        publishSnapshots(System.currentTimeMillis());
+    }
+
+    /**
+     * Same as {@link #execute()}, for a payload fetched by the
+     * {@link SamplingTask}. Rates and snapshots use the time of the sample.
+     */
+    @Override
+    public void onSample(Sample sample) {
+
+        beforePoll();
+
+        if (sample.hasDynomiteInfo()) {
+            try {
+                if (Logger.isDebugEnabled()) {
+                    Logger.debug("Received response from " + ServerMetricsUrl.get() + "\n"
+                            + IOUtils.toString(sample.openDynomiteInfo(), "UTF-8"));
+                }
+                processJsonResponse(sample.openDynomiteInfo(), sample.getTime());
+            } catch (Exception e) {
+                Logger.error("Failed to process metrics from Dynomite's REST endpoint: " + ServerMetricsUrl.get(), e);
+            }
+        }
+
+        publishSnapshots(sample.getTime());
+    }
 
+    private void beforePoll() {
         // update health state. I think we can merge the health check and info
         // check into one check later.
         // However, health check also touches the underneath storage, not just
         // Dynomite
         processGaugeMetric("dynomite__health", state.isHealthy() ? 1L : 0L);
 
-        try {
-            client = new HttpClient();
-            client.getHttpConnectionManager().getParams().setConnectionTimeout(2000);
-            get = new GetMethod(ServerMetricsUrl.get());
+        refreshTopology();
+    }
 
-            int statusCode = client.executeMethod(get);
-            if (!(statusCode == 200)) {
-                Logger.error("Got non 200 status code from " + ServerMetricsUrl.get());
-                return;
+    /**
+     * Publish the current value of every monitor and the instance state for
+     * the OpenMetrics endpoint.
+     */
+    private void publishSnapshots(long now) {
+        synchronized (dynomiteSnapshot) {
+            for (Map.Entry<String, NumericMonitor<Number>> e : metricMap.entrySet()) {
+                NumericMonitor<Number> monitor = e.getValue();
+                if (monitor instanceof Counter) {
+                    dynomiteSnapshot.counter(e.getKey(), monitor.getValue().longValue());
+                } else {
+                    dynomiteSnapshot.gauge(e.getKey(), monitor.getValue().longValue());
+                }
             }
+            snapshots.publish(MetricSnapshotRegistry.Source.DYNOMITE, dynomiteSnapshot.build(now));
 
-            String response = get.getResponseBodyAsString();
-            if (Logger.isDebugEnabled()) {
-                Logger.debug("Received response from " + ServerMetricsUrl.get() + "\n" + response);
-            }
+            instanceSnapshot.gauge("florida__sidecar_process_alive", state.metricIsSideCarProcessAlive())
+                    .gauge("florida__bootstrapping", state.metricIsBootstrapping())
+                    .gauge("florida__backing_up", state.isBackingup() ? 1 : 0)
+                    .gauge("florida__restoring", state.isRestoring() ? 1 : 0)
+                    .gauge("florida__storage_proxy_alive", state.metricIsStorageProxyAlive())
+                    .gauge("florida__storage_proxy_process_alive", state.metricIsStorageProxyProcessAlive())
+                    .gauge("florida__storage_alive", state.metricIsStorageAlive())
+                    .gauge("florida__storage_process_alive", state.metricIsStorageProcessAlive())
+                    .gauge("florida__healthy", state.metricIsHealthy())
+                    .gauge("florida__process_monitoring_suspended", state.metricIsProcessMonitoringSuspended())
+                    .gauge("florida__bootstrap_time", state.getBootstrapTime())
+                    .gauge("florida__backup_time", state.getBackupTime())
+                    .gauge("florida__restore_time", state.getRestoreTime());
+            snapshots.publish(MetricSnapshotRegistry.Source.INSTANCE, instanceSnapshot.build(now));
+        }
+    }
+
+    private void processResponse(int statusCode, InputStream body) throws Exception {
+        if (!(statusCode == 200)) {
+            Logger.error("Got non 200 status code from " + ServerMetricsUrl.get());
+            return;
+        }
+        if (body == null) {
+            Logger.error("Cannot parse empty response from " + ServerMetricsUrl.get());
+            return;
+        }
 
+        if (Logger.isDebugEnabled()) {
+            // slow path, the body is needed as a whole to log it
+            String response = IOUtils.toString(body, "UTF-8");
+            Logger.debug("Received response from " + ServerMetricsUrl.get() + "\n" + response);
             if (!response.isEmpty()) {
-                processJsonResponse(response);
+                processJsonResponse(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)));
             } else {
                 Logger.error("Cannot parse empty response from " + ServerMetricsUrl.get());
             }
+            return;
+        }
 
-        } catch (Exception e) {
-            Logger.error("Failed to get metrics from Dynomite's REST endpoint: " + ServerMetricsUrl.get(), e);
-            e.printStackTrace();
-        } catch (Throwable t) {
-            Logger.error("FAILED to get metrics from Dynomite's REST endpoint: " + ServerMetricsUrl.get(), t);
-            t.printStackTrace();
-        } finally {
-            if (get != null) {
-                get.releaseConnection();
-            }
-            if (client != null) {
-                client.getHttpConnectionManager().closeIdleConnections(10);
+        processJsonResponse(body);
+    }
+
+    /**
+     * Parse the Json Payload off a stream and convert it to metrics. This is
+     * equivalent to {@link #processJsonResponse(String)}, but it reuses the
+     * metric names and monitors resolved on previous calls.
+     * 
+     * @param json
+     * @throws IOException
+     */
+    public void processJsonResponse(InputStream json) throws IOException {
+        processJsonResponse(json, System.currentTimeMillis());
+    }
+
+    private void processJsonResponse(InputStream json, long time) throws IOException {
+
+        DynomiteInfoParser parser = infoParser;
+        tick++;
+        sampleTime = time;
+
+        DynomiteInfoParser.MetricName service = parser.parse(json, metricsHandler);
+        if (service == null) {
+            Logger.error("Missing required key 'service' in json response from " + ServerMetricsUrl.get());
+            return;
+        }
+
+        // Missing gauges and uptime are reported as 0, same as the json-simple
+        // path
+        ServiceNames names = (ServiceNames) service.getAttachment();
+        if (names == null) {
+            names = new ServiceNames(service);
+            service.setAttachment(names);
+        }
+        for (DynomiteInfoParser.MetricName gauge : names.gauges) {
+            if (gauge.getLastSeen() != tick) {
+                updateGauge(gauge, 0L);
             }
+        }
+        DynomiteInfoParser.MetricName uptime = names.uptime;
+        if (uptime.getLastSeen() != tick) {
+            Logger.error("Missing required key 'uptime' in json response from " + ServerMetricsUrl.get());
+            updateCounter(uptime, 0L);
+        }
 
+        if (!parser.statsFound()) {
+            Logger.error("Missing key 'dyn_o_mite' in json response from " + ServerMetricsUrl.get());
+        }
+
+        updateAggregateRates();
+        expirePeers();
+    }
+
+    /**
+     * Reload the cluster topology used to aggregate per peer stats, when the
+     * aggregation changed or the topology is getting old.
+     */
+    private void refreshTopology() {
+        long now = System.currentTimeMillis();
+        PeerTopology.Aggregation aggregation = PeerTopology.Aggregation.from(PeerAggregation.get());
+        if (aggregation == topology.getAggregation() && now - topologyRefreshed < TOPOLOGY_REFRESH_MS) {
+            return;
+        }
+        topologyRefreshed = now;
+        if (aggregation == PeerTopology.Aggregation.NONE) {
+            topology.update(aggregation, Collections.<AppsInstance> emptyList());
+            return;
+        }
+        try {
+            topology.update(aggregation, identity.getClusterInfo());
+        } catch (Exception e) {
+            Logger.error("Could not read the cluster topology, keeping the previous one", e);
         }
     }
 
@@ -200,6 +464,7 @@ public class ServoMetricsTask extends Task {
 
         JSONParser parser = new JSONParser();
         JSONObject obj = (JSONObject) parser.parse(json);
+        tick++;
 
         String service = (String) obj.get("service");
 
@@ -213,18 +478,12 @@ public class ServoMetricsTask extends Task {
         if (uptime == null) {
             Logger.error("Missing required key 'uptime' in json response: " + json);
             uptime = 0L;
+        } else {
+            checkUptime(uptime);
         }
         processCounterMetric(service + "__uptime", uptime);
 
-        String[] fields = { "latency_max", "latency_999th", "latency_99th", "latency_95th", "latency_mean",
-                "payload_size_max", "payload_size_999th", "payload_size_99th", "payload_size_95th", "payload_size_mean",
-                "alloc_msgs", "free_msgs", "average_cross_region_rtt", "99_cross_region_rtt",
-                "average_cross_zone_latency", "99_cross_zone_latency", "average_server_latency", "99_server_latency",
-                "average_cross_region_queue_wait", "99_cross_region_queue_wait", "average_cross_zone_queue_wait",
-                "99_cross_zone_queue_wait", "average_server_queue_wait", "99_server_queue_wait", "client_out_queue_99",
-                "server_in_queue_99", "server_out_queue_99", "dnode_client_out_queue_99", "peer_in_queue_99",
-                "peer_out_queue_99", "remote_peer_in_queue_99", "remote_peer_out_queue_99", "alloc_mbufs",
-                "free_mbufs" };
+        String[] fields = SERVICE_GAUGES;
         for (int i = 0; i < fields.length; i++) {
             Long val = (Long) obj.get(fields[i]);
             if (val == null) {
@@ -282,8 +541,7 @@ public class ServoMetricsTask extends Task {
 
         NumericMonitor<Number> counter = metricMap.get(counterName);
         if (counter != null) {
-            long increment = val - counter.getValue().longValue();
-            ((Counter) counter).increment(increment);
+            ((Counter) counter).increment(increment(counter.getValue().longValue(), val));
             return;
         }
 
@@ -298,11 +556,30 @@ public class ServoMetricsTask extends Task {
             counter = oldCounter;
         }
 
-        long increment = val - counter.getValue().longValue();
-        ((Counter) counter).increment(increment);
+        ((Counter) counter).increment(increment(counter.getValue().longValue(), val));
 
     }
 
+    /**
+     * Increment of a counter from its last value. After a Dynomite restart the
+     * new value is the increment since the restart.
+     */
+    private long increment(long last, long val) {
+        return CounterResetDetector.increment(last, val, resetTick == tick);
+    }
+
+    /**
+     * Track the uptime of the current response, before its counters are
+     * processed.
+     */
+    private void checkUptime(long uptime) {
+        if (resetDetector.update(uptime)) {
+            resetTick = tick;
+            // the previous samples are from before the restart
+            rates.calculator.reset();
+        }
+    }
+
     /**
      * Helper that tracks the metric value in a {@link Gauge} A new one is
      * created if it does not exist.
@@ -333,6 +610,279 @@ public class ServoMetricsTask extends Task {
         }
     }
 
+    /**
+     * Fast path of {@link #processCounterMetric(String, Long)} for a name
+     * resolved by the streaming parser. The monitor is cached on the name and
+     * the increment is computed from the last value seen, so no boxing is
+     * needed.
+     */
+    private void updateCounter(DynomiteInfoParser.MetricName name, long val) {
+        name.setLastSeen(tick);
+        Object monitor = name.getAttachment();
+        if (monitor == null) {
+            processCounterMetric(name.getName(), val);
+            monitor = metricMap.get(name.getName());
+            name.setAttachment(monitor);
+            name.setLastValue(val);
+            return;
+        }
+        if (!(monitor instanceof Counter)) {
+            return;
+        }
+        if (Logger.isDebugEnabled()) {
+            Logger.debug("Process counter: " + name + " " + val);
+        }
+        ((Counter) monitor).increment(increment(name.getLastValue(), val));
+        name.setLastValue(val);
+    }
+
+    /**
+     * Start publishing the rate of a counter.
+     * 
+     * @param id
+     *            key of the counter in the rate calculator
+     * @param counterName
+     * @return the slot of the rate
+     */
+    private int addRate(int id, String counterName) {
+        Rates r = rates;
+        int slot = r.calculator.add(id);
+        if (slot >= r.gauges.length) {
+            r.gauges = Arrays.copyOf(r.gauges, Math.max(slot + 1, r.gauges.length * 2));
+        }
+        String gaugeName = counterName + RATE_SUFFIX;
+        processGaugeMetric(gaugeName, 0L);
+        r.gauges[slot] = (SimpleGauge) metricMap.get(gaugeName);
+        return slot;
+    }
+
+    /**
+     * Publish the rate of a counter, if it is tracked.
+     */
+    private void updateRate(DynomiteInfoParser.MetricName name, long val) {
+        int slot = rates.calculator.find(name.getId());
+        if (slot >= 0) {
+            updateRate(slot, val);
+        }
+    }
+
+    private void updateRate(int slot, long val) {
+        Rates r = rates;
+        double rate = r.calculator.update(slot, val, sampleTime);
+        if (!Double.isNaN(rate)) {
+            r.gauges[slot].setValue(Math.round(rate));
+        }
+    }
+
+    /**
+     * Publish the rates of the aggregates updated by the current response.
+     */
+    private void updateAggregateRates() {
+        List<Aggregate> aggregates = peers.rateAggregates;
+        for (int i = 0; i < aggregates.size(); i++) {
+            Aggregate aggregate = aggregates.get(i);
+            if (aggregate.lastTick == tick) {
+                updateRate(aggregate.rateSlot, aggregate.total);
+            }
+        }
+    }
+
+    /**
+     * The peer a stats field belongs to, or null for pool level fields.
+     */
+    private Peer peerOf(DynomiteInfoParser.MetricName name) {
+        DynomiteInfoParser.MetricName node = name.getParent();
+        DynomiteInfoParser.MetricName stats = node.getParent();
+        if (stats == null || !stats.isStats()) {
+            return null;
+        }
+        Peer peer = (Peer) node.getAttachment();
+        if (peer == null) {
+            peer = new Peer(node, topology.groupOf(node.getKey()), topology.getVersion());
+            node.setAttachment(peer);
+            peers.list.add(peer);
+        }
+        peer.lastSeen = sampleTime;
+        return peer;
+    }
+
+    /**
+     * The aggregate of a field over a group of peers, or null if it cannot be
+     * created because there are too many monitors.
+     */
+    private Aggregate aggregate(String group, DynomiteInfoParser.MetricName name) {
+        String key = name.getKey();
+        String aggregateName = name.getParent().getParent().getName() + "__" + group + "__" + key;
+        Peers p = peers;
+        Aggregate aggregate = p.aggregates.get(aggregateName);
+        if (aggregate == null) {
+            if (metricMap.size() >= MaxMonitors.get()) {
+                droppedMonitors.increment();
+                return null;
+            }
+            aggregate = new Aggregate(aggregateName, gaugeFilter.get().contains(key), RATE_FIELDS.contains(key));
+            p.aggregates.put(aggregateName, aggregate);
+            if (aggregate.rateSlot >= 0) {
+                p.rateAggregates.add(aggregate);
+            }
+        }
+        return aggregate;
+    }
+
+    /**
+     * Drop the monitors of peers that have not been reported for a while, or
+     * that moved to another group.
+     */
+    private void expirePeers() {
+        Peers p = peers;
+        int version = topology.getVersion();
+        long expiry = PeerExpiry.get();
+        for (int i = p.list.size() - 1; i >= 0; i--) {
+            Peer peer = p.list.get(i);
+            boolean expired = sampleTime - peer.lastSeen > expiry;
+            if (!expired && peer.version != version) {
+                String group = topology.groupOf(peer.node.getKey());
+                expired = group == null ? peer.group != null : !group.equals(peer.group);
+                peer.version = version;
+            }
+            if (expired) {
+                Logger.info("Dropping the monitors of peer " + peer.node.getKey());
+                release(peer);
+                // order does not matter, move the last peer in its place
+                p.list.set(i, p.list.get(p.list.size() - 1));
+                p.list.remove(p.list.size() - 1);
+            }
+        }
+    }
+
+    private void release(Peer peer) {
+        Rates r = rates;
+        for (DynomiteInfoParser.MetricName field : peer.node.getChildren()) {
+            Object monitor = field.getAttachment();
+            if (monitor instanceof Counter || monitor instanceof SimpleGauge) {
+                unregister(field.getName());
+            }
+            int slot = r.calculator.remove(field.getId());
+            if (slot >= 0) {
+                unregister(field.getName() + RATE_SUFFIX);
+                r.gauges[slot] = null;
+            }
+        }
+        peer.node.getParent().removeChild(peer.node);
+    }
+
+    private void unregister(String name) {
+        NumericMonitor<Number> monitor = metricMap.remove(name);
+        if (monitor != null) {
+            DefaultMonitorRegistry.getInstance().unregister(monitor);
+        }
+    }
+
+    /**
+     * Fast path of {@link #processGaugeMetric(String, Long)} for a name
+     * resolved by the streaming parser.
+     */
+    private void updateGauge(DynomiteInfoParser.MetricName name, long val) {
+        name.setLastSeen(tick);
+        Object monitor = name.getAttachment();
+        if (monitor == null) {
+            processGaugeMetric(name.getName(), val);
+            name.setAttachment(metricMap.get(name.getName()));
+            return;
+        }
+        if (!(monitor instanceof SimpleGauge)) {
+            return;
+        }
+        if (Logger.isDebugEnabled()) {
+            Logger.debug("Process guage: " + name + " " + val);
+        }
+        ((SimpleGauge) monitor).setValue(val);
+    }
+
+    /**
+     * The top level names of a service, resolved once.
+     */
+    private static class ServiceNames {
+        private final DynomiteInfoParser.MetricName[] gauges;
+        private final DynomiteInfoParser.MetricName uptime;
+
+        private ServiceNames(DynomiteInfoParser.MetricName service) {
+            gauges = new DynomiteInfoParser.MetricName[SERVICE_GAUGES.length];
+            for (int i = 0; i < SERVICE_GAUGES.length; i++) {
+                gauges[i] = service.child(SERVICE_GAUGES[i]);
+            }
+            uptime = service.child(UPTIME);
+        }
+    }
+
+    /**
+     * Routes the values reported by {@link DynomiteInfoParser} to counters and
+     * gauges, with the same rules as the json-simple path.
+     */
+    private class MetricsHandler implements DynomiteInfoParser.Handler {
+
+        @Override
+        public void onServiceMetric(DynomiteInfoParser.MetricName name, long value) {
+            // top level fields are either the uptime counter or one of the
+            // known gauges, everything else (e.g. timestamp) is ignored
+            Object attachment = name.getAttachment();
+            if (attachment == IGNORED) {
+                return;
+            }
+            if (attachment != null) {
+                if (attachment instanceof Counter) {
+                    // uptime is the only counter at the top level
+                    checkUptime(value);
+                    updateCounter(name, value);
+                } else {
+                    updateGauge(name, value);
+                }
+                return;
+            }
+            String key = name.getKey();
+            if (UPTIME.equals(key)) {
+                checkUptime(value);
+                updateCounter(name, value);
+            } else if (Arrays.asList(SERVICE_GAUGES).contains(key)) {
+                updateGauge(name, value);
+            } else {
+                name.setAttachment(IGNORED);
+            }
+        }
+
+        @Override
+        public void onStatsMetric(DynomiteInfoParser.MetricName name, long value) {
+            Peer peer = peerOf(name);
+            Object attachment = name.getAttachment();
+            if (attachment == null) {
+                if (peer != null && peer.group != null) {
+                    attachment = aggregate(peer.group, name);
+                    if (attachment == null) {
+                        return;
+                    }
+                    name.setAttachment(attachment);
+                } else if (metricMap.size() >= MaxMonitors.get()) {
+                    droppedMonitors.increment();
+                    return;
+                }
+            }
+            if (attachment instanceof Aggregate) {
+                ((Aggregate) attachment).update(name, value);
+                return;
+            }
+            if (attachment instanceof SimpleGauge
+                    || (attachment == null && gaugeFilter.get().contains(name.getKey()))) {
+                updateGauge(name, value);
+                return;
+            }
+            if (attachment == null && RATE_FIELDS.contains(name.getKey())) {
+                addRate(name.getId(), name.getName());
+            }
+            updateCounter(name, value);
+            updateRate(name, value);
+        }
+    }
+
     /**
      * Helper that tracks the gauge whitelist using defaults and what is set in
      * the fast property
@@ -345,6 +895,11 @@ public class ServoMetricsTask extends Task {
         set.add("client_connections");
         set.add("dnode_client_connections");
         set.add("peer_connections");
+        // lengths of the per server queues, they go up and down
+        set.add("in_queue");
+        set.add("in_queue_bytes");
+        set.add("out_queue");
+        set.add("out_queue_bytes");
         // set.add("client_dropped_requests");
         // set.add("alloc_msgs");
 
@@ -357,11 +912,94 @@ public class ServoMetricsTask extends Task {
             }
         }
         gaugeFilter.set(set);
+        // drop the cached names so that metric kinds follow the new whitelist
+        rates = new Rates();
+        peers = new Peers();
+        infoParser = new DynomiteInfoParser();
+    }
+
+    /**
+     * A peer Dynomite reports stats for.
+     */
+    private static class Peer {
+        private final DynomiteInfoParser.MetricName node;
+        // the group the stats are aggregated into, or null
+        private final String group;
+        // topology version the group was checked against
+        private int version;
+        private long lastSeen;
+
+        private Peer(DynomiteInfoParser.MetricName node, String group, int version) {
+            this.node = node;
+            this.group = group;
+            this.version = version;
+        }
+    }
+
+    /**
+     * A stats field summed up over a group of peers. Counters add up the
+     * increments of each peer from its previous value, the first value of a
+     * peer is its baseline. Gauges add up the values of the current response.
+     */
+    private class Aggregate {
+        private final NumericMonitor<Number> monitor;
+        private final boolean gauge;
+        private final int rateSlot;
+        private long total;
+        private long sum;
+        private long lastTick = -1;
+
+        private Aggregate(String name, boolean gauge, boolean rate) {
+            this.gauge = gauge;
+            if (gauge) {
+                processGaugeMetric(name, 0L);
+            } else {
+                processCounterMetric(name, 0L);
+            }
+            monitor = metricMap.get(name);
+            rateSlot = rate && !gauge ? addRate(-aggregateIds.incrementAndGet(), name) : -1;
+        }
+
+        private void update(DynomiteInfoParser.MetricName name, long val) {
+            if (lastTick != tick) {
+                lastTick = tick;
+                sum = 0;
+            }
+            boolean first = name.getLastSeen() < 0;
+            name.setLastSeen(tick);
+            if (gauge) {
+                sum += val;
+                ((SimpleGauge) monitor).setValue(sum);
+                return;
+            }
+            long increment = first ? 0 : increment(name.getLastValue(), val);
+            name.setLastValue(val);
+            total += increment;
+            ((Counter) monitor).increment(increment);
+        }
+    }
+
+    /**
+     * The peers seen so far and the aggregates they feed.
+     */
+    private static class Peers {
+        private final List<Peer> list = new ArrayList<Peer>();
+        private final Map<String, Aggregate> aggregates = new HashMap<String, Aggregate>();
+        private final List<Aggregate> rateAggregates = new ArrayList<Aggregate>();
+    }
+
+    /**
+     * Rate calculator and the gauges its slots publish to.
+     */
+    private static class Rates {
+        private final RateCalculator calculator = new RateCalculator();
+        private SimpleGauge[] gauges = new SimpleGauge[16];
     }
 
     /**
      * Simple impl of the {@link Gauge} Note that it maintains a threadsafe
-     * reference to the actual value being monitored
+     * reference to the actual value being monitored. The value is kept as a
+     * primitive so that updates do not box.
      * 
      * @author poberai
      *
@@ -369,11 +1007,11 @@ public class ServoMetricsTask extends Task {
     private class SimpleGauge implements Gauge<Number> {
 
         private final MonitorConfig mConfig;
-        private final AtomicReference<Number> value = new AtomicReference<Number>(null);
+        private final AtomicLong value = new AtomicLong();
 
         private SimpleGauge(String name, Number number) {
             mConfig = MonitorConfig.builder(name).build();
-            value.set(number);
+            value.set(number.longValue());
         }
 
         @Override
@@ -392,6 +1030,10 @@ public class ServoMetricsTask extends Task {
         }
 
         public void setValue(Number n) {
+            value.set(n.longValue());
+        }
+
+        public void setValue(long n) {
             value.set(n);
         }
     }
@@ -0,0 +1,75 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.LongGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * How long the phases of the last start and stop of Dynomite and the storage
+ * engine took, in ms, as gauges named florida__startup__[phase]_ms.
+ */
+@Singleton
+public class StartupTimings {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupTimings.class);
+
+    public enum Phase {
+        /** until the storage start script exited */
+        STORAGE_SCRIPT("storage_script"),
+        /** from the storage start until the storage answered */
+        STORAGE_READY("storage_ready"),
+        /** until the Dynomite start script exited */
+        DYNOMITE_SCRIPT("dynomite_script"),
+        /** from the Dynomite start until Dynomite answered */
+        DYNOMITE_READY("dynomite_ready"),
+        /** from the cold start of the storage until Dynomite answered */
+        COLD_START("cold_start"),
+        /** until the storage process was gone */
+        STORAGE_STOP("storage_stop"),
+        /** until the Dynomite process was gone */
+        DYNOMITE_STOP("dynomite_stop");
+
+        private final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    private final MetricSnapshotRegistry snapshots;
+    private final MetricSnapshot.Builder snapshotBuilder = new MetricSnapshot.Builder();
+    private final LongGauge[] gauges = new LongGauge[Phase.values().length];
+
+    @Inject
+    public StartupTimings(MetricSnapshotRegistry snapshots) {
+        this.snapshots = snapshots;
+        for (Phase phase : Phase.values()) {
+            gauges[phase.ordinal()] = new LongGauge(
+                    MonitorConfig.builder("florida__startup__" + phase.name + "_ms").build());
+            DefaultMonitorRegistry.getInstance().register(gauges[phase.ordinal()]);
+        }
+    }
+
+    /**
+     * Record how long a phase took, which started at the given time.
+     */
+    public synchronized void record(Phase phase, long start) {
+        long now = System.currentTimeMillis();
+        long elapsed = now - start;
+        logger.info(String.format("Startup phase %s took %d ms", phase.name, elapsed));
+        gauges[phase.ordinal()].getNumber().set(elapsed);
+        for (LongGauge gauge : gauges) {
+            snapshotBuilder.gauge(gauge.getConfig().getName(), gauge.getNumber().get());
+        }
+        snapshots.publish(MetricSnapshotRegistry.Source.STARTUP, snapshotBuilder.build(now));
+    }
+
+    public long get(Phase phase) {
+        return gauges[phase.ordinal()].getNumber().get();
+    }
+}
@@ -0,0 +1,239 @@
+package com.netflix.dynomitemanager.monitoring;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.dynomite.BacklogDrain;
+import com.netflix.dynomitemanager.storage.KeyMigrator;
+import com.netflix.dynomitemanager.storage.ReplicationTracker;
+import com.netflix.dynomitemanager.storage.SyncThrottle;
+import com.netflix.servo.DefaultMonitorRegistry;
+import com.netflix.servo.monitor.LongGauge;
+import com.netflix.servo.monitor.MonitorConfig;
+
+/**
+ * Live progress of the warm up from a peer, updated on every check of the
+ * {@link ReplicationTracker}, as gauges named florida__warmup__[name]:
+ *
+ * master_offset, slave_offset - the replication offsets of the peer and the
+ * replica
+ *
+ * lag_bytes - how far the replica is behind
+ *
+ * catchup_bytes_per_sec - how fast the lag shrinks, negative while it grows
+ *
+ * catchup_trend - how fast the catch up rate changes, per second
+ *
+ * eta_ms - the predicted time to sync, -1 if none is predicted
+ *
+ * poll_interval_ms - the interval until the next check
+ *
+ * A throttled warm up, see {@link SyncThrottle}, adds:
+ *
+ * donor_latency_us - the latest latency of the peer
+ *
+ * throttle_duty_pct - the share of each period the replica is attached for
+ *
+ * throttle_attached - 1 while the replica is attached to the peer
+ *
+ * throttle_pauses, throttle_breaches - how often the replica was detached, and
+ * how often the latency of the peer was above the target
+ *
+ * A warm up by {@link KeyMigrator} adds:
+ *
+ * migration_keys_scanned, migration_keys_restored, migration_keys_skipped -
+ * keys seen by SCAN, restored locally, and skipped as expired or present
+ *
+ * migration_bytes - size of the restored DUMP payloads
+ *
+ * While Dynomite resumes after the warm up, see {@link BacklogDrain}:
+ *
+ * resume_backlog, resume_backlog_peak - the requests Dynomite has queued, and
+ * the most it had
+ *
+ * resume_ms - how long Dynomite has been resuming
+ */
+@Singleton
+public class WarmUpProgress {
+
+    private final MetricSnapshotRegistry snapshots;
+    private final MetricSnapshot.Builder snapshotBuilder = new MetricSnapshot.Builder();
+
+    private final LongGauge masterOffset;
+    private final LongGauge slaveOffset;
+    private final LongGauge lag;
+    private final LongGauge catchUpRate;
+    private final LongGauge catchUpTrend;
+    private final LongGauge eta;
+    private final LongGauge pollInterval;
+    private final LongGauge donorLatency;
+    private final LongGauge duty;
+    private final LongGauge attached;
+    private final LongGauge pauses;
+    private final LongGauge breaches;
+    private final LongGauge keysScanned;
+    private final LongGauge keysRestored;
+    private final LongGauge keysSkipped;
+    private final LongGauge migratedBytes;
+    private final LongGauge resumeBacklog;
+    private final LongGauge resumeBacklogPeak;
+    private final LongGauge resumeTime;
+    private final LongGauge[] all;
+
+    private volatile String peer;
+    private volatile ReplicationTracker.State state;
+    private volatile long time;
+
+    @Inject
+    public WarmUpProgress(MetricSnapshotRegistry snapshots) {
+        this.snapshots = snapshots;
+        masterOffset = register("master_offset");
+        slaveOffset = register("slave_offset");
+        lag = register("lag_bytes");
+        catchUpRate = register("catchup_bytes_per_sec");
+        catchUpTrend = register("catchup_trend");
+        eta = register("eta_ms");
+        pollInterval = register("poll_interval_ms");
+        donorLatency = register("donor_latency_us");
+        duty = register("throttle_duty_pct");
+        attached = register("throttle_attached");
+        pauses = register("throttle_pauses");
+        breaches = register("throttle_breaches");
+        keysScanned = register("migration_keys_scanned");
+        keysRestored = register("migration_keys_restored");
+        keysSkipped = register("migration_keys_skipped");
+        migratedBytes = register("migration_bytes");
+        resumeBacklog = register("resume_backlog");
+        resumeBacklogPeak = register("resume_backlog_peak");
+        resumeTime = register("resume_ms");
+        all = new LongGauge[] { masterOffset, slaveOffset, lag, catchUpRate, catchUpTrend, eta, pollInterval,
+                donorLatency, duty, attached, pauses, breaches, keysScanned, keysRestored, keysSkipped,
+                migratedBytes, resumeBacklog, resumeBacklogPeak, resumeTime };
+    }
+
+    /**
+     * Record the latest check of the warm up from a peer.
+     */
+    public synchronized void update(String peer, ReplicationTracker tracker, long now) {
+        this.peer = peer;
+        this.state = tracker.getState();
+        this.time = now;
+        masterOffset.getNumber().set(tracker.getMasterOffset());
+        slaveOffset.getNumber().set(tracker.getSlaveOffset());
+        lag.getNumber().set(tracker.getLag());
+        catchUpRate.getNumber().set(tracker.getCatchUpRate());
+        catchUpTrend.getNumber().set(tracker.getCatchUpTrend());
+        eta.getNumber().set(tracker.getEtaMs());
+        pollInterval.getNumber().set(tracker.getNextIntervalMs());
+        publish(now);
+    }
+
+    /**
+     * Record a decision of the throttle of the warm up.
+     */
+    public synchronized void update(SyncThrottle throttle, long latencyMicros, long now) {
+        donorLatency.getNumber().set(latencyMicros);
+        duty.getNumber().set(throttle.getDutyPercent());
+        attached.getNumber().set(throttle.isAttached() ? 1 : 0);
+        pauses.getNumber().set(throttle.getPauses());
+        breaches.getNumber().set(throttle.getBreaches());
+        publish(now);
+    }
+
+    /**
+     * Record the progress of a migration from a peer.
+     */
+    public synchronized void update(String peer, KeyMigrator migrator, long now) {
+        this.peer = peer;
+        this.state = null;
+        this.time = now;
+        keysScanned.getNumber().set(migrator.getScanned());
+        keysRestored.getNumber().set(migrator.getRestored());
+        keysSkipped.getNumber().set(migrator.getSkipped());
+        migratedBytes.getNumber().set(migrator.getBytes());
+        publish(now);
+    }
+
+    /**
+     * Record a check of the backlog of Dynomite while it resumes.
+     */
+    public synchronized void update(BacklogDrain drain, long now) {
+        resumeBacklog.getNumber().set(drain.getBacklog());
+        resumeBacklogPeak.getNumber().set(drain.getPeak());
+        resumeTime.getNumber().set(drain.getElapsedMs(now));
+        publish(now);
+    }
+
+    private void publish(long now) {
+        for (LongGauge gauge : all) {
+            snapshotBuilder.gauge(gauge.getConfig().getName(), gauge.getNumber().get());
+        }
+        snapshots.publish(MetricSnapshotRegistry.Source.WARMUP, snapshotBuilder.build(now));
+    }
+
+    /**
+     * @return the peer of the latest check, null if there was none
+     */
+    public String getPeer() {
+        return peer;
+    }
+
+    /**
+     * @return the state of the replication, null for a migration
+     */
+    public ReplicationTracker.State getState() {
+        return state;
+    }
+
+    /**
+     * @return the time of the latest check
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public long getMasterOffset() {
+        return masterOffset.getNumber().get();
+    }
+
+    public long getSlaveOffset() {
+        return slaveOffset.getNumber().get();
+    }
+
+    public long getLag() {
+        return lag.getNumber().get();
+    }
+
+    public long getCatchUpRate() {
+        return catchUpRate.getNumber().get();
+    }
+
+    public long getCatchUpTrend() {
+        return catchUpTrend.getNumber().get();
+    }
+
+    public long getEtaMs() {
+        return eta.getNumber().get();
+    }
+
+    public long getMigratedKeys() {
+        return keysRestored.getNumber().get();
+    }
+
+    public long getMigratedBytes() {
+        return migratedBytes.getNumber().get();
+    }
+
+    public long getThrottleDutyPercent() {
+        return duty.getNumber().get();
+    }
+
+    public long getThrottlePauses() {
+        return pauses.getNumber().get();
+    }
+
+    private static LongGauge register(String name) {
+        LongGauge gauge = new LongGauge(MonitorConfig.builder("florida__warmup__" + name).build());
+        DefaultMonitorRegistry.getInstance().register(gauge);
+        return gauge;
+    }
+}
@@ -27,6 +27,8 @@ import com.netflix.dynomitemanager.backup.SnapshotTask;
 import com.netflix.dynomitemanager.config.FloridaConfig;
 import com.netflix.dynomitemanager.config.InstanceState;
 import com.netflix.dynomitemanager.dynomite.IDynomiteProcess;
+import com.netflix.dynomitemanager.monitoring.HealthScore;
+import com.netflix.dynomitemanager.monitoring.WarmUpProgress;
 import com.netflix.dynomitemanager.storage.Bootstrap;
 import com.netflix.dynomitemanager.storage.StorageProcessManager;
 import com.netflix.dynomitemanager.storage.StorageProxy;
@@ -47,11 +49,12 @@ public class DynomiteAdmin {
 	private StorageProxy storage;
 	private StorageProcessManager storageProcessMgr;
 	private FloridaConfig config;
+	private WarmUpProgress warmUpProgress;
 
 	@Inject
 	public DynomiteAdmin(FloridaConfig config, IDynomiteProcess dynoProcess, InstanceIdentity ii,
 			InstanceState instanceState, SnapshotTask snapshotBackup, RestoreTask restoreBackup, StorageProxy storage,
-			StorageProcessManager storageProcessMgr) {
+			StorageProcessManager storageProcessMgr, WarmUpProgress warmUpProgress) {
 		this.config = config;
 		this.dynoProcess = dynoProcess;
 		this.ii = ii;
@@ -60,6 +63,7 @@ public class DynomiteAdmin {
 		this.restoreBackup = restoreBackup;
 		this.storage = storage;
 		this.storageProcessMgr = storageProcessMgr;
+		this.warmUpProgress = warmUpProgress;
 
 	}
 
@@ -300,6 +304,29 @@ public class DynomiteAdmin {
 					}
 				}
 				warmupJson.put("time", this.instanceState.getBootstrapTime());
+
+				/* Replication progress of the last sync */
+				if (this.warmUpProgress.getPeer() != null) {
+					JSONObject progressJson = new JSONObject();
+					progressJson.put("peer", this.warmUpProgress.getPeer());
+					progressJson.put("state", this.warmUpProgress.getState());
+					progressJson.put("masterOffset", this.warmUpProgress.getMasterOffset());
+					progressJson.put("slaveOffset", this.warmUpProgress.getSlaveOffset());
+					progressJson.put("lagBytes", this.warmUpProgress.getLag());
+					progressJson.put("catchUpBytesPerSec", this.warmUpProgress.getCatchUpRate());
+					progressJson.put("catchUpTrend", this.warmUpProgress.getCatchUpTrend());
+					progressJson.put("etaMs", this.warmUpProgress.getEtaMs());
+					if (this.warmUpProgress.getState() == null) {
+						progressJson.put("keysRestored", this.warmUpProgress.getMigratedKeys());
+						progressJson.put("bytesRestored", this.warmUpProgress.getMigratedBytes());
+					}
+					if (config.isWarmUpThrottleEnabled()) {
+						progressJson.put("throttleDutyPct", this.warmUpProgress.getThrottleDutyPercent());
+						progressJson.put("throttlePauses", this.warmUpProgress.getThrottlePauses());
+					}
+					progressJson.put("time", this.warmUpProgress.getTime());
+					warmupJson.put("progress", progressJson);
+				}
 			} else {
 				warmupJson.put("status", "not started");
 			}
@@ -353,6 +380,18 @@ public class DynomiteAdmin {
 
 			/* Overall status */
 			healthJson.put("Overall", this.instanceState.isHealthy() ? true : false);
+
+			/* Health score */
+			HealthScore score = this.instanceState.getHealthScore();
+			healthJson.put("score", score.getScore());
+			healthJson.put("status", score.getStatus());
+			JSONObject scoreJson = new JSONObject();
+			scoreJson.put("pingRttP99Micros", score.getRttP99Micros());
+			scoreJson.put("queueDepth", score.getQueueDepth());
+			scoreJson.put("blockedClients", score.getBlockedClients());
+			scoreJson.put("opsPerSec", score.getOpsPerSec());
+			scoreJson.put("time", score.getTime());
+			healthJson.put("scoreDetails", scoreJson);
 			statusJson.put("health", healthJson);
 
 			/* My token */
@@ -0,0 +1,44 @@
+package com.netflix.dynomitemanager.resources;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.inject.Inject;
+import com.netflix.dynomitemanager.monitoring.MetricSnapshotRegistry;
+
+/**
+ * Exposes the Dynomite, storage and instance state metrics in the OpenMetrics
+ * text format, e.g. for Prometheus to scrape.
+ *
+ * The response is copied from the snapshots the polling tasks publish, see
+ * {@link MetricSnapshotRegistry}.
+ */
+@Path("/v1/metrics")
+public class DynomiteMetrics {
+
+	private final MetricSnapshotRegistry snapshots;
+
+	@Inject
+	public DynomiteMetrics(MetricSnapshotRegistry snapshots) {
+		this.snapshots = snapshots;
+	}
+
+	@GET
+	@Produces({ MetricSnapshotRegistry.CONTENT_TYPE, "text/plain" })
+	public Response metrics() {
+		StreamingOutput body = new StreamingOutput() {
+			@Override
+			public void write(OutputStream out) throws IOException, WebApplicationException {
+				snapshots.writeTo(out);
+			}
+		};
+		return Response.ok(body, MetricSnapshotRegistry.CONTENT_TYPE).build();
+	}
+}
@@ -38,6 +38,7 @@ public class ArdbRocksDbRedisCompatible {
     final static String DYNO_ARDB_CONF_PATH = "/apps/ardb/conf/rocksdb.conf";
     final static String ARDB_ROCKSDB_START_SCRIPT = "/apps/ardb/bin/launch_ardb.sh";
     final static String ARDB_ROCKSDB_STOP_SCRIPT = "/apps/ardb/bin/kill_ardb.sh";
+    final static String ARDB_ROCKSDB_PROCESS = "/apps/ardb/bin/ardb-server";
 
     private static final Logger logger = LoggerFactory.getLogger(ArdbRocksDbRedisCompatible.class);
 
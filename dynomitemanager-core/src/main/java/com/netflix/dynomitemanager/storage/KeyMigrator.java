@@ -0,0 +1,497 @@
+package com.netflix.dynomitemanager.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.nfsidecar.scheduler.NamedThreadPoolExecutor;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * Copies all keys of a peer into the local storage without replication, for
+ * peers that cannot replicate, e.g. ARDB/RocksDB, and without forking the
+ * peer for an RDB.
+ *
+ * The calling thread SCANs the peer and queues each batch of keys. Workers,
+ * each with its own connections to the peer and the local storage, DUMP and
+ * PTTL a batch in one pipeline on the peer and RESTORE it in one pipeline
+ * locally. The queue holds at most the in-flight number of batches, so the
+ * memory of a migration is bounded by (in-flight + parallelism) batches of
+ * dumped values.
+ *
+ * SCAN has one cursor per keyspace, so the scan itself is sequential and the
+ * parallelism is across the batches it returns.
+ *
+ * Batches complete out of order. The checkpoint is the cursor after the last
+ * batch of an unbroken run of completed batches, i.e. a migration started
+ * from it again misses no key.
+ *
+ * Keys that expired in between, or that exist locally already (BUSYKEY), are
+ * skipped. Writes to the peer during the migration may or may not be copied.
+ *
+ * On top of a snapshot, {@link #setChangedWithin(long)} copies only the keys
+ * the peer accessed since the snapshot, by their OBJECT IDLETIME, and replaces
+ * them locally. {@link #prune(long)} then deletes the keys the peer no longer
+ * has.
+ */
+public class KeyMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(KeyMigrator.class);
+
+    public static final String START = ScanParams.SCAN_POINTER_START;
+
+    private static final Batch END = new Batch(-1, null, null);
+
+    public enum Result {
+        DONE,
+        /** a key could not be restored */
+        FAILED,
+        /** the peer or the local storage could not be reached */
+        CANNOT_CONNECT,
+        /** the deadline passed */
+        EXPIRED
+    }
+
+    /**
+     * Told about each new checkpoint, in order, from the worker threads.
+     */
+    public interface Checkpoint {
+        void onCheckpoint(String cursor);
+    }
+
+    private static class Batch {
+        final long seq;
+        final List<byte[]> keys;
+        final String cursor;
+
+        Batch(long seq, List<byte[]> keys, String cursor) {
+            this.seq = seq;
+            this.keys = keys;
+            this.cursor = cursor;
+        }
+    }
+
+    private final String sourceHost;
+    private final int sourcePort;
+    private final String targetHost;
+    private final int targetPort;
+    private final int scanCount;
+    private final int parallelism;
+    private final int inFlight;
+    private final int timeoutMs;
+
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong restored = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+    private final AtomicLong deleted = new AtomicLong();
+    private long changedWithinSec = -1;
+    private volatile Result failure;
+
+    // batches completed past the checkpoint, by sequence
+    private final Map<Long, String> completed = new HashMap<Long, String>();
+    private long nextSeq;
+    private volatile String checkpoint;
+
+    /**
+     * @param scanCount
+     *            COUNT of each SCAN
+     * @param parallelism
+     *            number of workers
+     * @param inFlight
+     *            number of batches that may wait for a worker
+     * @param timeoutMs
+     *            connect and read timeout of the connections
+     */
+    public KeyMigrator(String sourceHost, int sourcePort, String targetHost, int targetPort, int scanCount,
+            int parallelism, int inFlight, int timeoutMs) {
+        this.sourceHost = sourceHost;
+        this.sourcePort = sourcePort;
+        this.targetHost = targetHost;
+        this.targetPort = targetPort;
+        this.scanCount = scanCount;
+        this.parallelism = Math.max(1, parallelism);
+        this.inFlight = Math.max(1, inFlight);
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Copy only the keys accessed within the seconds, and replace them
+     * locally, for a catch up on top of a snapshot of that age.
+     *
+     * OBJECT IDLETIME counts reads as well as writes, so this copies every key
+     * written since, and some that were only read. Keys without an idle time,
+     * e.g. with an LFU maxmemory-policy, are always copied.
+     */
+    public void setChangedWithin(long seconds) {
+        this.changedWithinSec = seconds;
+    }
+
+    /**
+     * Copy the keys from the cursor on.
+     *
+     * @param cursor
+     *            where to start, {@link #START} or a checkpoint of an earlier
+     *            migration
+     * @param deadline
+     *            time by which the migration has to be done
+     * @param listener
+     *            told about checkpoints, may be null
+     */
+    public Result migrate(String cursor, long deadline, Checkpoint listener) {
+        Jedis source = connect(sourceHost, sourcePort);
+        if (source == null) {
+            return Result.CANNOT_CONNECT;
+        }
+        checkpoint = cursor;
+        logger.info("Migrating keys of " + sourceHost + ":" + sourcePort + " from cursor " + cursor + " with "
+                + parallelism + " workers");
+
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(inFlight);
+        ExecutorService workers = new NamedThreadPoolExecutor(parallelism, "key-migrator");
+        for (int i = 0; i < parallelism; i++) {
+            workers.submit(new Worker(queue, listener));
+        }
+
+        Result result = Result.DONE;
+        try {
+            ScanParams params = new ScanParams().count(scanCount);
+            byte[] next = cursor.getBytes(StandardCharsets.UTF_8);
+            long seq = 0;
+            do {
+                if (failure != null) {
+                    break;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    logger.warn("Migration of " + sourceHost + " passed its deadline at cursor " + checkpoint);
+                    result = Result.EXPIRED;
+                    break;
+                }
+                ScanResult<byte[]> scan = source.scan(next, params);
+                next = scan.getCursorAsBytes();
+                List<byte[]> keys = scan.getResult();
+                scanned.addAndGet(keys.size());
+                offer(queue, new Batch(seq++, keys, new String(next, StandardCharsets.UTF_8)), deadline);
+            } while (!START.equals(new String(next, StandardCharsets.UTF_8)));
+        } catch (JedisConnectionException e) {
+            logger.error("Lost the connection to " + sourceHost + " during the migration: " + e.getMessage());
+            fail(Result.CANNOT_CONNECT);
+        } catch (Exception e) {
+            logger.error("Migration of " + sourceHost + " failed: " + e.getMessage());
+            fail(Result.FAILED);
+        } finally {
+            for (int i = 0; i < parallelism; i++) {
+                offer(queue, END, Long.MAX_VALUE);
+            }
+            workers.shutdown();
+            awaitTermination(workers);
+            disconnect(source);
+        }
+
+        if (failure != null) {
+            result = failure;
+        }
+        logger.info("Migration of " + sourceHost + " ended with " + result + ": " + scanned.get() + " keys scanned, "
+                + restored.get() + " restored, " + skipped.get() + " skipped, " + bytes.get() + " bytes, checkpoint "
+                + checkpoint);
+        return result;
+    }
+
+    /**
+     * Queue a batch, unless all workers failed.
+     */
+    private void offer(BlockingQueue<Batch> queue, Batch batch, long deadline) {
+        try {
+            while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                if (batch != END && (failure != null || System.currentTimeMillis() > deadline)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitTermination(ExecutorService workers) {
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                logger.info("Waiting for the migration workers to finish");
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final BlockingQueue<Batch> queue;
+        private final Checkpoint listener;
+
+        Worker(BlockingQueue<Batch> queue, Checkpoint listener) {
+            this.queue = queue;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            Jedis source = connect(sourceHost, sourcePort);
+            Jedis target = connect(targetHost, targetPort);
+            if (source == null || target == null) {
+                fail(Result.CANNOT_CONNECT);
+            }
+            try {
+                while (true) {
+                    Batch batch = queue.take();
+                    if (batch == END) {
+                        return;
+                    }
+                    // once failed, only drain the queue so the scan is not
+                    // blocked
+                    if (failure != null) {
+                        continue;
+                    }
+                    try {
+                        copy(batch, source, target);
+                        complete(batch, listener);
+                    } catch (JedisConnectionException e) {
+                        logger.error("Lost a migration connection: " + e.getMessage());
+                        fail(Result.CANNOT_CONNECT);
+                    } catch (Exception e) {
+                        logger.error("Cannot migrate a batch of " + batch.keys.size() + " keys: " + e.getMessage());
+                        fail(Result.FAILED);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                disconnect(source);
+                disconnect(target);
+            }
+        }
+    }
+
+    private void copy(Batch batch, Jedis source, Jedis target) {
+        List<byte[]> keys = changedWithinSec < 0 ? batch.keys : changed(batch.keys, source);
+        if (keys.isEmpty()) {
+            return;
+        }
+        Pipeline dumping = source.pipelined();
+        List<Response<byte[]>> values = new ArrayList<Response<byte[]>>(keys.size());
+        List<Response<Long>> ttls = new ArrayList<Response<Long>>(keys.size());
+        for (byte[] key : keys) {
+            values.add(dumping.dump(key));
+            ttls.add(dumping.pttl(key));
+        }
+        dumping.sync();
+
+        Pipeline restoring = target.pipelined();
+        List<Response<String>> restores = new ArrayList<Response<String>>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] value = values.get(i).get();
+            Long ttl = ttls.get(i).get();
+            // -2: the key expired or was deleted since the SCAN
+            if (value == null || ttl == null || ttl == -2) {
+                skipped.incrementAndGet();
+                continue;
+            }
+            if (changedWithinSec >= 0) {
+                // RESTORE ... REPLACE is not in this Jedis
+                restoring.del(keys.get(i));
+            }
+            restores.add(restoring.restore(keys.get(i), (int) Math.max(0, Math.min(Integer.MAX_VALUE, ttl)),
+                    value));
+            bytes.addAndGet(value.length);
+        }
+        restoring.sync();
+
+        for (Response<String> restore : restores) {
+            try {
+                restore.get();
+                restored.incrementAndGet();
+            } catch (JedisDataException e) {
+                if (e.getMessage() == null || !e.getMessage().startsWith("BUSYKEY")) {
+                    throw e;
+                }
+                skipped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return the keys the source accessed within {@link #changedWithinSec}
+     */
+    private List<byte[]> changed(List<byte[]> keys, Jedis source) {
+        Pipeline idling = source.pipelined();
+        List<Response<Long>> idles = new ArrayList<Response<Long>>(keys.size());
+        for (byte[] key : keys) {
+            idles.add(idling.objectIdletime(key));
+        }
+        idling.sync();
+
+        List<byte[]> changed = new ArrayList<byte[]>();
+        for (int i = 0; i < keys.size(); i++) {
+            Long idle;
+            try {
+                idle = idles.get(i).get();
+            } catch (JedisDataException e) {
+                idle = null;
+            }
+            if (idle != null && idle > changedWithinSec) {
+                unchanged.incrementAndGet();
+            } else {
+                changed.add(keys.get(i));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Delete the local keys the source does not have, i.e. those it deleted
+     * or expired since a snapshot.
+     *
+     * @param deadline
+     *            time by which the pruning has to be done
+     */
+    public Result prune(long deadline) {
+        Jedis source = connect(sourceHost, sourcePort);
+        Jedis target = connect(targetHost, targetPort);
+        try {
+            if (source == null || target == null) {
+                return Result.CANNOT_CONNECT;
+            }
+            ScanParams params = new ScanParams().count(scanCount);
+            byte[] next = START.getBytes(StandardCharsets.UTF_8);
+            do {
+                if (System.currentTimeMillis() > deadline) {
+                    logger.warn("Pruning the keys not on " + sourceHost + " passed its deadline");
+                    return Result.EXPIRED;
+                }
+                ScanResult<byte[]> scan = target.scan(next, params);
+                next = scan.getCursorAsBytes();
+                List<byte[]> keys = scan.getResult();
+
+                Pipeline checking = source.pipelined();
+                List<Response<Boolean>> exists = new ArrayList<Response<Boolean>>(keys.size());
+                for (byte[] key : keys) {
+                    exists.add(checking.exists(key));
+                }
+                checking.sync();
+
+                Pipeline deleting = target.pipelined();
+                for (int i = 0; i < keys.size(); i++) {
+                    if (!Boolean.TRUE.equals(exists.get(i).get())) {
+                        deleting.del(keys.get(i));
+                        deleted.incrementAndGet();
+                    }
+                }
+                deleting.sync();
+            } while (!START.equals(new String(next, StandardCharsets.UTF_8)));
+            logger.info("Deleted " + deleted.get() + " keys that are not on " + sourceHost);
+            return Result.DONE;
+        } catch (JedisConnectionException e) {
+            logger.error("Lost a connection while pruning the keys not on " + sourceHost + ": " + e.getMessage());
+            return Result.CANNOT_CONNECT;
+        } catch (Exception e) {
+            logger.error("Pruning the keys not on " + sourceHost + " failed: " + e.getMessage());
+            return Result.FAILED;
+        } finally {
+            disconnect(source);
+            disconnect(target);
+        }
+    }
+
+    private synchronized void complete(Batch batch, Checkpoint listener) {
+        completed.put(batch.seq, batch.cursor);
+        String reached = null;
+        while (completed.containsKey(nextSeq)) {
+            reached = completed.remove(nextSeq);
+            nextSeq++;
+        }
+        if (reached != null) {
+            checkpoint = reached;
+            if (listener != null) {
+                listener.onCheckpoint(reached);
+            }
+        }
+    }
+
+    private void fail(Result result) {
+        if (failure == null) {
+            failure = result;
+        }
+    }
+
+    private Jedis connect(String host, int port) {
+        try {
+            Jedis jedis = new Jedis(host, port, timeoutMs);
+            jedis.connect();
+            return jedis;
+        } catch (Exception e) {
+            logger.warn("Unable to connect to host:" + host + " port: " + port);
+            return null;
+        }
+    }
+
+    private static void disconnect(Jedis jedis) {
+        if (jedis != null) {
+            try {
+                jedis.disconnect();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * @return the cursor from which a migration misses no key
+     */
+    public String getCheckpoint() {
+        return checkpoint;
+    }
+
+    public long getScanned() {
+        return scanned.get();
+    }
+
+    public long getRestored() {
+        return restored.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * @return the keys not copied as the peer did not access them since the
+     *         snapshot
+     */
+    public long getUnchanged() {
+        return unchanged.get();
+    }
+
+    public long getDeleted() {
+        return deleted.get();
+    }
+}
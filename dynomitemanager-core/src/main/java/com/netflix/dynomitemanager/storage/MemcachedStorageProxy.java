@@ -33,7 +33,7 @@ public class MemcachedStorageProxy implements StorageProxy {
     }
 
     @Override
-    public Bootstrap warmUpStorage(String[] peers) {
+    public Bootstrap warmUpStorage(String[] peers, long snapshotTime) {
 	return Bootstrap.IN_SYNC_SUCCESS;
     }
 
@@ -96,4 +96,9 @@ public class MemcachedStorageProxy implements StorageProxy {
 
     @Override
     public String getUnixPath() { return ""; }
+
+    @Override
+    public String getProcessCommand() {
+	return DEFAULT_MEMCACHED_START_SCRIPT;
+    }
 }
@@ -0,0 +1,357 @@
+package com.netflix.dynomitemanager.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Splitter;
+import com.netflix.nfsidecar.scheduler.NamedThreadPoolExecutor;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Picks the peer to warm up from.
+ *
+ * All peers are probed in parallel: connect, PING for the round trip time and
+ * INFO for the load, the data held and the replication backlog. A peer that
+ * cannot be connected to or does not answer by the deadline is left out. A
+ * peer whose INFO lacks a value is ranked as the worst of the round for that
+ * value, rather than failing the whole selection.
+ *
+ * Peers are ranked by a cost, lower is better, where each signal is relative
+ * to the worst peer of the round:
+ *
+ * instantaneous_ops_per_sec (40%) - a busy peer serves its clients first and
+ * the full sync adds to its load
+ *
+ * RTT (30%) - a distant peer streams the RDB and the backlog slower
+ *
+ * used_memory (20%) - a peer holding less data than the others may itself be
+ * missing data
+ *
+ * repl_backlog_size (10%) - a larger backlog lets the replica continue after a
+ * short disconnect instead of starting another full sync
+ *
+ * Ties go to the peer that has been up longest.
+ */
+public class PeerSelector {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerSelector.class);
+
+    private static final double OPS_WEIGHT = 0.4;
+    private static final double RTT_WEIGHT = 0.3;
+    private static final double MEMORY_WEIGHT = 0.2;
+    private static final double BACKLOG_WEIGHT = 0.1;
+
+    /**
+     * What a peer reported when it was probed.
+     */
+    public static class Peer {
+        private final String host;
+        private Jedis jedis;
+        private boolean abandoned;
+        private long rttMicros = -1;
+        private long opsPerSec = -1;
+        private long usedMemory = -1;
+        private long replBacklogSize = -1;
+        private long uptime = -1;
+        private double cost;
+
+        public Peer(String host) {
+            this.host = host;
+        }
+
+        /**
+         * A peer with known values, i.e. not probed, -1 for unknown values.
+         */
+        public Peer(String host, long rttMicros, long opsPerSec, long usedMemory, long replBacklogSize, long uptime) {
+            this.host = host;
+            this.rttMicros = rttMicros;
+            this.opsPerSec = opsPerSec;
+            this.usedMemory = usedMemory;
+            this.replBacklogSize = replBacklogSize;
+            this.uptime = uptime;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * @return the connection opened by the probe, null if it failed. The
+         *         caller is responsible for disconnecting it.
+         */
+        public synchronized Jedis getJedis() {
+            return jedis;
+        }
+
+        public long getRttMicros() {
+            return rttMicros;
+        }
+
+        public long getOpsPerSec() {
+            return opsPerSec;
+        }
+
+        public long getUsedMemory() {
+            return usedMemory;
+        }
+
+        public long getReplBacklogSize() {
+            return replBacklogSize;
+        }
+
+        public long getUptime() {
+            return uptime;
+        }
+
+        public double getCost() {
+            return cost;
+        }
+
+        /**
+         * Keep the connection of a finished probe, unless the selection
+         * already gave up on this peer.
+         *
+         * @return false if the connection was not kept
+         */
+        private synchronized boolean connected(Jedis jedis) {
+            if (abandoned) {
+                return false;
+            }
+            this.jedis = jedis;
+            return true;
+        }
+
+        /**
+         * Give up on the peer, a probe still running closes its connection
+         * when it finishes.
+         */
+        private synchronized void abandon() {
+            abandoned = true;
+            disconnect();
+        }
+
+        synchronized void disconnect() {
+            PeerSelector.disconnect(jedis);
+            jedis = null;
+        }
+
+        @Override
+        public String toString() {
+            return host + " [rtt_us=" + rttMicros + ", ops_per_sec=" + opsPerSec + ", used_memory=" + usedMemory
+                    + ", repl_backlog_size=" + replBacklogSize + ", uptime=" + uptime + ", cost="
+                    + String.format("%.3f", cost) + "]";
+        }
+    }
+
+    private final int port;
+    private final int timeoutMs;
+
+    /**
+     * @param port
+     *            the storage port of the peers
+     * @param timeoutMs
+     *            how long a peer may take to be probed
+     */
+    public PeerSelector(int port, int timeoutMs) {
+        this.port = port;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Probe all peers in parallel and rank the reachable ones.
+     *
+     * @return the peers that could be connected to, best first. The caller is
+     *         responsible for disconnecting them.
+     */
+    public List<Peer> select(String[] hosts) {
+        List<Peer> reachable = new ArrayList<Peer>();
+        if (hosts.length == 0) {
+            return reachable;
+        }
+        ExecutorService executor = new NamedThreadPoolExecutor(hosts.length, "peer-probe");
+        try {
+            List<Peer> peers = new ArrayList<Peer>();
+            List<Future<?>> probes = new ArrayList<Future<?>>();
+            for (final String host : hosts) {
+                final Peer peer = new Peer(host);
+                peers.add(peer);
+                probes.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        probe(peer);
+                    }
+                }));
+            }
+
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            for (int i = 0; i < peers.size(); i++) {
+                Peer peer = peers.get(i);
+                try {
+                    probes.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    logger.warn("Peer node [" + peer.getHost() + "] did not answer within " + timeoutMs + " ms");
+                    probes.get(i).cancel(true);
+                    peer.abandon();
+                } catch (Exception e) {
+                    logger.warn("Probing peer node [" + peer.getHost() + "] failed: " + e.getMessage());
+                    peer.abandon();
+                }
+                if (peer.getJedis() != null) {
+                    reachable.add(peer);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        rank(reachable);
+        for (Peer peer : reachable) {
+            logger.info("Candidate peer node " + peer);
+        }
+        return reachable;
+    }
+
+    /**
+     * Connect to a candidate again whose connection was closed, e.g. while
+     * another candidate was warmed up from.
+     *
+     * @return false if the peer cannot be connected to
+     */
+    public boolean reconnect(Peer peer) {
+        if (peer.getJedis() != null) {
+            return true;
+        }
+        Jedis jedis = new Jedis(peer.getHost(), port, timeoutMs);
+        try {
+            jedis.connect();
+        } catch (Exception e) {
+            logger.warn("Unable to connect to peer node [" + peer.getHost() + "] port " + port + ": "
+                    + e.getMessage());
+            disconnect(jedis);
+            return false;
+        }
+        if (!peer.connected(jedis)) {
+            disconnect(jedis);
+            return false;
+        }
+        return true;
+    }
+
+    private void probe(Peer peer) {
+        Jedis jedis = null;
+        try {
+            jedis = new Jedis(peer.getHost(), port, timeoutMs);
+            jedis.connect();
+            long start = System.nanoTime();
+            jedis.ping();
+            peer.rttMicros = (System.nanoTime() - start) / 1000;
+            parseInfo(peer, jedis.info());
+        } catch (Exception e) {
+            logger.warn("Unable to probe peer node [" + peer.getHost() + "] port " + port + ": " + e.getMessage());
+            disconnect(jedis);
+            return;
+        }
+        if (!peer.connected(jedis)) {
+            disconnect(jedis);
+        }
+    }
+
+    private static void disconnect(Jedis jedis) {
+        if (jedis != null) {
+            try {
+                jedis.disconnect();
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Read the ranked values out of INFO. Values that are not there stay -1.
+     */
+    static void parseInfo(Peer peer, String info) {
+        for (String line : Splitter.on('\n').split(info)) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon);
+            if (key.equals("instantaneous_ops_per_sec")) {
+                peer.opsPerSec = parseLong(line, colon);
+            } else if (key.equals("used_memory")) {
+                peer.usedMemory = parseLong(line, colon);
+            } else if (key.equals("repl_backlog_size")) {
+                peer.replBacklogSize = parseLong(line, colon);
+            } else if (key.equals("uptime_in_seconds")) {
+                peer.uptime = parseLong(line, colon);
+            }
+        }
+    }
+
+    private static long parseLong(String line, int colon) {
+        try {
+            return Long.parseLong(line.substring(colon + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Sort peers best first. A value a peer did not report counts as the worst
+     * of the round.
+     */
+    public static void rank(List<Peer> peers) {
+        long maxOps = 0;
+        long maxRtt = 0;
+        long maxMemory = 0;
+        long maxBacklog = 0;
+        for (Peer peer : peers) {
+            maxOps = Math.max(maxOps, peer.opsPerSec);
+            maxRtt = Math.max(maxRtt, peer.rttMicros);
+            maxMemory = Math.max(maxMemory, peer.usedMemory);
+            maxBacklog = Math.max(maxBacklog, peer.replBacklogSize);
+        }
+        for (Peer peer : peers) {
+            peer.cost = OPS_WEIGHT * load(peer.opsPerSec, maxOps) + RTT_WEIGHT * load(peer.rttMicros, maxRtt)
+                    + MEMORY_WEIGHT * (1 - share(peer.usedMemory, maxMemory))
+                    + BACKLOG_WEIGHT * (1 - share(peer.replBacklogSize, maxBacklog));
+        }
+        Collections.sort(peers, new Comparator<Peer>() {
+            @Override
+            public int compare(Peer a, Peer b) {
+                int byCost = Double.compare(a.cost, b.cost);
+                return byCost != 0 ? byCost : Long.compare(b.uptime, a.uptime);
+            }
+        });
+    }
+
+    /**
+     * @return the value relative to the largest of the round, 1 if unknown
+     */
+    private static double load(long value, long max) {
+        if (value < 0) {
+            return 1;
+        }
+        return max == 0 ? 0 : (double) value / max;
+    }
+
+    /**
+     * @return the value relative to the largest of the round, 0 if unknown
+     */
+    private static double share(long value, long max) {
+        if (value < 0) {
+            return 0;
+        }
+        return max == 0 ? 1 : (double) value / max;
+    }
+}
@@ -0,0 +1,206 @@
+package com.netflix.dynomitemanager.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netflix.dynomitemanager.monitoring.ProcessLocator;
+
+/**
+ * Waits for a process to be ready, instead of sleeping for a fixed time.
+ *
+ * All waits poll until a deadline, given as an absolute
+ * {@link System#currentTimeMillis()}, so the phases of a start or stop share
+ * one time budget.
+ */
+public class ReadinessProbe {
+    private static final Logger logger = LoggerFactory.getLogger(ReadinessProbe.class);
+
+    private static final long POLL_INTERVAL_MS = 50;
+    // the output of a script that is kept for the log, the rest is dropped
+    private static final int MAX_OUTPUT_BYTES = 64 * 1024;
+    // a daemon started by a script may keep its output open
+    private static final long MAX_DRAIN_WAIT_MS = 1000;
+    private static final int MAX_PROBE_TIMEOUT_MS = 1000;
+    private static final byte[] PING = "PING\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PONG = "+PONG".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Wait for a start or stop script to exit. Its output, with stderr
+     * redirected to it, is read on a thread of its own meanwhile, so a script
+     * that writes a lot does not block on a full pipe. The output is logged
+     * once the script is done. A script still running at the deadline is
+     * destroyed.
+     *
+     * @param name
+     *            of the script in the log
+     * @return true if the script exited before the deadline
+     */
+    public static boolean waitForExit(Process process, long deadline, String name) {
+        OutputDrain drain = new OutputDrain(process.getInputStream(), name);
+        drain.start();
+        boolean exited = false;
+        try {
+            exited = process.waitFor(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            if (!exited) {
+                process.destroy();
+                if (!process.waitFor(MAX_DRAIN_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+            drain.join(MAX_DRAIN_WAIT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!exited) {
+                process.destroyForcibly();
+            }
+        }
+        logger.info("{} output: {}", name, drain.getOutput());
+        return exited;
+    }
+
+    /**
+     * Reads the output of a script until it is closed, keeping the first
+     * {@link #MAX_OUTPUT_BYTES}.
+     */
+    private static class OutputDrain extends Thread {
+        private final InputStream in;
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        OutputDrain(InputStream in, String name) {
+            super(name + "-output");
+            setDaemon(true);
+            this.in = in;
+        }
+
+        @Override
+        public void run() {
+            byte[] buffer = new byte[4096];
+            try {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    synchronized (output) {
+                        output.write(buffer, 0, Math.max(0, Math.min(n, MAX_OUTPUT_BYTES - output.size())));
+                    }
+                }
+            } catch (IOException e) {
+                // closed when the process was destroyed
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+
+        String getOutput() {
+            synchronized (output) {
+                return new String(output.toByteArray(), StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * Wait until a PING on the Redis protocol is answered with PONG. A Redis
+     * that is still loading its data answers with -LOADING, and is not ready.
+     *
+     * @return true if the port answered before the deadline
+     */
+    public static boolean waitForPing(String host, int port, long deadline) {
+        return waitFor(host, port, deadline, true);
+    }
+
+    /**
+     * Wait until a port accepts connections, for engines that do not speak
+     * the Redis protocol.
+     *
+     * @return true if the port accepted a connection before the deadline
+     */
+    public static boolean waitForConnect(String host, int port, long deadline) {
+        return waitFor(host, port, deadline, false);
+    }
+
+    /**
+     * Wait for a process to exit.
+     *
+     * @return true if the process is gone before the deadline
+     */
+    public static boolean waitForGone(ProcessLocator locator, long deadline) {
+        while (locator.isAlive()) {
+            if (!pause(deadline)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean waitFor(String host, int port, long deadline, boolean ping) {
+        int attempts = 0;
+        do {
+            attempts++;
+            if (probe(host, port, deadline, ping)) {
+                logger.info(String.format("%s:%d is ready after %d probes", host, port, attempts));
+                return true;
+            }
+        } while (pause(deadline));
+        logger.warn(String.format("%s:%d is not ready after %d probes", host, port, attempts));
+        return false;
+    }
+
+    private static boolean probe(String host, int port, long deadline, boolean ping) {
+        int timeout = (int) Math.max(1, Math.min(MAX_PROBE_TIMEOUT_MS, deadline - System.currentTimeMillis()));
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            if (!ping) {
+                return true;
+            }
+            socket.setSoTimeout(timeout);
+            OutputStream out = socket.getOutputStream();
+            out.write(PING);
+            out.flush();
+            InputStream in = socket.getInputStream();
+            for (byte expected : PONG) {
+                if (in.read() != expected) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            // not listening yet
+            return false;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * @return false if the deadline has passed
+     */
+    private static boolean pause(long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return false;
+        }
+        try {
+            Thread.sleep(Math.min(POLL_INTERVAL_MS, remaining));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+}
@@ -1,319 +1,561 @@
 package com.netflix.dynomitemanager.storage;
 
-import java.io.BufferedReader;
-
 import java.io.Reader;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
-
 
+/**
+ * Parses the output of the Redis (or ARDB) INFO command into metrics named
+ * Redis_[Section]_[key], e.g. Redis_Server_uptime_in_seconds.
+ *
+ * The parser walks the INFO text once, without splitting it into lines or
+ * Strings. Only whitelisted keys are kept. Each (section, key) pair is mapped
+ * to a metric slot whose name is computed once, and values are written
+ * straight into the primitive array of a {@link Snapshot}. The slots of the
+ * standard Redis layout are registered up front; pairs that show up in other
+ * sections (e.g. with ARDB) get a slot the first time they are seen.
+ *
+ * A few keys get special treatment:
+ *
+ * 1. Memory:mem_fragmentation_ratio is reported multiplied by 100.
+ *
+ * 2. Keyspace:db0 is split into its parts, e.g. Redis_Keyspace_db0_keys.
+ *
+ * 3. A trailing 'M' on a value is dropped.
+ *
+ * Instances are not thread safe.
+ */
 public class RedisInfoParser {
 
-    private static final Set<String> WHITE_LIST = new HashSet<String>();
-
-    static {
-	WHITE_LIST.add("uptime_in_seconds");
-	WHITE_LIST.add("connected_clients");
-	WHITE_LIST.add("client_longest_output_list");
-	WHITE_LIST.add("client_biggest_input_buf");
-	WHITE_LIST.add("blocked_clients");
-	WHITE_LIST.add("used_memory");
-	WHITE_LIST.add("used_memory_rss");
-	WHITE_LIST.add("used_memory_lua");
-	WHITE_LIST.add("mem_fragmentation_ratio");
-	WHITE_LIST.add("rdb_changes_since_last_save");
-	WHITE_LIST.add("rdb_last_save_time");
-	WHITE_LIST.add("aof_enabled");
-	WHITE_LIST.add("aof_rewrite_in_progress");
-	WHITE_LIST.add("total_connections_received");
-	WHITE_LIST.add("total_commands_processed");
-	WHITE_LIST.add("instantaneous_ops_per_sec");
-	WHITE_LIST.add("rejected_connections");
-	WHITE_LIST.add("expired_keys");
-	WHITE_LIST.add("evicted_keys");
-	WHITE_LIST.add("keyspace_hits");
-	WHITE_LIST.add("keyspace_misses");
-	WHITE_LIST.add("used_cpu_sys");
-	WHITE_LIST.add("used_cpu_user");
-	WHITE_LIST.add("db0");
-	
-	/**
-	 * The following apply only for ARDB/RocksDB"       
-	 */
-        WHITE_LIST.add("used_disk_space");
-        WHITE_LIST.add("rocksdb_memtable_total"); 
-        WHITE_LIST.add("rocksdb_memtable_unflushed");
-    }
+    private static final String PREFIX = "Redis_";
+
+    private static final String[] WHITE_LIST = { "uptime_in_seconds", "connected_clients",
+            "client_longest_output_list", "client_biggest_input_buf", "blocked_clients", "used_memory",
+            "used_memory_rss", "used_memory_lua", "mem_fragmentation_ratio", "rdb_changes_since_last_save",
+            "rdb_last_save_time", "aof_enabled", "aof_rewrite_in_progress", "total_connections_received",
+            "total_commands_processed", "instantaneous_ops_per_sec", "rejected_connections", "expired_keys",
+            "evicted_keys", "keyspace_hits", "keyspace_misses", "used_cpu_sys", "used_cpu_user", "db0",
+            /**
+             * The following apply only for ARDB/RocksDB
+             */
+            "used_disk_space", "rocksdb_memtable_total", "rocksdb_memtable_unflushed" };
+
+    /**
+     * Sections of the whitelisted keys in a standard Redis INFO, used to
+     * register their slots up front.
+     */
+    private static final String[][] REDIS_LAYOUT = {
+            { "Server", "uptime_in_seconds" },
+            { "Clients", "connected_clients", "client_longest_output_list", "client_biggest_input_buf",
+                    "blocked_clients" },
+            { "Memory", "used_memory", "used_memory_rss", "used_memory_lua", "mem_fragmentation_ratio" },
+            { "Persistence", "rdb_changes_since_last_save", "rdb_last_save_time", "aof_enabled",
+                    "aof_rewrite_in_progress" },
+            { "Stats", "total_connections_received", "total_commands_processed", "instantaneous_ops_per_sec",
+                    "rejected_connections", "expired_keys", "evicted_keys", "keyspace_hits", "keyspace_misses" },
+            { "CPU", "used_cpu_sys", "used_cpu_user" },
+            { "Keyspace", "db0_keys", "db0_expires", "db0_avg_ttl" } };
+
+    private static final String MEMORY = "Memory";
+    private static final String KEYSPACE = "Keyspace";
+    private static final String FRAGMENTATION = "mem_fragmentation_ratio";
+    private static final String DB0 = "db0";
+    private static final String DB0_PREFIX = "db0_";
+
+    private static final double[] POW10 = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+            1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+    private final NameTable sections = new NameTable();
+    private final NameTable keys = new NameTable();
+    // whitelisted[keyId] is true for keys of the white list. db0 parts are
+    // interned in the same table, but are not whitelisted on their own.
+    private boolean[] whitelisted = new boolean[64];
+
+    // slots[sectionId][keyId] is the metric slot, or -1 if not assigned yet
+    private int[][] slots = new int[0][];
+    private String[] slotNames = new String[64];
+    private int slotCount;
+
+    private final int memorySection;
+    private final int keyspaceSection;
+    private final int fragmentationKey;
+    private final int db0Key;
+
+    // scratch state for the line being parsed
+    private double parsedValue;
 
     /**
      * This is to create a constructor for the test cases.
      */
     public RedisInfoParser() {
+        for (String key : WHITE_LIST) {
+            int id = keys.add(key);
+            ensureKeyCapacity(id);
+            whitelisted[id] = true;
+        }
+        for (String[] section : REDIS_LAYOUT) {
+            int sectionId = sections.add(section[0]);
+            for (int i = 1; i < section.length; i++) {
+                slot(sectionId, keys.add(section[i]));
+            }
+        }
+        memorySection = sections.add(MEMORY);
+        keyspaceSection = sections.add(KEYSPACE);
+        fragmentationKey = keys.add(FRAGMENTATION);
+        db0Key = keys.add(DB0);
+    }
 
+    /**
+     * @return a snapshot sized for the slots known so far. It grows as needed
+     *         when more slots are registered.
+     */
+    public Snapshot newSnapshot() {
+        return new Snapshot();
     }
 
-    public Map<String, Long> parse(Reader inReader) throws Exception {
+    /**
+     * @return the number of metric slots registered so far
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
 
-	final Map<String, Long> metrics = new HashMap<String, Long>();
-	BufferedReader reader = null;
+    /**
+     * @return the metric name of a slot, e.g. Redis_Server_uptime_in_seconds
+     */
+    public String getSlotName(int slot) {
+        return slotNames[slot];
+    }
 
-	try {
-	    reader = new BufferedReader(inReader);
+    /**
+     * @return the slot of a metric name, or -1 if no such slot was registered
+     */
+    public int findSlot(String name) {
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotNames[slot].equals(name)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
 
-	    List<StatsSection> sections = new ArrayList<StatsSection>();
+    /**
+     * Parse INFO output into a map of metric names to values.
+     */
+    public Map<String, Long> parse(Reader inReader) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        try {
+            char[] buf = new char[4096];
+            int n;
+            while ((n = inReader.read(buf)) != -1) {
+                sb.append(buf, 0, n);
+            }
+        } finally {
+            inReader.close();
+        }
+        return parse(sb);
+    }
 
-	    boolean stop = false;
-	    while (!stop) {
-		StatsSection section = new StatsSection(reader, RuleIter);
-		section.initSection();
+    /**
+     * Parse INFO output into a map of metric names to values.
+     */
+    public Map<String, Long> parse(CharSequence info) {
+        Snapshot snapshot = newSnapshot();
+        parse(info, snapshot);
+        return snapshot.toMap();
+    }
 
-		if (section.isEmpty()) {
-		    stop = true;
-		    break;
-		}
+    /**
+     * Parse INFO output into a snapshot. Values of the previous parse into the
+     * same snapshot are discarded.
+     */
+    public void parse(CharSequence info, Snapshot snapshot) {
+        snapshot.reset();
+
+        int section = -1;
+        int len = info.length();
+        int pos = 0;
+        while (pos < len) {
+            int end = pos;
+            while (end < len && info.charAt(end) != '\n') {
+                end++;
+            }
+            int next = end + 1;
+
+            // trim
+            while (pos < end && isWhitespace(info.charAt(pos))) {
+                pos++;
+            }
+            while (end > pos && isWhitespace(info.charAt(end - 1))) {
+                end--;
+            }
+
+            if (pos == end) {
+                // a blank line ends the section
+                section = -1;
+            } else if (info.charAt(pos) == '#') {
+                section = readSection(info, pos + 1, end);
+            } else if (section >= 0) {
+                processLine(info, pos, end, section, snapshot);
+            }
+            pos = next;
+        }
+    }
 
-		section.parseSectionData();
+    private int readSection(CharSequence info, int from, int to) {
+        // "# Server"
+        if (from >= to || info.charAt(from) != ' ') {
+            return sections.intern("", 0, 0, 0);
+        }
+        from++;
+        for (int i = from; i < to; i++) {
+            if (info.charAt(i) == ' ') {
+                return sections.intern("", 0, 0, 0);
+            }
+        }
+        return sections.intern(info, from, to, hash(0, info, from, to));
+    }
 
-		if (section.data.isEmpty()) {
-		    continue;
-		}
+    private void processLine(CharSequence info, int from, int to, int section, Snapshot snapshot) {
+        int colon = -1;
+        for (int i = from; i < to; i++) {
+            if (info.charAt(i) == ':') {
+                if (colon >= 0) {
+                    // more than one ':' is not a metric line
+                    return;
+                }
+                colon = i;
+            }
+        }
+        if (colon <= from || colon == to - 1) {
+            return;
+        }
+
+        int key = keys.find(info, from, colon, hash(0, info, from, colon));
+        if (key < 0 || !whitelisted[key]) {
+            return;
+        }
+
+        int valueFrom = colon + 1;
+        int valueTo = to;
+
+        if (section == keyspaceSection && key == db0Key) {
+            processKeyspace(info, valueFrom, valueTo, section, snapshot);
+            return;
+        }
+
+        if (info.charAt(valueTo - 1) == 'M') {
+            valueTo--;
+        }
+        if (!parseNumber(info, valueFrom, valueTo)) {
+            return;
+        }
+        double value = parsedValue;
+        if (section == memorySection && key == fragmentationKey) {
+            value = value * 100;
+        }
+        snapshot.set(slot(section, key), (long) value);
+    }
 
-		sections.add(section);
-	    }
+    /**
+     * db0:keys=2499968,expires=0,avg_ttl=0
+     */
+    private void processKeyspace(CharSequence info, int from, int to, int section, Snapshot snapshot) {
+        int partFrom = from;
+        while (partFrom < to) {
+            int partTo = partFrom;
+            while (partTo < to && info.charAt(partTo) != ',') {
+                partTo++;
+            }
+            int eq = -1;
+            for (int i = partFrom; i < partTo; i++) {
+                if (info.charAt(i) == '=') {
+                    if (eq >= 0) {
+                        eq = -1;
+                        break;
+                    }
+                    eq = i;
+                }
+            }
+            if (eq > partFrom && parseNumber(info, eq + 1, partTo)) {
+                int h = hash(DB0_PREFIX.hashCode(), info, partFrom, eq);
+                int key = keys.find(DB0_PREFIX, info, partFrom, eq, h);
+                if (key < 0) {
+                    key = keys.add(DB0_PREFIX + info.subSequence(partFrom, eq));
+                    ensureKeyCapacity(key);
+                }
+                snapshot.set(slot(section, key), (long) parsedValue);
+            }
+            partFrom = partTo + 1;
+        }
+    }
 
-	    for (StatsSection section : sections) {
-		metrics.putAll(section.getMetrics());
-	    }
+    /**
+     * Parse a decimal number into {@link #parsedValue}. Equivalent to
+     * Double.parseDouble for the plain decimals INFO reports, falling back to
+     * it for anything else.
+     */
+    private boolean parseNumber(CharSequence s, int from, int to) {
+        if (from >= to) {
+            return false;
+        }
+        int i = from;
+        boolean negative = false;
+        char c = s.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        for (; i < to; i++) {
+            c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (i < to || digits == 0 || digits > 15 || fractionDigits >= POW10.length) {
+            // exponent, very long numbers or not a number at all
+            try {
+                parsedValue = Double.parseDouble(s.subSequence(from, to).toString());
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        // both operands are exact, so the quotient is correctly rounded just
+        // like Double.parseDouble
+        double value = fractionDigits == 0 ? mantissa : mantissa / POW10[fractionDigits];
+        parsedValue = negative ? -value : value;
+        return true;
+    }
 
-	} finally {
-	    if (reader != null) {
-		reader.close();
-	    }
-	}
+    private int slot(int section, int key) {
+        if (section >= slots.length) {
+            int old = slots.length;
+            slots = Arrays.copyOf(slots, Math.max(section + 1, old * 2));
+            for (int i = old; i < slots.length; i++) {
+                slots[i] = new int[0];
+            }
+        }
+        int[] row = slots[section];
+        if (key >= row.length) {
+            int old = row.length;
+            row = Arrays.copyOf(row, Math.max(key + 1, Math.max(16, old * 2)));
+            Arrays.fill(row, old, row.length, -1);
+            slots[section] = row;
+        }
+        int slot = row[key];
+        if (slot < 0) {
+            slot = slotCount++;
+            if (slot == slotNames.length) {
+                slotNames = Arrays.copyOf(slotNames, slotNames.length * 2);
+            }
+            String sectionName = sections.name(section);
+            slotNames[slot] = sectionName.isEmpty() ? PREFIX + keys.name(key)
+                    : PREFIX + sectionName + "_" + keys.name(key);
+            row[key] = slot;
+        }
+        return slot;
+    }
 
-	return metrics;
+    private void ensureKeyCapacity(int id) {
+        if (id >= whitelisted.length) {
+            whitelisted = Arrays.copyOf(whitelisted, Math.max(id + 1, whitelisted.length * 2));
+        }
     }
 
-    private class StatsSection {
-
-	private final BufferedReader reader;
-
-	private String sectionName;
-	private String sectionNamePrefix = "Redis_";
-
-	private final Map<String, Long> data = new HashMap<String, Long>();
-	private final SectionRule sectionRule;
-
-	private StatsSection(BufferedReader br, SectionRule rule) {
-	    reader = br;
-	    sectionRule = rule;
-	}
-
-	private boolean isEmpty() {
-	    return sectionName == null && data.isEmpty();
-	}
-
-	private void initSection() throws Exception {
-
-	    String line = null;
-
-	    while ((line = reader.readLine()) != null) {
-		line = line.trim();
-		if (!line.startsWith("#")) {
-		    continue;
-		} else {
-		    break;
-		}
-	    }
-
-	    if (line == null) {
-		return;
-	    }
-
-	    sectionName = readSectionName(line);
-	    if (sectionName != null && !sectionName.isEmpty()) {
-		sectionNamePrefix = "Redis_" + sectionName + "_";
-	    }
-	}
-
-	private void parseSectionData() throws Exception {
-
-	    String line = reader.readLine();
-
-	    while (line != null && !line.isEmpty()) {
-		processLine(line.trim());
-		line = reader.readLine();
-	    }
-	}
-
-	private String readSectionName(String line) {
-	    String[] parts = line.split(" ");
-	    if (parts.length != 2) {
-		return null;
-	    }
-	    return parts[1];
-	}
-
-	private void processLine(String line) throws Exception {
-
-	    String[] parts = line.split(":");
-	    if (parts.length != 2) {
-		return;
-	    }
-	    String name = parts[0];
-	    String sVal = parts[1];
-
-	    // while list filtering
-	    if (!WHITE_LIST.contains(name))
-		return;
-
-	    if (sVal.endsWith("M")) {
-		sVal = sVal.substring(0, sVal.length() - 1);
-	    }
-
-	    if (sectionRule.processSection(this, name, sVal)) {
-		return; // rule already applied. data is processed with custom
-			// logic
-	    }
-
-	    // else do generic rule processing
-	    Double val = null;
-	    try {
-		val = Double.parseDouble(sVal);
-	    } catch (NumberFormatException nfe) {
-		val = null;
-	    }
-
-	    if (val != null) {
-		data.put(name, val.longValue());
-	    }
-	}
-
-	private Map<String, Long> getMetrics() {
-
-	    Map<String, Long> map = new HashMap<String, Long>();
-	    for (String key : data.keySet()) {
-		map.put(sectionNamePrefix + key, data.get(key));
-	    }
-	    return map;
-	}
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\r' || c == '\t';
+    }
 
+    private static int hash(int h, CharSequence s, int from, int to) {
+        for (int i = from; i < to; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
     }
 
-    private interface SectionRule {
-	boolean processSection(StatsSection section, String key, String value);
+    /**
+     * The values of one INFO parse, indexed by metric slot.
+     */
+    public final class Snapshot {
+
+        private long[] values = new long[Math.max(16, slotCount)];
+        // a slot holds a value of the current parse if its stamp matches
+        private int[] stamps = new int[values.length];
+        private int generation;
+
+        private Snapshot() {
+        }
+
+        private void reset() {
+            generation++;
+        }
+
+        private void set(int slot, long value) {
+            if (slot >= values.length) {
+                int size = Math.max(slot + 1, values.length * 2);
+                values = Arrays.copyOf(values, size);
+                stamps = Arrays.copyOf(stamps, size);
+            }
+            values[slot] = value;
+            stamps[slot] = generation;
+        }
+
+        /**
+         * @return the number of slots of the parser, some may not be present
+         *         in this snapshot
+         */
+        public int size() {
+            return slotCount;
+        }
+
+        public boolean isPresent(int slot) {
+            return slot < values.length && stamps[slot] == generation && generation != 0;
+        }
+
+        public long get(int slot) {
+            return values[slot];
+        }
+
+        public String getName(int slot) {
+            return slotNames[slot];
+        }
+
+        /**
+         * @return the value of a metric by name, or null if it is not present
+         */
+        public Long get(String name) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (isPresent(slot) && slotNames[slot].equals(name)) {
+                    return values[slot];
+                }
+            }
+            return null;
+        }
+
+        public Map<String, Long> toMap() {
+            Map<String, Long> map = new HashMap<String, Long>();
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (isPresent(slot)) {
+                    map.put(slotNames[slot], values[slot]);
+                }
+            }
+            return map;
+        }
     }
 
-    private SectionRule Rule0 = new SectionRule() {
-
-	@Override
-	public boolean processSection(StatsSection section, String key, String value) {
-
-	    if (section.sectionName.equals("Server")) {
-		if (key.equals("uptime_in_seconds")) {
-		    try {
-			Double dVal = Double.parseDouble(value);
-			section.data.put(key, dVal.longValue());
-			return true;
-		    } catch (NumberFormatException e) {
-		    }
-		}
-	    }
-	    return false;
-	}
-
-    };
-
-    private SectionRule Rule1 = new SectionRule() {
-
-	@Override
-	public boolean processSection(StatsSection section, String key, String value) {
-
-	    if (section.sectionName.equals("Memory")) {
-		if (key.equals("mem_fragmentation_ratio")) {
-		    try {
-			Double dVal = Double.parseDouble(value);
-			dVal = dVal * 100;
-			section.data.put(key, dVal.longValue());
-			return true;
-		    } catch (NumberFormatException e) {
-		    }
-		}
-	    }
-	    return false;
-	}
-
-    };
-
-    private SectionRule Rule2 = new SectionRule() {
-
-	@Override
-	public boolean processSection(StatsSection section, String key, String value) {
-
-	    if (section.sectionName.equals("Persistence")) {
-		if (key.equals("rdb_last_bgsave_status") || key.equals("aof_last_bgrewrite_status")
-			|| key.equals("aof_last_write_status")) {
-		    Long val = value.equalsIgnoreCase("ok") ? 1L : 0L;
-		    section.data.put(key, val);
-		    return true;
-		}
-	    }
-	    return false;
-	}
-
-    };
-
-    private SectionRule Rule3 = new SectionRule() {
-
-	@Override
-	public boolean processSection(StatsSection section, String key, String value) {
-
-	    if (section.sectionName.equals("Keyspace")) {
-		if (key.equals("db0")) {
-		    String[] parts = value.split(",");
-		    for (String part : parts) {
-			addPart(key, part, section);
-		    }
-		    return true;
-		}
-	    }
-	    return false;
-	}
-
-	private void addPart(String parentKey, String keyVal, StatsSection section) {
-	    String[] parts = keyVal.split("=");
-	    if (parts.length != 2) {
-		return;
-	    }
-	    try {
-		String key = parentKey + "_" + parts[0];
-		Double dVal = Double.parseDouble(parts[1]);
-		section.data.put(key, dVal.longValue());
-	    } catch (NumberFormatException e) {
-		// ignore
-	    }
-	}
-    };
-
-    private SectionRule RuleIter = new SectionRule() {
-
-	SectionRule[] arr = { Rule0, Rule1, Rule2, Rule3 };
-	final List<SectionRule> rules = Arrays.asList(arr);
-
-	@Override
-	public boolean processSection(StatsSection section, String key, String value) {
-
-	    for (SectionRule rule : rules) {
-		if (rule.processSection(section, key, value)) {
-		    return true;
-		}
-	    }
-	    return false;
-	}
-    };
+    /**
+     * Interns names, looked up by a range of chars without creating a String.
+     */
+    private static final class NameTable {
+        private String[] names = new String[64];
+        private int[] ids = new int[64];
+        private String[] byId = new String[16];
+        private int size;
+
+        int add(String name) {
+            int id = find("", name, 0, name.length(), name.hashCode());
+            if (id >= 0) {
+                return id;
+            }
+            return insert(name, name.hashCode());
+        }
+
+        int intern(CharSequence s, int from, int to, int h) {
+            int id = find("", s, from, to, h);
+            if (id >= 0) {
+                return id;
+            }
+            return insert(s.subSequence(from, to).toString(), h);
+        }
+
+        int find(CharSequence s, int from, int to, int h) {
+            return find("", s, from, to, h);
+        }
+
+        /**
+         * Find prefix + s[from, to). h must be the String hash of the
+         * concatenation.
+         */
+        int find(String prefix, CharSequence s, int from, int to, int h) {
+            int mask = names.length - 1;
+            int len = prefix.length() + to - from;
+            for (int i = mix(h) & mask; names[i] != null; i = (i + 1) & mask) {
+                String name = names[i];
+                if (name.hashCode() == h && name.length() == len && matches(name, prefix, s, from, to)) {
+                    return ids[i];
+                }
+            }
+            return -1;
+        }
+
+        String name(int id) {
+            return byId[id];
+        }
+
+        private int insert(String name, int h) {
+            int id = size++;
+            if (id == byId.length) {
+                byId = Arrays.copyOf(byId, byId.length * 2);
+            }
+            byId[id] = name;
+            if (size * 2 > names.length) {
+                rehash();
+            }
+            put(name, id);
+            return id;
+        }
+
+        private void put(String name, int id) {
+            int mask = names.length - 1;
+            int i = mix(name.hashCode()) & mask;
+            while (names[i] != null) {
+                i = (i + 1) & mask;
+            }
+            names[i] = name;
+            ids[i] = id;
+        }
+
+        private void rehash() {
+            String[] oldNames = names;
+            int[] oldIds = ids;
+            names = new String[oldNames.length * 2];
+            ids = new int[oldIds.length * 2];
+            for (int i = 0; i < oldNames.length; i++) {
+                if (oldNames[i] != null) {
+                    put(oldNames[i], oldIds[i]);
+                }
+            }
+        }
+
+        private static boolean matches(String name, String prefix, CharSequence s, int from, int to) {
+            int p = prefix.length();
+            if (!name.startsWith(prefix)) {
+                return false;
+            }
+            for (int i = from; i < to; i++) {
+                if (name.charAt(p + i - from) != s.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int mix(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
 }
@@ -5,6 +5,14 @@ import com.google.common.base.Splitter;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.netflix.dynomitemanager.config.FloridaConfig;
+import com.netflix.dynomitemanager.config.InstanceState;
+import com.netflix.dynomitemanager.dynomite.DynomiteAdminClient;
+import com.netflix.dynomitemanager.monitoring.HealthProber;
+import com.netflix.dynomitemanager.monitoring.HealthScore;
+import com.netflix.dynomitemanager.monitoring.LatestSample;
+import com.netflix.dynomitemanager.monitoring.Sample;
+import com.netflix.dynomitemanager.monitoring.WarmUpProgress;
+import com.netflix.nfsidecar.config.CommonConfig;
 import com.netflix.nfsidecar.scheduler.SimpleTimer;
 import com.netflix.nfsidecar.scheduler.Task;
 import com.netflix.nfsidecar.scheduler.TaskTimer;
@@ -22,15 +30,13 @@ import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -46,12 +52,16 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
     private static final String DYNO_REDIS_CONF_PATH = "/apps/nfredis/conf/redis.conf";
     private static final String REDIS_ADDRESS = "127.0.0.1";
     private static final int REDIS_PORT = 22122;
+    private static final String MIGRATION_ENGINE = "migration";
+    private static final int MIGRATION_TIMEOUT_MS = 30000;
     private static final long GB_2_IN_KB = 2L * 1024L * 1024L;
     private static final String PROC_MEMINFO_PATH = "/proc/meminfo";
     private static final Pattern MEMINFO_PATTERN = Pattern.compile("MemTotal:\\s*([0-9]*)");
+    private static final Pattern DYNOMITE_LATENCY_PATTERN = Pattern.compile("\"latency_99th\"\\s*:\\s*([0-9]+)");
 
     private final String REDIS_START_SCRIPT = "/apps/nfredis/bin/launch_nfredis.sh";
     private final String REDIS_STOP_SCRIPT = "/apps/nfredis/bin/kill_redis.sh";
+    private final String REDIS_PROCESS = "/apps/nfredis/bin/redis-server";
 
     private static final String REDIS_CONF_MAXMEMORY_PATTERN = "^maxmemory\\s*[0-9][0-9]*[a-zA-Z]*";
     private static final String REDIS_CONF_APPENDONLY = "^appendonly\\s*[a-zA-Z]*";
@@ -76,6 +86,27 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
     @Inject
     private Sleeper sleeper;
 
+    @Inject
+    private LatestSample latestSample;
+
+    @Inject
+    private HealthProber healthProber;
+
+    @Inject
+    private InstanceState instanceState;
+
+    @Inject
+    private WarmUpProgress warmUpProgress;
+
+    @Inject
+    private DynomiteAdminClient adminClient;
+
+    @Inject
+    private CommonConfig commonConfig;
+
+    // false once the Dynomite stats port of the warm up peer did not answer
+    private boolean donorInfoReachable;
+
     @Inject
     public RedisStorageProxy(FloridaConfig config) {
         this.config = config;
@@ -93,7 +124,9 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
 
     @Override
     public void execute() throws Exception {
-        redisHealth = isAlive();
+        // Redis answered INFO moments ago, no need to ping it again
+        Sample sample = latestSample.get();
+        redisHealth = (sample != null && sample.hasStorageInfo()) || isAlive();
     }
 
     /**
@@ -136,7 +169,6 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
             try {
                 // only sync from one peer for now
                 isDone = (this.localJedis.slaveof(peer, port) != null);
-                sleeper.sleepQuietly(1000);
             } catch (JedisConnectionException e) {
                 logger.warn("JedisConnection Exception in SLAVEOF peer " + peer + " port " + port + " Exception: "
                         + e.getMessage());
@@ -147,6 +179,11 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
                 logger.error("Error: " + e.getMessage());
 
             }
+            // the sleep is only between attempts, so that it does not add to
+            // the duty cycle of a throttled warm up
+            if (!isDone) {
+                sleeper.sleepQuietly(1000);
+            }
         }
 
         // clean up the Redis connection.
@@ -170,7 +207,6 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
             logger.info("calling SLAVEOF NO ONE");
             try {
                 isDone = (this.localJedis.slaveofNoOne() != null);
-                sleeper.sleepQuietly(1000);
             } catch (JedisConnectionException e) {
                 logger.warn("JedisConnection Exception in SLAVEOF NO ONE: " + e.getMessage());
                 logger.warn("Trying to reconnect...");
@@ -179,6 +215,9 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
             } catch (Exception e) {
                 logger.error("Error: " + e.getMessage());
             }
+            if (!isDone) {
+                sleeper.sleepQuietly(1000);
+            }
         }
 
         // clean up the Redis connection.
@@ -280,27 +319,29 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
         int retry = 0;
 
         try {
-            peerRedisInfo = localJedis.info();
-            Iterable<String> result = Splitter.on('\n').split(peerRedisInfo);
-            String pendingAOF = null;
-
-            for (String line : result) {
-                if (line.startsWith("loading")) {
-                    String[] items = line.split(":");
-                    pendingAOF = items[1].trim();
-                    if (pendingAOF.equals("0")) {
-                        logger.info("Redis: memory loading completed.");
-                        return true;
-                    } else {
-                        retry++;
-                        logger.warn("Redis: memory pending. Sleeping 30 secs...");
-                        sleeper.sleepQuietly(30000);
+            // INFO again after each sleep until Redis is done loading
+            while (retry <= 20) {
+                peerRedisInfo = localJedis.info();
+                Iterable<String> result = Splitter.on('\n').split(peerRedisInfo);
+                String pendingAOF = null;
 
-                        if (retry > 20) {
-                            return false;
-                        }
+                for (String line : result) {
+                    if (line.startsWith("loading")) {
+                        String[] items = line.split(":");
+                        pendingAOF = items[1].trim();
+                        break;
                     }
                 }
+                if (pendingAOF == null) {
+                    break;
+                }
+                if (pendingAOF.equals("0")) {
+                    logger.info("Redis: memory loading completed.");
+                    return true;
+                }
+                retry++;
+                logger.warn("Redis: memory pending. Sleeping 30 secs...");
+                sleeper.sleepQuietly(30000);
             }
         } catch (JedisConnectionException e) {
             logger.error("Cannot connect to Redis to INFO to checking loading AOF");
@@ -315,163 +356,335 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
     @Override
     public boolean isAlive() {
         // Not using localJedis variable as it can be used by
-        // ProcessMonitorTask as well.
-        return JedisUtils.isAliveWithRetry(REDIS_ADDRESS, REDIS_PORT);
+        // ProcessMonitorTask as well. The prober shares its PING with the
+        // other callers.
+        return healthProber.target(DYNO_REDIS, REDIS_ADDRESS, REDIS_PORT).isAliveWithRetry();
     }
 
     public long getUptime() {
         return 0;
     }
 
-    private class AlivePeer {
-        String selectedPeer;
-        Jedis selectedJedis;
-        Long upTime;
-    }
+    /**
+     * Warm up from the best ranked peer, and fall back to the next one if it
+     * cannot be reached or the sync fails.
+     */
+    @Override
+    public Bootstrap warmUpStorage(String[] peers, long snapshotTime) {
+        for (String peer : peers) {
+            logger.info("Peer node [" + peer + "] has the same token!");
+        }
+        if (!isAlive()) {
+            logger.error("Redis is not alive, cannot warm it up");
+            return Bootstrap.CANNOT_CONNECT_FAIL;
+        }
+
+        PeerSelector selector = new PeerSelector(REDIS_PORT, config.getPeerProbeTimeout());
+        List<PeerSelector.Peer> candidates = selector.select(peers);
+        if (candidates.isEmpty()) {
+            logger.error("Cannot connect to peer node to bootstrap");
+            return Bootstrap.CANNOT_CONNECT_FAIL;
+        }
+
+        boolean migration = MIGRATION_ENGINE.equals(config.getWarmUpEngine());
+        File checkpointFile = new File(config.getWarmUpCheckpointFile());
+        WarmUpCheckpoint checkpoint = null;
+        long changedWithinSec = -1;
+        if (snapshotTime > 0) {
+            // a replication would replace the snapshot with a full sync, so
+            // only the keys accessed since are migrated on top of it
+            migration = true;
+            changedWithinSec = (System.currentTimeMillis() - snapshotTime + config.getWarmUpSnapshotMargin()) / 1000;
+            logger.info("Catching up the keys accessed in the last " + changedWithinSec + "s on the snapshot");
+            // what an earlier warm up copied was replaced by the snapshot
+            WarmUpCheckpoint.delete(checkpointFile);
+        } else {
+            checkpoint = loadCheckpoint(checkpointFile,
+                    migration ? WarmUpCheckpoint.MIGRATION : WarmUpCheckpoint.REPLICATION, candidates);
+        }
 
-    private AlivePeer peerNodeSelection(String peer, Jedis peerJedis) {
-        AlivePeer currentAlivePeer = new AlivePeer();
-        currentAlivePeer.selectedPeer = peer;
-        currentAlivePeer.selectedJedis = peerJedis;
-        String s = peerJedis.info(); // Parsing the info command on the peer
-                                     // node
-        RedisInfoParser infoParser = new RedisInfoParser();
-        InputStreamReader reader = new InputStreamReader(new ByteArrayInputStream(s.getBytes()));
+        Bootstrap bootstrap = Bootstrap.CANNOT_CONNECT_FAIL;
         try {
-            Map<String, Long> allInfo = infoParser.parse(reader);
-            Iterator iter = allInfo.keySet().iterator();
-            String key = null;
-            boolean found = false;
-            while (iter.hasNext()) {
-                key = (String) iter.next();
-                if (key.equals("Redis_Server_uptime_in_seconds")) {
-                    currentAlivePeer.upTime = allInfo.get(key);
-                    found = true;
-                    break;
+            for (PeerSelector.Peer candidate : candidates) {
+                // a migration opens connections of its own, and the other
+                // candidates would keep theirs open for the whole warm up
+                for (PeerSelector.Peer other : candidates) {
+                    if (migration || other != candidate) {
+                        other.disconnect();
+                    }
+                }
+                if (!migration && !selector.reconnect(candidate)) {
+                    bootstrap = Bootstrap.CANNOT_CONNECT_FAIL;
+                    logger.warn("Cannot connect to peer node [" + candidate.getHost()
+                            + "] again, trying the next peer");
+                    continue;
+                }
+                WarmUpCheckpoint resume = checkpoint != null && checkpoint.getPeer().equals(candidate.getHost())
+                        ? checkpoint : null;
+                if (migration) {
+                    bootstrap = migrateFromPeer(candidate.getHost(), resume, checkpointFile, changedWithinSec);
+                } else {
+                    bootstrap = warmUpFromPeer(candidate.getHost(), candidate.getJedis(), resume, checkpointFile);
+                }
+                if (bootstrap != Bootstrap.WARMUP_ERROR_FAIL && bootstrap != Bootstrap.CANNOT_CONNECT_FAIL) {
+                    // the next warm up starts over
+                    WarmUpCheckpoint.delete(checkpointFile);
+                    return bootstrap;
                 }
+                logger.warn("Warm up from peer node [" + candidate.getHost() + "] failed with " + bootstrap
+                        + ", trying the next peer");
             }
-            if (!found) {
-                logger.warn("uptime_in_seconds was not found in Redis info");
-                return null;
+        } finally {
+            for (PeerSelector.Peer candidate : candidates) {
+                candidate.disconnect();
             }
-            logger.info("Alive Peer node [" + peer + "] is up for " + currentAlivePeer.upTime + " seconds");
-
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        logger.error("Warm up failed from all " + candidates.size() + " reachable peers");
+        return bootstrap;
+    }
 
-        return currentAlivePeer;
+    /**
+     * Load the checkpoint of an earlier warm up with the engine, and move its
+     * peer to the front of the candidates.
+     *
+     * @return the checkpoint, null if there is none to resume from
+     */
+    private WarmUpCheckpoint loadCheckpoint(File file, String engine, List<PeerSelector.Peer> candidates) {
+        WarmUpCheckpoint checkpoint = WarmUpCheckpoint.load(file);
+        if (checkpoint == null) {
+            return null;
+        }
+        if (!checkpoint.isResumable(engine, System.currentTimeMillis(), config.getWarmUpCheckpointMaxAge())) {
+            logger.info("Not resuming from the old or other engine warm up checkpoint: " + checkpoint);
+            return null;
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            if (candidates.get(i).getHost().equals(checkpoint.getPeer())) {
+                candidates.add(0, candidates.remove(i));
+                logger.info("Resuming the warm up checkpoint: " + checkpoint);
+                return checkpoint;
+            }
+        }
+        logger.info("The peer of the warm up checkpoint is not reachable: " + checkpoint);
+        return null;
     }
 
-    // probably use our Retries Util here
-    @Override
-    public Bootstrap warmUpStorage(String[] peers) {
-        AlivePeer longestAlivePeer = new AlivePeer();
-        Jedis peerJedis = null;
+    /**
+     * Copy the keys of the peer with SCAN, DUMP and RESTORE instead of
+     * replicating them.
+     *
+     * @param changedWithinSec
+     *            on top of a snapshot, copy only the keys accessed within the
+     *            seconds and delete those the peer does not have, -1 to copy
+     *            all keys
+     */
+    private Bootstrap migrateFromPeer(final String peer, WarmUpCheckpoint resume, final File checkpointFile,
+            long changedWithinSec) {
+        String cursor = KeyMigrator.START;
+        if (resume != null && resume.getCursor() != null) {
+            long keys = getLocalKeyCount();
+            if (resume.hasKeys(keys)) {
+                logger.info("Resuming the migration from peer [" + peer + "] at cursor " + resume.getCursor()
+                        + " with " + keys + " keys restored");
+                cursor = resume.getCursor();
+            } else {
+                logger.info("Redis has " + keys + " keys instead of the " + resume.getKeys() + " restored from peer ["
+                        + peer + "], starting the migration over");
+            }
+        }
 
-        for (String peer : peers) { // Looking into the peers with the same
-                                    // token
-            logger.info("Peer node [" + peer + "] has the same token!");
-            peerJedis = JedisUtils.connect(peer, REDIS_PORT);
-            if (peerJedis != null && isAlive()) { // Checking if there are
-                                                  // peers, and if so if they
-                                                  // are alive
-
-                AlivePeer currentAlivePeer = peerNodeSelection(peer, peerJedis);
-
-                // Checking the one with the longest up time. Disconnect the one
-                // that is not the longest.
-                if (currentAlivePeer.selectedJedis == null) {
-                    logger.error("Cannot find uptime_in_seconds in peer " + peer);
-                    return Bootstrap.CANNOT_CONNECT_FAIL;
-                } else if (longestAlivePeer.selectedJedis == null) {
-                    longestAlivePeer = currentAlivePeer;
-                } else if (currentAlivePeer.upTime > longestAlivePeer.upTime) {
-                    longestAlivePeer.selectedJedis.disconnect();
-                    longestAlivePeer = currentAlivePeer;
+        final KeyMigrator migrator = new KeyMigrator(peer, REDIS_PORT, REDIS_ADDRESS, REDIS_PORT,
+                config.getMigrationScanCount(), config.getMigrationParallelism(),
+                config.getMigrationInFlightBatches(), MIGRATION_TIMEOUT_MS);
+        if (changedWithinSec >= 0) {
+            migrator.setChangedWithin(changedWithinSec);
+        }
+        long deadline = System.currentTimeMillis() + config.getMaxTimeToBootstrap();
+        KeyMigrator.Result result = migrator.migrate(cursor, deadline, new KeyMigrator.Checkpoint() {
+            private long savedAt;
+
+            @Override
+            public void onCheckpoint(String cursor) {
+                long now = System.currentTimeMillis();
+                warmUpProgress.update(peer, migrator, now);
+                // at most once per second
+                if (now - savedAt >= 1000) {
+                    long keys = countLocalKeys();
+                    if (keys >= 0) {
+                        WarmUpCheckpoint.migration(peer, cursor, keys, now).save(checkpointFile);
+                    }
+                    savedAt = now;
                 }
             }
+        });
+        warmUpProgress.update(peer, migrator, System.currentTimeMillis());
+        if (result == KeyMigrator.Result.DONE && changedWithinSec >= 0) {
+            logger.info(migrator.getUnchanged() + " keys of the snapshot are unchanged on peer [" + peer + "]");
+            result = migrator.prune(deadline);
         }
 
-        // We check if the select peer is alive and we connect to it.
-        if (longestAlivePeer.selectedJedis == null) {
-            logger.error("Cannot connect to peer node to bootstrap");
+        switch (result) {
+        case DONE:
+            return Bootstrap.IN_SYNC_SUCCESS;
+        case EXPIRED:
+            return Bootstrap.EXPIRED_BOOTSTRAPTIME_FAIL;
+        case CANNOT_CONNECT:
             return Bootstrap.CANNOT_CONNECT_FAIL;
-        } else {
-            String alivePeer = longestAlivePeer.selectedPeer;
-            peerJedis = longestAlivePeer.selectedJedis;
-
-            logger.info("Issue slaveof command on peer [" + alivePeer + "] and port [" + REDIS_PORT + "]");
-            startPeerSync(alivePeer, REDIS_PORT);
-
-            long diff = 0;
-            long previousDiff = 0;
-            short retry = 0;
-            short numErrors = 0;
-            long startTime = System.currentTimeMillis();
-
-            // Conditions under which warmp up will end
-            // 1. number of Jedis errors are 5.
-            // 2. number of consecutive increases of offset differences (caused
-            // when client produces high load).
-            // 3. the difference between offsets is very small or zero
-            // (success).
-            // 4. warmp up takes more than FP defined minutes (default 20 min).
-            // 5. Dynomite has started and is healthy.
-            while (numErrors < 5) {
-                // sleep 10 seconds in between checks
-                sleeper.sleepQuietly(10000);
-                try {
-                    diff = canPeerSyncStop(peerJedis, startTime);
-                } catch (Exception e) {
-                    numErrors++;
-                }
+        default:
+            return Bootstrap.WARMUP_ERROR_FAIL;
+        }
+    }
 
-                // Diff meaning:
-                // a. diff == 0 --> we are either in sync or close to sync.
-                // b. diff == -1 --> there was an error in sync process.
-                // c. diff == -2 --> offset is still zero, peer syncing has not
-                // started.
-                // d. diff == -3 --> warm up lasted more than bootstrapTime
-                if (diff == 0) {
-                    break;
-                } else if (diff == -1) {
-                    logger.error("There was an error in the warm up process - do NOT start Dynomite");
-                    peerJedis.disconnect();
-                    return Bootstrap.WARMUP_ERROR_FAIL;
-                } else if (diff == -2) {
-                    startTime = System.currentTimeMillis();
-                } else if (diff == -3) {
-                    peerJedis.disconnect();
-                    return Bootstrap.EXPIRED_BOOTSTRAPTIME_FAIL;
-                }
+    private Bootstrap warmUpFromPeer(String alivePeer, Jedis peerJedis, WarmUpCheckpoint resume,
+            File checkpointFile) {
+        if (resume != null && resume.getReplid() != null) {
+            // Redis decides on the partial resync itself, it offers the
+            // replication ID and offset it knows to the peer
+            String replid = getLocalReplid();
+            if (resume.getReplid().equals(replid)) {
+                logger.info("Redis still has replication ID " + replid + " of peer [" + alivePeer
+                        + "], expecting a partial resync from about offset " + resume.getOffset());
+            } else {
+                logger.info("Redis lost the replication state of the checkpoint, peer [" + alivePeer
+                        + "] will send a full sync");
+            }
+        }
+        if (!config.isWarmUpThrottleEnabled()) {
+            return syncFromPeer(alivePeer, peerJedis, null, checkpointFile);
+        }
+        if (!supportsPsync2(alivePeer, peerJedis)) {
+            // before Redis 4.0 every attach after a detach is a full sync
+            logger.warn("Redis or peer [" + alivePeer + "] is older than 4.0, the warm up is not throttled");
+            return syncFromPeer(alivePeer, peerJedis, null, checkpointFile);
+        }
+        Map<String, String> previous = pushDonorSettings(alivePeer, peerJedis);
+        try {
+            return syncFromPeer(alivePeer, peerJedis, new SyncThrottle(config.getWarmUpThrottleLatency(),
+                    config.getWarmUpThrottlePeriod(), config.getWarmUpThrottleMinDuty() / 100.0), checkpointFile);
+        } finally {
+            restoreDonorSettings(alivePeer, peerJedis, previous);
+        }
+    }
 
-                // Exit conditions:
-                // a. retry more than 5 times continuously and if the diff is
-                // larger than the previous diff.
-                if (previousDiff < diff) {
-                    logger.info("Previous diff (" + previousDiff + ") was smaller than current diff (" + diff
-                            + ") ---> Retry effort: " + retry);
-                    retry++;
-                    if (retry == 10) {
-                        logger.error("Reached 10 consecutive retries, peer syncing cannot complete");
-                        peerJedis.disconnect();
-                        return Bootstrap.RETRIES_FAIL;
-                    }
-                } else {
-                    retry = 0;
+    // probably use our Retries Util here
+    private Bootstrap syncFromPeer(String alivePeer, Jedis peerJedis, SyncThrottle throttle, File checkpointFile) {
+        logger.info("Issue slaveof command on peer [" + alivePeer + "] and port [" + REDIS_PORT + "]");
+        startPeerSync(alivePeer, REDIS_PORT);
+
+        ReplicationTracker tracker = new ReplicationTracker(config.getAllowableBytesSyncDiff(),
+                config.getPeerSyncMinPollInterval(), config.getPeerSyncMaxPollInterval(),
+                config.getPeerSyncStallTime());
+        short numErrors = 0;
+        long startTime = System.currentTimeMillis();
+        long resumedAt = -1;
+        long syncFullBefore = -1;
+        donorInfoReachable = true;
+
+        // Conditions under which warmp up will end
+        // 1. number of Jedis errors are 5, the next peer is tried.
+        // 2. no catch up was predicted for the stall time (caused when
+        // client produces high load).
+        // 3. the difference between offsets is very small or zero
+        // (success).
+        // 4. warmp up takes more than FP defined minutes (default 20 min).
+        while (numErrors < 5) {
+            // checks get more frequent as the replica gets close. Only an
+            // online replica is throttled, detaching it during the full sync
+            // would start the sync over.
+            boolean throttled = throttle != null && tracker.getState() == ReplicationTracker.State.CATCHING_UP;
+            long wait = tracker.getNextIntervalMs();
+            if (throttled) {
+                wait = Math.max(config.getPeerSyncMinPollInterval(),
+                        Math.min(wait, throttle.getNextChangeMs(System.currentTimeMillis())));
+            }
+            sleeper.sleepQuietly(wait);
+
+            long now = System.currentTimeMillis();
+            if (now - startTime > config.getMaxTimeToBootstrap()) {
+                logger.warn("Warm up takes more than " + config.getMaxTimeToBootstrap() / 60000
+                        + " minutes --> moving on");
+                return Bootstrap.EXPIRED_BOOTSTRAPTIME_FAIL;
+            }
+
+            if (throttled) {
+                long latency = getDonorLatency(alivePeer, peerJedis);
+                boolean wasAttached = throttle.isAttached();
+                boolean attach = throttle.update(now, latency);
+                warmUpProgress.update(throttle, latency, now);
+                if (wasAttached && !attach) {
+                    logger.info("Peer [" + alivePeer + "] latency " + latency + " us, detaching the replica at "
+                            + throttle.getDutyPercent() + "% duty");
+                    stopPeerSync();
+                } else if (!wasAttached && attach) {
+                    logger.info("Attaching the replica to peer [" + alivePeer + "] again, latency " + latency
+                            + " us, " + throttle.getDutyPercent() + "% duty");
+                    syncFullBefore = getSyncFull(peerJedis);
+                    startPeerSync(alivePeer, REDIS_PORT);
+                    resumedAt = System.currentTimeMillis();
+                }
+                if (!attach) {
+                    continue;
                 }
-                previousDiff = diff;
             }
 
-            peerJedis.disconnect();
+            ReplicationOffsets offsets;
+            try {
+                offsets = getReplicationOffsets(peerJedis);
+            } catch (Exception e) {
+                numErrors++;
+                continue;
+            }
+            if (offsets.slave <= 0 && resumedAt >= 0 && now - resumedAt < config.getPeerSyncMaxPollInterval()) {
+                // the replica has not continued its partial resync yet
+                continue;
+            }
+            if (syncFullBefore >= 0) {
+                long syncFull = getSyncFull(peerJedis);
+                if (syncFull > syncFullBefore) {
+                    // detaching again would cost the peer another fork
+                    logger.warn("Peer [" + alivePeer + "] sent a full sync instead of a partial one after the "
+                            + "replica attached again, no longer throttling the warm up");
+                    throttle = null;
+                }
+                syncFullBefore = -1;
+            }
+            if (offsets.slave == -1) {
+                logger.error("Slave offset could not be parsed --> check memory overcommit configuration");
+                logger.error("There was an error in the warm up process from peer [" + alivePeer + "]");
+                return Bootstrap.WARMUP_ERROR_FAIL;
+            }
 
-            if (diff > 0) {
-                logger.info("Stopping peer syncing with difference: " + diff);
+            ReplicationTracker.State state = tracker.update(now, offsets.master, offsets.slave,
+                    startTime + config.getMaxTimeToBootstrap());
+            warmUpProgress.update(alivePeer, tracker, now);
+            if (state == ReplicationTracker.State.CATCHING_UP && offsets.replid != null) {
+                WarmUpCheckpoint.replication(alivePeer, offsets.replid, offsets.slave, now).save(checkpointFile);
+            }
+            switch (state) {
+            case WAITING:
+                logger.info("Slave offset is zero ---> Redis master node still dumps data to the disk");
+                startTime = now;
+                break;
+            case IN_SYNC:
+                logger.info("master and slave are in sync! masterOffset: " + offsets.master + " slaveOffset: "
+                        + offsets.slave);
+                return Bootstrap.IN_SYNC_SUCCESS;
+            case STALLED:
+                logger.error("No catch up predicted for " + config.getPeerSyncStallTime() / 1000
+                        + " seconds, peer syncing cannot complete. Lag: " + tracker.getLag() + " bytes, rate: "
+                        + tracker.getCatchUpRate() + " bytes/s");
+                return Bootstrap.RETRIES_FAIL;
+            default:
+                logger.info("masterOffset: " + offsets.master + " slaveOffset: " + offsets.slave + " lag: "
+                        + tracker.getLag() + " allowable diff: " + config.getAllowableBytesSyncDiff()
+                        + " catch up: " + tracker.getCatchUpRate() + " bytes/s, trend: "
+                        + tracker.getCatchUpTrend() + " bytes/s2, eta: " + tracker.getEtaMs() + " ms");
+                break;
             }
         }
 
-        return Bootstrap.IN_SYNC_SUCCESS;
+        logger.error("Lost the connection to peer [" + alivePeer + "] during warm up");
+        return Bootstrap.CANNOT_CONNECT_FAIL;
     }
 
     /**
@@ -516,26 +729,156 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
     }
 
     /**
-     * Determining if the warm up process can stop
-     * 
-     * @param peerJedis
-     *            Jedis connection with the peer node
-     * @param startTime
-     * @return Long status code
-     * @throws RedisSyncException
+     * A replica detached with SLAVEOF NO ONE continues with a partial resync
+     * only with PSYNC2, from Redis 4.0 on both sides.
      */
-    private Long canPeerSyncStop(Jedis peerJedis, long startTime) throws RedisSyncException {
+    private boolean supportsPsync2(String peer, Jedis peerJedis) {
+        String peerVersion = null;
+        try {
+            peerVersion = infoField(peerJedis.info("server"), "redis_version");
+        } catch (Exception e) {
+            logger.warn("Cannot read the Redis version of peer [" + peer + "]: " + e.getMessage());
+        }
+        String localVersion = null;
+        localRedisConnect();
+        try {
+            localVersion = infoField(localJedis.info("server"), "redis_version");
+        } catch (Exception e) {
+            logger.warn("Cannot read the Redis version: " + e.getMessage());
+        } finally {
+            localRedisDisconnect();
+        }
+        logger.info("Redis version " + localVersion + ", peer [" + peer + "] version " + peerVersion);
+        return majorVersion(peerVersion) >= 4 && majorVersion(localVersion) >= 4;
+    }
+
+    /**
+     * @return the number of full syncs the peer served, -1 if unknown
+     */
+    private long getSyncFull(Jedis peerJedis) {
+        try {
+            String syncFull = infoField(peerJedis.info("stats"), "sync_full");
+            return syncFull == null ? -1 : Long.parseLong(syncFull);
+        } catch (Exception e) {
+            logger.warn("Cannot read sync_full of the peer: " + e.getMessage());
+            return -1;
+        }
+    }
 
-        if (System.currentTimeMillis() - startTime > config.getMaxTimeToBootstrap()) {
-            logger.warn("Warm up takes more than " + config.getMaxTimeToBootstrap() / 60000 + " minutes --> moving on");
-            return (long) -3;
+    /**
+     * @return the value of the field in an INFO reply, null if it has none
+     */
+    private static String infoField(String info, String field) {
+        String prefix = field + ":";
+        for (String line : Splitter.on('\n').split(info)) {
+            if (line.startsWith(prefix)) {
+                return line.substring(prefix.length()).trim();
+            }
         }
+        return null;
+    }
 
+    /**
+     * @return the major version of a redis_version, -1 if it is unknown
+     */
+    private static int majorVersion(String version) {
+        if (version == null) {
+            return -1;
+        }
+        try {
+            int dot = version.indexOf('.');
+            return Integer.parseInt(dot < 0 ? version : version.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Set the replication backlog and the replica output buffer limit of the
+     * peer for a throttled warm up.
+     *
+     * @return the previous values
+     */
+    private Map<String, String> pushDonorSettings(String peer, Jedis peerJedis) {
+        Map<String, String> previous = new LinkedHashMap<String, String>();
+        pushDonorSetting(peer, peerJedis, "repl-backlog-size", Long.toString(config.getWarmUpThrottleReplBacklog()),
+                previous);
+        pushDonorSetting(peer, peerJedis, "client-output-buffer-limit", config.getWarmUpThrottleOutputBufferLimit(),
+                previous);
+        return previous;
+    }
+
+    private void pushDonorSetting(String peer, Jedis peerJedis, String name, String value,
+            Map<String, String> previous) {
+        try {
+            List<String> current = peerJedis.configGet(name);
+            peerJedis.configSet(name, value);
+            if (current != null && current.size() == 2) {
+                previous.put(name, current.get(1));
+            }
+            logger.info("Set " + name + " to " + value + " on peer [" + peer + "]");
+        } catch (Exception e) {
+            logger.warn("Cannot set " + name + " on peer [" + peer + "]: " + e.getMessage());
+        }
+    }
+
+    private void restoreDonorSettings(String peer, Jedis peerJedis, Map<String, String> previous) {
+        for (Map.Entry<String, String> setting : previous.entrySet()) {
+            try {
+                peerJedis.configSet(setting.getKey(), setting.getValue());
+                logger.info("Restored " + setting.getKey() + " to " + setting.getValue() + " on peer [" + peer + "]");
+            } catch (Exception e) {
+                logger.warn("Cannot restore " + setting.getKey() + " on peer [" + peer + "]: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the latency of the peer in microseconds, the larger of the PING
+     *         round trip and Dynomite's latency_99th, -1 if neither is known
+     */
+    private long getDonorLatency(String peer, Jedis peerJedis) {
+        long latency = -1;
+        try {
+            long start = System.nanoTime();
+            peerJedis.ping();
+            latency = (System.nanoTime() - start) / 1000;
+        } catch (Exception e) {
+            logger.warn("Cannot PING peer [" + peer + "]: " + e.getMessage());
+        }
+        if (donorInfoReachable) {
+            try {
+                String info = adminClient.get("http://" + peer + ":" + commonConfig.getDynomiteStatsPort() + "/info");
+                Matcher matcher = info == null ? null : DYNOMITE_LATENCY_PATTERN.matcher(info);
+                if (matcher != null && matcher.find()) {
+                    latency = Math.max(latency, Long.parseLong(matcher.group(1)));
+                }
+            } catch (Exception e) {
+                // the stats port may only listen on localhost
+                logger.warn("Cannot read Dynomite /info of peer [" + peer + "], throttling by PING only: "
+                        + e.getMessage());
+                donorInfoReachable = false;
+            }
+        }
+        return latency;
+    }
+
+    private static class ReplicationOffsets {
+        long master = -1;
+        long slave = -1;
+        // master_replid, or run_id before Redis 4.0
+        String replid;
+    }
+
+    /**
+     * @return the master_repl_offset of the peer and the offset of its
+     *         replica, -1 if either could not be parsed
+     */
+    private ReplicationOffsets getReplicationOffsets(Jedis peerJedis) {
         logger.info("Checking for peer syncing");
         String peerRedisInfo = peerJedis.info();
 
-        Long masterOffset = -1L;
-        Long slaveOffset = -1L;
+        ReplicationOffsets offsets = new ReplicationOffsets();
 
         // get peer's repl offset
         Iterable<String> result = Splitter.on('\n').split(peerRedisInfo);
@@ -543,9 +886,10 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
         for (String line : result) {
             if (line.startsWith("master_repl_offset")) {
                 String[] items = line.split(":");
-                logger.info(items[0] + ": " + items[1]);
-                masterOffset = Long.parseLong(items[1].trim());
-
+                offsets.master = Long.parseLong(items[1].trim());
+            } else if (line.startsWith("master_replid:")
+                    || (line.startsWith("run_id:") && offsets.replid == null)) {
+                offsets.replid = line.substring(line.indexOf(':') + 1).trim();
             }
 
             // slave0:ip=10.99.160.121,port=22122,state=online,offset=17279,lag=0
@@ -554,41 +898,64 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
                 for (String item : items) {
                     if (item.startsWith("offset")) {
                         String[] offset = item.split("=");
-                        logger.info(offset[0] + ": " + offset[1]);
-                        slaveOffset = Long.parseLong(offset[1].trim());
+                        offsets.slave = Long.parseLong(offset[1].trim());
                     }
                 }
             }
         }
+        return offsets;
+    }
 
-        if (slaveOffset == -1) {
-            logger.error("Slave offset could not be parsed --> check memory overcommit configuration");
-            return (long) -1;
-        } else if (slaveOffset == 0) {
-            logger.info("Slave offset is zero ---> Redis master node still dumps data to the disk");
-            return (long) -2;
+    /**
+     * @return the replication ID Redis knows, null if it cannot be read
+     */
+    private String getLocalReplid() {
+        localRedisConnect();
+        try {
+            for (String line : Splitter.on('\n').split(localJedis.info("replication"))) {
+                if (line.startsWith("master_replid:")) {
+                    return line.substring(line.indexOf(':') + 1).trim();
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Cannot read the replication state of Redis: " + e.getMessage());
+        } finally {
+            localRedisDisconnect();
         }
-        Long diff = Math.abs(masterOffset - slaveOffset);
-
-        logger.info("masterOffset: " + masterOffset + " slaveOffset: " + slaveOffset + " current Diff: " + diff
-                + " allowable diff: " + config.getAllowableBytesSyncDiff());
+        return null;
+    }
 
-        // Allowable bytes sync diff can be configured by a Fast Property.
-        // If the difference is very small, then we return zero.
-        if (diff < config.getAllowableBytesSyncDiff()) {
-            logger.info("master and slave are in sync!");
-            return (long) 0;
-        } else if (slaveOffset == 0) {
-            logger.info("slave has not started syncing");
+    /**
+     * @return the number of keys in Redis, -1 if it cannot be read
+     */
+    private long getLocalKeyCount() {
+        localRedisConnect();
+        try {
+            return localJedis.dbSize();
+        } catch (Exception e) {
+            logger.warn("Cannot read the number of keys in Redis: " + e.getMessage());
+            return -1;
+        } finally {
+            localRedisDisconnect();
         }
-        return diff;
     }
 
-    private class RedisSyncException extends Exception {
-        /**
-         * Exception during peer syncing
-         */
-        private static final long serialVersionUID = -7736577871204223637L;
+    /**
+     * Like {@link #getLocalKeyCount()}, on a connection of its own for the
+     * threads of a migration.
+     *
+     * @return the number of keys in Redis, -1 if it cannot be read
+     */
+    private long countLocalKeys() {
+        Jedis jedis = new Jedis(REDIS_ADDRESS, REDIS_PORT);
+        try {
+            return jedis.dbSize();
+        } catch (Exception e) {
+            logger.warn("Cannot read the number of keys in Redis: " + e.getMessage());
+            return -1;
+        } finally {
+            jedis.disconnect();
+        }
     }
 
     /**
@@ -822,7 +1189,12 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
     @Override
     public void check(HealthIndicatorCallback healthCallback) {
         if (redisHealth) {
-            healthCallback.inform(Health.healthy().withDetail("Redis", "All good!").build());
+            HealthScore score = instanceState.getHealthScore();
+            healthCallback.inform(Health.healthy()
+                    .withDetail("Redis", score.isDegraded() ? "Degraded" : "All good!")
+                    .withDetail("score", score.getScore())
+                    .withDetail("blockedClients", score.getBlockedClients())
+                    .withDetail("opsPerSec", score.getOpsPerSec()).build());
         } else {
             logger.info("Reporting Redis is down to Health check callback");
             healthCallback.inform(Health.unhealthy().withDetail("Redis", "Down!").build());
@@ -833,4 +1205,12 @@ public class RedisStorageProxy extends Task implements StorageProxy, HealthIndic
     public String getUnixPath() {
         return config.getRedisUnixPath();
     }
+
+    @Override
+    public String getProcessCommand() {
+        if (config.getRedisCompatibleEngine().equals(ArdbRocksDbRedisCompatible.DYNO_ARDB)) {
+            return ArdbRocksDbRedisCompatible.ARDB_ROCKSDB_PROCESS;
+        }
+        return REDIS_PROCESS;
+    }
 }
@@ -0,0 +1,204 @@
+package com.netflix.dynomitemanager.storage;
+
+/**
+ * Follows a warm up through the replication offsets of the peer, its
+ * master_repl_offset and the offset of the replica, and decides from the
+ * predicted catch up when it is done.
+ *
+ * The catch up rate is how fast the lag between the offsets shrinks, in bytes
+ * per second, smoothed over the checks. It is negative while the peer takes
+ * writes faster than the replica applies them. Its trend is how fast the rate
+ * itself changes. The time to sync is when the lag beyond the allowable
+ * difference is closed, if the rate keeps changing by the trend. So a write
+ * burst that subsides, with a negative rate but a positive trend, is
+ * predicted to catch up, and a catch up that slows to a halt before the lag
+ * is closed is not.
+ *
+ * The warm up is in sync once the lag is below the allowable difference. It
+ * is stalled once no catch up before the deadline was predicted for the stall
+ * time, so a write burst on a hot peer that widens the lag for a while does
+ * not end it.
+ *
+ * The next check is due after a quarter of the predicted time to sync, within
+ * the min and max poll interval, so checks get more frequent as the replica
+ * gets close.
+ *
+ * Not thread safe.
+ */
+public class ReplicationTracker {
+
+    public enum State {
+        /** the peer still dumps its data, the replica offset is 0 */
+        WAITING,
+        CATCHING_UP,
+        IN_SYNC,
+        /** no catch up was predicted for the stall time */
+        STALLED
+    }
+
+    // weight of the latest check in the smoothed rate
+    private static final double ALPHA = 0.3;
+
+    private final long allowableDiff;
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final long stallMs;
+
+    private State state = State.WAITING;
+    private long masterOffset = -1;
+    private long slaveOffset = -1;
+    private long lag = -1;
+    private double rate;
+    private double trend;
+    private long etaMs = -1;
+    private long nextIntervalMs;
+    private int rateSamples;
+    private long lastTime = -1;
+    private long lastConverging = -1;
+
+    /**
+     * @param allowableDiff
+     *            the lag in bytes below which the replica is in sync
+     * @param minIntervalMs
+     *            the shortest interval between checks
+     * @param maxIntervalMs
+     *            the longest interval between checks
+     * @param stallMs
+     *            how long no catch up may be predicted
+     */
+    public ReplicationTracker(long allowableDiff, long minIntervalMs, long maxIntervalMs, long stallMs) {
+        this.allowableDiff = allowableDiff;
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.stallMs = stallMs;
+        this.nextIntervalMs = maxIntervalMs;
+    }
+
+    /**
+     * Take in the offsets of a check.
+     *
+     * @param now
+     *            time of the check in ms
+     * @param deadline
+     *            time by which the warm up has to catch up
+     * @return the state of the warm up
+     */
+    public State update(long now, long masterOffset, long slaveOffset, long deadline) {
+        this.masterOffset = masterOffset;
+        this.slaveOffset = slaveOffset;
+        if (slaveOffset <= 0) {
+            // nothing to follow until the peer finished its dump
+            state = State.WAITING;
+            lag = -1;
+            rate = 0;
+            trend = 0;
+            etaMs = -1;
+            rateSamples = 0;
+            lastTime = -1;
+            lastConverging = -1;
+            nextIntervalMs = maxIntervalMs;
+            return state;
+        }
+
+        long currentLag = Math.max(0, masterOffset - slaveOffset);
+        if (lastTime >= 0 && now > lastTime) {
+            double instant = (lag - currentLag) * 1000.0 / (now - lastTime);
+            double previous = rate;
+            rate = rateSamples == 0 ? instant : ALPHA * instant + (1 - ALPHA) * rate;
+            if (rateSamples > 0) {
+                trend = (rate - previous) * 1000.0 / (now - lastTime);
+            }
+            rateSamples++;
+        }
+        lag = currentLag;
+        lastTime = now;
+        if (lastConverging < 0) {
+            lastConverging = now;
+        }
+
+        if (lag < allowableDiff) {
+            state = State.IN_SYNC;
+            etaMs = 0;
+            nextIntervalMs = minIntervalMs;
+            return state;
+        }
+
+        etaMs = predictEtaMs(lag - allowableDiff, rate, trend);
+        if (etaMs >= 0 && now + etaMs <= deadline) {
+            lastConverging = now;
+        } else if (now - lastConverging >= stallMs) {
+            state = State.STALLED;
+            return state;
+        }
+        state = State.CATCHING_UP;
+        nextIntervalMs = etaMs < 0 ? maxIntervalMs : Math.max(minIntervalMs, Math.min(maxIntervalMs, etaMs / 4));
+        return state;
+    }
+
+    /**
+     * Solve remaining = rate * t + trend * t^2 / 2 for the earliest t > 0.
+     *
+     * @return the time in ms to catch up on the remaining bytes, -1 if it is
+     *         never caught up on
+     */
+    static long predictEtaMs(long remaining, double rate, double trend) {
+        if (trend == 0) {
+            return rate > 0 ? (long) (remaining * 1000 / rate) : -1;
+        }
+        double discriminant = rate * rate + 2 * trend * remaining;
+        if (discriminant < 0) {
+            // the rate drops to zero before the lag is closed
+            return -1;
+        }
+        double seconds = (Math.sqrt(discriminant) - rate) / trend;
+        return seconds > 0 ? (long) (seconds * 1000) : -1;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getMasterOffset() {
+        return masterOffset;
+    }
+
+    public long getSlaveOffset() {
+        return slaveOffset;
+    }
+
+    /**
+     * @return the bytes the replica is behind, -1 while waiting
+     */
+    public long getLag() {
+        return lag;
+    }
+
+    /**
+     * @return how fast the lag shrinks, in bytes per second
+     */
+    public long getCatchUpRate() {
+        return (long) rate;
+    }
+
+    /**
+     * @return how fast the catch up rate changes, in bytes per second per
+     *         second
+     */
+    public long getCatchUpTrend() {
+        return (long) trend;
+    }
+
+    /**
+     * @return the predicted time to sync in ms, -1 if no catch up is predicted
+     */
+    public long getEtaMs() {
+        return etaMs;
+    }
+
+    /**
+     * @return how long to wait for the next check
+     */
+    public long getNextIntervalMs() {
+        return nextIntervalMs;
+    }
+}
@@ -1,9 +1,7 @@
 package com.netflix.dynomitemanager.storage;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -15,8 +13,11 @@ import org.slf4j.LoggerFactory;
 import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.config.FloridaConfig;
 import com.netflix.dynomitemanager.config.InstanceState;
-import com.netflix.nfsidecar.utils.Sleeper;
+import com.netflix.dynomitemanager.monitoring.ProcessLocator;
+import com.netflix.dynomitemanager.monitoring.StartupTimings;
+import com.netflix.dynomitemanager.monitoring.StartupTimings.Phase;
 
 /**
  * Start or stop the storage engine, such as Redis or Memcached.
@@ -25,16 +26,49 @@ import com.netflix.nfsidecar.utils.Sleeper;
 public class StorageProcessManager {
     private static final Logger logger = LoggerFactory.getLogger(StorageProcessManager.class);
     private static final String SUDO_STRING = "/usr/bin/sudo";
-    private static final int SCRIPT_EXECUTE_WAIT_TIME_MS = 5000;
-    private final Sleeper sleeper;
+    private static final String MEMCACHED = "memcached";
+    private final FloridaConfig config;
     private final InstanceState instanceState;
     private final StorageProxy storageProxy;
+    private final StartupTimings startupTimings;
+    private final ProcessLocator locator;
 
     @Inject
-    public StorageProcessManager(Sleeper sleeper, InstanceState instanceState, StorageProxy storageProxy) {
-	this.sleeper = sleeper;
+    public StorageProcessManager(FloridaConfig config, InstanceState instanceState,
+	    StorageProxy storageProxy, StartupTimings startupTimings) {
+	this.config = config;
 	this.instanceState = instanceState;
 	this.storageProxy = storageProxy;
+	this.startupTimings = startupTimings;
+	this.locator = ProcessLocator.isSupported() ? new ProcessLocator(getProcessCommand()) : null;
+    }
+
+    /**
+     * @return the locator of the storage process, null if there is no /proc
+     */
+    public ProcessLocator getProcessLocator() {
+	return locator;
+    }
+
+    /**
+     * @return the configured command line of the storage process, or the one
+     *         of its engine
+     */
+    private String getProcessCommand() {
+	String command = config.getStorageProcessCommand();
+	return StringUtils.isNotBlank(command) ? command.trim() : storageProxy.getProcessCommand();
+    }
+
+    /**
+     * Look up the storage process in /proc.
+     * 
+     * @return true if the storage process is running. Also true if there is
+     *         no /proc to look it up, or no process was ever found with the
+     *         command line, e.g. for an engine installed elsewhere. The
+     *         storage is then only checked through {@link StorageProxy#isAlive()}.
+     */
+    public boolean storageProcessCheck() {
+	return locator == null || locator.isAlive() || !locator.hasFound();
     }
     
     protected void setStorageEnv(Map<String, String> env) {
@@ -50,25 +84,48 @@ public class StorageProcessManager {
 	logger.info(String.format("Starting Storage process"));
 	ProcessBuilder startBuilder = process(getStartCommand());
 	setStorageEnv(startBuilder.environment());
+	long start = System.currentTimeMillis();
+	long deadline = start + config.getProcessStartTimeout();
 	Process starter = startBuilder.start();
 
 	try {
-	    sleeper.sleepQuietly(SCRIPT_EXECUTE_WAIT_TIME_MS);
+	    if (!ReadinessProbe.waitForExit(starter, deadline, "Storage start script")) {
+		logger.error("Storage start script did not exit within {} ms", config.getProcessStartTimeout());
+		return;
+	    }
+	    startupTimings.record(Phase.STORAGE_SCRIPT, start);
 	    int code = starter.exitValue();
 	    if (code == 0) {
 		logger.info("Storage process has been started");
-		instanceState.setStorageProxyAlive(true);
+		if (isReady(deadline)) {
+		    startupTimings.record(Phase.STORAGE_READY, start);
+		    instanceState.setStorageProxyAlive(true);
+		} else {
+		    // left to the process monitor and the health prober
+		    logger.warn("Storage does not answer {} ms after its start", config.getProcessStartTimeout());
+		}
 	    } else {
 		logger.error("Unable to start Storage process. Error code: {}", code);
 	    }
-
-	    logProcessOutput(starter);
 	} catch (Exception e) {
 	    logger.warn("Starting Storage process has an error", e);
 	}
     }   
     
     
+    /**
+     * Wait for the storage to answer. Redis loads its data before it answers
+     * PING, Memcached only has to accept connections.
+     * 
+     * @return true if the storage answered before the deadline
+     */
+    private boolean isReady(long deadline) {
+	if (MEMCACHED.equals(storageProxy.getEngine())) {
+	    return ReadinessProbe.waitForConnect(storageProxy.getIpAddress(), storageProxy.getPort(), deadline);
+	}
+	return ReadinessProbe.waitForPing(storageProxy.getIpAddress(), storageProxy.getPort(), deadline);
+    }
+
     /**
      * A common class to initialize a ProcessBuilder
      * @param executeCommand
@@ -116,26 +173,6 @@ public class StorageProcessManager {
 	return stopCmd;
     }
 
-    private void logProcessOutput(Process p) {
-	try {
-	    final String stdOut = readProcessStream(p.getInputStream());
-	    final String stdErr = readProcessStream(p.getErrorStream());
-	    logger.info("std_out: {}", stdOut);
-	    logger.info("std_err: {}", stdErr);
-	} catch (IOException ioe) {
-	    logger.warn("Failed to read the std out/err streams", ioe);
-	}
-    }
-
-    String readProcessStream(InputStream inputStream) throws IOException {
-	final byte[] buffer = new byte[512];
-	final ByteArrayOutputStream baos = new ByteArrayOutputStream(buffer.length);
-	int cnt;
-	while ((cnt = inputStream.read(buffer)) != -1)
-	    baos.write(buffer, 0, cnt);
-	return baos.toString();
-    }
-
     /**
      * Stop the storage engine (Redis, Memcached).
      * 
@@ -144,17 +181,26 @@ public class StorageProcessManager {
     public void stop() throws IOException {
 	logger.info("Stopping storage process...");
 	ProcessBuilder stopBuilder = process(getStopCommand());
+	long start = System.currentTimeMillis();
+	long deadline = start + config.getProcessStopTimeout();
 	Process stopper = stopBuilder.start();
 
-	sleeper.sleepQuietly(SCRIPT_EXECUTE_WAIT_TIME_MS);
+	if (!ReadinessProbe.waitForExit(stopper, deadline, "Storage stop script")) {
+	    logger.error("Storage stop script did not exit within {} ms", config.getProcessStopTimeout());
+	    return;
+	}
 	try {
 	    int code = stopper.exitValue();
 	    if (code == 0) {
+		if (locator != null && !ReadinessProbe.waitForGone(locator, deadline)) {
+		    logger.warn("Storage is still running {} ms after its stop", config.getProcessStopTimeout());
+		} else {
+		    startupTimings.record(Phase.STORAGE_STOP, start);
+		}
 		logger.info("Storage process has been stopped");
 		instanceState.setStorageProxyAlive(false);
 	    } else {
 		logger.error("Unable to stop storage process. Error code: {}", code);
-		logProcessOutput(stopper);
 	    }
 	} catch (Exception e) {
 	    logger.warn("Could not shut down storage process correctly: ", e);
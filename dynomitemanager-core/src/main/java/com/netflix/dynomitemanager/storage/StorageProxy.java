@@ -9,7 +9,12 @@ public interface StorageProxy {
         
     long getUptime();
 
-    Bootstrap warmUpStorage(String[] peers);
+    /**
+     * @param snapshotTime
+     *            when the snapshot the storage loaded was taken, to catch up
+     *            on it, 0 if it loaded none
+     */
+    Bootstrap warmUpStorage(String[] peers, long snapshotTime);
 
     boolean resetStorage();
 
@@ -34,6 +39,12 @@ public interface StorageProxy {
     int getPort();
 
     String getUnixPath();
+
+    /**
+     * @return part of the command line of the storage process, used to find
+     *         it in /proc, e.g. /apps/nfredis/bin/redis-server
+     */
+    String getProcessCommand();
     
     long getStoreMaxMem();
     
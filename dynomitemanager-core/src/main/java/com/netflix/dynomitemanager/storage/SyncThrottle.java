@@ -0,0 +1,112 @@
+package com.netflix.dynomitemanager.storage;
+
+/**
+ * Paces a warm up by the latency of the peer it syncs from.
+ *
+ * Redis has no limit on the replication bandwidth, so the replica is attached
+ * to the peer for a share of each period, its duty, and detached for the rest
+ * of it. While detached the peer only appends to its backlog, and the replica
+ * continues with a partial resync once attached again.
+ *
+ * The duty follows the latency of the peer: it is halved whenever the latency
+ * is above the target, and grows by a tenth while the latency is below 80% of
+ * it, additive increase and multiplicative decrease. It never drops below the
+ * min duty, so the warm up keeps going.
+ *
+ * Not thread safe.
+ */
+public class SyncThrottle {
+
+    private static final double INCREASE = 0.1;
+    private static final double DECREASE = 0.5;
+    private static final double RELAXED = 0.8;
+
+    private final long targetLatencyMicros;
+    private final long periodMs;
+    private final double minDuty;
+
+    private double duty = 1;
+    private long periodStart = -1;
+    private boolean attached = true;
+    private long pauses;
+    private long breaches;
+
+    /**
+     * @param targetLatencyMicros
+     *            the latency of the peer above which the warm up slows down
+     * @param periodMs
+     *            the throttle period
+     * @param minDuty
+     *            the smallest share of a period to stay attached, 0 to 1
+     */
+    public SyncThrottle(long targetLatencyMicros, long periodMs, double minDuty) {
+        this.targetLatencyMicros = targetLatencyMicros;
+        this.periodMs = periodMs;
+        this.minDuty = Math.max(0.01, Math.min(1, minDuty));
+    }
+
+    /**
+     * Take in a latency of the peer.
+     *
+     * @param now
+     *            time of the sample in ms
+     * @param latencyMicros
+     *            latency of the peer, -1 if unknown
+     * @return true if the replica should be attached to the peer
+     */
+    public boolean update(long now, long latencyMicros) {
+        if (latencyMicros > targetLatencyMicros) {
+            duty = Math.max(minDuty, duty * DECREASE);
+            breaches++;
+        } else if (latencyMicros >= 0 && latencyMicros < targetLatencyMicros * RELAXED) {
+            duty = Math.min(1, duty + INCREASE);
+        }
+
+        if (periodStart < 0 || now - periodStart >= periodMs) {
+            periodStart = now;
+        }
+        boolean attach = now - periodStart < (long) (duty * periodMs);
+        if (attached && !attach) {
+            pauses++;
+        }
+        attached = attach;
+        return attached;
+    }
+
+    /**
+     * @return how long until the replica should be attached or detached
+     */
+    public long getNextChangeMs(long now) {
+        if (periodStart < 0) {
+            return periodMs;
+        }
+        long attachedUntil = periodStart + (long) (duty * periodMs);
+        long next = now < attachedUntil ? attachedUntil : periodStart + periodMs;
+        return Math.max(0, next - now);
+    }
+
+    public boolean isAttached() {
+        return attached;
+    }
+
+    /**
+     * @return the share of a period the replica is attached for, in percent
+     */
+    public int getDutyPercent() {
+        return (int) Math.round(duty * 100);
+    }
+
+    /**
+     * @return how often the replica was detached
+     */
+    public long getPauses() {
+        return pauses;
+    }
+
+    /**
+     * @return how often the latency of the peer was above the target
+     */
+    public long getBreaches() {
+        return breaches;
+    }
+}
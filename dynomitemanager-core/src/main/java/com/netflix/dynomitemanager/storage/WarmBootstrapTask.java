@@ -17,9 +17,14 @@ package com.netflix.dynomitemanager.storage;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.netflix.dynomitemanager.config.FloridaConfig;
 import com.netflix.dynomitemanager.config.InstanceState;
+import com.netflix.dynomitemanager.dynomite.BacklogDrain;
+import com.netflix.dynomitemanager.dynomite.DynomiteBacklog;
 import com.netflix.dynomitemanager.dynomite.DynomiteRest;
 import com.netflix.dynomitemanager.dynomite.IDynomiteProcess;
+import com.netflix.dynomitemanager.monitoring.WarmUpProgress;
+import com.netflix.nfsidecar.backup.Restore;
 import com.netflix.nfsidecar.identity.AppsInstance;
 import com.netflix.nfsidecar.identity.InstanceIdentity;
 import com.netflix.nfsidecar.resources.env.IEnvVariables;
@@ -50,11 +55,17 @@ public class WarmBootstrapTask extends Task {
     private final Sleeper sleeper;
     private final StorageProcessManager storageProcessMgr;
     private final IEnvVariables envVariables;
+    private final DynomiteRest dynomiteRest;
+    private final FloridaConfig config;
+    private final Restore restore;
+    private final DynomiteBacklog dynomiteBacklog;
+    private final WarmUpProgress warmUpProgress;
 
     @Inject
     public WarmBootstrapTask(IAppsInstanceFactory appsInstanceFactory, InstanceIdentity id,
 	    IDynomiteProcess dynProcess, StorageProxy storageProxy, InstanceState ss, Sleeper sleeper,
-	    StorageProcessManager storageProcessMgr, IEnvVariables envVariables) {
+	    StorageProcessManager storageProcessMgr, IEnvVariables envVariables, DynomiteRest dynomiteRest,
+	    FloridaConfig config, Restore restore, DynomiteBacklog dynomiteBacklog, WarmUpProgress warmUpProgress) {
 
 	this.dynProcess = dynProcess;
 	this.storageProxy = storageProxy;
@@ -64,6 +75,11 @@ public class WarmBootstrapTask extends Task {
 	this.sleeper = sleeper;
 	this.storageProcessMgr = storageProcessMgr;
 	this.envVariables = envVariables;
+	this.dynomiteRest = dynomiteRest;
+	this.config = config;
+	this.restore = restore;
+	this.dynomiteBacklog = dynomiteBacklog;
+	this.warmUpProgress = warmUpProgress;
     }
 
     public void execute() throws IOException {
@@ -73,6 +89,12 @@ public class WarmBootstrapTask extends Task {
 
 	// Just to be sure testing again
 	if (!state.isStorageAlive()) {
+	    // the storage loads the snapshot when it starts
+	    long snapshotTime = 0;
+	    if (config.isWarmUpFromSnapshot()) {
+		snapshotTime = Math.max(0, restore.restoreLatest(config.getWarmUpSnapshotMaxAge()));
+	    }
+
 	    // starting storage
 	    this.storageProcessMgr.start();
 	    logger.info("Redis is up ---> Starting warm bootstrap.");
@@ -83,17 +105,20 @@ public class WarmBootstrapTask extends Task {
 	    // sleep to make sure Storage process is up.
 	    this.sleeper.sleepQuietly(5000);
 
+	    if (snapshotTime > 0 && !this.storageProxy.loadingData()) {
+		logger.error("Redis did not load the snapshot, warming up without it");
+		snapshotTime = 0;
+	    }
+
 	    String[] peers = getLocalPeersWithSameTokensRange();
 
-	    // try one node only for now
-	    // TODOs: if this peer is not good, try the next one until we can
-	    // get the data
+	    // peers are ranked, and the next one is tried if one is not good
 	    if (peers != null && peers.length != 0) {
 
 		/**
 		 * Check the warm up status.
 		 */
-		Bootstrap boostrap = this.storageProxy.warmUpStorage(peers);
+		Bootstrap boostrap = this.storageProxy.warmUpStorage(peers, snapshotTime);
 		if (boostrap == Bootstrap.IN_SYNC_SUCCESS || boostrap == Bootstrap.EXPIRED_BOOTSTRAPTIME_FAIL
 			|| boostrap == Bootstrap.RETRIES_FAIL) {
 		    // Since we are ready let us start Dynomite.
@@ -113,18 +138,17 @@ public class WarmBootstrapTask extends Task {
 		    this.state.setBootstrapStatus(boostrap);
 
 		    logger.info("Set Dynomite to allow writes only!!!");
-		    DynomiteRest.sendCommand("/state/writes_only");
+		    dynomiteRest.sendCommand("/state/writes_only");
 
 		    logger.info("Stop Redis' Peer syncing!!!");
 		    this.storageProxy.stopPeerSync();
 
 		    logger.info("Set Dynomite to resuming state to allow writes and flush delayed writes");
-		    DynomiteRest.sendCommand("/state/resuming");
+		    dynomiteRest.sendCommand("/state/resuming");
 
-		    // sleep 15s for the flushing to catch up
-		    sleeper.sleepQuietly(15000);
+		    waitForDelayedWrites();
 		    logger.info("Set Dynomite to normal state");
-		    DynomiteRest.sendCommand("/state/normal");
+		    dynomiteRest.sendCommand("/state/normal");
 		} else {
 		    logger.error("Warm up failed: Stop Redis' Peer syncing!!!");
 		    this.storageProxy.stopPeerSync();
@@ -157,6 +181,31 @@ public class WarmBootstrapTask extends Task {
 	return new SimpleTimer(JOBNAME, 10 * 60 * 1000);
     }
 
+    /**
+     * Wait until Dynomite flushed the writes it delayed, or the resume
+     * timeout passed.
+     */
+    private void waitForDelayedWrites() {
+	BacklogDrain drain = new BacklogDrain(System.currentTimeMillis(), config.getResumeTimeout(),
+		config.getResumeBacklogThreshold(), config.getResumeQuietChecks());
+	while (true) {
+	    drain.update(dynomiteBacklog.read());
+	    long now = System.currentTimeMillis();
+	    warmUpProgress.update(drain, now);
+	    if (drain.isDrained()) {
+		logger.info("Dynomite flushed its delayed writes in " + drain.getElapsedMs(now) + " ms, backlog peaked at "
+			+ drain.getPeak());
+		return;
+	    }
+	    if (drain.isExpired(now)) {
+		logger.warn("Dynomite did not flush its delayed writes in " + drain.getElapsedMs(now)
+			+ " ms, backlog is " + drain.getBacklog());
+		return;
+	    }
+	    sleeper.sleepQuietly(config.getResumePollInterval());
+	}
+    }
+
     private String[] getLocalPeersWithSameTokensRange() {
 
 	String tokens = ii.getTokens();
@@ -0,0 +1,229 @@
+package com.netflix.dynomitemanager.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * How far a warm up got, kept on local disk so that the next attempt after a
+ * restart of Florida or the storage continues instead of starting over.
+ *
+ * A replication records the replication ID of the peer and the offset of the
+ * replica. Redis continues with a partial resync (PSYNC) if it still knows
+ * that ID and the peer still has the offset in its backlog, so the next
+ * attempt syncs from the same peer. The checkpoint itself is not passed to
+ * Redis, whether the resync is partial is up to Redis.
+ *
+ * A migration records the SCAN cursor of the peer and the number of keys
+ * Redis had then. The next attempt continues from the cursor only if Redis
+ * still has about as many keys, i.e. it kept the keys restored so far.
+ *
+ * The file is replaced atomically, a crash leaves either the old or the new
+ * checkpoint.
+ */
+public class WarmUpCheckpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(WarmUpCheckpoint.class);
+
+    public static final String REPLICATION = "replication";
+    public static final String MIGRATION = "migration";
+
+    private static final String ENGINE = "engine";
+    private static final String PEER = "peer";
+    private static final String REPLID = "replid";
+    private static final String OFFSET = "offset";
+    private static final String CURSOR = "cursor";
+    private static final String KEYS = "keys";
+    private static final String TIME = "time";
+
+    private final String engine;
+    private final String peer;
+    private final String replid;
+    private final long offset;
+    private final String cursor;
+    private final long keys;
+    private final long time;
+
+    private WarmUpCheckpoint(String engine, String peer, String replid, long offset, String cursor, long keys,
+            long time) {
+        this.engine = engine;
+        this.peer = peer;
+        this.replid = replid;
+        this.offset = offset;
+        this.cursor = cursor;
+        this.keys = keys;
+        this.time = time;
+    }
+
+    public static WarmUpCheckpoint replication(String peer, String replid, long offset, long time) {
+        return new WarmUpCheckpoint(REPLICATION, peer, replid, offset, null, -1, time);
+    }
+
+    /**
+     * @param keys
+     *            the number of keys in Redis at the cursor
+     */
+    public static WarmUpCheckpoint migration(String peer, String cursor, long keys, long time) {
+        return new WarmUpCheckpoint(MIGRATION, peer, null, -1, cursor, keys, time);
+    }
+
+    /**
+     * @return the checkpoint in the file, null if there is none or it cannot
+     *         be read
+     */
+    public static WarmUpCheckpoint load(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            properties.load(in);
+            String engine = properties.getProperty(ENGINE);
+            String peer = properties.getProperty(PEER);
+            if (engine == null || peer == null) {
+                logger.warn("Ignoring incomplete warm up checkpoint " + file);
+                return null;
+            }
+            return new WarmUpCheckpoint(engine, peer, properties.getProperty(REPLID),
+                    Long.parseLong(properties.getProperty(OFFSET, "-1")), properties.getProperty(CURSOR),
+                    Long.parseLong(properties.getProperty(KEYS, "-1")),
+                    Long.parseLong(properties.getProperty(TIME, "0")));
+        } catch (Exception e) {
+            logger.warn("Cannot read warm up checkpoint " + file + ": " + e.getMessage());
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Replace the checkpoint in the file.
+     *
+     * @return false if it could not be written
+     */
+    public boolean save(File file) {
+        Properties properties = new Properties();
+        properties.setProperty(ENGINE, engine);
+        properties.setProperty(PEER, peer);
+        if (replid != null) {
+            properties.setProperty(REPLID, replid);
+        }
+        properties.setProperty(OFFSET, Long.toString(offset));
+        if (cursor != null) {
+            properties.setProperty(CURSOR, cursor);
+        }
+        properties.setProperty(KEYS, Long.toString(keys));
+        properties.setProperty(TIME, Long.toString(time));
+
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tmp);
+            properties.store(out, "Florida warm up checkpoint");
+            out.close();
+            out = null;
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Cannot write warm up checkpoint " + file + ": " + e.getMessage());
+            return false;
+        } finally {
+            close(out);
+        }
+    }
+
+    public static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Cannot delete warm up checkpoint " + file);
+        }
+    }
+
+    /**
+     * @return true if the checkpoint is of the engine, and not older than
+     *         maxAgeMs
+     */
+    public boolean isResumable(String engine, long now, long maxAgeMs) {
+        return this.engine.equals(engine) && now - time <= maxAgeMs;
+    }
+
+    /**
+     * A migration continues from its cursor only if Redis kept the keys
+     * restored before it. Keys that expired since are tolerated, up to 1%.
+     *
+     * @param localKeys
+     *            the number of keys in Redis now
+     * @return true if Redis has about as many keys as at the checkpoint
+     */
+    public boolean hasKeys(long localKeys) {
+        return keys >= 0 && localKeys >= keys - keys / 100;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public String getPeer() {
+        return peer;
+    }
+
+    /**
+     * @return the replication ID of the peer, null for a migration
+     */
+    public String getReplid() {
+        return replid;
+    }
+
+    /**
+     * @return the replica offset, -1 for a migration
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the SCAN cursor of the peer, null for a replication
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @return the number of keys in Redis at the cursor, -1 for a replication
+     */
+    public long getKeys() {
+        return keys;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return engine + " from " + peer + (replid != null ? " replid " + replid + " offset " + offset : "")
+                + (cursor != null ? " cursor " + cursor + " keys " + keys : "");
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
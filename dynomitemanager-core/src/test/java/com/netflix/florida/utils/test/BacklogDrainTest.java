@@ -0,0 +1,58 @@
+package com.netflix.florida.utils.test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.dynomite.BacklogDrain;
+import com.netflix.dynomitemanager.dynomite.DynomiteBacklog;
+
+public class BacklogDrainTest {
+
+    private static final String JSON = "{\"service\":\"dynomite\", \"uptime\":40439, \"server_in_queue_99\":7,"
+            + "\"dyn_o_mite\":{\"client_connections\":3,"
+            + "\"127.0.0.1:22122\":{\"requests\":20000, \"in_queue\":12, \"in_queue_bytes\":900, \"out_queue\":3},"
+            + "\"10.0.0.2:8101\":{\"requests\":100, \"in_queue\":0, \"out_queue\":5}}}";
+
+    @Test
+    public void testDrain() {
+        BacklogDrain drain = new BacklogDrain(1000, 10000, 0, 3);
+        Assert.assertFalse(drain.update(40));
+        Assert.assertFalse(drain.update(0));
+        Assert.assertFalse(drain.update(0));
+        // a write between the checks starts over
+        Assert.assertFalse(drain.update(2));
+        Assert.assertFalse(drain.update(0));
+        // an unreadable check is not drained
+        Assert.assertFalse(drain.update(-1));
+        Assert.assertFalse(drain.update(0));
+        Assert.assertFalse(drain.update(0));
+        Assert.assertTrue(drain.update(0));
+        Assert.assertEquals(40, drain.getPeak());
+        Assert.assertEquals(9, drain.getSamples());
+        Assert.assertEquals(2500, drain.getElapsedMs(3500));
+    }
+
+    @Test
+    public void testExpired() {
+        BacklogDrain drain = new BacklogDrain(1000, 10000, 5, 1);
+        Assert.assertFalse(drain.update(6));
+        Assert.assertFalse(drain.isExpired(10999));
+        Assert.assertTrue(drain.isExpired(11000));
+        Assert.assertTrue(drain.update(5));
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        DynomiteBacklog backlog = new DynomiteBacklog(null);
+        Assert.assertEquals(20, backlog.count(stream(JSON)));
+        Assert.assertEquals(20, backlog.count(stream(JSON)));
+        Assert.assertEquals(-1, backlog.count(stream("{\"service\":\"dynomite\", \"uptime\":1}")));
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,29 @@
+package com.netflix.florida.utils.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.monitoring.CounterResetDetector;
+
+public class CounterResetDetectorTest {
+
+    @Test
+    public void testUptimeRegression() {
+        CounterResetDetector detector = new CounterResetDetector("test__counter_resets");
+        Assert.assertFalse(detector.update(100));
+        Assert.assertFalse(detector.update(115));
+        Assert.assertFalse(detector.update(115));
+        Assert.assertTrue(detector.update(3));
+        Assert.assertFalse(detector.update(18));
+    }
+
+    @Test
+    public void testIncrement() {
+        Assert.assertEquals(50, CounterResetDetector.increment(100, 150, false));
+        // went backwards without an uptime regression, e.g. a queue length
+        Assert.assertEquals(-80, CounterResetDetector.increment(100, 20, false));
+        // restarted and already counted past the old value
+        Assert.assertEquals(150, CounterResetDetector.increment(100, 150, true));
+        Assert.assertEquals(0, CounterResetDetector.increment(100, -5, true));
+    }
+}
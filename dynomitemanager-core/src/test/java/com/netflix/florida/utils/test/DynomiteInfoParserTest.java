@@ -0,0 +1,97 @@
+package com.netflix.florida.utils.test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.monitoring.DynomiteInfoParser;
+import com.netflix.dynomitemanager.monitoring.DynomiteInfoParser.MetricName;
+
+public class DynomiteInfoParserTest {
+
+    private static final String JSON = "{\"service\":\"dynomite\", \"source\":\"florida-i-16ca1846\", \"version\":\"0.3.1\", \"uptime\":40439, \"timestamp\":1399064677, \"datacenter\":\"DC1\","
+            + "\"latency_99th\":450, \"ratio\":1.5, \"tags\":[\"a\", {\"b\":\"}\"}],"
+            + "\"dyn_o_mite\":"
+            + "{\"client_eof\":0, \"client_err\":0, \"client_connections\":3, \"server_ejects\":0, \"forward_error\":0, \"fragments\":0, \"stats_count\":22, \"guage\" : { },"
+            + "\"127.0.0.1\":"
+            + "{\"server_eof\":0, \"server_err\":0, \"server_timedout\":11, \"server_connections\":3, \"server_ejected_at\":0, \"requests\":20000,"
+            + "\"request_bytes\":0, \"responses\":5, \"response_bytes\":0, \"in_queue\":0, \"in_queue_bytes\":0, \"out_queue\":0,"
+            + "\"out_queue_bytes\":0, \"name\":\"peer\\\"1\"" + "}" + "}" + "}";
+
+    @Test
+    public void testFlattensMetrics() throws Exception {
+
+        RecordingHandler handler = new RecordingHandler();
+        // small buffer to exercise refills in the middle of tokens
+        DynomiteInfoParser parser = new DynomiteInfoParser(7);
+        MetricName service = parser.parse(stream(JSON), handler);
+
+        Assert.assertNotNull(service);
+        Assert.assertEquals("dynomite", service.getName());
+        Assert.assertTrue(parser.statsFound());
+
+        Assert.assertEquals(Long.valueOf(40439), handler.service.get("dynomite__uptime"));
+        Assert.assertEquals(Long.valueOf(1399064677), handler.service.get("dynomite__timestamp"));
+        Assert.assertEquals(Long.valueOf(450), handler.service.get("dynomite__latency_99th"));
+        Assert.assertFalse(handler.service.containsKey("dynomite__ratio"));
+        Assert.assertEquals(3, handler.service.size());
+
+        Assert.assertEquals(Long.valueOf(3), handler.stats.get("dynomite__client_connections"));
+        Assert.assertEquals(Long.valueOf(22), handler.stats.get("dynomite__stats_count"));
+        Assert.assertEquals(Long.valueOf(20000), handler.stats.get("dynomite__127.0.0.1__requests"));
+        Assert.assertEquals(Long.valueOf(11), handler.stats.get("dynomite__127.0.0.1__server_timedout"));
+        Assert.assertEquals(20, handler.stats.size());
+    }
+
+    @Test
+    public void testNamesAreReused() throws Exception {
+
+        RecordingHandler first = new RecordingHandler();
+        RecordingHandler second = new RecordingHandler();
+        DynomiteInfoParser parser = new DynomiteInfoParser();
+        parser.parse(stream(JSON), first);
+        parser.parse(stream(JSON), second);
+
+        for (Map.Entry<String, MetricName> entry : first.names.entrySet()) {
+            Assert.assertSame(entry.getValue(), second.names.get(entry.getKey()));
+        }
+        Assert.assertSame(parser.serviceMetric("dynomite", "uptime"), first.names.get("dynomite__uptime"));
+    }
+
+    @Test
+    public void testMissingService() throws Exception {
+
+        RecordingHandler handler = new RecordingHandler();
+        DynomiteInfoParser parser = new DynomiteInfoParser();
+
+        Assert.assertNull(parser.parse(stream("{\"uptime\":1, \"service\":\"dynomite\"}"), handler));
+        Assert.assertNull(parser.parse(stream("{}"), handler));
+        Assert.assertTrue(handler.names.isEmpty());
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class RecordingHandler implements DynomiteInfoParser.Handler {
+        private final Map<String, Long> service = new HashMap<String, Long>();
+        private final Map<String, Long> stats = new HashMap<String, Long>();
+        private final Map<String, MetricName> names = new HashMap<String, MetricName>();
+
+        @Override
+        public void onServiceMetric(MetricName name, long value) {
+            service.put(name.getName(), value);
+            names.put(name.getName(), name);
+        }
+
+        @Override
+        public void onStatsMetric(MetricName name, long value) {
+            stats.put(name.getName(), value);
+            names.put(name.getName(), name);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.netflix.florida.utils.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.monitoring.HealthScore;
+
+public class HealthScoreTest {
+
+    private static final HealthScore.Limits LIMITS = new HealthScore.Limits(100000, 1000, 500, 200000, 70);
+
+    @Test
+    public void testHealthy() {
+        HealthScore score = HealthScore.compute(LIMITS, true, 300, 2, 0, 5000, 1000);
+        Assert.assertEquals(100, score.getScore());
+        Assert.assertEquals(HealthScore.HEALTHY, score.getStatus());
+        Assert.assertEquals(1000, score.getTime());
+    }
+
+    @Test
+    public void testSlowPing() {
+        // answers PING in 800ms
+        HealthScore score = HealthScore.compute(LIMITS, true, 800000, 0, 0, 0, 0);
+        Assert.assertEquals(60, score.getScore());
+        Assert.assertTrue(score.isDegraded());
+
+        // halfway between a quarter of the limit and the limit
+        score = HealthScore.compute(LIMITS, true, 62500, 0, 0, 0, 0);
+        Assert.assertEquals(80, score.getScore());
+        Assert.assertFalse(score.isDegraded());
+    }
+
+    @Test
+    public void testPenaltiesAddUp() {
+        HealthScore score = HealthScore.compute(LIMITS, true, 100000, 1000, 500, 200000, 0);
+        // an up node never scores 0
+        Assert.assertEquals(1, score.getScore());
+        Assert.assertEquals(HealthScore.DEGRADED, score.getStatus());
+
+        score = HealthScore.compute(LIMITS, true, 0, 1000, 500, 0, 0);
+        Assert.assertEquals(50, score.getScore());
+    }
+
+    @Test
+    public void testDown() {
+        HealthScore score = HealthScore.compute(LIMITS, false, 300, 0, 0, 0, 0);
+        Assert.assertEquals(0, score.getScore());
+        Assert.assertEquals(HealthScore.DOWN, score.getStatus());
+        Assert.assertFalse(score.isDegraded());
+    }
+
+    @Test
+    public void testDisabledLimit() {
+        HealthScore.Limits limits = new HealthScore.Limits(0, 1000, 500, 200000, 70);
+        Assert.assertEquals(100, HealthScore.compute(limits, true, 800000, 0, 0, 0, 0).getScore());
+    }
+}
@@ -0,0 +1,126 @@
+package com.netflix.florida.utils.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.storage.KeyMigrator;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Migrates between two local Redis instances, on the ports of the system
+ * properties florida.test.redis.source.port and florida.test.redis.target.port
+ * (6379 and 6380 by default). Skipped if they are not running.
+ */
+public class KeyMigratorTest {
+
+    private static final String HOST = "127.0.0.1";
+
+    private final int sourcePort = Integer.getInteger("florida.test.redis.source.port", 6379);
+    private final int targetPort = Integer.getInteger("florida.test.redis.target.port", 6380);
+
+    private Jedis source;
+    private Jedis target;
+
+    @Before
+    public void setUp() {
+        source = connect(sourcePort);
+        target = connect(targetPort);
+        Assume.assumeTrue(source != null && target != null);
+        source.flushAll();
+        target.flushAll();
+    }
+
+    @After
+    public void tearDown() {
+        if (source != null) {
+            source.disconnect();
+        }
+        if (target != null) {
+            target.disconnect();
+        }
+    }
+
+    @Test
+    public void testMigrate() {
+        for (int i = 0; i < 2500; i++) {
+            source.set("key" + i, "value" + i);
+        }
+        source.pexpire("key0", 600000L);
+
+        final List<String> checkpoints = new ArrayList<String>();
+        KeyMigrator migrator = new KeyMigrator(HOST, sourcePort, HOST, targetPort, 100, 3, 2, 5000);
+        KeyMigrator.Result result = migrator.migrate(KeyMigrator.START, System.currentTimeMillis() + 60000,
+                new KeyMigrator.Checkpoint() {
+                    @Override
+                    public void onCheckpoint(String cursor) {
+                        checkpoints.add(cursor);
+                    }
+                });
+
+        Assert.assertEquals(KeyMigrator.Result.DONE, result);
+        Assert.assertEquals(2500, migrator.getRestored());
+        Assert.assertEquals(Long.valueOf(2500), target.dbSize());
+        Assert.assertEquals("value1234", target.get("key1234"));
+        Assert.assertTrue(target.pttl("key0") > 0);
+        Assert.assertEquals(KeyMigrator.START, migrator.getCheckpoint());
+        Assert.assertEquals(KeyMigrator.START, checkpoints.get(checkpoints.size() - 1));
+
+        // present keys are skipped
+        migrator = new KeyMigrator(HOST, sourcePort, HOST, targetPort, 100, 3, 2, 5000);
+        Assert.assertEquals(KeyMigrator.Result.DONE,
+                migrator.migrate(KeyMigrator.START, System.currentTimeMillis() + 60000, null));
+        Assert.assertEquals(0, migrator.getRestored());
+        Assert.assertEquals(2500, migrator.getSkipped());
+    }
+
+    @Test
+    public void testCatchUp() throws InterruptedException {
+        // the snapshot
+        for (int i = 0; i < 300; i++) {
+            source.set("key" + i, "value" + i);
+            target.set("key" + i, "value" + i);
+        }
+        target.set("deleted", "value");
+        Thread.sleep(3000);
+        source.set("key5", "changed");
+        source.set("added", "value");
+
+        KeyMigrator migrator = new KeyMigrator(HOST, sourcePort, HOST, targetPort, 100, 2, 2, 5000);
+        migrator.setChangedWithin(1);
+        Assert.assertEquals(KeyMigrator.Result.DONE,
+                migrator.migrate(KeyMigrator.START, System.currentTimeMillis() + 60000, null));
+        Assert.assertEquals(2, migrator.getRestored());
+        Assert.assertEquals(299, migrator.getUnchanged());
+        Assert.assertEquals("changed", target.get("key5"));
+        Assert.assertEquals("value", target.get("added"));
+
+        Assert.assertEquals(KeyMigrator.Result.DONE, migrator.prune(System.currentTimeMillis() + 60000));
+        Assert.assertEquals(1, migrator.getDeleted());
+        Assert.assertFalse(target.exists("deleted"));
+        Assert.assertEquals(Long.valueOf(301), target.dbSize());
+    }
+
+    @Test
+    public void testCannotConnect() {
+        KeyMigrator migrator = new KeyMigrator(HOST, 1, HOST, targetPort, 100, 1, 1, 1000);
+        Assert.assertEquals(KeyMigrator.Result.CANNOT_CONNECT,
+                migrator.migrate(KeyMigrator.START, System.currentTimeMillis() + 60000, null));
+    }
+
+    private static Jedis connect(int port) {
+        try {
+            Jedis jedis = new Jedis(HOST, port, 1000);
+            jedis.ping();
+            return jedis;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.netflix.florida.utils.test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.monitoring.MetricSnapshot;
+import com.netflix.dynomitemanager.monitoring.MetricSnapshotRegistry;
+
+public class MetricSnapshotTest {
+
+    @Test
+    public void testRender() {
+        MetricSnapshot.Builder builder = new MetricSnapshot.Builder();
+        MetricSnapshot snapshot = builder.counter("dynomite__10.0.0.1:8101:rack1:dc1:1234__requests", 42)
+                .gauge("Redis_Memory_used_memory", -7).gauge("99_cross_zone_latency", 0).build(1000);
+
+        Assert.assertEquals(3, snapshot.size());
+        Assert.assertEquals(1000, snapshot.getTime());
+        Assert.assertEquals("# TYPE dynomite__10_0_0_1:8101:rack1:dc1:1234__requests counter\n"
+                + "dynomite__10_0_0_1:8101:rack1:dc1:1234__requests_total 42\n"
+                + "# TYPE Redis_Memory_used_memory gauge\n" + "Redis_Memory_used_memory -7\n"
+                + "# TYPE _99_cross_zone_latency gauge\n" + "_99_cross_zone_latency 0\n", snapshot.toString());
+    }
+
+    @Test
+    public void testReuse() {
+        MetricSnapshot.Builder builder = new MetricSnapshot.Builder();
+        MetricSnapshot first = builder.gauge("a", 1).gauge("b", Long.MIN_VALUE).build(1);
+        MetricSnapshot second = builder.gauge("a", 2).build(2);
+
+        // a built snapshot does not change when the builder is reused
+        Assert.assertEquals("# TYPE a gauge\na 1\n# TYPE b gauge\nb " + Long.MIN_VALUE + "\n", first.toString());
+        Assert.assertEquals("# TYPE a gauge\na 2\n", second.toString());
+    }
+
+    @Test
+    public void testDuplicateFamily() {
+        MetricSnapshot snapshot = new MetricSnapshot.Builder().gauge("a.b", 1).gauge("a-b", 2).counter("c_total", 3)
+                .build(1);
+        Assert.assertEquals(2, snapshot.size());
+        Assert.assertEquals("# TYPE a_b gauge\na_b 1\n# TYPE c counter\nc_total 3\n", snapshot.toString());
+    }
+
+    @Test
+    public void testRegistry() throws Exception {
+        MetricSnapshotRegistry registry = new MetricSnapshotRegistry();
+        registry.publish(MetricSnapshotRegistry.Source.REDIS, new MetricSnapshot.Builder().gauge("r", 1).build(1));
+        registry.publish(MetricSnapshotRegistry.Source.DYNOMITE, new MetricSnapshot.Builder().gauge("d", 2).build(1));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        registry.writeTo(out);
+        Assert.assertEquals("# TYPE d gauge\nd 2\n# TYPE r gauge\nr 1\n# EOF\n",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+}
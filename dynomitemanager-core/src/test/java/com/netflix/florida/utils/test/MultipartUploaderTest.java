@@ -0,0 +1,165 @@
+package com.netflix.florida.utils.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.S3ClientOptions;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.netflix.dynomitemanager.aws.MultipartUploader;
+
+/**
+ * Uploads to an in-memory S3, and to a local S3 compatible store, e.g. MinIO,
+ * at the endpoint of the system property florida.test.s3.endpoint into the
+ * bucket florida.test.s3.bucket, if set.
+ */
+public class MultipartUploaderTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("florida_upload", ".rdb");
+        RandomAccessFile data = new RandomAccessFile(file, "rw");
+        data.setLength(12 * MB);
+        data.close();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testRetriesFailedPart() {
+        FakeS3 s3 = new FakeS3(2, 1);
+        final AtomicInteger attempts = new AtomicInteger();
+        MultipartUploader uploader = new MultipartUploader(s3, 5 * MB, 2, 1);
+        Assert.assertTrue(uploader.upload(file, "bucket", "key", new MultipartUploader.PartListener() {
+            @Override
+            public void onPart(int partNumber, long bytes, long elapsedMs, int partAttempts) {
+                attempts.addAndGet(partAttempts);
+            }
+        }));
+
+        // only the failed part is uploaded again
+        Assert.assertEquals(4, s3.uploads.get());
+        Assert.assertEquals(4, attempts.get());
+        Assert.assertEquals(Long.valueOf(5 * MB), s3.sizes.get(1));
+        Assert.assertEquals(Long.valueOf(5 * MB), s3.sizes.get(2));
+        Assert.assertEquals(Long.valueOf(2 * MB), s3.sizes.get(3));
+        Assert.assertEquals(10 * MB, s3.offsets.get(3).longValue());
+        List<Integer> completed = new ArrayList<Integer>();
+        for (PartETag partETag : s3.completed) {
+            completed.add(partETag.getPartNumber());
+        }
+        Assert.assertEquals(Arrays.asList(1, 2, 3), completed);
+        Assert.assertFalse(s3.aborted);
+    }
+
+    @Test
+    public void testAbortsWhenRetriesRunOut() {
+        FakeS3 s3 = new FakeS3(2, 3);
+        MultipartUploader uploader = new MultipartUploader(s3, 5 * MB, 1, 1);
+        Assert.assertFalse(uploader.upload(file, "bucket", "key", null));
+        Assert.assertTrue(s3.aborted);
+        Assert.assertNull(s3.completed);
+    }
+
+    @Test
+    public void testPartSize() {
+        MultipartUploader uploader = new MultipartUploader(new FakeS3(0, 0), MB, 1, 0);
+        // at least 5MB
+        Assert.assertEquals(MultipartUploader.MIN_PART_SIZE, uploader.getPartSize(12 * MB));
+        // at most 10000 parts
+        Assert.assertEquals(100000 * MB / 10000, uploader.getPartSize(100000 * MB));
+    }
+
+    @Test
+    public void testLocalS3() {
+        String endpoint = System.getProperty("florida.test.s3.endpoint");
+        String bucket = System.getProperty("florida.test.s3.bucket", "florida-test");
+        Assume.assumeNotNull(endpoint);
+
+        AmazonS3Client s3 = new AmazonS3Client();
+        s3.setEndpoint(endpoint);
+        s3.setS3ClientOptions(S3ClientOptions.builder().setPathStyleAccess(true).build());
+        MultipartUploader uploader = new MultipartUploader(s3, 5 * MB, 3, 2);
+        Assert.assertTrue(uploader.upload(file, bucket, "florida/test/upload", null));
+        Assert.assertEquals(file.length(), s3.getObjectMetadata(bucket, "florida/test/upload").getContentLength());
+    }
+
+    /**
+     * Fails the uploads of a part a number of times.
+     */
+    private static class FakeS3 extends AmazonS3Client {
+        private final int failingPart;
+        private final AtomicInteger failures;
+        private final AtomicInteger uploads = new AtomicInteger();
+        private final Map<Integer, Long> sizes = new ConcurrentHashMap<Integer, Long>();
+        private final Map<Integer, Long> offsets = new ConcurrentHashMap<Integer, Long>();
+        private volatile List<PartETag> completed;
+        private volatile boolean aborted;
+
+        FakeS3(int failingPart, int failures) {
+            this.failingPart = failingPart;
+            this.failures = new AtomicInteger(failures);
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId("upload");
+            return result;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            uploads.incrementAndGet();
+            if (request.getPartNumber() == failingPart && failures.getAndDecrement() > 0) {
+                throw new AmazonClientException("connection reset");
+            }
+            sizes.put(request.getPartNumber(), request.getPartSize());
+            offsets.put(request.getPartNumber(), request.getFileOffset());
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag" + request.getPartNumber());
+            return result;
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            completed = Collections.unmodifiableList(new ArrayList<PartETag>(request.getPartETags()));
+            return new CompleteMultipartUploadResult();
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborted = true;
+        }
+    }
+}
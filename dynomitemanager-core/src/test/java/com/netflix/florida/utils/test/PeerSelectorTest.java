@@ -0,0 +1,64 @@
+package com.netflix.florida.utils.test;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.storage.PeerSelector;
+import com.netflix.dynomitemanager.storage.PeerSelector.Peer;
+
+public class PeerSelectorTest {
+
+    @Test
+    public void testRank() {
+        List<Peer> peers = new ArrayList<Peer>();
+        // busy
+        peers.add(new Peer("busy", 500, 100000, 1000, 1000, 100));
+        // far away
+        peers.add(new Peer("far", 50000, 1000, 1000, 1000, 100));
+        // lightly loaded and close
+        peers.add(new Peer("best", 400, 1000, 1000, 1000, 10));
+        PeerSelector.rank(peers);
+        Assert.assertEquals("best", peers.get(0).getHost());
+        Assert.assertEquals("far", peers.get(1).getHost());
+        Assert.assertEquals("busy", peers.get(2).getHost());
+    }
+
+    @Test
+    public void testRankMissingValues() {
+        List<Peer> peers = new ArrayList<Peer>();
+        // did not report its load, which counts as the worst
+        peers.add(new Peer("unknown", 500, -1, 1000, -1, 100));
+        peers.add(new Peer("known", 500, 1000, 1000, 1000, 100));
+        PeerSelector.rank(peers);
+        Assert.assertEquals("known", peers.get(0).getHost());
+        Assert.assertEquals(2, peers.size());
+    }
+
+    @Test
+    public void testRankTie() {
+        List<Peer> peers = new ArrayList<Peer>();
+        peers.add(new Peer("young", 500, 1000, 1000, 1000, 10));
+        peers.add(new Peer("old", 500, 1000, 1000, 1000, 1000));
+        PeerSelector.rank(peers);
+        Assert.assertEquals("old", peers.get(0).getHost());
+    }
+
+    @Test
+    public void testSelectDeadline() throws Exception {
+        // accepts connections, but never answers
+        ServerSocket server = new ServerSocket(0);
+        try {
+            long start = System.currentTimeMillis();
+            List<Peer> peers = new PeerSelector(server.getLocalPort(), 200)
+                    .select(new String[] { "127.0.0.1", "127.0.0.1" });
+            Assert.assertTrue(peers.isEmpty());
+            Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.netflix.florida.utils.test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.monitoring.PeerTopology;
+import com.netflix.dynomitemanager.monitoring.PeerTopology.Aggregation;
+import com.netflix.nfsidecar.identity.AppsInstance;
+
+public class PeerTopologyTest {
+
+    @Test
+    public void testGroups() {
+        PeerTopology topology = new PeerTopology();
+        Assert.assertNull(topology.groupOf("10.0.0.1:8101:rack1:dc1:1234"));
+
+        topology.update(Aggregation.RACK, Arrays.asList(instance("host1", "10.0.0.1", "us-east-1", "us-east-1c"),
+                instance("host2", "10.0.0.2", "us-west-2", "us-west-2a")));
+        Assert.assertEquals("rack__us-east-1__us-east-1c", topology.groupOf("10.0.0.1:8101:rack1:dc1:1234"));
+        Assert.assertEquals("rack__us-west-2__us-west-2a", topology.groupOf("host2:8101"));
+        // the local data store is not part of the topology
+        Assert.assertNull(topology.groupOf("127.0.0.1:22122:1"));
+
+        topology.update(Aggregation.DC, Arrays.asList(instance("host1", "10.0.0.1", "us-east-1", "us-east-1c")));
+        Assert.assertEquals("dc__us-east-1", topology.groupOf("10.0.0.1"));
+    }
+
+    @Test
+    public void testVersion() {
+        PeerTopology topology = new PeerTopology();
+        int version = topology.getVersion();
+
+        topology.update(Aggregation.RACK, Arrays.asList(instance("host1", "10.0.0.1", "us-east-1", "us-east-1c")));
+        Assert.assertNotEquals(version, topology.getVersion());
+        version = topology.getVersion();
+
+        // same groups, e.g. a periodic refresh
+        topology.update(Aggregation.RACK, Arrays.asList(instance("host1", "10.0.0.1", "us-east-1", "us-east-1c")));
+        Assert.assertEquals(version, topology.getVersion());
+
+        topology.update(Aggregation.RACK, Collections.<AppsInstance> emptyList());
+        Assert.assertNotEquals(version, topology.getVersion());
+    }
+
+    @Test
+    public void testAggregationFrom() {
+        Assert.assertEquals(Aggregation.RACK, Aggregation.from("rack"));
+        Assert.assertEquals(Aggregation.DC, Aggregation.from("DC"));
+        Assert.assertEquals(Aggregation.NONE, Aggregation.from("bogus"));
+    }
+
+    private static AppsInstance instance(String host, String ip, String dc, String rack) {
+        AppsInstance instance = new AppsInstance();
+        instance.setHost(host, ip);
+        instance.setDatacenter(dc);
+        instance.setRack(rack);
+        return instance;
+    }
+}
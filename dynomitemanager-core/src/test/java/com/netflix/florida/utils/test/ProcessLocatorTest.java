@@ -0,0 +1,84 @@
+package com.netflix.florida.utils.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.monitoring.ProcessLocator;
+
+public class ProcessLocatorTest {
+
+    private static final String DYNOMITE = "/apps/dynomite/bin/dynomite";
+
+    @Test
+    public void testLocate() throws Exception {
+        File proc = Files.createTempDirectory("proc").toFile();
+        process(proc, 1, "/sbin/init\0", 'S');
+        process(proc, 42, "/bin/sh\0-c\0/apps/dynomite/bin/launch.sh\0", 'S');
+        process(proc, 117, DYNOMITE + "\0-c\0/apps/dynomite/conf/dynomite.yml\0", 'S');
+        new File(proc, "self").mkdirs();
+
+        ProcessLocator locator = new ProcessLocator(proc, DYNOMITE);
+        Assert.assertEquals(117, locator.getPid());
+        Assert.assertEquals(1, locator.getScans());
+
+        // a live process is not looked up again
+        Assert.assertTrue(locator.isAlive());
+        Assert.assertEquals(1, locator.getScans());
+    }
+
+    @Test
+    public void testRescan() throws Exception {
+        File proc = Files.createTempDirectory("proc").toFile();
+        process(proc, 117, DYNOMITE + "\0", 'S');
+
+        ProcessLocator locator = new ProcessLocator(proc, DYNOMITE);
+        Assert.assertEquals(117, locator.getPid());
+
+        // the process is a zombie, and was restarted under a new pid
+        process(proc, 117, DYNOMITE + "\0", 'Z');
+        process(proc, 230, DYNOMITE + "\0", 'R');
+        Assert.assertEquals(230, locator.getPid());
+        Assert.assertEquals(2, locator.getScans());
+
+        process(proc, 230, DYNOMITE + "\0", 'Z');
+        Assert.assertFalse(locator.isAlive());
+        // it was running once, so it is down rather than unknown
+        Assert.assertTrue(locator.hasFound());
+    }
+
+    @Test
+    public void testNotRunning() throws Exception {
+        File proc = Files.createTempDirectory("proc").toFile();
+        process(proc, 42, "/apps/nfredis/bin/redis-server\0*:22122\0", 'S');
+
+        ProcessLocator locator = new ProcessLocator(proc, DYNOMITE);
+        Assert.assertEquals(-1, locator.getPid());
+        Assert.assertFalse(locator.isAlive());
+        Assert.assertEquals(2, locator.getScans());
+        Assert.assertFalse(locator.hasFound());
+    }
+
+    private static void process(File proc, int pid, String cmdline, char state) throws IOException {
+        File dir = new File(proc, Integer.toString(pid));
+        dir.mkdirs();
+        write(new File(dir, "cmdline"), cmdline);
+        // the command of a process may contain spaces and parentheses
+        write(new File(dir, "stat"), pid + " (dyno (x) mite) " + state + " 1 " + pid + " " + pid
+                + " 0 -1 4194560 2360 0 0 0 11 7 0 0 20 0 4 0 1234567 123456789 2500\n");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.netflix.florida.utils.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.monitoring.ProcessLocator;
+import com.netflix.dynomitemanager.monitoring.ProcessStats;
+
+public class ProcessStatsTest {
+
+    @Test
+    public void testSample() throws Exception {
+        File proc = Files.createTempDirectory("proc").toFile();
+        File dir = new File(proc, "117");
+        new File(dir, "fd").mkdirs();
+        for (int fd = 0; fd < 5; fd++) {
+            new File(dir, "fd/" + fd).createNewFile();
+        }
+        write(new File(dir, "cmdline"), "/apps/nfredis/bin/redis-server\0*:22122\0");
+        write(new File(dir, "stat"), "117 (redis-server) S 1 117 117 0 -1 4194560 2360 0 0 0 1234 567 0 0 20 0 4 0"
+                + " 1234567 123456789 2500 18446744073709551615\n");
+        write(new File(dir, "status"), "Name:\tredis-server\nState:\tS (sleeping)\nVmPeak:\t  200000 kB\n"
+                + "VmRSS:\t   10240 kB\nThreads:\t4\nvoluntary_ctxt_switches:\t8123\n"
+                + "nonvoluntary_ctxt_switches:\t42\n");
+        write(new File(dir, "io"), "rchar: 100\nwchar: 200\nsyscr: 3\nsyscw: 4\nread_bytes: 4096\n"
+                + "write_bytes: 8192\ncancelled_write_bytes: 0\n");
+
+        ProcessStats stats = new ProcessStats(proc, "test__process",
+                new ProcessLocator(proc, "/apps/nfredis/bin/redis-server"));
+        Assert.assertTrue(stats.sample());
+        Assert.assertEquals(12340, stats.getCpuUserMs());
+        Assert.assertEquals(5670, stats.getCpuSystemMs());
+        Assert.assertEquals(4, stats.getThreads());
+        Assert.assertEquals(10240 * 1024, stats.getRssBytes());
+        Assert.assertEquals(5, stats.getOpenFds());
+        Assert.assertEquals(8123, stats.getVoluntaryCtxSwitches());
+        Assert.assertEquals(42, stats.getInvoluntaryCtxSwitches());
+        Assert.assertEquals(4096, stats.getReadBytes());
+        Assert.assertEquals(8192, stats.getWriteBytes());
+
+        // the open files are re-read
+        write(new File(dir, "status"), "VmRSS:\t   20480 kB\nvoluntary_ctxt_switches:\t9000\n"
+                + "nonvoluntary_ctxt_switches:\t43\n");
+        Assert.assertTrue(stats.sample());
+        Assert.assertEquals(20480 * 1024, stats.getRssBytes());
+        Assert.assertEquals(9000, stats.getVoluntaryCtxSwitches());
+
+        // a zombie is not running, its values are cleared
+        write(new File(dir, "stat"), "117 (redis-server) Z 1 117 117 0 -1 4194560 2360 0 0 0 1234 567 0 0 20 0 4 0"
+                + " 1234567 0 0\n");
+        Assert.assertFalse(stats.sample());
+        Assert.assertEquals(0, stats.getRssBytes());
+        Assert.assertEquals(0, stats.getCpuUserMs());
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.netflix.florida.utils.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.monitoring.RateCalculator;
+
+public class RateCalculatorTest {
+
+    @Test
+    public void testRate() {
+        RateCalculator rates = new RateCalculator();
+        int slot = rates.add(42);
+        Assert.assertEquals(slot, rates.find(42));
+        Assert.assertEquals(-1, rates.find(43));
+
+        Assert.assertTrue(Double.isNaN(rates.update(slot, 1000, 10000)));
+        Assert.assertEquals(100.0, rates.update(slot, 2500, 25000), 0.0001);
+        // same timestamp, no rate
+        Assert.assertTrue(Double.isNaN(rates.update(slot, 2600, 25000)));
+    }
+
+    @Test
+    public void testCounterReset() {
+        RateCalculator rates = new RateCalculator();
+        int slot = rates.add(7);
+        rates.update(slot, 1000000, 0);
+        // restarted and counted up to 300 in 15s
+        Assert.assertEquals(20.0, rates.update(slot, 300, 15000), 0.0001);
+
+        rates.reset();
+        Assert.assertTrue(Double.isNaN(rates.update(slot, 600, 30000)));
+        Assert.assertEquals(20.0, rates.update(slot, 900, 45000), 0.0001);
+    }
+
+    @Test
+    public void testManyKeysAndRemove() {
+        RateCalculator rates = new RateCalculator();
+        for (int key = 1; key <= 1000; key++) {
+            Assert.assertEquals(key - 1, rates.add(key));
+        }
+        for (int key = 1; key <= 1000; key++) {
+            Assert.assertEquals(key - 1, rates.find(key));
+        }
+
+        Assert.assertEquals(9, rates.remove(10));
+        Assert.assertEquals(-1, rates.find(10));
+        Assert.assertEquals(-1, rates.remove(10));
+        Assert.assertEquals(10, rates.find(11));
+
+        // the freed slot is handed out again
+        int slot = rates.add(5000);
+        Assert.assertEquals(9, slot);
+        Assert.assertTrue(Double.isNaN(rates.update(slot, 1, 1)));
+        Assert.assertEquals(1000, rates.getSlotCount());
+    }
+}
@@ -0,0 +1,103 @@
+package com.netflix.florida.utils.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.storage.ReadinessProbe;
+
+public class ReadinessProbeTest {
+
+    @Test
+    public void testPing() throws Exception {
+        ServerSocket server = serve("+PONG\r\n");
+        try {
+            long start = System.currentTimeMillis();
+            Assert.assertTrue(ReadinessProbe.waitForPing("127.0.0.1", server.getLocalPort(), start + 5000));
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testLoading() throws Exception {
+        // a Redis that loads its data is listening, but not ready
+        ServerSocket server = serve("-LOADING Redis is loading the dataset in memory\r\n");
+        try {
+            long start = System.currentTimeMillis();
+            Assert.assertFalse(ReadinessProbe.waitForPing("127.0.0.1", server.getLocalPort(), start + 300));
+            Assert.assertTrue(System.currentTimeMillis() - start >= 300);
+            Assert.assertTrue(ReadinessProbe.waitForConnect("127.0.0.1", server.getLocalPort(),
+                    System.currentTimeMillis() + 300));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testNotListening() throws Exception {
+        ServerSocket server = new ServerSocket(0);
+        int port = server.getLocalPort();
+        server.close();
+        Assert.assertFalse(ReadinessProbe.waitForPing("127.0.0.1", port, System.currentTimeMillis() + 200));
+    }
+
+    @Test
+    public void testWaitForExit() throws Exception {
+        Process process = new ProcessBuilder("sleep", "0.1").start();
+        Assert.assertTrue(ReadinessProbe.waitForExit(process, System.currentTimeMillis() + 5000, "sleep"));
+        Assert.assertEquals(0, process.exitValue());
+
+        // a script that is still running at the deadline is destroyed
+        process = new ProcessBuilder("sleep", "10").start();
+        try {
+            Assert.assertFalse(ReadinessProbe.waitForExit(process, System.currentTimeMillis() + 100, "sleep"));
+            Assert.assertFalse(process.isAlive());
+        } finally {
+            process.destroy();
+        }
+    }
+
+    @Test
+    public void testWaitForExitDrainsOutput() throws Exception {
+        // far more output than fits in a pipe
+        Process process = new ProcessBuilder("head", "-c", "1000000", "/dev/zero").redirectErrorStream(true).start();
+        Assert.assertTrue(ReadinessProbe.waitForExit(process, System.currentTimeMillis() + 5000, "head"));
+        Assert.assertEquals(0, process.exitValue());
+    }
+
+    /**
+     * Answer every request with the given reply.
+     */
+    private static ServerSocket serve(final String reply) throws IOException {
+        final ServerSocket server = new ServerSocket(0);
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                while (!server.isClosed()) {
+                    try {
+                        Socket socket = server.accept();
+                        InputStream in = socket.getInputStream();
+                        OutputStream out = socket.getOutputStream();
+                        in.read(new byte[64]);
+                        out.write(reply.getBytes(StandardCharsets.US_ASCII));
+                        out.flush();
+                        socket.close();
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return server;
+    }
+}
@@ -0,0 +1,80 @@
+package com.netflix.florida.utils.test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.storage.RedisInfoParser;
+
+public class RedisInfoSnapshotTest {
+
+    @Test
+    public void testRedisSnapshot() throws Exception {
+        RedisInfoParser parser = new RedisInfoParser();
+        RedisInfoParser.Snapshot snapshot = parser.newSnapshot();
+        parser.parse(read("redis_info.txt"), snapshot);
+
+        Assert.assertEquals(Long.valueOf(1234), snapshot.get("Redis_Server_uptime_in_seconds"));
+        Assert.assertEquals(Long.valueOf(105), snapshot.get("Redis_Memory_mem_fragmentation_ratio"));
+        Assert.assertEquals(Long.valueOf(2052), snapshot.get("Redis_CPU_used_cpu_sys"));
+        Assert.assertEquals(Long.valueOf(2499968), snapshot.get("Redis_Keyspace_db0_keys"));
+        Assert.assertEquals(Long.valueOf(0), snapshot.get("Redis_Keyspace_db0_avg_ttl"));
+        // not whitelisted
+        Assert.assertNull(snapshot.get("Redis_Memory_used_memory_peak"));
+        Assert.assertNull(snapshot.get("Redis_Replication_master_repl_offset"));
+
+        // a second parse only reports what the new reply contains
+        parser.parse("# Server\r\nuptime_in_seconds:5\r\n", snapshot);
+        Assert.assertEquals(Long.valueOf(5), snapshot.get("Redis_Server_uptime_in_seconds"));
+        Assert.assertNull(snapshot.get("Redis_Memory_used_memory"));
+        Assert.assertEquals(1, snapshot.toMap().size());
+    }
+
+    @Test
+    public void testArdbSnapshot() throws Exception {
+        RedisInfoParser parser = new RedisInfoParser();
+        int slots = parser.getSlotCount();
+        Map<String, Long> metrics = parser.parse(read("ardb_info.txt"));
+
+        Assert.assertEquals(Long.valueOf(86412), metrics.get("Redis_Server_uptime_in_seconds"));
+        Assert.assertEquals(Long.valueOf(3241877340L), metrics.get("Redis_Databases_used_disk_space"));
+        Assert.assertEquals(Long.valueOf(134217728), metrics.get("Redis_Databases_rocksdb_memtable_total"));
+        Assert.assertEquals(Long.valueOf(67108864), metrics.get("Redis_Databases_rocksdb_memtable_unflushed"));
+        Assert.assertEquals(Long.valueOf(1204), metrics.get("Redis_CPU_used_cpu_user"));
+        Assert.assertEquals(Long.valueOf(1022), metrics.get("Redis_Stats_instantaneous_ops_per_sec"));
+        Assert.assertEquals(Long.valueOf(1200433), metrics.get("Redis_Keyspace_db0_keys"));
+        Assert.assertFalse(metrics.containsKey("Redis_Server_listen"));
+
+        // the ARDB only section got its own slots
+        Assert.assertEquals(slots + 3, parser.getSlotCount());
+    }
+
+    @Test
+    public void testValues() throws Exception {
+        RedisInfoParser parser = new RedisInfoParser();
+        Map<String, Long> metrics = parser.parse("#Server\nuptime_in_seconds:12\n\n"
+                + "# Memory\nused_memory:300M\nmem_fragmentation_ratio:1.25\nused_memory_rss:1e3\nused_memory_lua:x\n"
+                + "used_memory:\n\nconnected_clients:3\n# Keyspace\ndb0:keys=7,expires=bad,avg_ttl=-1\n");
+
+        // a malformed section header drops the section name
+        Assert.assertEquals(Long.valueOf(12), metrics.get("Redis_uptime_in_seconds"));
+        Assert.assertEquals(Long.valueOf(300), metrics.get("Redis_Memory_used_memory"));
+        Assert.assertEquals(Long.valueOf(125), metrics.get("Redis_Memory_mem_fragmentation_ratio"));
+        Assert.assertEquals(Long.valueOf(1000), metrics.get("Redis_Memory_used_memory_rss"));
+        Assert.assertFalse(metrics.containsKey("Redis_Memory_used_memory_lua"));
+        // outside of a section
+        Assert.assertFalse(metrics.containsKey("Redis_Memory_connected_clients"));
+        Assert.assertEquals(Long.valueOf(7), metrics.get("Redis_Keyspace_db0_keys"));
+        Assert.assertEquals(Long.valueOf(-1), metrics.get("Redis_Keyspace_db0_avg_ttl"));
+        Assert.assertFalse(metrics.containsKey("Redis_Keyspace_db0_expires"));
+    }
+
+    private static String read(String name) throws Exception {
+        return new String(Files.readAllBytes(new File("./src/test/resources/" + name).toPath()),
+                StandardCharsets.UTF_8);
+    }
+}
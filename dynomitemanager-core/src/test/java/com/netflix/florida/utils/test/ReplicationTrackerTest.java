@@ -0,0 +1,107 @@
+package com.netflix.florida.utils.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.storage.ReplicationTracker;
+import com.netflix.dynomitemanager.storage.ReplicationTracker.State;
+
+public class ReplicationTrackerTest {
+
+    private static final long DEADLINE = 1000000;
+
+    @Test
+    public void testCatchUp() {
+        ReplicationTracker tracker = new ReplicationTracker(1000, 500, 10000, 60000);
+        Assert.assertEquals(State.WAITING, tracker.update(0, 5000000, 0, DEADLINE));
+        Assert.assertEquals(10000, tracker.getNextIntervalMs());
+
+        Assert.assertEquals(State.CATCHING_UP, tracker.update(10000, 5000000, 1000000, DEADLINE));
+        Assert.assertEquals(4000000, tracker.getLag());
+        // no rate yet
+        Assert.assertEquals(-1, tracker.getEtaMs());
+
+        // 1MB/s catch up
+        Assert.assertEquals(State.CATCHING_UP, tracker.update(11000, 5000000, 2000000, DEADLINE));
+        Assert.assertEquals(1000000, tracker.getCatchUpRate());
+        Assert.assertEquals(2999, tracker.getEtaMs());
+        // a quarter of the eta
+        Assert.assertEquals(749, tracker.getNextIntervalMs());
+
+        Assert.assertEquals(State.CATCHING_UP, tracker.update(12000, 5000000, 4000000, DEADLINE));
+        Assert.assertTrue(tracker.getCatchUpTrend() > 0);
+
+        Assert.assertEquals(State.IN_SYNC, tracker.update(13000, 5000000, 4999500, DEADLINE));
+        Assert.assertEquals(500, tracker.getNextIntervalMs());
+    }
+
+    @Test
+    public void testWriteBurst() {
+        ReplicationTracker tracker = new ReplicationTracker(1000, 500, 10000, 60000);
+        tracker.update(0, 5000000, 1000000, DEADLINE);
+        tracker.update(1000, 5000000, 2000000, DEADLINE);
+        // the peer takes writes faster than the replica applies them
+        for (long t = 2000; t <= 30000; t += 1000) {
+            Assert.assertEquals(State.CATCHING_UP, tracker.update(t, 5000000 + t * 1000, 2000000, DEADLINE));
+        }
+        Assert.assertTrue(tracker.getCatchUpRate() < 0);
+        Assert.assertEquals(-1, tracker.getEtaMs());
+        Assert.assertEquals(10000, tracker.getNextIntervalMs());
+    }
+
+    @Test
+    public void testBurstSubsides() {
+        ReplicationTracker tracker = new ReplicationTracker(1000, 500, 10000, 5000);
+        tracker.update(0, 5000000, 1000000, DEADLINE);
+        tracker.update(1000, 5000000, 2000000, DEADLINE);
+        // a burst widens the lag, ever less each second. Without its trend
+        // no catch up would be predicted for longer than the stall time.
+        long master = 5000000;
+        long slave = 2000000;
+        for (long t = 2000, growth = 3000000; t <= 7000; t += 1000, growth -= 500000) {
+            master += growth;
+            slave += 1000000;
+            Assert.assertEquals(State.CATCHING_UP, tracker.update(t, master, slave, DEADLINE));
+        }
+        // still falling behind, but the rate is improving
+        Assert.assertTrue(tracker.getCatchUpRate() < 0);
+        Assert.assertTrue(tracker.getCatchUpTrend() > 0);
+        Assert.assertTrue(tracker.getEtaMs() > 0);
+    }
+
+    @Test
+    public void testSlowingToAHalt() {
+        ReplicationTracker tracker = new ReplicationTracker(1000, 500, 10000, 60000);
+        tracker.update(0, 100000000, 1000000, DEADLINE);
+        // the replica applies ever less, it never closes the lag of ~99MB
+        long slave = 1000000;
+        for (long t = 1000, applied = 1000000; t <= 5000; t += 1000, applied -= 200000) {
+            slave += applied;
+            tracker.update(t, 100000000, slave, DEADLINE);
+        }
+        Assert.assertTrue(tracker.getCatchUpRate() > 0);
+        Assert.assertTrue(tracker.getCatchUpTrend() < 0);
+        Assert.assertEquals(-1, tracker.getEtaMs());
+    }
+
+    @Test
+    public void testStalled() {
+        ReplicationTracker tracker = new ReplicationTracker(1000, 500, 10000, 60000);
+        tracker.update(0, 5000000, 1000000, DEADLINE);
+        // no progress
+        Assert.assertEquals(State.CATCHING_UP, tracker.update(30000, 5000000, 1000000, DEADLINE));
+        Assert.assertEquals(State.STALLED, tracker.update(60000, 5000000, 1000000, DEADLINE));
+    }
+
+    @Test
+    public void testMissedDeadline() {
+        ReplicationTracker tracker = new ReplicationTracker(1000, 500, 10000, 60000);
+        tracker.update(0, 100000000, 1000000, 100000);
+        // catches up at 1kB/s, far too slow for the deadline
+        for (long t = 10000; t < 60000; t += 10000) {
+            Assert.assertEquals(State.CATCHING_UP, tracker.update(t, 100000000, 1000000 + t, 100000));
+        }
+        Assert.assertTrue(tracker.getEtaMs() > 0);
+        Assert.assertEquals(State.STALLED, tracker.update(60000, 100000000, 1060000, 100000));
+    }
+}
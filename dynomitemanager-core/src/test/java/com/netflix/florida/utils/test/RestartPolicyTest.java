@@ -0,0 +1,66 @@
+package com.netflix.florida.utils.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.dynomite.RestartPolicy;
+
+public class RestartPolicyTest {
+
+    @Test
+    public void testBackoff() {
+        RestartPolicy policy = new RestartPolicy(1000, 5000, 10, 60000);
+
+        // the first restart is immediate
+        Assert.assertTrue(policy.mayRestart(100));
+        policy.onRestart(100);
+        Assert.assertEquals(1000, policy.delay());
+        Assert.assertFalse(policy.mayRestart(1099));
+        Assert.assertTrue(policy.mayRestart(1100));
+
+        policy.onRestart(1100);
+        Assert.assertEquals(2000, policy.delay());
+        policy.onRestart(3100);
+        Assert.assertEquals(4000, policy.delay());
+        policy.onRestart(7100);
+        Assert.assertEquals(5000, policy.delay());
+        Assert.assertEquals(12100, policy.nextRestart());
+
+        // running for less than a window does not reset the backoff
+        policy.onRunning(60000);
+        Assert.assertEquals(5000, policy.delay());
+
+        policy.onRunning(67100);
+        Assert.assertEquals(0, policy.delay());
+        Assert.assertEquals(0, policy.getConsecutiveRestarts());
+    }
+
+    @Test
+    public void testCrashLoop() {
+        RestartPolicy policy = new RestartPolicy(100, 30000, 3, 10000);
+        policy.onRestart(0);
+        policy.onRestart(100);
+        Assert.assertFalse(policy.isCrashLoop());
+        policy.onRestart(300);
+        Assert.assertTrue(policy.isCrashLoop());
+        Assert.assertEquals(30000, policy.delay());
+
+        // restarts spread over more than a window are no crash loop
+        policy = new RestartPolicy(100, 30000, 3, 10000);
+        policy.onRestart(0);
+        policy.onRestart(6000);
+        policy.onRestart(12000);
+        Assert.assertFalse(policy.isCrashLoop());
+        Assert.assertEquals(400, policy.delay());
+
+        // a stable run ends the crash loop
+        policy = new RestartPolicy(100, 30000, 3, 10000);
+        policy.onRestart(0);
+        policy.onRestart(100);
+        policy.onRestart(200);
+        Assert.assertTrue(policy.isCrashLoop());
+        policy.onRunning(10200);
+        Assert.assertFalse(policy.isCrashLoop());
+        Assert.assertEquals(0, policy.delay());
+    }
+}
@@ -0,0 +1,51 @@
+package com.netflix.florida.utils.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.monitoring.SampleWindow;
+
+public class SampleWindowTest {
+
+    @Test
+    public void testDrainSortsAndResets() {
+        SampleWindow window = new SampleWindow(4);
+        window.record(30);
+        window.record(10);
+        window.record(20);
+
+        long[] sorted = new long[window.capacity()];
+        Assert.assertEquals(3, window.drain(sorted));
+        Assert.assertEquals(10, sorted[0]);
+        Assert.assertEquals(20, sorted[1]);
+        Assert.assertEquals(30, sorted[2]);
+
+        Assert.assertEquals(0, window.drain(sorted));
+    }
+
+    @Test
+    public void testOverwritesOldestSamples() {
+        SampleWindow window = new SampleWindow(3);
+        for (long i = 1; i <= 5; i++) {
+            window.record(i);
+        }
+
+        long[] sorted = new long[window.capacity()];
+        Assert.assertEquals(3, window.drain(sorted));
+        Assert.assertEquals(3, sorted[0]);
+        Assert.assertEquals(5, sorted[2]);
+    }
+
+    @Test
+    public void testPercentile() {
+        long[] sorted = new long[100];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = i + 1;
+        }
+        Assert.assertEquals(50, SampleWindow.percentile(sorted, 100, 50));
+        Assert.assertEquals(99, SampleWindow.percentile(sorted, 100, 99));
+        Assert.assertEquals(100, SampleWindow.percentile(sorted, 100, 100));
+        Assert.assertEquals(1, SampleWindow.percentile(sorted, 100, 0));
+        Assert.assertEquals(1, SampleWindow.percentile(sorted, 1, 99));
+    }
+}
@@ -0,0 +1,59 @@
+package com.netflix.florida.utils.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.storage.SyncThrottle;
+
+public class SyncThrottleTest {
+
+    @Test
+    public void testBackOff() {
+        SyncThrottle throttle = new SyncThrottle(10000, 10000, 0.1);
+        Assert.assertTrue(throttle.update(0, 2000));
+        Assert.assertEquals(100, throttle.getDutyPercent());
+
+        // the peer gets slow, the duty is halved down to the min
+        Assert.assertTrue(throttle.update(1000, 20000));
+        Assert.assertEquals(50, throttle.getDutyPercent());
+        Assert.assertEquals(4000, throttle.getNextChangeMs(1000));
+        Assert.assertTrue(throttle.update(2000, 20000));
+        Assert.assertEquals(25, throttle.getDutyPercent());
+        Assert.assertFalse(throttle.update(3000, 20000));
+        Assert.assertEquals(13, throttle.getDutyPercent());
+        Assert.assertEquals(1, throttle.getPauses());
+        Assert.assertEquals(7000, throttle.getNextChangeMs(3000));
+        Assert.assertFalse(throttle.update(4000, 20000));
+        Assert.assertFalse(throttle.update(5000, 20000));
+        Assert.assertEquals(10, throttle.getDutyPercent());
+        Assert.assertEquals(5, throttle.getBreaches());
+
+        // a new period starts attached
+        Assert.assertTrue(throttle.update(10000, 20000));
+        Assert.assertFalse(throttle.update(11000, 20000));
+        Assert.assertEquals(2, throttle.getPauses());
+    }
+
+    @Test
+    public void testRecover() {
+        SyncThrottle throttle = new SyncThrottle(10000, 10000, 0.1);
+        throttle.update(0, 20000);
+        throttle.update(100, 20000);
+        Assert.assertEquals(25, throttle.getDutyPercent());
+
+        // between 80% and 100% of the target the duty holds
+        throttle.update(200, 9000);
+        Assert.assertEquals(25, throttle.getDutyPercent());
+
+        // the duty grows by a tenth per sample below 80% of the target
+        throttle.update(300, 1000);
+        throttle.update(400, -1);
+        throttle.update(500, 1000);
+        Assert.assertEquals(45, throttle.getDutyPercent());
+        for (int i = 0; i < 10; i++) {
+            throttle.update(600 + i * 100, 1000);
+        }
+        Assert.assertEquals(100, throttle.getDutyPercent());
+        Assert.assertTrue(throttle.update(9999, 1000));
+    }
+}
@@ -0,0 +1,84 @@
+package com.netflix.florida.utils.test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netflix.dynomitemanager.storage.WarmUpCheckpoint;
+
+public class WarmUpCheckpointTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("florida_warmup", ".checkpoint");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testReplication() {
+        Assert.assertNull(WarmUpCheckpoint.load(file));
+        Assert.assertTrue(WarmUpCheckpoint.replication("10.0.0.1", "8a4f", 1234, 1000).save(file));
+
+        WarmUpCheckpoint checkpoint = WarmUpCheckpoint.load(file);
+        Assert.assertEquals(WarmUpCheckpoint.REPLICATION, checkpoint.getEngine());
+        Assert.assertEquals("10.0.0.1", checkpoint.getPeer());
+        Assert.assertEquals("8a4f", checkpoint.getReplid());
+        Assert.assertEquals(1234, checkpoint.getOffset());
+        Assert.assertNull(checkpoint.getCursor());
+        Assert.assertEquals(1000, checkpoint.getTime());
+
+        Assert.assertTrue(checkpoint.isResumable(WarmUpCheckpoint.REPLICATION, 61000, 60000));
+        Assert.assertFalse(checkpoint.isResumable(WarmUpCheckpoint.REPLICATION, 61001, 60000));
+        Assert.assertFalse(checkpoint.isResumable(WarmUpCheckpoint.MIGRATION, 1000, 60000));
+    }
+
+    @Test
+    public void testMigrationReplaces() {
+        WarmUpCheckpoint.migration("10.0.0.1", "17", 100, 1000).save(file);
+        WarmUpCheckpoint.migration("10.0.0.2", "42", 5000, 2000).save(file);
+
+        WarmUpCheckpoint checkpoint = WarmUpCheckpoint.load(file);
+        Assert.assertEquals(WarmUpCheckpoint.MIGRATION, checkpoint.getEngine());
+        Assert.assertEquals("10.0.0.2", checkpoint.getPeer());
+        Assert.assertEquals("42", checkpoint.getCursor());
+        Assert.assertNull(checkpoint.getReplid());
+        Assert.assertEquals(5000, checkpoint.getKeys());
+        Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        // a few keys may have expired, but not all of them
+        Assert.assertTrue(checkpoint.hasKeys(5200));
+        Assert.assertTrue(checkpoint.hasKeys(4950));
+        Assert.assertFalse(checkpoint.hasKeys(4949));
+        Assert.assertFalse(checkpoint.hasKeys(0));
+        Assert.assertFalse(checkpoint.hasKeys(-1));
+
+        WarmUpCheckpoint.delete(file);
+        Assert.assertNull(WarmUpCheckpoint.load(file));
+    }
+
+    @Test
+    public void testIncomplete() throws IOException {
+        FileWriter writer = new FileWriter(file);
+        writer.write("engine=migration\n");
+        writer.close();
+        Assert.assertNull(WarmUpCheckpoint.load(file));
+
+        // a checkpoint without a key count is not resumed from
+        writer = new FileWriter(file);
+        writer.write("engine=migration\npeer=10.0.0.1\ncursor=42\n");
+        writer.close();
+        Assert.assertFalse(WarmUpCheckpoint.load(file).hasKeys(1000));
+    }
+}